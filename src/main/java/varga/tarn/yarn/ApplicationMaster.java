@@ -50,7 +50,7 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
@@ -72,6 +72,8 @@ public class ApplicationMaster {
     private MetricsCollector metricsCollector;
     private ScalingPolicy scalingPolicy;
     private final List<Container> runningContainers = Collections.synchronizedList(new ArrayList<>());
+    // Authoritative per-container state; publishes the READY-only routing table for the proxy.
+    private final ContainerLifecycle lifecycle = new ContainerLifecycle();
     private final AtomicInteger targetNumContainers = new AtomicInteger(1);
     private final AtomicLong allocationRequestIdCounter = new AtomicLong(0);
 
@@ -80,6 +82,9 @@ public class ApplicationMaster {
     private DiscoveryServer discoveryServer;
     private RangerAuthorizer rangerAuthorizer;
     private QuotaEnforcer quotaEnforcer;
+    // Null when --group-cache-ttl-ms is 0; callers then resolve groups on every request.
+    private GroupCache groupCache;
+    private ExecutorService groupRefreshExecutor;
     private PlacementConstraint tritonConstraint;
     private CuratorFramework zkClient;
     private final RetryPolicy zkRetryPolicy = RetryPolicy.defaultPolicy();
@@ -87,8 +92,18 @@ public class ApplicationMaster {
     private ScheduledExecutorService drainExecutor;
     private OpenAIProxyServer openaiProxy;
     private NodeCache quotasNodeCache;
+    // Non-null with --model-control-mode=explicit.
+    private PlacementController placementController;
+    // Streaming latency bucket totals at the previous scaling tick; the delta is the recent window.
+    private long[] lastTtftTotals = new long[MetricsCollector.TTFT_BUCKETS_SECONDS.length + 1];
+    private long[] lastInterTokenTotals = new long[MetricsCollector.INTER_TOKEN_BUCKETS_SECONDS.length + 1];
+    // Parsed lora.json and when it was read; see getAvailableLoraAdapters().
+    private volatile Map<String, List<String>> loraCatalog;
+    private volatile long loraCatalogAtMs;
+
     // Timeout used when blocking on ZK connect at startup.
     private static final int ZK_CONNECT_TIMEOUT_SECONDS = 30;
+    static final long LORA_CATALOG_TTL_MS = 30_000L;
 
     public ApplicationMaster() {
         this.conf = new YarnConfiguration();
@@ -112,6 +127,12 @@ public class ApplicationMaster {
     public void run() throws Exception {
         log.info("Starting ApplicationMaster...");
 
+        if (config.groupCacheTtlMs > 0) {
+            groupRefreshExecutor = Executors.newFixedThreadPool(2, daemonFactory("tarn-groups"));
+            groupCache = new GroupCache(config.groupCacheTtlMs, config.groupCacheNegativeTtlMs,
+                    groupRefreshExecutor, metricsCollector);
+        }
+
         discoveryServer = new DiscoveryServer(config, this, conf);
         discoveryServer.start();
 
@@ -163,8 +184,7 @@ public class ApplicationMaster {
         if (previousContainers != null && !previousContainers.isEmpty()) {
             log.info("Recovered {} containers from previous attempt", previousContainers.size());
             for (Container c : previousContainers) {
-                runningContainers.add(c);
-                registerInZooKeeper(c);
+                recoverContainer(c);
             }
         }
 
@@ -179,6 +199,22 @@ public class ApplicationMaster {
         long intervalMs = config.monitorIntervalMs > 0 ? config.monitorIntervalMs : 15000L;
         monitorExecutor = Executors.newSingleThreadScheduledExecutor(daemonFactory("tarn-monitor"));
         drainExecutor = Executors.newScheduledThreadPool(2, daemonFactory("tarn-drain"));
+        // Recovered containers are routed, and registered, once they pass the same warmup
+        // probe as new ones.
+        if (previousContainers != null) {
+            for (Container c : previousContainers) {
+                scheduleWarmupAndRegister(c.getId());
+            }
+        }
+        // Scrapes run on their own async engine; the monitor tick and the HTTP handlers only
+        // read its snapshot.
+        metricsCollector.startScraper(this::scrapeTargets, config.tritonPort, config.scrapeIntervalMs,
+                config.scrapeConcurrency, java.time.Duration.ofMillis(config.scrapeTimeoutMs));
+        if ("explicit".equals(config.modelControlMode)) {
+            placementController = new PlacementController(metricsCollector.getModelPlacement(), metricsCollector,
+                    PlacementController.tritonActuator(java.net.http.HttpClient.newHttpClient(), config.tritonPort),
+                    config);
+        }
         monitorExecutor.scheduleAtFixedRate(this::safeMonitorTick,
                 intervalMs, intervalMs, TimeUnit.MILLISECONDS);
 
@@ -209,6 +245,14 @@ public class ApplicationMaster {
         } catch (Throwable t) {
             log.error("Monitor tick failed (will retry next interval)", t);
         }
+        if (placementController != null) {
+            try {
+                placementController.tick(getRoutingTable(), metricsCollector.getSnapshot(),
+                        getAvailableModels(), System.currentTimeMillis());
+            } catch (Throwable t) {
+                log.error("Placement tick failed (will retry next interval)", t);
+            }
+        }
     }
 
     /**
@@ -321,12 +365,18 @@ public class ApplicationMaster {
     }
 
     private void shutdown() throws Exception {
+        if (metricsCollector != null) {
+            metricsCollector.stopScraper();
+        }
         if (monitorExecutor != null) {
             monitorExecutor.shutdownNow();
         }
         if (drainExecutor != null) {
             drainExecutor.shutdownNow();
         }
+        if (groupRefreshExecutor != null) {
+            groupRefreshExecutor.shutdownNow();
+        }
         if (amRMClient != null) {
             amRMClient.unregisterApplicationMaster(FinalApplicationStatus.SUCCEEDED, "Shutdown", "");
             amRMClient.stop();
@@ -425,53 +475,76 @@ public class ApplicationMaster {
     }
 
     /**
-     * Parallel scrape of GPU utilization and pending queue depth across all running
-     * containers. Aggregates into a {@link LoadSignal} for {@link ScalingPolicy}. A per-host
-     * failure never stalls the whole decision — stale data is better than no decision.
+     * Aggregates the latest {@link ScrapeEngine} snapshot into a {@link LoadSignal} for
+     * {@link ScalingPolicy}. Never does network I/O: samples older than a few scrape intervals
+     * (a host that keeps timing out) are left out rather than stalling the decision.
      */
     private LoadSignal buildLoadSignal(int numContainers) {
-        List<Container> snapshot;
-        synchronized (runningContainers) {
-            snapshot = new ArrayList<>(runningContainers);
-        }
-        if (snapshot.isEmpty()) {
-            return new LoadSignal(0.0, 0, 0.0, 0, config.queueCapacityPerContainer);
+        double gpuSum = 0.0;
+        int depthSum = 0;
+        int ok = 0;
+        for (ScrapeEngine.Sample sample : currentSamples()) {
+            gpuSum += sample.gpuUtil;
+            depthSum += sample.queueDepth;
+            ok++;
         }
+        double avgGpu = ok > 0 ? gpuSum / ok : 0.0;
 
-        List<CompletableFuture<double[]>> futures = new ArrayList<>(snapshot.size());
-        for (Container c : snapshot) {
-            String host = c.getNodeId().getHost();
-            String cid = c.getId().toString();
-            futures.add(CompletableFuture.supplyAsync(() -> {
-                String raw = metricsCollector.fetchRawMetrics(host);
-                double gpu = metricsCollector.parseLoadFromMetrics(raw);
-                int depth = metricsCollector.parseQueueDepthFromMetrics(raw);
-                metricsCollector.updateQueueDepth(cid, depth);
-                return new double[]{gpu, depth};
-            }, monitorExecutor));
+        // Streaming latency over the interval since the previous tick only.
+        long[] ttft = metricsCollector.getTtftTotals();
+        long[] interToken = metricsCollector.getInterTokenTotals();
+        double ttftP95Ms = 1000.0 * LatencyHistogram.quantile(MetricsCollector.TTFT_BUCKETS_SECONDS,
+                since(ttft, lastTtftTotals), 0.95);
+        double interTokenP95Ms = 1000.0 * LatencyHistogram.quantile(MetricsCollector.INTER_TOKEN_BUCKETS_SECONDS,
+                since(interToken, lastInterTokenTotals), 0.95);
+        lastTtftTotals = ttft;
+        lastInterTokenTotals = interToken;
+
+        // Requests the proxy holds back at the adaptive limits never reach Triton's queue.
+        RoutingTable table = getRoutingTable();
+        List<String> serving = new ArrayList<>();
+        if (table != null) {
+            for (RoutingTable.Backend b : table.backends()) serving.add(b.containerId);
+        }
+        double saturation = metricsCollector.getConcurrencySaturation(serving);
+        return new LoadSignal(avgGpu, depthSum, 0.0, ttftP95Ms, interTokenP95Ms, saturation,
+                numContainers, config.queueCapacityPerContainer);
+    }
+
+    private static long[] since(long[] now, long[] before) {
+        long[] d = new long[now.length];
+        for (int i = 0; i < d.length; i++) {
+            d[i] = Math.max(0L, now[i] - before[i]);
         }
-        try {
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
-                    .get(5, TimeUnit.SECONDS);
-        } catch (Exception e) {
-            log.warn("Load signal fetch partial/timeout: {}", e.getMessage());
+        return d;
+    }
+
+    /** Snapshot samples for containers that are still running and were scraped recently enough. */
+    private List<ScrapeEngine.Sample> currentSamples() {
+        ScrapeEngine.Snapshot snap = metricsCollector.getSnapshot();
+        long maxAgeMs = 3 * Math.max(config.scrapeIntervalMs, config.scrapeTimeoutMs);
+        long now = System.currentTimeMillis();
+        List<ScrapeEngine.Sample> out = new ArrayList<>();
+        synchronized (runningContainers) {
+            for (Container c : runningContainers) {
+                ScrapeEngine.Sample sample = snap.get(c.getId().toString());
+                if (sample != null && sample.ageMs(now) <= maxAgeMs) {
+                    out.add(sample);
+                }
+            }
         }
-        double gpuSum = 0.0;
-        int depthSum = 0;
-        int ok = 0;
-        for (CompletableFuture<double[]> f : futures) {
-            if (!f.isDone() || f.isCompletedExceptionally()) continue;
-            try {
-                double[] pair = f.getNow(null);
-                if (pair == null) continue;
-                gpuSum += pair[0];
-                depthSum += (int) pair[1];
-                ok++;
-            } catch (Exception ignored) {
+        return out;
+    }
+
+    /** Scrape targets (container id -> host) for the next {@link ScrapeEngine} round. */
+    private Map<String, String> scrapeTargets() {
+        synchronized (runningContainers) {
+            Map<String, String> targets = new LinkedHashMap<>(runningContainers.size() * 2);
+            for (Container c : runningContainers) {
+                targets.put(c.getId().toString(), c.getNodeId().getHost());
             }
+            return targets;
         }
-        double avgGpu = ok > 0 ? gpuSum / ok : 0.0;
-        return new LoadSignal(avgGpu, depthSum, 0.0, numContainers, config.queueCapacityPerContainer);
     }
 
     private void stopExtraContainer() {
@@ -487,13 +560,15 @@ public class ApplicationMaster {
     }
 
     private Container pickContainerToDrain() {
-        // Called under synchronized(runningContainers).
-        Container best = runningContainers.get(0);
-        int bestDepth = metricsCollector.getQueueDepth(best.getId().toString());
-        for (int i = 1; i < runningContainers.size(); i++) {
-            Container c = runningContainers.get(i);
-            int d = metricsCollector.getQueueDepth(c.getId().toString());
-            if (d < bestDepth) {
+        // Called under synchronized(runningContainers). Containers already draining are
+        // skipped, otherwise consecutive scale-down ticks would keep picking the same one.
+        Container best = null;
+        int bestDepth = Integer.MAX_VALUE;
+        for (Container c : runningContainers) {
+            String cid = c.getId().toString();
+            if (lifecycle.getState(cid) == ContainerState.DRAINING) continue;
+            int d = metricsCollector.getQueueDepth(cid);
+            if (best == null || d < bestDepth) {
                 best = c;
                 bestDepth = d;
             }
@@ -509,13 +584,15 @@ public class ApplicationMaster {
     private void gracefulStop(Container container) {
         if (drainExecutor == null || drainExecutor.isShutdown()) {
             // Fallback to immediate stop if we haven't started the executor yet.
+            lifecycle.transition(container.getId().toString(), ContainerState.DRAINING);
             nmClient.stopContainerAsync(container.getId(), container.getNodeId());
             return;
         }
         drainExecutor.submit(() -> {
             String cid = container.getId().toString();
             log.info("Draining container {} (timeout={}ms)", cid, config.drainTimeoutMs);
-            // 1. Deregister first so traffic stops arriving.
+            // 1. Leave the proxy routing table and ZK first so traffic stops arriving.
+            lifecycle.transition(cid, ContainerState.DRAINING);
             unregisterFromZooKeeper(container.getId());
 
             // 2. Poll queue depth until 0 or timeout.
@@ -545,42 +622,13 @@ public class ApplicationMaster {
     }
 
     private double getAverageLoad() {
-        // Snapshot hosts under the lock; never do network I/O while holding it.
-        List<String> hosts;
-        synchronized (runningContainers) {
-            if (runningContainers.isEmpty()) return 0.0;
-            hosts = new ArrayList<>(runningContainers.size());
-            for (Container c : runningContainers) {
-                hosts.add(c.getNodeId().getHost());
-            }
-        }
-
-        List<CompletableFuture<Double>> futures = new ArrayList<>(hosts.size());
-        for (String host : hosts) {
-            futures.add(CompletableFuture.supplyAsync(
-                    () -> metricsCollector.fetchContainerLoad(host), monitorExecutor));
-        }
-
-        try {
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
-                    .get(5, TimeUnit.SECONDS);
-        } catch (Exception e) {
-            log.warn("Load fetch timed out or failed: {}", e.getMessage());
-            // Fall through: we'll still aggregate whatever completed.
-        }
-
+        List<ScrapeEngine.Sample> samples = currentSamples();
+        if (samples.isEmpty()) return 0.0;
         double total = 0.0;
-        int count = 0;
-        for (CompletableFuture<Double> f : futures) {
-            if (!f.isDone() || f.isCompletedExceptionally()) continue;
-            try {
-                total += f.getNow(0.0);
-                count++;
-            } catch (Exception ignore) {
-                // Shouldn't happen since we checked isDone/exceptionally.
-            }
+        for (ScrapeEngine.Sample sample : samples) {
+            total += sample.gpuUtil;
         }
-        return count > 0 ? total / count : 0.0;
+        return total / samples.size();
     }
 
     /**
@@ -605,6 +653,19 @@ public class ApplicationMaster {
         drainExecutor.submit(() -> runWarmupThenRegister(container));
     }
 
+    /**
+     * Takes over a container that survived an AM restart. Its Triton process is already up on
+     * the NM, so it enters the lifecycle straight at WARMING; the warmup probe then moves it to
+     * READY, into the routing table and ZooKeeper, like a container this attempt launched.
+     */
+    private void recoverContainer(Container container) {
+        String cid = container.getId().toString();
+        lifecycle.allocated(cid, container.getNodeId().getHost());
+        lifecycle.transition(cid, ContainerState.LAUNCHING);
+        lifecycle.transition(cid, ContainerState.WARMING);
+        runningContainers.add(container);
+    }
+
     private Container findContainerById(ContainerId id) {
         synchronized (runningContainers) {
             for (Container c : runningContainers) {
@@ -629,7 +690,7 @@ public class ApplicationMaster {
                 metricsCollector.recordAlert("warmup_ok",
                         "Container " + cid + " ready after " + took + "ms",
                         "info");
-                registerInZooKeeper(container);
+                markReadyAndRegister(container);
                 return;
             }
             try {
@@ -644,7 +705,20 @@ public class ApplicationMaster {
                 "Container " + cid + " did not pass /v2/health/ready within "
                         + config.warmupTimeoutMs + "ms — registering to preserve capacity, expect cold-start latency",
                 "warning");
-        registerInZooKeeper(container);
+        markReadyAndRegister(container);
+    }
+
+    /**
+     * WARMING -> READY, then ZK registration. The proxy routing table and ZK discovery always
+     * agree; if the container started draining (or died) during warmup the transition is
+     * refused and it is not registered.
+     */
+    private void markReadyAndRegister(Container container) {
+        if (lifecycle.transition(container.getId().toString(), ContainerState.READY)) {
+            registerInZooKeeper(container);
+        } else {
+            log.info("Container {} left WARMING before warmup finished; not registering", container.getId());
+        }
     }
 
     private void registerInZooKeeper(Container container) {
@@ -756,6 +830,7 @@ public class ApplicationMaster {
         public void onContainersAllocated(List<Container> containers) {
             for (Container container : containers) {
                 log.info("Container allocated: {}. Launching Triton...", container.getId());
+                lifecycle.allocated(container.getId().toString(), container.getNodeId().getHost());
                 launchTriton(container);
                 runningContainers.add(container);
                 // Registration in ZooKeeper is DEFERRED to post-warmup (see scheduleWarmup
@@ -901,6 +976,7 @@ public class ApplicationMaster {
                     .tensorParallelism(config.tensorParallelism)
                     .pipelineParallelism(config.pipelineParallelism)
                     .secretsPath(config.secretsPath)
+                    .explicitModelControl("explicit".equals(config.modelControlMode))
                     .build();
 
             ctx.setCommands(Collections.singletonList(
@@ -909,6 +985,7 @@ public class ApplicationMaster {
                             " 2>" + ApplicationConstants.LOG_DIR_EXPANSION_VAR + "/stderr"
             ));
             metricsCollector.recordContainerStart(container.getId().toString());
+            lifecycle.transition(container.getId().toString(), ContainerState.LAUNCHING);
             nmClient.startContainerAsync(container, ctx);
         }
 
@@ -921,6 +998,7 @@ public class ApplicationMaster {
                     metricsCollector.recordContainerFailure(status.getContainerId().toString(), 
                             "Exit status: " + status.getExitStatus() + ", " + status.getDiagnostics());
                 }
+                lifecycle.transition(status.getContainerId().toString(), ContainerState.STOPPED);
                 runningContainers.removeIf(c -> c.getId().equals(status.getContainerId()));
                 unregisterFromZooKeeper(status.getContainerId());
             }
@@ -955,6 +1033,7 @@ public class ApplicationMaster {
         @Override
         public void onContainerStarted(ContainerId containerId, Map<String, ByteBuffer> allServiceKeys) {
             log.info("Container started: {}. Beginning warmup...", containerId);
+            lifecycle.transition(containerId.toString(), ContainerState.WARMING);
             metricsCollector.recordContainerReady(containerId.toString());
             scheduleWarmupAndRegister(containerId);
         }
@@ -966,6 +1045,7 @@ public class ApplicationMaster {
         @Override
         public void onContainerStopped(ContainerId containerId) {
             log.info("Container stopped: {}", containerId);
+            lifecycle.transition(containerId.toString(), ContainerState.STOPPED);
             runningContainers.removeIf(c -> c.getId().equals(containerId));
             unregisterFromZooKeeper(containerId);
         }
@@ -974,6 +1054,7 @@ public class ApplicationMaster {
         public void onStartContainerError(ContainerId containerId, Throwable t) {
             log.error("Start error for {}", containerId, t);
             metricsCollector.recordContainerFailure(containerId.toString(), "Start error: " + t.getMessage());
+            lifecycle.transition(containerId.toString(), ContainerState.STOPPED);
             unregisterFromZooKeeper(containerId);
         }
 
@@ -1006,6 +1087,20 @@ public class ApplicationMaster {
         return runningContainers;
     }
 
+    /** READY-only backends for request routing. Lock-free; never null. */
+    public RoutingTable getRoutingTable() {
+        return lifecycle.getRoutingTable();
+    }
+
+    /** The OpenAI proxy server, or null when --openai-proxy-enabled is off. */
+    public OpenAIProxyServer getOpenAIProxyServer() {
+        return openaiProxy;
+    }
+
+    public ContainerLifecycle getContainerLifecycle() {
+        return lifecycle;
+    }
+
     public List<String> getAvailableModels() {
         List<String> models = new ArrayList<>();
         try {
@@ -1030,11 +1125,22 @@ public class ApplicationMaster {
     /**
      * Reads {@code lora.json} from the root of the model repository, a {@code {base: [lora, ...]}}
      * mapping. Triton's {@code openai_frontend} consumes this file natively; TARN re-reads it to
-     * populate the dashboard and to apply Ranger policies to LoRA adapters as separate resources.
-     * Cached result is recomputed every call — the file is small and operators rotate adapters
-     * without restarting the AM.
+     * populate the dashboard, to apply Ranger policies to LoRA adapters as separate resources and
+     * to route adapter requests to containers that already hold them. The proxy asks on every
+     * {@code base#lora} request, so the parsed file is kept for {@link #LORA_CATALOG_TTL_MS};
+     * operators still rotate adapters without restarting the AM.
      */
     public Map<String, List<String>> getAvailableLoraAdapters() {
+        long now = System.currentTimeMillis();
+        Map<String, List<String>> cached = loraCatalog;
+        if (cached != null && now - loraCatalogAtMs < LORA_CATALOG_TTL_MS) return cached;
+        Map<String, List<String>> fresh = readLoraCatalog();
+        loraCatalog = fresh;
+        loraCatalogAtMs = now;
+        return fresh;
+    }
+
+    private Map<String, List<String>> readLoraCatalog() {
         Map<String, List<String>> empty = Collections.emptyMap();
         if (config.modelRepository == null || config.modelRepository.isEmpty()) return empty;
         try {
@@ -1072,6 +1178,10 @@ public class ApplicationMaster {
         return quotaEnforcer;
     }
 
+    public GroupCache getGroupCache() {
+        return groupCache;
+    }
+
     /**
      * Writes a new quota JSON to the shared ZK config znode so every AM replica picks it up
      * through its {@link NodeCache} listener. This is the multi-replica write path used by the
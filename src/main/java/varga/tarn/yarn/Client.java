@@ -159,16 +159,54 @@ public class Client {
         // Propagate every P1/P2 knob — without these, the AM would fall back to its own
         // defaults instead of honoring what the operator passed to the Client.
         env.put("RANGER_STRICT", String.valueOf(config.rangerStrict));
+        env.put("GROUP_CACHE_TTL_MS", String.valueOf(config.groupCacheTtlMs));
+        env.put("GROUP_CACHE_NEGATIVE_TTL_MS", String.valueOf(config.groupCacheNegativeTtlMs));
         env.put("ZK_REQUIRED", String.valueOf(config.zkRequired));
         if (config.zkJaasPath != null) env.put("ZK_JAAS", config.zkJaasPath);
         env.put("DRAIN_TIMEOUT_MS", String.valueOf(config.drainTimeoutMs));
         env.put("MONITOR_INTERVAL_MS", String.valueOf(config.monitorIntervalMs));
+        env.put("SCRAPE_INTERVAL_MS", String.valueOf(config.scrapeIntervalMs));
+        env.put("SCRAPE_CONCURRENCY", String.valueOf(config.scrapeConcurrency));
+        env.put("SCRAPE_TIMEOUT_MS", String.valueOf(config.scrapeTimeoutMs));
         env.put("TLS_ENABLED", String.valueOf(config.tlsEnabled));
         if (config.tlsKeystorePath != null) env.put("TLS_KEYSTORE_PATH", config.tlsKeystorePath);
         if (config.tlsKeystorePasswordAlias != null) env.put("TLS_KEYSTORE_PASSWORD_ALIAS", config.tlsKeystorePasswordAlias);
         if (config.tlsKeystoreType != null) env.put("TLS_KEYSTORE_TYPE", config.tlsKeystoreType);
         env.put("OPENAI_PROXY_ENABLED", String.valueOf(config.openaiProxyEnabled));
         env.put("OPENAI_PROXY_PORT", String.valueOf(config.openaiProxyPort));
+        env.put("PROXY_ENGINE", config.proxyEngine);
+        env.put("PROXY_EXECUTOR", config.proxyExecutor);
+        env.put("PROXY_MAX_CONCURRENCY", String.valueOf(config.proxyMaxConcurrency));
+        env.put("PROXY_MAX_BODY_BYTES", String.valueOf(config.proxyMaxBodyBytes));
+        env.put("PROXY_ROUTING", config.proxyRouting);
+        env.put("PROXY_AFFINITY_LOAD_FACTOR", String.valueOf(config.proxyAffinityLoadFactor));
+        env.put("PROXY_AFFINITY_PREFIX_CHARS", String.valueOf(config.proxyAffinityPrefixChars));
+        env.put("PROXY_LORA_MAX_REPLICAS", String.valueOf(config.proxyLoraMaxReplicas));
+        env.put("PROXY_LORA_RPS_PER_REPLICA", String.valueOf(config.proxyLoraRpsPerReplica));
+        env.put("PROXY_EMBEDDINGS_CACHE_BYTES", String.valueOf(config.proxyEmbeddingsCacheBytes));
+        env.put("PROXY_EMBEDDINGS_BATCH_MAX_INPUTS", String.valueOf(config.proxyEmbeddingsBatchMaxInputs));
+        env.put("PROXY_EMBEDDINGS_BATCH_MAX_WAIT_US", String.valueOf(config.proxyEmbeddingsBatchMaxWaitUs));
+        env.put("PROXY_RESPONSE_CACHE_MODELS", config.proxyResponseCacheModels);
+        env.put("PROXY_RESPONSE_CACHE_MAX_ENTRIES", String.valueOf(config.proxyResponseCacheMaxEntries));
+        env.put("PROXY_RESPONSE_CACHE_MAX_BYTES", String.valueOf(config.proxyResponseCacheMaxBytes));
+        env.put("PROXY_RESPONSE_CACHE_TTL_MS", String.valueOf(config.proxyResponseCacheTtlMs));
+        env.put("PROXY_COALESCE", String.valueOf(config.proxyCoalesce));
+        env.put("PROXY_CONCURRENCY_LIMIT", String.valueOf(config.proxyConcurrencyLimit));
+        env.put("PROXY_CONCURRENCY_MAX_LIMIT", String.valueOf(config.proxyConcurrencyMaxLimit));
+        env.put("PROXY_CONCURRENCY_QUEUE_MS", String.valueOf(config.proxyConcurrencyQueueMs));
+        env.put("PROXY_ADMISSION_QUEUE_MAX", String.valueOf(config.proxyAdmissionQueueMax));
+        env.put("PROXY_HEDGE_MODELS", config.proxyHedgeModels);
+        env.put("PROXY_HEDGE_BUDGET_PERCENT", String.valueOf(config.proxyHedgeBudgetPercent));
+        env.put("PROXY_OUTLIER_DETECTION", String.valueOf(config.proxyOutlierDetection));
+        env.put("PROXY_OUTLIER_CONSECUTIVE_ERRORS", String.valueOf(config.proxyOutlierConsecutiveErrors));
+        env.put("PROXY_OUTLIER_BASE_EJECTION_MS", String.valueOf(config.proxyOutlierBaseEjectionMs));
+        env.put("PROXY_OUTLIER_MAX_EJECTION_PERCENT", String.valueOf(config.proxyOutlierMaxEjectionPercent));
+        env.put("PROXY_CONNECT_RETRIES", String.valueOf(config.proxyConnectRetries));
+        env.put("MODEL_CONTROL_MODE", config.modelControlMode);
+        env.put("PLACEMENT_RPS_PER_REPLICA", String.valueOf(config.placementRpsPerReplica));
+        env.put("PLACEMENT_MEMORY_WATERMARK", String.valueOf(config.placementMemoryWatermark));
+        env.put("PLACEMENT_LATENCY_TARGET_MS", String.valueOf(config.placementLatencyTargetMs));
+        env.put("PLACEMENT_IDLE_MS", String.valueOf(config.placementIdleMs));
         if (config.otelEndpoint != null) env.put("OTEL_EXPORTER_OTLP_ENDPOINT", config.otelEndpoint);
         env.put("SCALE_MODE", config.scaleMode);
         env.put("QUEUE_CAPACITY_PER_CONTAINER", String.valueOf(config.queueCapacityPerContainer));
@@ -0,0 +1,133 @@
+package varga.tarn.yarn;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-container {@link ContainerState} machine owned by the {@link ApplicationMaster}.
+ *
+ * <p>The running-containers list gains a container at allocation — before Triton is even
+ * launched — and keeps it while it drains, so routing off that list sent live traffic to
+ * cold and draining backends. This class tracks the real state of each container and
+ * republishes a {@link RoutingTable} holding only {@link ContainerState#READY} ones whenever
+ * that set changes. Transitions are rare and serialized; reads of the table are lock-free.
+ */
+public class ContainerLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(ContainerLifecycle.class);
+
+    private static final class Entry {
+        final String host;
+        final ContainerState state;
+
+        Entry(String host, ContainerState state) {
+            this.host = host;
+            this.state = state;
+        }
+    }
+
+    // Guarded by this.
+    private final Map<String, Entry> entries = new HashMap<>();
+    private long version;
+    private volatile RoutingTable routingTable = RoutingTable.EMPTY;
+
+    /**
+     * Registers a freshly allocated container in {@link ContainerState#ALLOCATED}. Returns false
+     * if the id is already tracked.
+     */
+    public synchronized boolean allocated(String containerId, String host) {
+        if (entries.containsKey(containerId)) return false;
+        entries.put(containerId, new Entry(host, ContainerState.ALLOCATED));
+        return true;
+    }
+
+    /**
+     * Moves {@code containerId} to {@code next} if the transition is legal. Illegal or unknown
+     * transitions are logged and refused — e.g. a warmup finishing after scale-down already
+     * started draining the container must not put it back into rotation. Reaching
+     * {@link ContainerState#STOPPED} forgets the container.
+     *
+     * @return true if the state changed
+     */
+    public synchronized boolean transition(String containerId, ContainerState next) {
+        Entry e = entries.get(containerId);
+        if (e == null) {
+            log.debug("Ignoring {} for untracked container {}", next, containerId);
+            return false;
+        }
+        if (!e.state.canTransitionTo(next)) {
+            log.info("Refusing transition {} -> {} for container {}", e.state, next, containerId);
+            return false;
+        }
+        log.info("Container {} {} -> {}", containerId, e.state, next);
+        boolean routable = e.state == ContainerState.READY || next == ContainerState.READY;
+        if (next == ContainerState.STOPPED) {
+            entries.remove(containerId);
+        } else {
+            entries.put(containerId, new Entry(e.host, next));
+        }
+        if (routable) {
+            republish();
+        }
+        return true;
+    }
+
+    /** Current state, or null if the container is not (or no longer) tracked. */
+    public synchronized ContainerState getState(String containerId) {
+        Entry e = entries.get(containerId);
+        return e == null ? null : e.state;
+    }
+
+    public synchronized Map<ContainerState, Integer> countByState() {
+        Map<ContainerState, Integer> counts = new EnumMap<>(ContainerState.class);
+        for (ContainerState s : ContainerState.values()) {
+            if (s != ContainerState.STOPPED) counts.put(s, 0);
+        }
+        for (Entry e : entries.values()) {
+            counts.merge(e.state, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /** Latest published table. Lock-free. */
+    public RoutingTable getRoutingTable() {
+        return routingTable;
+    }
+
+    private void republish() {
+        List<RoutingTable.Backend> ready = new ArrayList<>();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            if (e.getValue().state == ContainerState.READY) {
+                ready.add(new RoutingTable.Backend(e.getKey(), e.getValue().host));
+            }
+        }
+        ready.sort((a, b) -> a.containerId.compareTo(b.containerId));
+        routingTable = new RoutingTable(++version, ready);
+    }
+}
@@ -0,0 +1,63 @@
+package varga.tarn.yarn;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Lifecycle of a Triton container as seen by the AM. Only {@link #READY} containers are routable.
+ *
+ * <pre>
+ * ALLOCATED -> LAUNCHING -> WARMING -> READY -> DRAINING -> STOPPED
+ * </pre>
+ * Any live state may jump to {@link #DRAINING} (scale-down can pick a cold container) or to
+ * {@link #STOPPED} (the container can exit or fail at any point). {@link #STOPPED} is terminal.
+ */
+public enum ContainerState {
+    /** Granted by the RM; launch context not yet submitted to the NM. */
+    ALLOCATED,
+    /** startContainerAsync issued; waiting for the NM to report the process started. */
+    LAUNCHING,
+    /** Process up; polling {@code /v2/health/ready} until models are loaded. */
+    WARMING,
+    /** Serving: registered in ZooKeeper and present in the proxy routing table. */
+    READY,
+    /** Removed from routing and ZooKeeper; waiting for in-flight work before stop. */
+    DRAINING,
+    /** Exited or stopped. Terminal. */
+    STOPPED;
+
+    public boolean canTransitionTo(ContainerState next) {
+        if (next == null || this == STOPPED) return false;
+        switch (next) {
+            case LAUNCHING:
+                return this == ALLOCATED;
+            case WARMING:
+                return this == LAUNCHING;
+            case READY:
+                return this == WARMING;
+            case DRAINING:
+                return this != DRAINING;
+            case STOPPED:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -36,6 +36,7 @@ import org.apache.hadoop.yarn.api.records.Container;
 import org.apache.hadoop.yarn.api.records.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import varga.tarn.yarn.openai.OpenAIProxyServer;
 
 import java.io.IOException;
 import java.io.OutputStream;
@@ -61,7 +62,6 @@ public class DiscoveryServer {
     private final TarnConfig config;
     private final Configuration freeMarkerConfig;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final Map<String, CircuitBreaker> healthCheckCircuitBreakers = new java.util.concurrent.ConcurrentHashMap<>();
     // Pre-computed for constant-time compare. Null when auth is disabled.
     private final byte[] apiTokenBytes;
 
@@ -228,6 +228,10 @@ public class DiscoveryServer {
     }
 
     private java.util.Set<String> getUserGroups(String user) {
+        GroupCache cache = am.getGroupCache();
+        if (cache != null) {
+            return cache.groups(user);
+        }
         java.util.Set<String> groups = new java.util.HashSet<>();
         try {
             UserGroupInformation ugi = UserGroupInformation.createRemoteUser(user);
@@ -238,6 +242,24 @@ public class DiscoveryServer {
         return groups;
     }
 
+    private List<Container> copyRunningContainers() {
+        List<Container> containers = am.getRunningContainers();
+        synchronized (containers) {
+            return new ArrayList<>(containers);
+        }
+    }
+
+    private ScrapeEngine.Snapshot backendSnapshot() {
+        MetricsCollector mc = am.getMetricsCollector();
+        ScrapeEngine.Snapshot snap = mc != null ? mc.getSnapshot() : null;
+        return snap != null ? snap : ScrapeEngine.Snapshot.EMPTY;
+    }
+
+    private static String describeAge(ScrapeEngine.Sample sample, long now) {
+        if (sample == null || sample.fetchedAtMs == 0) return "not scraped yet";
+        return "scraped " + (sample.ageMs(now) / 1000) + "s ago";
+    }
+
     private class InstancesHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
@@ -276,21 +298,27 @@ public class DiscoveryServer {
             model.put("zkEnabled", config.zkEnsemble != null && !config.zkEnsemble.isEmpty());
             model.put("zkPath", config.zkPath);
 
-            // Containers
+            // Containers — rendered from the background scrape snapshot, no backend I/O here.
             List<Map<String, Object>> containerModels = new ArrayList<>();
-            List<Container> containers = am.getRunningContainers();
-            synchronized (containers) {
-                for (Container c : containers) {
-                    Map<String, Object> cm = new HashMap<>();
-                    cm.put("id", c.getId().toString());
-                    cm.put("host", c.getNodeId().getHost());
-                    cm.put("load", am.getMetricsCollector().fetchContainerLoad(c.getNodeId().getHost()));
-                    cm.put("ready", am.getMetricsCollector().isContainerReady(c.getNodeId().getHost(), config.tritonPort));
-                    cm.put("memory", c.getResource().getMemorySize());
-                    cm.put("vcores", c.getResource().getVirtualCores());
-                    cm.put("gpus", am.getMetricsCollector().fetchGpuMetricsStructured(c.getNodeId().getHost()));
-                    containerModels.add(cm);
-                }
+            List<Container> containers = copyRunningContainers();
+            ScrapeEngine.Snapshot snap = backendSnapshot();
+            long now = System.currentTimeMillis();
+            Map<String, Long> ejectedUntil = am.getMetricsCollector().getOutlierEjectedUntil();
+            for (Container c : containers) {
+                ScrapeEngine.Sample sample = snap.get(c.getId().toString());
+                Map<String, Object> cm = new HashMap<>();
+                cm.put("id", c.getId().toString());
+                cm.put("host", c.getNodeId().getHost());
+                cm.put("load", sample != null ? sample.gpuUtil : 0.0);
+                cm.put("ready", sample != null && sample.ready);
+                cm.put("memory", c.getResource().getMemorySize());
+                cm.put("vcores", c.getResource().getVirtualCores());
+                cm.put("gpus", sample != null ? sample.gpus : Collections.emptyMap());
+                cm.put("scrapeAge", describeAge(sample, now));
+                long ejectedMs = ejectedUntil.getOrDefault(c.getId().toString(), 0L) - now;
+                cm.put("ejected", ejectedMs > 0);
+                cm.put("ejectedFor", ejectedMs > 0 ? (ejectedMs + 999) / 1000 + "s" : "");
+                containerModels.add(cm);
             }
             model.put("containers", containerModels);
 
@@ -360,11 +388,18 @@ public class DiscoveryServer {
                 model.put("topTokenConsumers", rows);
             }
 
-            // Samples for models
-            if (!containers.isEmpty()) {
-                String firstHost = containers.get(0).getNodeId().getHost();
-                model.put("sampleHost", firstHost);
-                String rawModelsJson = am.getMetricsCollector().fetchLoadedModels(firstHost, config.tritonPort);
+            // Samples for models: first container whose repository index has been scraped.
+            ScrapeEngine.Sample modelSample = null;
+            for (Container c : containers) {
+                ScrapeEngine.Sample sample = snap.get(c.getId().toString());
+                if (sample != null && sample.loadedModelsJson != null) {
+                    modelSample = sample;
+                    break;
+                }
+            }
+            if (modelSample != null) {
+                model.put("sampleHost", modelSample.host);
+                String rawModelsJson = modelSample.loadedModelsJson;
 
                 // Filter loaded models based on metadata permission
                 try {
@@ -426,43 +461,341 @@ public class DiscoveryServer {
             sb.append("# TYPE tarn_running_containers gauge\n");
             sb.append("tarn_running_containers ").append(containers.size()).append("\n");
 
+            ContainerLifecycle lifecycle = am.getContainerLifecycle();
+            if (lifecycle != null) {
+                sb.append("# HELP tarn_containers Containers by lifecycle state (only READY receive traffic)\n");
+                sb.append("# TYPE tarn_containers gauge\n");
+                for (Map.Entry<ContainerState, Integer> e : lifecycle.countByState().entrySet()) {
+                    sb.append("tarn_containers{state=\"").append(e.getKey().name()).append("\"} ").append(e.getValue()).append("\n");
+                }
+            }
+
+            OpenAIProxyServer proxy = am.getOpenAIProxyServer();
+            if (proxy != null) {
+                sb.append("# HELP tarn_proxy_exchanges_active OpenAI proxy exchanges currently being handled\n");
+                sb.append("# TYPE tarn_proxy_exchanges_active gauge\n");
+                sb.append("tarn_proxy_exchanges_active ").append(proxy.getActiveExchanges()).append("\n");
+                sb.append("# HELP tarn_proxy_exchanges_queued OpenAI proxy exchanges waiting for a slot under the concurrency ceiling\n");
+                sb.append("# TYPE tarn_proxy_exchanges_queued gauge\n");
+                sb.append("tarn_proxy_exchanges_queued ").append(proxy.getQueuedExchanges()).append("\n");
+                if (proxy.getMaxConcurrency() > 0) {
+                    sb.append("# HELP tarn_proxy_exchanges_max OpenAI proxy concurrency ceiling\n");
+                    sb.append("# TYPE tarn_proxy_exchanges_max gauge\n");
+                    sb.append("tarn_proxy_exchanges_max{executor=\"").append(proxy.getExecutorKind())
+                            .append("\"} ").append(proxy.getMaxConcurrency()).append("\n");
+                }
+            }
+
+            // Prefix-affinity routing: hit rate = hit / sum over outcomes. Only with --proxy-routing=prefix_affinity.
+            Map<String, Long> affinity = mc.getAffinityRoutes();
+            if (!affinity.isEmpty()) {
+                sb.append("# HELP tarn_proxy_affinity_routes_total Proxy requests by prefix-affinity routing outcome\n");
+                sb.append("# TYPE tarn_proxy_affinity_routes_total counter\n");
+                for (Map.Entry<String, Long> e : affinity.entrySet()) {
+                    sb.append("tarn_proxy_affinity_routes_total{outcome=\"").append(e.getKey()).append("\"} ")
+                            .append(e.getValue()).append("\n");
+                }
+            }
+
+            // Model placement: containers reporting each model READY in their repository index.
+            Map<String, Integer> placed = mc.getModelPlacement().replicaCounts();
+            if (!placed.isEmpty()) {
+                sb.append("# HELP tarn_model_replicas Containers reporting the model READY\n");
+                sb.append("# TYPE tarn_model_replicas gauge\n");
+                for (Map.Entry<String, Integer> e : new TreeMap<>(placed).entrySet()) {
+                    sb.append("tarn_model_replicas{model=\"").append(e.getKey()).append("\"} ")
+                            .append(e.getValue()).append("\n");
+                }
+            }
+
+            // Placement controller (--model-control-mode=explicit): loads / unloads and why.
+            Map<String, Long> placements = mc.getPlacementActions();
+            if (!placements.isEmpty()) {
+                sb.append("# HELP tarn_placement_actions_total Model loads and unloads issued by the placement controller\n");
+                sb.append("# TYPE tarn_placement_actions_total counter\n");
+                for (Map.Entry<String, Long> e : new TreeMap<>(placements).entrySet()) {
+                    String[] k = e.getKey().split("\\|", 3);
+                    sb.append("tarn_placement_actions_total{action=\"").append(k[0])
+                            .append("\",model=\"").append(k[1])
+                            .append("\",reason=\"").append(k[2]).append("\"} ")
+                            .append(e.getValue()).append("\n");
+                }
+            }
+            Map<String, Long> placementFailures = mc.getPlacementFailures();
+            if (!placementFailures.isEmpty()) {
+                sb.append("# HELP tarn_placement_failures_total Placement load / unload calls Triton rejected or that failed\n");
+                sb.append("# TYPE tarn_placement_failures_total counter\n");
+                for (Map.Entry<String, Long> e : placementFailures.entrySet()) {
+                    sb.append("tarn_placement_failures_total{action=\"").append(e.getKey()).append("\"} ")
+                            .append(e.getValue()).append("\n");
+                }
+            }
+
+            // Embeddings cache: per-input hit / miss, off-heap bytes and evictions.
+            Map<String, Long> embLookups = mc.getEmbeddingsCacheLookups();
+            if (!embLookups.isEmpty()) {
+                sb.append("# HELP tarn_embeddings_cache_requests_total Embedding inputs looked up in the proxy cache, by result\n");
+                sb.append("# TYPE tarn_embeddings_cache_requests_total counter\n");
+                for (Map.Entry<String, Long> e : embLookups.entrySet()) {
+                    sb.append("tarn_embeddings_cache_requests_total{result=\"").append(e.getKey()).append("\"} ")
+                            .append(e.getValue()).append("\n");
+                }
+                sb.append("# HELP tarn_embeddings_cache_bytes Off-heap bytes held by the embeddings cache (used by vectors, reserved in pages)\n");
+                sb.append("# TYPE tarn_embeddings_cache_bytes gauge\n");
+                for (Map.Entry<String, Long> e : mc.getEmbeddingsCacheBytes().entrySet()) {
+                    sb.append("tarn_embeddings_cache_bytes{kind=\"").append(e.getKey()).append("\"} ")
+                            .append(e.getValue()).append("\n");
+                }
+                sb.append("# HELP tarn_embeddings_cache_evictions_total Vectors evicted from the embeddings cache to make room\n");
+                sb.append("# TYPE tarn_embeddings_cache_evictions_total counter\n");
+                sb.append("tarn_embeddings_cache_evictions_total ").append(mc.getEmbeddingsCacheEvictions()).append("\n");
+            }
+
+            // Embeddings micro-batching: batches sent and requests merged into them.
+            Map<String, Long> embBatches = mc.getEmbeddingsBatches();
+            if (!embBatches.isEmpty()) {
+                Map<String, Long> embBatched = mc.getEmbeddingsBatchedRequests();
+                sb.append("# HELP tarn_embeddings_batches_total Merged /v1/embeddings calls sent upstream\n");
+                sb.append("# TYPE tarn_embeddings_batches_total counter\n");
+                for (Map.Entry<String, Long> e : new TreeMap<>(embBatches).entrySet()) {
+                    sb.append("tarn_embeddings_batches_total{model=\"").append(e.getKey()).append("\"} ")
+                            .append(e.getValue()).append("\n");
+                }
+                sb.append("# HELP tarn_embeddings_batched_requests_total Client /v1/embeddings requests merged into batches\n");
+                sb.append("# TYPE tarn_embeddings_batched_requests_total counter\n");
+                for (Map.Entry<String, Long> e : new TreeMap<>(embBatched).entrySet()) {
+                    sb.append("tarn_embeddings_batched_requests_total{model=\"").append(e.getKey()).append("\"} ")
+                            .append(e.getValue()).append("\n");
+                }
+            }
+
+            // Request coalescing: followers served by another request's upstream call.
+            Map<String, Long> coalesced = mc.getCoalescedRequests();
+            if (!coalesced.isEmpty()) {
+                sb.append("# HELP tarn_proxy_coalesced_requests_total Requests that shared an identical in-flight request's upstream call\n");
+                sb.append("# TYPE tarn_proxy_coalesced_requests_total counter\n");
+                for (Map.Entry<String, Long> e : new TreeMap<>(coalesced).entrySet()) {
+                    sb.append("tarn_proxy_coalesced_requests_total{model=\"").append(e.getKey()).append("\"} ")
+                            .append(e.getValue()).append("\n");
+                }
+            }
+
+            // Adaptive concurrency: current limit and proxy in-flight per container, shed requests.
+            Map<String, Integer> limits = mc.getConcurrencyLimits();
+            if (!limits.isEmpty()) {
+                Map<String, Integer> inFlight = mc.getConcurrencyInFlight();
+                sb.append("# HELP tarn_proxy_concurrency_limit Adaptive limit of proxy requests in flight per container\n");
+                sb.append("# TYPE tarn_proxy_concurrency_limit gauge\n");
+                for (Map.Entry<String, Integer> e : new TreeMap<>(limits).entrySet()) {
+                    sb.append("tarn_proxy_concurrency_limit{container_id=\"").append(e.getKey()).append("\"} ")
+                            .append(e.getValue()).append("\n");
+                }
+                sb.append("# HELP tarn_proxy_concurrency_in_flight Proxy requests in flight per container\n");
+                sb.append("# TYPE tarn_proxy_concurrency_in_flight gauge\n");
+                for (Map.Entry<String, Integer> e : new TreeMap<>(inFlight).entrySet()) {
+                    sb.append("tarn_proxy_concurrency_in_flight{container_id=\"").append(e.getKey()).append("\"} ")
+                            .append(e.getValue()).append("\n");
+                }
+            }
+            Map<String, Long> shed = mc.getShedRequests();
+            if (!shed.isEmpty()) {
+                sb.append("# HELP tarn_proxy_shed_requests_total Requests refused with 503 because every container was at its concurrency limit\n");
+                sb.append("# TYPE tarn_proxy_shed_requests_total counter\n");
+                for (Map.Entry<String, Long> e : new TreeMap<>(shed).entrySet()) {
+                    sb.append("tarn_proxy_shed_requests_total{model=\"").append(e.getKey()).append("\"} ")
+                            .append(e.getValue()).append("\n");
+                }
+            }
+
+            // User -> groups cache: lookups by result, resolution latency and failures.
+            Map<String, Long> groupLookups = mc.getGroupLookups();
+            if (!groupLookups.isEmpty()) {
+                sb.append("# HELP tarn_group_cache_lookups_total User group lookups answered from the cache (hit) or resolved (miss)\n");
+                sb.append("# TYPE tarn_group_cache_lookups_total counter\n");
+                for (Map.Entry<String, Long> e : new TreeMap<>(groupLookups).entrySet()) {
+                    sb.append("tarn_group_cache_lookups_total{result=\"").append(e.getKey()).append("\"} ")
+                            .append(e.getValue()).append("\n");
+                }
+                sb.append("# HELP tarn_group_resolution_seconds Time spent resolving a user's groups through the Hadoop groups mapping\n");
+                sb.append("# TYPE tarn_group_resolution_seconds histogram\n");
+                appendBuckets(sb, "tarn_group_resolution_seconds", "", mc.getGroupResolutionHistogram());
+                sb.append("# HELP tarn_group_resolution_failures_total Group resolutions that failed\n");
+                sb.append("# TYPE tarn_group_resolution_failures_total counter\n");
+                sb.append("tarn_group_resolution_failures_total ").append(mc.getGroupResolutionFailures()).append("\n");
+            }
+
+            // Circuit breakers: one-hot current state and transitions per breaker.
+            Map<String, String> circuits = mc.getCircuitStates();
+            if (!circuits.isEmpty()) {
+                sb.append("# HELP tarn_circuit_breaker_state Current state of each sliding-window circuit breaker (1 for the active state)\n");
+                sb.append("# TYPE tarn_circuit_breaker_state gauge\n");
+                for (Map.Entry<String, String> e : new TreeMap<>(circuits).entrySet()) {
+                    for (String state : new String[]{"closed", "open", "half_open"}) {
+                        sb.append("tarn_circuit_breaker_state{name=\"").append(e.getKey()).append("\",state=\"")
+                                .append(state).append("\"} ").append(state.equals(e.getValue()) ? 1 : 0).append("\n");
+                    }
+                }
+                sb.append("# HELP tarn_circuit_breaker_transitions_total State transitions of each sliding-window circuit breaker\n");
+                sb.append("# TYPE tarn_circuit_breaker_transitions_total counter\n");
+                for (Map.Entry<String, Long> e : new TreeMap<>(mc.getCircuitTransitions()).entrySet()) {
+                    String[] nft = e.getKey().split("\\|", 3);
+                    sb.append("tarn_circuit_breaker_transitions_total{name=\"").append(nft[0])
+                            .append("\",from=\"").append(nft.length > 1 ? nft[1] : "unknown")
+                            .append("\",to=\"").append(nft.length > 2 ? nft[2] : "unknown").append("\"} ")
+                            .append(e.getValue()).append("\n");
+                }
+            }
+
+            // Outlier detection: containers out of rotation, ejections per reason, retried connects.
+            Map<String, Long> ejectedUntil = mc.getOutlierEjectedUntil();
+            if (!ejectedUntil.isEmpty()) {
+                long nowMs = System.currentTimeMillis();
+                sb.append("# HELP tarn_proxy_outlier_ejected Whether the proxy currently keeps the container out of routing (1) or not (0)\n");
+                sb.append("# TYPE tarn_proxy_outlier_ejected gauge\n");
+                for (Map.Entry<String, Long> e : new TreeMap<>(ejectedUntil).entrySet()) {
+                    sb.append("tarn_proxy_outlier_ejected{container_id=\"").append(e.getKey()).append("\"} ")
+                            .append(e.getValue() > nowMs ? 1 : 0).append("\n");
+                }
+                sb.append("# HELP tarn_proxy_outlier_ejections_total Containers ejected from routing by passive health checks\n");
+                sb.append("# TYPE tarn_proxy_outlier_ejections_total counter\n");
+                for (Map.Entry<String, Long> e : new TreeMap<>(mc.getOutlierEjections()).entrySet()) {
+                    String[] cr = e.getKey().split("\\|", 2);
+                    sb.append("tarn_proxy_outlier_ejections_total{container_id=\"").append(cr[0])
+                            .append("\",reason=\"").append(cr.length > 1 ? cr[1] : "unknown").append("\"} ")
+                            .append(e.getValue()).append("\n");
+                }
+            }
+            Map<String, Long> retries = mc.getConnectRetries();
+            if (!retries.isEmpty()) {
+                sb.append("# HELP tarn_proxy_connect_retries_total Requests resent to another container after a connect failure\n");
+                sb.append("# TYPE tarn_proxy_connect_retries_total counter\n");
+                for (Map.Entry<String, Long> e : new TreeMap<>(retries).entrySet()) {
+                    sb.append("tarn_proxy_connect_retries_total{model=\"").append(e.getKey()).append("\"} ")
+                            .append(e.getValue()).append("\n");
+                }
+            }
+
+            // Hedged requests: second attempts sent and won, per model.
+            Map<String, Long> hedges = mc.getHedgesSent();
+            if (!hedges.isEmpty()) {
+                Map<String, Long> wins = mc.getHedgesWon();
+                sb.append("# HELP tarn_proxy_hedges_total Second attempts sent to another container after the model's p95 elapsed\n");
+                sb.append("# TYPE tarn_proxy_hedges_total counter\n");
+                for (Map.Entry<String, Long> e : new TreeMap<>(hedges).entrySet()) {
+                    sb.append("tarn_proxy_hedges_total{model=\"").append(e.getKey()).append("\"} ")
+                            .append(e.getValue()).append("\n");
+                }
+                sb.append("# HELP tarn_proxy_hedge_wins_total Hedged requests answered by the second attempt\n");
+                sb.append("# TYPE tarn_proxy_hedge_wins_total counter\n");
+                for (String model : new TreeMap<>(hedges).keySet()) {
+                    sb.append("tarn_proxy_hedge_wins_total{model=\"").append(model).append("\"} ")
+                            .append(wins.getOrDefault(model, 0L)).append("\n");
+                }
+            }
+
+            // Admission queue: wait per priority class and drops per class and reason.
+            Map<String, LatencyHistogram> admissionWait = mc.getAdmissionWaitHistograms();
+            if (!admissionWait.isEmpty()) {
+                sb.append("# HELP tarn_proxy_admission_wait_seconds Time requests spent in the fair admission queue\n");
+                sb.append("# TYPE tarn_proxy_admission_wait_seconds histogram\n");
+                for (Map.Entry<String, LatencyHistogram> e : new TreeMap<>(admissionWait).entrySet()) {
+                    appendBuckets(sb, "tarn_proxy_admission_wait_seconds", "priority=\"" + e.getKey() + "\"", e.getValue());
+                }
+            }
+            Map<String, Long> admissionDrops = mc.getAdmissionDrops();
+            if (!admissionDrops.isEmpty()) {
+                sb.append("# HELP tarn_proxy_admission_dropped_total Requests dropped from the admission queue: full, or past their deadline\n");
+                sb.append("# TYPE tarn_proxy_admission_dropped_total counter\n");
+                for (Map.Entry<String, Long> e : new TreeMap<>(admissionDrops).entrySet()) {
+                    String[] k = e.getKey().split("\\|", 2);
+                    sb.append("tarn_proxy_admission_dropped_total{priority=\"").append(k[0])
+                            .append("\",reason=\"").append(k[1]).append("\"} ").append(e.getValue()).append("\n");
+                }
+            }
+
+            // Completion response cache: lookups per model and result, current entries and bytes.
+            Map<String, Long> respLookups = mc.getResponseCacheLookups();
+            if (!respLookups.isEmpty()) {
+                sb.append("# HELP tarn_response_cache_requests_total Deterministic completion requests looked up in the response cache\n");
+                sb.append("# TYPE tarn_response_cache_requests_total counter\n");
+                for (Map.Entry<String, Long> e : new TreeMap<>(respLookups).entrySet()) {
+                    String[] k = e.getKey().split("\\|", 2);
+                    sb.append("tarn_response_cache_requests_total{model=\"").append(k[0])
+                            .append("\",result=\"").append(k[1]).append("\"} ")
+                            .append(e.getValue()).append("\n");
+                }
+                sb.append("# HELP tarn_response_cache_entries Responses held in the response cache\n");
+                sb.append("# TYPE tarn_response_cache_entries gauge\n");
+                sb.append("tarn_response_cache_entries ").append(mc.getResponseCacheEntries()).append("\n");
+                sb.append("# HELP tarn_response_cache_bytes Bytes held in the response cache\n");
+                sb.append("# TYPE tarn_response_cache_bytes gauge\n");
+                sb.append("tarn_response_cache_bytes ").append(mc.getResponseCacheBytes()).append("\n");
+            }
+
+            // LoRA routing: cold loads per container and warm replicas per adapter (base#lora).
+            Map<String, Long> coldLoads = mc.getLoraColdLoads();
+            if (!coldLoads.isEmpty()) {
+                sb.append("# HELP tarn_lora_cold_loads_total LoRA adapter requests routed to a container not known to hold the adapter\n");
+                sb.append("# TYPE tarn_lora_cold_loads_total counter\n");
+                for (Map.Entry<String, Long> e : coldLoads.entrySet()) {
+                    sb.append("tarn_lora_cold_loads_total{container_id=\"").append(e.getKey()).append("\"} ")
+                            .append(e.getValue()).append("\n");
+                }
+            }
+            Map<String, Integer> loraReplicas = mc.getLoraReplicas();
+            if (!loraReplicas.isEmpty()) {
+                sb.append("# HELP tarn_lora_replicas Containers the proxy currently routes each LoRA adapter to\n");
+                sb.append("# TYPE tarn_lora_replicas gauge\n");
+                for (Map.Entry<String, Integer> e : loraReplicas.entrySet()) {
+                    sb.append("tarn_lora_replicas{adapter=\"").append(e.getKey()).append("\"} ")
+                            .append(e.getValue()).append("\n");
+                }
+            }
+
             // Queue depth for predictive scaling
             sb.append("# HELP tarn_queue_depth_total Total queue depth across all containers\n");
             sb.append("# TYPE tarn_queue_depth_total gauge\n");
             sb.append("tarn_queue_depth_total ").append(mc.getTotalQueueDepth()).append("\n");
 
-            synchronized (containers) {
-                for (Container c : containers) {
-                    String host = c.getNodeId().getHost();
-                    String cid = c.getId().toString();
-                    double load = mc.fetchContainerLoad(host);
-
-                    sb.append("tarn_container_load{container_id=\"").append(cid).append("\",host=\"").append(host).append("\"} ").append(load).append("\n");
-
-                    // Container startup time
-                    Long startupTime = mc.getContainerStartupTime(cid);
-                    if (startupTime != null) {
-                        sb.append("# HELP tarn_container_startup_ms Container startup time in milliseconds\n");
-                        sb.append("# TYPE tarn_container_startup_ms gauge\n");
-                        sb.append("tarn_container_startup_ms{container_id=\"").append(cid).append("\"} ").append(startupTime).append("\n");
-                    }
+            ScrapeEngine.Snapshot snap = backendSnapshot();
+            long now = System.currentTimeMillis();
+            sb.append("# HELP tarn_container_scrape_age_seconds Age of the last successful backend scrape (-1 if never)\n");
+            sb.append("# TYPE tarn_container_scrape_age_seconds gauge\n");
+            for (Container c : copyRunningContainers()) {
+                String host = c.getNodeId().getHost();
+                String cid = c.getId().toString();
+                ScrapeEngine.Sample sample = snap.get(cid);
+                double load = sample != null ? sample.gpuUtil : 0.0;
+
+                sb.append("tarn_container_load{container_id=\"").append(cid).append("\",host=\"").append(host).append("\"} ").append(load).append("\n");
+
+                // Container startup time
+                Long startupTime = mc.getContainerStartupTime(cid);
+                if (startupTime != null) {
+                    sb.append("# HELP tarn_container_startup_ms Container startup time in milliseconds\n");
+                    sb.append("# TYPE tarn_container_startup_ms gauge\n");
+                    sb.append("tarn_container_startup_ms{container_id=\"").append(cid).append("\"} ").append(startupTime).append("\n");
+                }
 
-                    // Queue depth per container
-                    int queueDepth = mc.getQueueDepth(cid);
-                    sb.append("tarn_container_queue_depth{container_id=\"").append(cid).append("\",host=\"").append(host).append("\"} ").append(queueDepth).append("\n");
-
-                    Map<String, Map<String, String>> gpuMetrics = mc.fetchGpuMetricsStructured(host);
-                    for (Map.Entry<String, Map<String, String>> gpuEntry : gpuMetrics.entrySet()) {
-                        String gpuId = gpuEntry.getKey();
-                        for (Map.Entry<String, String> metricEntry : gpuEntry.getValue().entrySet()) {
-                            String metricName = metricEntry.getKey();
-                            String value = metricEntry.getValue();
-                            sb.append("tarn_gpu_").append(metricName)
-                                    .append("{container_id=\"").append(cid)
-                                    .append("\",host=\"").append(host)
-                                    .append("\",gpu=\"").append(gpuId)
-                                    .append("\"} ").append(value).append("\n");
-                        }
+                // Queue depth per container
+                int queueDepth = mc.getQueueDepth(cid);
+                sb.append("tarn_container_queue_depth{container_id=\"").append(cid).append("\",host=\"").append(host).append("\"} ").append(queueDepth).append("\n");
+
+                long ageMs = sample != null ? sample.ageMs(now) : Long.MAX_VALUE;
+                sb.append("tarn_container_scrape_age_seconds{container_id=\"").append(cid).append("\",host=\"").append(host).append("\"} ")
+                        .append(ageMs == Long.MAX_VALUE ? -1.0 : ageMs / 1000.0).append("\n");
+
+                Map<String, Map<String, String>> gpuMetrics = sample != null ? sample.gpus : Collections.emptyMap();
+                for (Map.Entry<String, Map<String, String>> gpuEntry : gpuMetrics.entrySet()) {
+                    String gpuId = gpuEntry.getKey();
+                    for (Map.Entry<String, String> metricEntry : gpuEntry.getValue().entrySet()) {
+                        String metricName = metricEntry.getKey();
+                        String value = metricEntry.getValue();
+                        sb.append("tarn_gpu_").append(metricName)
+                                .append("{container_id=\"").append(cid)
+                                .append("\",host=\"").append(host)
+                                .append("\",gpu=\"").append(gpuId)
+                                .append("\"} ").append(value).append("\n");
                     }
                 }
             }
@@ -488,6 +821,13 @@ public class DiscoveryServer {
                 sb.append("tarn_inference_latency_seconds_count{model=\"").append(model).append("\"} ").append(count).append("\n");
             }
 
+            // Streaming latency as the user perceives it: time to first token and the gap between
+            // frames. Labels: model, lora ("" for the base model).
+            appendHistogram(sb, "tarn_ttft_seconds",
+                    "Time to first token of streamed completions in seconds", mc.getTtftHistograms());
+            appendHistogram(sb, "tarn_inter_token_seconds",
+                    "Gap between streamed completion frames in seconds", mc.getInterTokenHistograms());
+
             // Per-instance percentile approximation (dashboard helper, deprecated for scraping).
             sb.append("\n# HELP tarn_inference_latency_p50_ms DEPRECATED: use histogram. Per-instance p50.\n");
             sb.append("# TYPE tarn_inference_latency_p50_ms gauge\n");
@@ -550,6 +890,35 @@ public class DiscoveryServer {
         }
     }
 
+    /** Emits one Prometheus histogram family from "model|lora"-keyed histograms. */
+    static void appendHistogram(StringBuilder sb, String name, String help, Map<String, LatencyHistogram> byModelLora) {
+        sb.append("\n# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" histogram\n");
+        for (Map.Entry<String, LatencyHistogram> e : byModelLora.entrySet()) {
+            String[] ml = e.getKey().split("\\|", 2);
+            appendBuckets(sb, name, "model=\"" + ml[0] + "\",lora=\"" + (ml.length > 1 ? ml[1] : "") + "\"",
+                    e.getValue());
+        }
+    }
+
+    /** Bucket, sum and count lines of one labelled histogram series. */
+    static void appendBuckets(StringBuilder sb, String name, String labels, LatencyHistogram h) {
+        double[] bounds = h.bounds();
+        long[] counts = h.snapshot();
+        String le = labels.isEmpty() ? "{le=\"" : "{" + labels + ",le=\"";
+        String series = labels.isEmpty() ? " " : "{" + labels + "} ";
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += counts[i];
+            sb.append(name).append("_bucket").append(le).append(bounds[i]).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        cumulative += counts[bounds.length];
+        sb.append(name).append("_bucket").append(le).append("+Inf\"} ").append(cumulative).append('\n');
+        sb.append(name).append("_sum").append(series).append(h.sum()).append('\n');
+        sb.append(name).append("_count").append(series).append(cumulative).append('\n');
+    }
+
     private class GlobalHealthHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
@@ -566,32 +935,15 @@ public class DiscoveryServer {
                 return;
             }
 
-            List<Container> containers = am.getRunningContainers();
+            // Readiness comes from the background scrape (which owns the per-host breakers), so a
+            // health check never dials a backend itself.
+            ScrapeEngine.Snapshot snap = backendSnapshot();
             boolean atLeastOneReady = false;
-            synchronized (containers) {
-                for (Container c : containers) {
-                    String host = c.getNodeId().getHost();
-                    CircuitBreaker cb = healthCheckCircuitBreakers.computeIfAbsent(
-                            host, k -> CircuitBreaker.forHealthCheck(k));
-
-                    if (!cb.allowRequest()) {
-                        log.debug("Circuit breaker OPEN for host {}, skipping health check", host);
-                        continue;
-                    }
-
-                    try {
-                        boolean ready = am.getMetricsCollector().isContainerReady(host, config.tritonPort);
-                        if (ready) {
-                            cb.onSuccess();
-                            atLeastOneReady = true;
-                            break;
-                        } else {
-                            cb.onFailure();
-                        }
-                    } catch (Exception e) {
-                        cb.onFailure();
-                        log.warn("Health check failed for host {}: {}", host, e.getMessage());
-                    }
+            for (Container c : copyRunningContainers()) {
+                ScrapeEngine.Sample sample = snap.get(c.getId().toString());
+                if (sample != null && sample.ready) {
+                    atLeastOneReady = true;
+                    break;
                 }
             }
 
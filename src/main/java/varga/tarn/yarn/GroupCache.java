@@ -0,0 +1,172 @@
+package varga.tarn.yarn;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.hadoop.security.UserGroupInformation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * User -> groups resolution for Ranger and quota checks, cached so the request path does not
+ * pay for the Hadoop groups mapping (a shell-out to {@code id}, or an LDAP round trip) on
+ * every call.
+ *
+ * <ul>
+ *   <li>Entries live for {@code ttlMs}. Once {@link #REFRESH_AHEAD} of that has passed, the
+ *       next lookup still answers from the cache and triggers one background reload, so users
+ *       who keep calling never wait for a resolution.</li>
+ *   <li>Users without groups, and lookups that failed, are cached for {@code negativeTtlMs}.
+ *       An unknown or misspelt user cannot hammer the directory. When a reload fails, a user
+ *       who had groups keeps them for that shorter period instead of losing their grants.</li>
+ *   <li>Concurrent misses for one user share a single resolution.</li>
+ * </ul>
+ *
+ * Hits, misses and resolution latency are published to {@link MetricsCollector}.
+ */
+public class GroupCache {
+    private static final Logger log = LoggerFactory.getLogger(GroupCache.class);
+
+    /** Share of the TTL after which a hit triggers a background reload. */
+    static final double REFRESH_AHEAD = 0.8;
+    /** Above this many entries, expired ones are purged on the next resolution. */
+    static final int MAX_ENTRIES = 10_000;
+
+    private final Function<String, Set<String>> resolver;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final Executor refreshExecutor;
+    private final MetricsCollector metrics;
+    private final LongSupplier nanoClock;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>();
+
+    public GroupCache(long ttlMs, long negativeTtlMs, Executor refreshExecutor, MetricsCollector metrics) {
+        this(GroupCache::resolve, ttlMs, negativeTtlMs, refreshExecutor, metrics, System::nanoTime);
+    }
+
+    GroupCache(Function<String, Set<String>> resolver, long ttlMs, long negativeTtlMs, Executor refreshExecutor,
+               MetricsCollector metrics, LongSupplier nanoClock) {
+        this.resolver = resolver;
+        this.ttlNanos = ttlMs * 1_000_000L;
+        this.negativeTtlNanos = negativeTtlMs * 1_000_000L;
+        this.refreshExecutor = refreshExecutor;
+        this.metrics = metrics;
+        this.nanoClock = nanoClock;
+    }
+
+    private static final class Entry {
+        final Set<String> groups;
+        final long refreshAt;
+        final long expiresAt;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(Set<String> groups, long refreshAt, long expiresAt) {
+            this.groups = groups;
+            this.refreshAt = refreshAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /** Groups of {@code user} through the Hadoop groups mapping; uncached. */
+    public static Set<String> resolve(String user) {
+        return new HashSet<>(Arrays.asList(UserGroupInformation.createRemoteUser(user).getGroupNames()));
+    }
+
+    /** Groups of {@code user}, possibly empty; the returned set is unmodifiable. */
+    public Set<String> groups(String user) {
+        long now = nanoClock.getAsLong();
+        Entry e = entries.get(user);
+        if (e != null && now - e.expiresAt < 0) {
+            metrics.recordGroupLookup(true);
+            if (now - e.refreshAt >= 0 && e.refreshing.compareAndSet(false, true)) {
+                refreshAhead(user, e);
+            }
+            return e.groups;
+        }
+        metrics.recordGroupLookup(false);
+        return loadShared(user).groups;
+    }
+
+    private void refreshAhead(String user, Entry e) {
+        try {
+            refreshExecutor.execute(() -> loadShared(user));
+        } catch (RejectedExecutionException ex) {
+            // Shutting down; the entry expires and the next caller reloads it.
+            e.refreshing.set(false);
+        }
+    }
+
+    /** Resolves {@code user}, or waits for the resolution already under way. */
+    private Entry loadShared(String user) {
+        CompletableFuture<Entry> mine = new CompletableFuture<>();
+        CompletableFuture<Entry> running = loading.putIfAbsent(user, mine);
+        if (running != null) return running.join();
+        try {
+            Entry e = load(user);
+            mine.complete(e);
+            return e;
+        } catch (Throwable t) {
+            mine.completeExceptionally(t);
+            throw t;
+        } finally {
+            loading.remove(user, mine);
+        }
+    }
+
+    private Entry load(String user) {
+        long start = nanoClock.getAsLong();
+        Set<String> groups;
+        boolean failed = false;
+        try {
+            groups = Set.copyOf(resolver.apply(user));
+        } catch (RuntimeException ex) {
+            log.warn("Group lookup for user {} failed: {}", user, ex.getMessage());
+            Entry previous = entries.get(user);
+            groups = previous != null ? previous.groups : Set.of();
+            failed = true;
+        }
+        long now = nanoClock.getAsLong();
+        metrics.recordGroupResolution((now - start) / 1e9, failed);
+        long ttl = failed || groups.isEmpty() ? negativeTtlNanos : ttlNanos;
+        Entry e = new Entry(groups, now + (long) (ttl * REFRESH_AHEAD), now + ttl);
+        entries.put(user, e);
+        if (entries.size() > MAX_ENTRIES) {
+            entries.values().removeIf(old -> now - old.expiresAt >= 0);
+        }
+        return e;
+    }
+
+    int size() {
+        return entries.size();
+    }
+}
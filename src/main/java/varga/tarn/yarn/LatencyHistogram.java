@@ -0,0 +1,106 @@
+package varga.tarn.yarn;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Lock-free fixed-bucket latency histogram in seconds, exported in Prometheus histogram form.
+ *
+ * <p>Observations land in per-bucket counters (not cumulative), so a snapshot taken at two
+ * points in time can be subtracted to get the distribution of that interval alone — which
+ * is how {@link LoadSignal} gets a recent p95 out of counters that only ever grow.
+ */
+public final class LatencyHistogram {
+
+    private final double[] bounds;
+    /** One slot per bound plus the overflow (+Inf) slot. */
+    private final AtomicLongArray counts;
+    private final DoubleAdder sum = new DoubleAdder();
+
+    /** @param bounds ascending upper bounds in seconds, without +Inf */
+    public LatencyHistogram(double[] bounds) {
+        this.bounds = bounds;
+        this.counts = new AtomicLongArray(bounds.length + 1);
+    }
+
+    public void observe(double seconds) {
+        int lo = 0;
+        int hi = bounds.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (seconds <= bounds[mid]) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        counts.incrementAndGet(lo);
+        sum.add(seconds);
+    }
+
+    public double[] bounds() {
+        return bounds;
+    }
+
+    /** Per-bucket (non-cumulative) counts; the last slot is the +Inf overflow. */
+    public long[] snapshot() {
+        long[] out = new long[counts.length()];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = counts.get(i);
+        }
+        return out;
+    }
+
+    public double sum() {
+        return sum.sum();
+    }
+
+    /** Adds {@code counts} (a {@link #snapshot()}) into {@code into}, element-wise. */
+    public static void accumulate(long[] into, long[] counts) {
+        for (int i = 0; i < into.length; i++) {
+            into[i] += counts[i];
+        }
+    }
+
+    /**
+     * Estimates quantile {@code q} from per-bucket counts by linear interpolation inside the
+     * bucket that holds it, the way Prometheus' {@code histogram_quantile} does. Returns 0 for
+     * an empty histogram and the highest finite bound when the quantile falls in +Inf.
+     */
+    public static double quantile(double[] bounds, long[] counts, double q) {
+        long total = 0;
+        for (long c : counts) total += c;
+        if (total == 0) return 0.0;
+        double rank = q * total;
+        long seen = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            long c = counts[i];
+            if (seen + c >= rank && c > 0) {
+                double lower = i == 0 ? 0.0 : bounds[i - 1];
+                return lower + (bounds[i] - lower) * ((rank - seen) / c);
+            }
+            seen += c;
+        }
+        return bounds[bounds.length - 1];
+    }
+}
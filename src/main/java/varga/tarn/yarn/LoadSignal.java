@@ -54,6 +54,20 @@ public final class LoadSignal {
     public final int queueDepth;
     /** Per-instance p95 latency in ms (unused for scaling today but exposed for future policies). */
     public final double latencyP95Ms;
+    /**
+     * p95 time to first token of streamed completions since the previous signal, in ms; 0 when
+     * none completed. This is the user-perceived latency of an LLM endpoint and the first
+     * number to climb when prefill queues up.
+     */
+    public final double ttftP95Ms;
+    /** p95 gap between streamed frames since the previous signal, in ms; 0 when none. */
+    public final double interTokenP95Ms;
+    /**
+     * Proxy requests in flight over the sum of the adaptive per-container concurrency limits,
+     * in [0, 1]; 0 when the limiter is off. At 1 the proxy is queueing or shedding requests
+     * that Triton never sees, so its pending count under-reports the load.
+     */
+    public final double concurrencySaturation;
     /** Number of containers observed when the signal was taken. Zero when the cluster is empty. */
     public final int numContainers;
     /**
@@ -65,9 +79,24 @@ public final class LoadSignal {
 
     public LoadSignal(double gpuUtil, int queueDepth, double latencyP95Ms,
                       int numContainers, int queueCapacityPerContainer) {
+        this(gpuUtil, queueDepth, latencyP95Ms, 0.0, 0.0, numContainers, queueCapacityPerContainer);
+    }
+
+    public LoadSignal(double gpuUtil, int queueDepth, double latencyP95Ms, double ttftP95Ms,
+                      double interTokenP95Ms, int numContainers, int queueCapacityPerContainer) {
+        this(gpuUtil, queueDepth, latencyP95Ms, ttftP95Ms, interTokenP95Ms, 0.0, numContainers,
+                queueCapacityPerContainer);
+    }
+
+    public LoadSignal(double gpuUtil, int queueDepth, double latencyP95Ms, double ttftP95Ms,
+                      double interTokenP95Ms, double concurrencySaturation, int numContainers,
+                      int queueCapacityPerContainer) {
         this.gpuUtil = clamp(gpuUtil);
         this.queueDepth = Math.max(0, queueDepth);
         this.latencyP95Ms = Math.max(0.0, latencyP95Ms);
+        this.ttftP95Ms = Math.max(0.0, ttftP95Ms);
+        this.interTokenP95Ms = Math.max(0.0, interTokenP95Ms);
+        this.concurrencySaturation = clamp(concurrencySaturation);
         this.numContainers = Math.max(0, numContainers);
         this.queueCapacityPerContainer = Math.max(1, queueCapacityPerContainer);
     }
@@ -78,10 +107,10 @@ public final class LoadSignal {
             case GPU_UTIL:
                 return gpuUtil;
             case QUEUE_DEPTH:
-                return queueNormalized();
+                return Math.max(queueNormalized(), concurrencySaturation);
             case COMPOSITE:
             default:
-                return Math.max(gpuUtil, queueNormalized());
+                return Math.max(gpuUtil, Math.max(queueNormalized(), concurrencySaturation));
         }
     }
 
@@ -103,6 +132,9 @@ public final class LoadSignal {
         return "LoadSignal{gpuUtil=" + gpuUtil
                 + ", queueDepth=" + queueDepth
                 + ", latencyP95Ms=" + latencyP95Ms
+                + ", ttftP95Ms=" + ttftP95Ms
+                + ", interTokenP95Ms=" + interTokenP95Ms
+                + ", concurrencySaturation=" + concurrencySaturation
                 + ", containers=" + numContainers + "}";
     }
 }
@@ -34,6 +34,8 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -52,6 +54,29 @@ public class MetricsCollector {
             0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1.0, 2.5, 5.0, 10.0, 30.0, 60.0
     };
 
+    /**
+     * Time-to-first-token buckets in seconds: prefill of a short prompt on an idle GPU is tens
+     * of milliseconds, a long context behind a busy batch is several seconds.
+     */
+    public static final double[] TTFT_BUCKETS_SECONDS = {
+            0.025, 0.05, 0.1, 0.25, 0.5, 0.75, 1.0, 2.5, 5.0, 10.0, 30.0
+    };
+
+    /** Time spent in the proxy's admission queue, in seconds: bounded by the queue deadline. */
+    public static final double[] ADMISSION_WAIT_BUCKETS_SECONDS = {
+            0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1.0, 2.5, 5.0
+    };
+
+    /** Group mapping lookups: sub-millisecond from a local cache, up to seconds over LDAP. */
+    public static final double[] GROUP_RESOLUTION_BUCKETS_SECONDS = {
+            0.0005, 0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1.0, 5.0
+    };
+
+    /** Gap between consecutive streamed frames, in seconds: decode steps are milliseconds apart. */
+    public static final double[] INTER_TOKEN_BUCKETS_SECONDS = {
+            0.001, 0.0025, 0.005, 0.01, 0.02, 0.04, 0.06, 0.08, 0.1, 0.25, 0.5, 1.0
+    };
+
     private final HttpClient httpClient;
     private final int metricsPort;
     // Cached host resolution — refused hosts stay refused across fetches.
@@ -74,6 +99,12 @@ public class MetricsCollector {
     // Alerting state
     private final List<AlertEvent> alertEvents = Collections.synchronizedList(new ArrayList<>());
     private static final int MAX_LATENCY_SAMPLES = 1000;
+    private static final Pattern GPU_METRIC = Pattern.compile("(nv_gpu_[a-z_]+)\\{gpu=\"(\\d+)\"\\}\\s+([\\d.e+]+)");
+
+    // Background backend scraper; null until startScraper. Handlers read its snapshot only.
+    private volatile ScrapeEngine scraper;
+    // Which container serves which model; the scraper refreshes it from the repository index.
+    private final ModelPlacement modelPlacement = new ModelPlacement();
 
     public MetricsCollector(int metricsPort) {
         this.metricsPort = metricsPort;
@@ -87,6 +118,37 @@ public class MetricsCollector {
         this.httpClient = httpClient;
     }
 
+    /**
+     * Starts the periodic backend scrape (see {@link ScrapeEngine}) against {@code targets}
+     * (container id -> host). Idempotent.
+     */
+    public synchronized void startScraper(Supplier<Map<String, String>> targets, int tritonPort,
+                                          long intervalMs, int concurrency, Duration perHostTimeout) {
+        if (scraper != null) return;
+        ScrapeEngine engine = new ScrapeEngine(this, httpClient, metricsPort, tritonPort,
+                this::isHostAllowed, concurrency, perHostTimeout);
+        engine.start(targets, intervalMs);
+        scraper = engine;
+    }
+
+    public synchronized void stopScraper() {
+        if (scraper != null) {
+            scraper.stop();
+            scraper = null;
+        }
+    }
+
+    /** Latest backend snapshot; {@link ScrapeEngine.Snapshot#EMPTY} before the scraper starts. Never blocks. */
+    public ScrapeEngine.Snapshot getSnapshot() {
+        ScrapeEngine s = scraper;
+        return s != null ? s.getSnapshot() : ScrapeEngine.Snapshot.EMPTY;
+    }
+
+    /** Model -> container index, kept current by the scraper. */
+    public ModelPlacement getModelPlacement() {
+        return modelPlacement;
+    }
+
     // Container startup tracking
     public void recordContainerStart(String containerId) {
         containerStartTimes.put(containerId, System.currentTimeMillis());
@@ -149,6 +211,372 @@ public class MetricsCollector {
         return histogramCountByModel.getOrDefault(model, 0L);
     }
 
+    /**
+     * Quantile {@code q} of the model's inference latency in seconds, interpolated from the
+     * histogram buckets; 0 when the model has no samples.
+     */
+    public double getLatencyQuantile(String model, double q) {
+        long[] cumulative = getHistogramBucketsCumulative(model);
+        if (cumulative == null) return 0.0;
+        long[] counts = new long[cumulative.length + 1];
+        long previous = 0;
+        for (int i = 0; i < cumulative.length; i++) {
+            counts[i] = cumulative[i] - previous;
+            previous = cumulative[i];
+        }
+        counts[cumulative.length] = Math.max(0L, getHistogramCount(model) - previous);
+        return LatencyHistogram.quantile(LATENCY_BUCKETS_SECONDS, counts, q);
+    }
+
+    // Streaming latency — keyed by (model, lora); lora is "" for the base model.
+    private final Map<String, LatencyHistogram> ttftByModelLora = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> interTokenByModelLora = new ConcurrentHashMap<>();
+
+    /** Time from the proxy accepting a streamed completion to its first data frame. */
+    public void recordTimeToFirstToken(String model, String lora, double seconds) {
+        ttftByModelLora.computeIfAbsent(safe(model) + "|" + (lora == null ? "" : safe(lora)),
+                k -> new LatencyHistogram(TTFT_BUCKETS_SECONDS)).observe(seconds);
+    }
+
+    /** Gap between two consecutive data frames of a streamed completion. */
+    public void recordInterTokenLatency(String model, String lora, double seconds) {
+        interTokenByModelLora.computeIfAbsent(safe(model) + "|" + (lora == null ? "" : safe(lora)),
+                k -> new LatencyHistogram(INTER_TOKEN_BUCKETS_SECONDS)).observe(seconds);
+    }
+
+    /** "model|lora" -> histogram, for Prometheus export. */
+    public Map<String, LatencyHistogram> getTtftHistograms() {
+        return Collections.unmodifiableMap(ttftByModelLora);
+    }
+
+    public Map<String, LatencyHistogram> getInterTokenHistograms() {
+        return Collections.unmodifiableMap(interTokenByModelLora);
+    }
+
+    /** Per-bucket TTFT counts summed over every model and LoRA (see {@link LatencyHistogram#snapshot()}). */
+    public long[] getTtftTotals() {
+        return totals(ttftByModelLora, TTFT_BUCKETS_SECONDS);
+    }
+
+    public long[] getInterTokenTotals() {
+        return totals(interTokenByModelLora, INTER_TOKEN_BUCKETS_SECONDS);
+    }
+
+    private static long[] totals(Map<String, LatencyHistogram> histograms, double[] bounds) {
+        long[] out = new long[bounds.length + 1];
+        for (LatencyHistogram h : histograms.values()) {
+            LatencyHistogram.accumulate(out, h.snapshot());
+        }
+        return out;
+    }
+
+    // Prefix-affinity routing outcomes: hit | spill | fallback | no_key.
+    private final Map<String, Long> affinityRoutes = new ConcurrentHashMap<>();
+
+    public void recordAffinityRoute(String outcome) {
+        affinityRoutes.merge(outcome, 1L, Long::sum);
+    }
+
+    public Map<String, Long> getAffinityRoutes() {
+        return new LinkedHashMap<>(affinityRoutes);
+    }
+
+    // LoRA routing: adapter loads the proxy caused per container, and warm replicas per adapter.
+    private final Map<String, Long> loraColdLoads = new ConcurrentHashMap<>();
+    private final Map<String, Integer> loraReplicas = new ConcurrentHashMap<>();
+
+    public void recordLoraColdLoad(String containerId) {
+        loraColdLoads.merge(containerId, 1L, Long::sum);
+    }
+
+    public Map<String, Long> getLoraColdLoads() {
+        return new LinkedHashMap<>(loraColdLoads);
+    }
+
+    public void setLoraReplicas(String adapter, int replicas) {
+        loraReplicas.put(adapter, replicas);
+    }
+
+    public Map<String, Integer> getLoraReplicas() {
+        return new LinkedHashMap<>(loraReplicas);
+    }
+
+    // Placement controller decisions, keyed "action|model|reason", and failed calls by action.
+    private final Map<String, Long> placementActions = new ConcurrentHashMap<>();
+    private final Map<String, Long> placementFailures = new ConcurrentHashMap<>();
+
+    public void recordPlacementAction(String action, String model, String reason) {
+        placementActions.merge(action + "|" + safe(model) + "|" + reason, 1L, Long::sum);
+    }
+
+    public Map<String, Long> getPlacementActions() {
+        return new LinkedHashMap<>(placementActions);
+    }
+
+    public void recordPlacementFailure(String action) {
+        placementFailures.merge(action, 1L, Long::sum);
+    }
+
+    public Map<String, Long> getPlacementFailures() {
+        return new LinkedHashMap<>(placementFailures);
+    }
+
+    // Embeddings cache: per-input lookups by result ("hit" / "miss"), evictions, and bytes by kind.
+    private final Map<String, Long> embeddingsCacheLookups = new ConcurrentHashMap<>();
+    private final Map<String, Long> embeddingsCacheBytes = new ConcurrentHashMap<>();
+    private final Map<String, Long> embeddingsCacheEvictions = new ConcurrentHashMap<>();
+
+    public void recordEmbeddingsCacheLookups(int hits, int misses) {
+        if (hits > 0) embeddingsCacheLookups.merge("hit", (long) hits, Long::sum);
+        if (misses > 0) embeddingsCacheLookups.merge("miss", (long) misses, Long::sum);
+    }
+
+    public Map<String, Long> getEmbeddingsCacheLookups() {
+        return new LinkedHashMap<>(embeddingsCacheLookups);
+    }
+
+    public void recordEmbeddingsCacheEviction() {
+        embeddingsCacheEvictions.merge("total", 1L, Long::sum);
+    }
+
+    public long getEmbeddingsCacheEvictions() {
+        return embeddingsCacheEvictions.getOrDefault("total", 0L);
+    }
+
+    public void setEmbeddingsCacheBytes(long used, long reserved) {
+        embeddingsCacheBytes.put("used", used);
+        embeddingsCacheBytes.put("reserved", reserved);
+    }
+
+    public Map<String, Long> getEmbeddingsCacheBytes() {
+        return new LinkedHashMap<>(embeddingsCacheBytes);
+    }
+
+    // Embeddings micro-batching: upstream batches and the requests merged into them, per model.
+    private final Map<String, Long> embeddingsBatches = new ConcurrentHashMap<>();
+    private final Map<String, Long> embeddingsBatchedRequests = new ConcurrentHashMap<>();
+
+    public void recordEmbeddingsBatch(String model, int requests) {
+        embeddingsBatches.merge(safe(model), 1L, Long::sum);
+        embeddingsBatchedRequests.merge(safe(model), (long) requests, Long::sum);
+    }
+
+    public Map<String, Long> getEmbeddingsBatches() {
+        return new LinkedHashMap<>(embeddingsBatches);
+    }
+
+    public Map<String, Long> getEmbeddingsBatchedRequests() {
+        return new LinkedHashMap<>(embeddingsBatchedRequests);
+    }
+
+    // Requests that joined an identical in-flight request instead of calling Triton, per model.
+    private final Map<String, Long> coalescedRequests = new ConcurrentHashMap<>();
+
+    public void recordCoalescedRequest(String model) {
+        coalescedRequests.merge(safe(model), 1L, Long::sum);
+    }
+
+    public Map<String, Long> getCoalescedRequests() {
+        return new LinkedHashMap<>(coalescedRequests);
+    }
+
+    // Adaptive concurrency: current limit and proxy in-flight count per container, and
+    // requests shed because every container serving the model was at its limit, per model.
+    private final Map<String, Integer> concurrencyLimits = new ConcurrentHashMap<>();
+    private final Map<String, Integer> concurrencyInFlight = new ConcurrentHashMap<>();
+    private final Map<String, Long> shedRequests = new ConcurrentHashMap<>();
+
+    public void setConcurrency(String containerId, int limit, int inFlight) {
+        concurrencyLimits.put(containerId, limit);
+        concurrencyInFlight.put(containerId, inFlight);
+    }
+
+    /** Container {@code containerId} left routing; its concurrency gauges are no longer exported. */
+    public void removeConcurrency(String containerId) {
+        concurrencyLimits.remove(containerId);
+        concurrencyInFlight.remove(containerId);
+    }
+
+    public Map<String, Integer> getConcurrencyLimits() {
+        return new LinkedHashMap<>(concurrencyLimits);
+    }
+
+    public Map<String, Integer> getConcurrencyInFlight() {
+        return new LinkedHashMap<>(concurrencyInFlight);
+    }
+
+    /**
+     * Proxy in-flight requests over the sum of adaptive limits of {@code containerIds}, in
+     * [0, 1]. Containers without a limit yet are left out; 0 when none has one.
+     */
+    public double getConcurrencySaturation(Collection<String> containerIds) {
+        long inFlight = 0;
+        long limit = 0;
+        for (String cid : containerIds) {
+            Integer l = concurrencyLimits.get(cid);
+            if (l == null) continue;
+            limit += l;
+            inFlight += concurrencyInFlight.getOrDefault(cid, 0);
+        }
+        return limit == 0 ? 0.0 : Math.min(1.0, (double) inFlight / limit);
+    }
+
+    public void recordShedRequest(String model) {
+        shedRequests.merge(safe(model), 1L, Long::sum);
+    }
+
+    public Map<String, Long> getShedRequests() {
+        return new LinkedHashMap<>(shedRequests);
+    }
+
+    // User -> groups cache: lookups per result, and latency and failures of actual resolutions.
+    private final Map<String, Long> groupLookups = new ConcurrentHashMap<>();
+    private final LatencyHistogram groupResolution = new LatencyHistogram(GROUP_RESOLUTION_BUCKETS_SECONDS);
+    private final AtomicLong groupResolutionFailures = new AtomicLong();
+
+    public void recordGroupLookup(boolean hit) {
+        groupLookups.merge(hit ? "hit" : "miss", 1L, Long::sum);
+    }
+
+    public void recordGroupResolution(double seconds, boolean failed) {
+        groupResolution.observe(seconds);
+        if (failed) groupResolutionFailures.incrementAndGet();
+    }
+
+    public Map<String, Long> getGroupLookups() {
+        return new LinkedHashMap<>(groupLookups);
+    }
+
+    public LatencyHistogram getGroupResolutionHistogram() {
+        return groupResolution;
+    }
+
+    public long getGroupResolutionFailures() {
+        return groupResolutionFailures.get();
+    }
+
+    // Circuit breakers: current state per breaker, and transitions per "breaker|from|to".
+    private final Map<String, String> circuitStates = new ConcurrentHashMap<>();
+    private final Map<String, Long> circuitTransitions = new ConcurrentHashMap<>();
+
+    /** Breaker {@code name} moved to state {@code to}; {@code from} is null when it was just created. */
+    public void recordCircuitTransition(String name, String from, String to) {
+        circuitStates.put(safe(name), to);
+        if (from != null) {
+            circuitTransitions.merge(safe(name) + "|" + from + "|" + to, 1L, Long::sum);
+        }
+    }
+
+    /** Breaker {@code name} is gone; its state is no longer exported. Transition counts stay. */
+    public void removeCircuit(String name) {
+        circuitStates.remove(safe(name));
+    }
+
+    public Map<String, String> getCircuitStates() {
+        return new LinkedHashMap<>(circuitStates);
+    }
+
+    public Map<String, Long> getCircuitTransitions() {
+        return new LinkedHashMap<>(circuitTransitions);
+    }
+
+    // Hedged requests: second attempts sent, and those that answered first, per model.
+    private final Map<String, Long> hedgesSent = new ConcurrentHashMap<>();
+    private final Map<String, Long> hedgesWon = new ConcurrentHashMap<>();
+
+    public void recordHedgeSent(String model) {
+        hedgesSent.merge(safe(model), 1L, Long::sum);
+    }
+
+    public void recordHedgeWon(String model) {
+        hedgesWon.merge(safe(model), 1L, Long::sum);
+    }
+
+    public Map<String, Long> getHedgesSent() {
+        return new LinkedHashMap<>(hedgesSent);
+    }
+
+    public Map<String, Long> getHedgesWon() {
+        return new LinkedHashMap<>(hedgesWon);
+    }
+
+    // Outlier detection: wall-clock end of each container's latest ejection, ejections per
+    // container and reason ("container|reason"), and connect failures retried per model.
+    private final Map<String, Long> outlierEjectedUntilMs = new ConcurrentHashMap<>();
+    private final Map<String, Long> outlierEjections = new ConcurrentHashMap<>();
+    private final Map<String, Long> connectRetries = new ConcurrentHashMap<>();
+
+    public void recordOutlierEjection(String containerId, String reason, long untilMs) {
+        outlierEjectedUntilMs.put(containerId, untilMs);
+        outlierEjections.merge(safe(containerId) + "|" + safe(reason), 1L, Long::sum);
+    }
+
+    /** Container id -> wall-clock ms its latest ejection ends; past values mean back in rotation. */
+    public Map<String, Long> getOutlierEjectedUntil() {
+        return new LinkedHashMap<>(outlierEjectedUntilMs);
+    }
+
+    public Map<String, Long> getOutlierEjections() {
+        return new LinkedHashMap<>(outlierEjections);
+    }
+
+    public void recordConnectRetry(String model) {
+        connectRetries.merge(safe(model), 1L, Long::sum);
+    }
+
+    public Map<String, Long> getConnectRetries() {
+        return new LinkedHashMap<>(connectRetries);
+    }
+
+    // Admission queue: wait per priority class, and requests dropped keyed "priority|reason"
+    // (reason: "full" or "deadline").
+    private final Map<String, LatencyHistogram> admissionWaitByPriority = new ConcurrentHashMap<>();
+    private final Map<String, Long> admissionDrops = new ConcurrentHashMap<>();
+
+    /** Time a request spent in the admission queue, whether it was then dispatched or dropped. */
+    public void recordAdmissionWait(String priority, double seconds) {
+        admissionWaitByPriority.computeIfAbsent(priority,
+                k -> new LatencyHistogram(ADMISSION_WAIT_BUCKETS_SECONDS)).observe(seconds);
+    }
+
+    public Map<String, LatencyHistogram> getAdmissionWaitHistograms() {
+        return Collections.unmodifiableMap(admissionWaitByPriority);
+    }
+
+    public void recordAdmissionDrop(String priority, String reason) {
+        admissionDrops.merge(priority + "|" + reason, 1L, Long::sum);
+    }
+
+    public Map<String, Long> getAdmissionDrops() {
+        return new LinkedHashMap<>(admissionDrops);
+    }
+
+    // Completion response cache: lookups keyed "model|hit" / "model|miss", and current size.
+    private final Map<String, Long> responseCacheLookups = new ConcurrentHashMap<>();
+    private volatile int responseCacheEntries;
+    private volatile long responseCacheBytes;
+
+    public void recordResponseCacheLookup(String model, boolean hit) {
+        responseCacheLookups.merge(safe(model) + "|" + (hit ? "hit" : "miss"), 1L, Long::sum);
+    }
+
+    public Map<String, Long> getResponseCacheLookups() {
+        return new LinkedHashMap<>(responseCacheLookups);
+    }
+
+    public void setResponseCacheSize(int entries, long bytes) {
+        responseCacheEntries = entries;
+        responseCacheBytes = bytes;
+    }
+
+    public int getResponseCacheEntries() {
+        return responseCacheEntries;
+    }
+
+    public long getResponseCacheBytes() {
+        return responseCacheBytes;
+    }
+
     public long getRequestCount(String model) {
         return requestCountsByModel.getOrDefault(model, 0L);
     }
@@ -387,12 +815,15 @@ public class MetricsCollector {
     }
 
     public Map<String, Map<String, String>> fetchGpuMetricsStructured(String host) {
+        return parseGpuMetricsStructured(fetchRawMetrics(host));
+    }
+
+    /** Per-GPU gauges keyed by gpu id, then by metric name with the {@code nv_gpu_} prefix stripped. */
+    public Map<String, Map<String, String>> parseGpuMetricsStructured(String metrics) {
         Map<String, Map<String, String>> gpus = new LinkedHashMap<>();
-        String metrics = fetchRawMetrics(host);
-        if (metrics.isEmpty()) return gpus;
+        if (metrics == null || metrics.isEmpty()) return gpus;
 
-        Pattern p = Pattern.compile("(nv_gpu_[a-z_]+)\\{gpu=\"(\\d+)\"\\}\\s+([\\d.e+]+)");
-        Matcher m = p.matcher(metrics);
+        Matcher m = GPU_METRIC.matcher(metrics);
         while (m.find()) {
             String metric = m.group(1).replace("nv_gpu_", "");
             String gpuId = m.group(2);
@@ -0,0 +1,198 @@
+package varga.tarn.yarn;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Model -> container index: which models each container has READY, as reported by Triton's
+ * {@code /v2/repository/index}. The background scraper refreshes a container's set every
+ * round; load / unload events update it in between so routing follows a placement change
+ * without waiting for the next scrape.
+ *
+ * <p>Like {@link RoutingTable}, the index is an immutable snapshot replaced copy-on-write under
+ * a lock and read with a single volatile load. {@link #routable} narrows a routing table to
+ * the containers serving one model and memoizes the result per (table, index) pair, so the
+ * common case — every container serves every model — hands back the very same table.
+ *
+ * <p>A container whose index has never been fetched is assumed to serve everything: right
+ * after a container turns READY, or while its scrapes fail, traffic keeps flowing as before
+ * this index existed instead of being refused.
+ */
+public final class ModelPlacement {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final class Index {
+        static final Index EMPTY = new Index(Collections.emptyMap());
+
+        /** container id -> READY models. */
+        final Map<String, Set<String>> byContainer;
+        volatile Narrowed narrowed;
+
+        Index(Map<String, Set<String>> byContainer) {
+            this.byContainer = byContainer;
+        }
+    }
+
+    /** model -> {@link #table} narrowed to it, filled lazily. */
+    private static final class Narrowed {
+        final RoutingTable table;
+        final Map<String, RoutingTable> byModel = new ConcurrentHashMap<>();
+
+        Narrowed(RoutingTable table) {
+            this.table = table;
+        }
+    }
+
+    private volatile Index index = Index.EMPTY;
+    // container id -> model -> wall-clock ms of the last request routed there, for LRU eviction.
+    private final Map<String, Map<String, Long>> lastUsed = new ConcurrentHashMap<>();
+
+    /** Replaces the set of READY models of {@code containerId} (one scrape's worth). */
+    public synchronized void update(String containerId, Set<String> readyModels) {
+        Set<String> current = index.byContainer.get(containerId);
+        if (readyModels.equals(current)) return;
+        Map<String, Set<String>> next = new HashMap<>(index.byContainer);
+        next.put(containerId, Set.copyOf(readyModels));
+        index = new Index(next);
+    }
+
+    /** {@code model} finished loading on {@code containerId}. */
+    public synchronized void onLoaded(String containerId, String model) {
+        Set<String> current = index.byContainer.getOrDefault(containerId, Collections.emptySet());
+        if (current.contains(model)) return;
+        Set<String> models = new HashSet<>(current);
+        models.add(model);
+        update(containerId, models);
+    }
+
+    /** {@code model} is being (or was) unloaded from {@code containerId}; stop routing it there. */
+    public synchronized void onUnloaded(String containerId, String model) {
+        Set<String> current = index.byContainer.get(containerId);
+        if (current == null || !current.contains(model)) return;
+        Set<String> models = new HashSet<>(current);
+        models.remove(model);
+        update(containerId, models);
+    }
+
+    /** Forgets every container not in {@code containerIds}. */
+    public synchronized void retain(Collection<String> containerIds) {
+        if (containerIds.containsAll(index.byContainer.keySet())) return;
+        Map<String, Set<String>> next = new HashMap<>(index.byContainer);
+        next.keySet().retainAll(containerIds);
+        index = new Index(next);
+        lastUsed.keySet().retainAll(next.keySet());
+    }
+
+    /**
+     * Notes a request for {@code model} routed to {@code containerId}. Only models the container
+     * reports READY are tracked, so client-chosen names cannot grow the map.
+     */
+    public void touch(String containerId, String model, long nowMs) {
+        Set<String> models = index.byContainer.get(containerId);
+        if (models == null || !models.contains(model)) return;
+        lastUsed.computeIfAbsent(containerId, k -> new ConcurrentHashMap<>()).put(model, nowMs);
+    }
+
+    /** Last {@link #touch} of {@code model} on {@code containerId}, or 0 if never. */
+    public long lastUsedMs(String containerId, String model) {
+        Map<String, Long> m = lastUsed.get(containerId);
+        Long t = m == null ? null : m.get(model);
+        return t == null ? 0L : t;
+    }
+
+    /** READY models of {@code containerId}, or null if its index was never fetched. */
+    public Set<String> modelsOn(String containerId) {
+        return index.byContainer.get(containerId);
+    }
+
+    /** model -> number of containers reporting it READY. */
+    public Map<String, Integer> replicaCounts() {
+        Map<String, Integer> out = new HashMap<>();
+        for (Set<String> models : index.byContainer.values()) {
+            for (String m : models) out.merge(m, 1, Integer::sum);
+        }
+        return out;
+    }
+
+    /**
+     * Backends of {@code table} that serve {@code model}: those reporting it READY plus those
+     * whose index is not known yet. Returns {@code table} itself when that is all of them, and
+     * an empty table when none is.
+     */
+    public RoutingTable routable(RoutingTable table, String model) {
+        Index idx = index;
+        if (idx.byContainer.isEmpty()) return table;
+        Narrowed n = idx.narrowed;
+        if (n == null || n.table != table) {
+            n = new Narrowed(table);
+            idx.narrowed = n;
+        }
+        RoutingTable t = n.byModel.get(model);
+        if (t != null) return t;
+        List<RoutingTable.Backend> serving = new ArrayList<>(table.size());
+        boolean reported = false;
+        for (RoutingTable.Backend b : table.backends()) {
+            Set<String> models = idx.byContainer.get(b.containerId);
+            if (models == null) {
+                serving.add(b);
+            } else if (models.contains(model)) {
+                serving.add(b);
+                reported = true;
+            }
+        }
+        t = serving.size() == table.size() ? table : new RoutingTable(table.version, serving);
+        // Model names come from clients; only memoize ones some container actually serves.
+        if (reported) n.byModel.put(model, t);
+        return t;
+    }
+
+    /**
+     * Names of the READY models in a {@code /v2/repository/index} response, or null if the body
+     * is not a JSON array.
+     */
+    public static Set<String> readyModels(String indexJson) {
+        try {
+            JsonNode root = MAPPER.readTree(indexJson);
+            if (root == null || !root.isArray()) return null;
+            Set<String> ready = new HashSet<>();
+            for (JsonNode m : root) {
+                String name = m.path("name").asText(null);
+                if (name != null && "READY".equals(m.path("state").asText(null))) ready.add(name);
+            }
+            return ready;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package varga.tarn.yarn;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Demand-driven model residency for Triton running in explicit model-control mode.
+ *
+ * <p>Every monitor tick the controller turns the proxy's per-model request counts into a
+ * smoothed request rate, reads each container's READY models from {@link ModelPlacement} and
+ * its GPU memory use from the latest scrape, and issues at most {@link #MAX_ACTIONS_PER_TICK}
+ * {@code /v2/repository/models/{m}/load} or {@code /unload} calls:
+ * <ol>
+ *   <li>A container above the memory watermark evicts its least recently used model that is
+ *       cold (no request for {@code placementIdleMs}) or over-replicated.</li>
+ *   <li>A model with recent requests gets {@code ceil(rate / placementRpsPerReplica)} replicas
+ *       (one more while its p95 latency is above target). A new replica goes to the container
+ *       with the most free GPU memory; when every candidate is above the watermark, the least
+ *       recently used cold model is evicted to make room and the load follows on a later tick.</li>
+ *   <li>Replicas beyond what the rate needs, with some headroom so a fluctuating rate does not
+ *       flap, are unloaded from the fullest container.</li>
+ * </ol>
+ * A model nobody asks for is never loaded proactively; its first request is refused with 503
+ * and {@code Retry-After} (see {@link ModelPlacement}) and counts as demand for the next tick.
+ * Each container has at most one load or unload in flight. An unload takes the replica out of
+ * routing before the call is made; a load adds it once Triton has confirmed it.
+ */
+public class PlacementController {
+
+    private static final Logger log = LoggerFactory.getLogger(PlacementController.class);
+
+    static final int MAX_ACTIONS_PER_TICK = 4;
+    /** Weight of the latest tick in the smoothed request rate. */
+    static final double RATE_SMOOTHING = 0.5;
+    /** Replicas are only removed once the rate would fit in fewer of them with this much to spare. */
+    static final double SCALE_DOWN_HEADROOM = 1.5;
+    private static final Duration LOAD_TIMEOUT = Duration.ofMinutes(10);
+    private static final Duration UNLOAD_TIMEOUT = Duration.ofMinutes(2);
+
+    /** Carries out one action; completes with true when Triton accepted it. */
+    public interface Actuator {
+        CompletableFuture<Boolean> apply(Action action);
+    }
+
+    /** One load or unload. */
+    public static final class Action {
+        public enum Kind { LOAD, UNLOAD }
+
+        public final Kind kind;
+        public final String containerId;
+        public final String host;
+        public final String model;
+        /** demand | replicate | latency | scale_down | memory | make_room */
+        public final String reason;
+
+        Action(Kind kind, Node node, String model, String reason) {
+            this.kind = kind;
+            this.containerId = node.containerId;
+            this.host = node.host;
+            this.model = model;
+            this.reason = reason;
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + model + " on " + containerId + " (" + reason + ")";
+        }
+    }
+
+    /** What the planner knows about one READY container. */
+    static final class Node {
+        final String containerId;
+        final String host;
+        final Set<String> models;
+        /** GPU memory used / total, NaN when the scrape had no GPU memory gauges. */
+        final double memoryFraction;
+
+        Node(String containerId, String host, Set<String> models, double memoryFraction) {
+            this.containerId = containerId;
+            this.host = host;
+            this.models = models;
+            this.memoryFraction = memoryFraction;
+        }
+    }
+
+    /** Recent demand for one model. */
+    static final class Demand {
+        final double rps;
+        final double p95Ms;
+        final long lastRequestMs;
+
+        Demand(double rps, double p95Ms, long lastRequestMs) {
+            this.rps = rps;
+            this.p95Ms = p95Ms;
+            this.lastRequestMs = lastRequestMs;
+        }
+    }
+
+    private final ModelPlacement placement;
+    private final MetricsCollector metrics;
+    private final Actuator actuator;
+    private final double rpsPerReplica;
+    private final double memoryWatermark;
+    private final long latencyTargetMs;
+    private final long idleMs;
+
+    // Demand bookkeeping; only touched from the monitor thread.
+    private final Map<String, Double> rates = new HashMap<>();
+    private final Map<String, Long> lastCounts = new HashMap<>();
+    private final Map<String, Long> lastLatencyCounts = new HashMap<>();
+    private final Map<String, long[]> lastLatencyBuckets = new HashMap<>();
+    private final Map<String, Long> lastRequestMs = new HashMap<>();
+    private long lastTickMs;
+    // Containers with a load or unload in flight.
+    private final Set<String> busy = ConcurrentHashMap.newKeySet();
+
+    public PlacementController(ModelPlacement placement, MetricsCollector metrics, Actuator actuator,
+                               TarnConfig config) {
+        this.placement = placement;
+        this.metrics = metrics;
+        this.actuator = actuator;
+        this.rpsPerReplica = config.placementRpsPerReplica;
+        this.memoryWatermark = config.placementMemoryWatermark;
+        this.latencyTargetMs = config.placementLatencyTargetMs;
+        this.idleMs = config.placementIdleMs;
+    }
+
+    /** {@link Actuator} calling Triton's repository API on the container's HTTP port. */
+    public static Actuator tritonActuator(HttpClient client, int tritonPort) {
+        return action -> {
+            String op = action.kind == Action.Kind.LOAD ? "load" : "unload";
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create("http://" + action.host + ":" + tritonPort + "/v2/repository/models/"
+                            + URLEncoder.encode(action.model, StandardCharsets.UTF_8) + "/" + op))
+                    .timeout(action.kind == Action.Kind.LOAD ? LOAD_TIMEOUT : UNLOAD_TIMEOUT)
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .build();
+            return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .handle((resp, err) -> err == null && resp.statusCode() == 200);
+        };
+    }
+
+    /**
+     * One control step over the READY containers of {@code table}. {@code catalog} is the set of
+     * models in the repository; demand for anything else is ignored.
+     */
+    public void tick(RoutingTable table, ScrapeEngine.Snapshot snapshot, Collection<String> catalog, long nowMs) {
+        boolean primed = lastTickMs != 0L;
+        Map<String, Demand> demand = observeDemand(catalog, nowMs);
+        // The first tick only takes the demand baseline; acting on it would evict models that
+        // are busy but have no measured rate yet (e.g. right after an AM restart).
+        if (!primed) return;
+        List<Node> nodes = new ArrayList<>();
+        for (RoutingTable.Backend b : table.backends()) {
+            Set<String> models = placement.modelsOn(b.containerId);
+            // Not scraped yet: nothing to plan with, and the proxy already treats it as serving all.
+            if (models == null) continue;
+            ScrapeEngine.Sample s = snapshot.get(b.containerId);
+            nodes.add(new Node(b.containerId, b.host, models, s == null ? Double.NaN : memoryFraction(s)));
+        }
+        for (Action a : plan(nodes, demand, nowMs)) {
+            execute(a);
+        }
+    }
+
+    private void execute(Action a) {
+        if (!busy.add(a.containerId)) return;
+        log.info("Placement: {}", a);
+        metrics.recordPlacementAction(a.kind.name().toLowerCase(), a.model, a.reason);
+        if (a.kind == Action.Kind.UNLOAD) {
+            placement.onUnloaded(a.containerId, a.model);
+        }
+        CompletableFuture<Boolean> call;
+        try {
+            call = actuator.apply(a);
+        } catch (RuntimeException e) {
+            call = CompletableFuture.completedFuture(false);
+        }
+        call.whenComplete((ok, err) -> {
+            busy.remove(a.containerId);
+            if (Boolean.TRUE.equals(ok)) {
+                if (a.kind == Action.Kind.LOAD) placement.onLoaded(a.containerId, a.model);
+            } else {
+                // A failed unload is corrected by the next scrape if the model is still READY.
+                log.warn("Placement {} failed{}", a, err != null ? ": " + err : "");
+                metrics.recordPlacementFailure(a.kind.name().toLowerCase());
+            }
+        });
+    }
+
+    /** Decides this tick's actions. Pure apart from reading {@link ModelPlacement#lastUsedMs}. */
+    List<Action> plan(List<Node> nodes, Map<String, Demand> demand, long nowMs) {
+        List<Action> actions = new ArrayList<>();
+        Set<String> taken = new HashSet<>(busy);
+        Map<String, Integer> holders = new HashMap<>();
+        for (Node n : nodes) {
+            for (String m : n.models) holders.merge(m, 1, Integer::sum);
+        }
+
+        // 1. Memory pressure: evict the LRU cold or surplus model.
+        List<Node> byMemory = new ArrayList<>(nodes);
+        byMemory.sort(Comparator.comparingDouble((Node n) -> Double.isNaN(n.memoryFraction) ? 0.0 : n.memoryFraction)
+                .reversed());
+        for (Node n : byMemory) {
+            if (actions.size() >= MAX_ACTIONS_PER_TICK) return actions;
+            if (taken.contains(n.containerId) || !(n.memoryFraction > memoryWatermark)) continue;
+            String victim = evictable(n, demand, holders, nodes.size(), nowMs);
+            if (victim != null) {
+                actions.add(new Action(Action.Kind.UNLOAD, n, victim, "memory"));
+                taken.add(n.containerId);
+                holders.merge(victim, -1, Integer::sum);
+            }
+        }
+
+        // 2. Under-replicated models, busiest first.
+        List<String> wanted = new ArrayList<>(demand.keySet());
+        wanted.sort(Comparator.comparingDouble((String m) -> demand.get(m).rps).reversed());
+        for (String model : wanted) {
+            if (actions.size() >= MAX_ACTIONS_PER_TICK) return actions;
+            int want = desiredReplicas(demand.get(model), nodes.size(), nowMs, 1.0);
+            int have = holders.getOrDefault(model, 0);
+            if (have >= want) continue;
+            int forRate = desiredReplicas(demand.get(model), nodes.size(), nowMs, 1.0, false);
+            String reason = have == 0 ? "demand" : have >= forRate ? "latency" : "replicate";
+            Node target = null;
+            for (Node n : nodes) {
+                if (taken.contains(n.containerId) || n.models.contains(model)) continue;
+                if (n.memoryFraction > memoryWatermark) continue;
+                if (target == null || freeness(n) > freeness(target)) target = n;
+            }
+            if (target != null) {
+                actions.add(new Action(Action.Kind.LOAD, target, model, reason));
+                taken.add(target.containerId);
+                holders.merge(model, 1, Integer::sum);
+                continue;
+            }
+            // Everyone is full: free the least recently used cold or surplus model on a node
+            // that does not hold this one; the load happens once the scrape shows the room.
+            Node roomNode = null;
+            String roomVictim = null;
+            long oldest = Long.MAX_VALUE;
+            for (Node n : nodes) {
+                if (taken.contains(n.containerId) || n.models.contains(model)) continue;
+                String v = evictable(n, demand, holders, nodes.size(), nowMs);
+                if (v == null) continue;
+                long used = placement.lastUsedMs(n.containerId, v);
+                if (used < oldest) {
+                    oldest = used;
+                    roomNode = n;
+                    roomVictim = v;
+                }
+            }
+            if (roomNode != null) {
+                actions.add(new Action(Action.Kind.UNLOAD, roomNode, roomVictim, "make_room"));
+                taken.add(roomNode.containerId);
+                holders.merge(roomVictim, -1, Integer::sum);
+            }
+        }
+
+        // 3. Over-replicated models: drop one replica each from the fullest holder.
+        for (String model : wanted) {
+            if (actions.size() >= MAX_ACTIONS_PER_TICK) return actions;
+            int keep = desiredReplicas(demand.get(model), nodes.size(), nowMs, SCALE_DOWN_HEADROOM);
+            if (keep == 0 || holders.getOrDefault(model, 0) <= keep) continue;
+            Node from = null;
+            for (Node n : byMemory) {
+                if (!taken.contains(n.containerId) && n.models.contains(model)) {
+                    from = n;
+                    break;
+                }
+            }
+            if (from != null) {
+                actions.add(new Action(Action.Kind.UNLOAD, from, model, "scale_down"));
+                taken.add(from.containerId);
+                holders.merge(model, -1, Integer::sum);
+            }
+        }
+        return actions;
+    }
+
+    private int desiredReplicas(Demand d, int fleet, long nowMs, double headroom) {
+        return desiredReplicas(d, fleet, nowMs, headroom, true);
+    }
+
+    /**
+     * Replicas a model should have, 0 when it is cold. {@code headroom} > 1 asks for more, so
+     * scale-down uses it as a hysteresis band above the scale-up target.
+     */
+    private int desiredReplicas(Demand d, int fleet, long nowMs, double headroom, boolean withLatency) {
+        if (d == null || d.lastRequestMs == 0L || nowMs - d.lastRequestMs > idleMs) return 0;
+        int n = Math.max(1, (int) Math.ceil(d.rps * headroom / rpsPerReplica));
+        if (withLatency && latencyTargetMs > 0 && d.rps > 0 && d.p95Ms > latencyTargetMs) n++;
+        return Math.min(n, fleet);
+    }
+
+    /**
+     * Least recently used model on {@code n} that can go: one that is cold, or that has more
+     * replicas than its demand needs. Never the last replica of a model in use.
+     */
+    private String evictable(Node n, Map<String, Demand> demand, Map<String, Integer> holders, int fleet, long nowMs) {
+        String victim = null;
+        long oldest = Long.MAX_VALUE;
+        for (String m : n.models) {
+            int want = desiredReplicas(demand.get(m), fleet, nowMs, 1.0);
+            if (want > 0 && holders.getOrDefault(m, 0) <= want) continue;
+            long used = placement.lastUsedMs(n.containerId, m);
+            if (used < oldest) {
+                oldest = used;
+                victim = m;
+            }
+        }
+        return victim;
+    }
+
+    private static double freeness(Node n) {
+        // Unknown memory ranks below any known reading but is still eligible.
+        return Double.isNaN(n.memoryFraction) ? -1.0 : 1.0 - n.memoryFraction;
+    }
+
+    /** Fraction of GPU memory in use across the container's GPUs, NaN without gauges. */
+    static double memoryFraction(ScrapeEngine.Sample s) {
+        double used = 0.0;
+        double total = 0.0;
+        for (Map<String, String> gpu : s.gpus.values()) {
+            String u = gpu.get("memory_used_bytes");
+            String t = gpu.get("memory_total_bytes");
+            if (u == null || t == null) continue;
+            try {
+                used += Double.parseDouble(u);
+                total += Double.parseDouble(t);
+            } catch (NumberFormatException ignored) {
+                // Skip a malformed gauge rather than the whole container.
+            }
+        }
+        return total > 0 ? used / total : Double.NaN;
+    }
+
+    /** Request rate and p95 latency per catalogued model since the previous tick. */
+    private Map<String, Demand> observeDemand(Collection<String> catalog, long nowMs) {
+        double dt = lastTickMs == 0L ? 0.0 : (nowMs - lastTickMs) / 1000.0;
+        lastTickMs = nowMs;
+        Map<String, Demand> out = new HashMap<>();
+        for (String model : catalog) {
+            long count = metrics.getRequestCount(model);
+            Long before = lastCounts.put(model, count);
+            long delta = before == null ? 0L : Math.max(0L, count - before);
+            if (delta > 0) lastRequestMs.put(model, nowMs);
+            double rate = rates.getOrDefault(model, 0.0);
+            if (dt > 0) {
+                rate = RATE_SMOOTHING * (delta / dt) + (1.0 - RATE_SMOOTHING) * rate;
+                rates.put(model, rate);
+            }
+            out.put(model, new Demand(rate, recentP95Ms(model), lastRequestMs.getOrDefault(model, 0L)));
+        }
+        return out;
+    }
+
+    /** p95 of the latencies recorded for {@code model} since the previous tick, 0 if none. */
+    private double recentP95Ms(String model) {
+        long[] cumulative = metrics.getHistogramBucketsCumulative(model);
+        if (cumulative == null) return 0.0;
+        long count = metrics.getHistogramCount(model);
+        long[] before = lastLatencyBuckets.put(model, cumulative);
+        long countBefore = lastLatencyCounts.getOrDefault(model, 0L);
+        lastLatencyCounts.put(model, count);
+        double[] bounds = MetricsCollector.LATENCY_BUCKETS_SECONDS;
+        // Cumulative "<= bound" counts to per-bucket counts plus +Inf, over the interval only.
+        long[] counts = new long[bounds.length + 1];
+        long prev = 0L;
+        for (int i = 0; i < bounds.length; i++) {
+            long c = cumulative[i] - (before == null ? 0L : before[i]);
+            counts[i] = Math.max(0L, c - prev);
+            prev = c;
+        }
+        counts[bounds.length] = Math.max(0L, (count - countBefore) - prev);
+        return 1000.0 * LatencyHistogram.quantile(bounds, counts, 0.95);
+    }
+}
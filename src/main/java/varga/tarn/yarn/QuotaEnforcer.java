@@ -56,6 +56,11 @@ import java.util.concurrent.ConcurrentHashMap;
  * }
  * }</pre>
  *
+ * <p>A rule may also carry a {@code priority} ({@code interactive}, {@code standard} or
+ * {@code batch}): the scheduling class the proxy's admission queue gives matching requests
+ * when backends are saturated. A rule with a priority and no {@code requestsPerMinute}
+ * only classifies; it does not rate-limit.
+ *
  * <p>Why not Redis / distributed counters: for a single AM instance in-memory is accurate
  * and cheap. When we ship horizontally-scaled TARN (P2.1 Operator), swap the implementation
  * behind {@link #check} for a shared store.
@@ -88,13 +93,19 @@ public class QuotaEnforcer {
         final String user;          // nullable
         final String group;         // nullable
         final String modelPattern;  // "*" or exact
-        final int requestsPerMinute;
+        final int requestsPerMinute;  // -1: no rate limit (a priority-only rule)
+        final String priority;      // nullable
 
         Rule(String user, String group, String modelPattern, int requestsPerMinute) {
+            this(user, group, modelPattern, requestsPerMinute, null);
+        }
+
+        Rule(String user, String group, String modelPattern, int requestsPerMinute, String priority) {
             this.user = emptyToNull(user);
             this.group = emptyToNull(group);
             this.modelPattern = (modelPattern == null || modelPattern.isEmpty()) ? "*" : modelPattern;
-            this.requestsPerMinute = Math.max(0, requestsPerMinute);
+            this.priority = emptyToNull(priority);
+            this.requestsPerMinute = requestsPerMinute < 0 && this.priority != null ? -1 : Math.max(0, requestsPerMinute);
         }
 
         boolean matches(String u, Set<String> groups, String model) {
@@ -145,7 +156,8 @@ public class QuotaEnforcer {
                             n.path("user").asText(null),
                             n.path("group").asText(null),
                             n.path("model").asText("*"),
-                            n.path("requestsPerMinute").asInt(0)));
+                            n.path("requestsPerMinute").asInt(-1),
+                            n.path("priority").asText(null)));
                 }
             }
             // Most-specific rules first so first-match wins.
@@ -169,13 +181,8 @@ public class QuotaEnforcer {
     }
 
     public Decision check(String user, Set<String> groups, String model) {
-        Rule matched = null;
-        for (Rule r : rules) {
-            if (r.matches(user, groups, model)) {
-                matched = r;
-                break;
-            }
-        }
+        Rule matched = match(user, groups, model);
+        if (matched != null && matched.requestsPerMinute < 0) return Decision.allow();
         if (matched == null || matched.requestsPerMinute == 0) {
             // No rule, or a rule that denies explicitly (0 rpm).
             if (matched != null && matched.requestsPerMinute == 0) {
@@ -193,6 +200,19 @@ public class QuotaEnforcer {
         return Decision.deny(waitMs, "rate_limited", describe(matched));
     }
 
+    /** Priority of the first rule matching the call, or null when it has none. */
+    public String priority(String user, Set<String> groups, String model) {
+        Rule matched = match(user, groups, model);
+        return matched == null ? null : matched.priority;
+    }
+
+    private Rule match(String user, Set<String> groups, String model) {
+        for (Rule r : rules) {
+            if (r.matches(user, groups, model)) return r;
+        }
+        return null;
+    }
+
     private static String bucketKey(Rule r, String user, Set<String> groups, String model) {
         // Keyed so all callers matching the same rule share a bucket — that's the usual
         // contract for group quotas (the group's total pool, not per-user).
@@ -205,7 +225,7 @@ public class QuotaEnforcer {
 
     private static String describe(Rule r) {
         return "rule[user=" + r.user + ",group=" + r.group + ",model=" + r.modelPattern
-                + ",rpm=" + r.requestsPerMinute + "]";
+                + ",rpm=" + r.requestsPerMinute + (r.priority != null ? ",priority=" + r.priority : "") + "]";
     }
 
     /**
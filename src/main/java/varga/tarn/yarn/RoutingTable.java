@@ -0,0 +1,87 @@
+package varga.tarn.yarn;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable set of routable backends published by {@link ContainerLifecycle}. A new table is
+ * built on every READY membership change (copy-on-write) and swapped in with a volatile
+ * write, so the proxy reads it on every request without taking any lock.
+ */
+public final class RoutingTable {
+
+    public static final RoutingTable EMPTY = new RoutingTable(0L, Collections.emptyList());
+
+    /** One READY container. */
+    public static final class Backend {
+        public final String containerId;
+        public final String host;
+
+        public Backend(String containerId, String host) {
+            this.containerId = containerId;
+            this.host = host;
+        }
+
+        @Override
+        public String toString() {
+            return containerId + "@" + host;
+        }
+    }
+
+    /** Monotonic; bumps on every republish. */
+    public final long version;
+    private final List<Backend> backends;
+    private final Map<String, Backend> byId;
+
+    public RoutingTable(long version, List<Backend> backends) {
+        this.version = version;
+        this.backends = List.copyOf(backends);
+        Map<String, Backend> m = new HashMap<>(backends.size() * 2);
+        for (Backend b : this.backends) {
+            m.put(b.containerId, b);
+        }
+        this.byId = Collections.unmodifiableMap(m);
+    }
+
+    public List<Backend> backends() {
+        return backends;
+    }
+
+    public Backend get(String containerId) {
+        return byId.get(containerId);
+    }
+
+    public boolean contains(String containerId) {
+        return byId.containsKey(containerId);
+    }
+
+    public int size() {
+        return backends.size();
+    }
+
+    public boolean isEmpty() {
+        return backends.isEmpty();
+    }
+}
@@ -0,0 +1,358 @@
+package varga.tarn.yarn;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking scraper for every running Triton container, and the single source of backend
+ * state for the AM: the scaling loop, the drain logic and every {@link DiscoveryServer}
+ * handler read its snapshot instead of fetching on demand.
+ *
+ * <p>The monitor loop used to fan out {@code CompletableFuture.supplyAsync} scrapes onto its
+ * own single-thread executor and then block on them — the scrapes queued behind the tick
+ * that was waiting for them, timed out after 5 s, and {@link ScalingPolicy} saw an empty
+ * signal. This engine decouples the two:
+ * <ul>
+ *   <li>Rounds run on a dedicated scheduler thread and use {@link HttpClient#sendAsync}, so a
+ *       single thread fans out to hundreds of containers in roughly one round-trip time.</li>
+ *   <li>At most {@code maxConcurrency} containers are probed at once; the next one is
+ *       dispatched as soon as one completes.</li>
+ *   <li>Every request has its own deadline — a hung NodeManager only loses its own sample.</li>
+ *   <li>Rounds are rescheduled with random jitter so several AM replicas (or a restart storm)
+ *       don't hit the fleet in lock-step.</li>
+ * </ul>
+ * Per container, a round fetches {@code /metrics} (GPU utilization, per-GPU gauges, pending
+ * queue depth), {@code /v2/health/ready} (behind a per-host {@link SlidingWindowCircuitBreaker}) and
+ * {@code /v2/repository/index}, whose READY models refresh the {@link ModelPlacement} index
+ * the proxy routes by. Results are published as an immutable, timestamped
+ * {@link Snapshot} that readers pick up with a single volatile read.
+ */
+public class ScrapeEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(ScrapeEngine.class);
+
+    /** Fraction of the interval used as +/- jitter when scheduling the next round. */
+    private static final double JITTER_FRACTION = 0.1;
+
+    /** One container's last scrape outcome. Immutable. */
+    public static final class Sample {
+        public final String containerId;
+        public final String host;
+        public final double gpuUtil;
+        public final int queueDepth;
+        /** gpu id -> (metric name without {@code nv_gpu_} prefix -> value). */
+        public final Map<String, Map<String, String>> gpus;
+        /** Result of the latest readiness probe; false when the probe failed or was skipped. */
+        public final boolean ready;
+        /** Raw {@code /v2/repository/index} JSON, or null if it was never fetched. */
+        public final String loadedModelsJson;
+        /** Wall-clock time of the last successful metrics fetch, or 0 if it never succeeded. */
+        public final long fetchedAtMs;
+        /** True when the most recent metrics fetch succeeded; false means the values are carried over. */
+        public final boolean fresh;
+
+        Sample(String containerId, String host, double gpuUtil, int queueDepth,
+               Map<String, Map<String, String>> gpus, boolean ready, String loadedModelsJson,
+               long fetchedAtMs, boolean fresh) {
+            this.containerId = containerId;
+            this.host = host;
+            this.gpuUtil = gpuUtil;
+            this.queueDepth = queueDepth;
+            this.gpus = gpus != null ? gpus : Collections.emptyMap();
+            this.ready = ready;
+            this.loadedModelsJson = loadedModelsJson;
+            this.fetchedAtMs = fetchedAtMs;
+            this.fresh = fresh;
+        }
+
+        static Sample empty(String containerId, String host) {
+            return new Sample(containerId, host, 0.0, 0, null, false, null, 0L, false);
+        }
+
+        public long ageMs(long nowMs) {
+            return fetchedAtMs == 0 ? Long.MAX_VALUE : Math.max(0L, nowMs - fetchedAtMs);
+        }
+    }
+
+    /** Result of one scrape round, keyed by container id. Immutable. */
+    public static final class Snapshot {
+        public static final Snapshot EMPTY = new Snapshot(0L, Collections.emptyMap());
+
+        public final long takenAtMs;
+        private final Map<String, Sample> samples;
+
+        Snapshot(long takenAtMs, Map<String, Sample> samples) {
+            this.takenAtMs = takenAtMs;
+            this.samples = samples;
+        }
+
+        public Sample get(String containerId) {
+            return samples.get(containerId);
+        }
+
+        public Map<String, Sample> samples() {
+            return samples;
+        }
+
+        public int size() {
+            return samples.size();
+        }
+    }
+
+    private final MetricsCollector metrics;
+    private final HttpClient httpClient;
+    private final int metricsPort;
+    private final int tritonPort;
+    private final Predicate<String> hostGuard;
+    private final int maxConcurrency;
+    private final Duration perHostTimeout;
+    private final Map<String, SlidingWindowCircuitBreaker> readinessBreakers = new ConcurrentHashMap<>();
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private volatile ScheduledExecutorService scheduler;
+
+    /** Tests pass a permissive {@code hostGuard} to scrape 127.0.0.1. */
+    public ScrapeEngine(MetricsCollector metrics, HttpClient httpClient, int metricsPort, int tritonPort,
+                        Predicate<String> hostGuard, int maxConcurrency, Duration perHostTimeout) {
+        this.metrics = metrics;
+        this.httpClient = httpClient;
+        this.metricsPort = metricsPort;
+        this.tritonPort = tritonPort;
+        this.hostGuard = hostGuard;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.perHostTimeout = perHostTimeout;
+    }
+
+    /** Latest published snapshot. Never null; never blocks. */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Starts periodic rounds against the containers returned by {@code targets}
+     * (container id -> host). A round is only scheduled once the previous one has completed,
+     * so a slow fleet stretches the period instead of piling up overlapping rounds.
+     */
+    public synchronized void start(Supplier<Map<String, String>> targets, long intervalMs) {
+        if (scheduler != null) return;
+        AtomicInteger count = new AtomicInteger();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "tarn-scrape-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        scheduleRound(targets, Math.max(100L, intervalMs), 0L);
+        log.info("Scrape engine started (interval={}ms, concurrency={}, perHostTimeout={}ms)",
+                intervalMs, maxConcurrency, perHostTimeout.toMillis());
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private void scheduleRound(Supplier<Map<String, String>> targets, long intervalMs, long delayMs) {
+        ScheduledExecutorService s = scheduler;
+        if (s == null || s.isShutdown()) return;
+        s.schedule(() -> {
+            CompletableFuture<Snapshot> round;
+            try {
+                round = scrapeOnce(targets.get());
+            } catch (Throwable t) {
+                log.warn("Scrape round failed to start: {}", t.toString());
+                round = CompletableFuture.completedFuture(snapshot);
+            }
+            round.whenComplete((snap, err) -> {
+                if (err != null) log.warn("Scrape round failed: {}", err.toString());
+                scheduleRound(targets, intervalMs, jittered(intervalMs));
+            });
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    static long jittered(long intervalMs) {
+        long spread = (long) (intervalMs * JITTER_FRACTION);
+        if (spread <= 0) return intervalMs;
+        return intervalMs + ThreadLocalRandom.current().nextLong(-spread, spread + 1);
+    }
+
+    /**
+     * Runs one round against {@code targets} and publishes the resulting snapshot. Containers
+     * whose metrics fetch failed this round keep their previous values (flagged not fresh);
+     * containers no longer in {@code targets} are dropped.
+     */
+    public CompletableFuture<Snapshot> scrapeOnce(Map<String, String> targets) {
+        if (targets == null || targets.isEmpty()) {
+            return CompletableFuture.completedFuture(publish(Collections.emptyMap(), Collections.emptyMap()));
+        }
+        Queue<Map.Entry<String, String>> pending = new ConcurrentLinkedQueue<>(targets.entrySet());
+        Map<String, Sample> fresh = new ConcurrentHashMap<>();
+        AtomicInteger remaining = new AtomicInteger(targets.size());
+        CompletableFuture<Snapshot> done = new CompletableFuture<>();
+        int initial = Math.min(maxConcurrency, targets.size());
+        for (int i = 0; i < initial; i++) {
+            dispatchNext(pending, fresh, remaining, targets, done);
+        }
+        return done;
+    }
+
+    private void dispatchNext(Queue<Map.Entry<String, String>> pending, Map<String, Sample> fresh,
+                              AtomicInteger remaining, Map<String, String> targets,
+                              CompletableFuture<Snapshot> done) {
+        Map.Entry<String, String> next = pending.poll();
+        if (next == null) return;
+        String cid = next.getKey();
+        String host = next.getValue();
+        fetch(cid, host).whenComplete((sample, err) -> {
+            if (sample != null) {
+                fresh.put(cid, sample);
+                if (sample.fresh) metrics.updateQueueDepth(cid, sample.queueDepth);
+            }
+            if (remaining.decrementAndGet() == 0) {
+                done.complete(publish(targets, fresh));
+            } else {
+                dispatchNext(pending, fresh, remaining, targets, done);
+            }
+        });
+    }
+
+    private CompletableFuture<Sample> fetch(String cid, String host) {
+        Sample previous = snapshot.get(cid);
+        if (!hostGuard.test(host)) {
+            return CompletableFuture.completedFuture(Sample.empty(cid, host));
+        }
+        CompletableFuture<String> raw = get(host, metricsPort, "/metrics", false);
+        CompletableFuture<Boolean> ready = probeReady(host);
+        CompletableFuture<String> models = get(host, tritonPort, "/v2/repository/index", true);
+        return CompletableFuture.allOf(raw, ready, models).handle((v, err) -> {
+            String body = raw.getNow(null);
+            String index = models.getNow(null);
+            boolean isReady = Boolean.TRUE.equals(ready.getNow(false));
+            String modelsJson = index != null ? index : (previous != null ? previous.loadedModelsJson : null);
+            // Only a fresh index moves placement; a carried-over one could undo a load event.
+            Set<String> readyModels = index != null ? ModelPlacement.readyModels(index) : null;
+            if (readyModels != null) metrics.getModelPlacement().update(cid, readyModels);
+            if (body != null) {
+                return new Sample(cid, host,
+                        metrics.parseLoadFromMetrics(body),
+                        metrics.parseQueueDepthFromMetrics(body),
+                        metrics.parseGpuMetricsStructured(body),
+                        isReady, modelsJson, System.currentTimeMillis(), true);
+            }
+            if (previous != null) {
+                return new Sample(cid, host, previous.gpuUtil, previous.queueDepth, previous.gpus,
+                        isReady, modelsJson, previous.fetchedAtMs, false);
+            }
+            return new Sample(cid, host, 0.0, 0, null, isReady, modelsJson, 0L, false);
+        });
+    }
+
+    /** Readiness probe behind a per-host breaker so a dead NodeManager isn't dialed every round. */
+    private CompletableFuture<Boolean> probeReady(String host) {
+        SlidingWindowCircuitBreaker cb = readinessBreakers.computeIfAbsent(host,
+                h -> SlidingWindowCircuitBreaker.forHealthCheck("readiness:" + h, metrics));
+        SlidingWindowCircuitBreaker.Permit permit = cb.tryAcquirePermission();
+        if (permit == null) {
+            log.debug("Circuit breaker OPEN for host {}, skipping readiness probe", host);
+            return CompletableFuture.completedFuture(false);
+        }
+        long start = System.nanoTime();
+        return get(host, tritonPort, "/v2/health/ready", false).thenApply(body -> {
+            if (body != null) {
+                cb.onSuccess(permit, System.nanoTime() - start);
+                return true;
+            }
+            cb.onError(permit, System.nanoTime() - start);
+            return false;
+        });
+    }
+
+    /** Body of a 200 response, or null on any failure or deadline. Never completes exceptionally. */
+    private CompletableFuture<String> get(String host, int port, String path, boolean post) {
+        HttpRequest request;
+        try {
+            HttpRequest.Builder b = HttpRequest.newBuilder()
+                    .uri(URI.create("http://" + host + ":" + port + path))
+                    .timeout(perHostTimeout);
+            // Triton's repository index is a POST.
+            request = post ? b.POST(HttpRequest.BodyPublishers.noBody()).build() : b.build();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                // Request timeout only covers the headers; bound the body read as well.
+                .orTimeout(perHostTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .handle((resp, err) -> {
+                    if (err != null) {
+                        log.debug("Scrape of {}{} failed: {}", host, path, err.toString());
+                        return null;
+                    }
+                    if (resp.statusCode() != 200) {
+                        log.debug("Scrape of {}{} returned HTTP {}", host, path, resp.statusCode());
+                        return null;
+                    }
+                    return resp.body();
+                });
+    }
+
+    private Snapshot publish(Map<String, String> targets, Map<String, Sample> fresh) {
+        Map<String, Sample> merged = new HashMap<>(targets.size() * 2);
+        for (Map.Entry<String, String> t : targets.entrySet()) {
+            Sample s = fresh.get(t.getKey());
+            merged.put(t.getKey(), s != null ? s : Sample.empty(t.getKey(), t.getValue()));
+        }
+        Set<String> hosts = new HashSet<>(targets.values());
+        readinessBreakers.entrySet().removeIf(e -> {
+            if (hosts.contains(e.getKey())) return false;
+            metrics.removeCircuit(e.getValue().getName());
+            return true;
+        });
+        metrics.getModelPlacement().retain(targets.keySet());
+        Snapshot next = new Snapshot(System.currentTimeMillis(), Collections.unmodifiableMap(merged));
+        snapshot = next;
+        return next;
+    }
+}
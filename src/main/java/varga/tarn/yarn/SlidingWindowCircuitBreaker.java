@@ -0,0 +1,462 @@
+package varga.tarn.yarn;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker that trips on the failure rate and the slow-call rate over a sliding
+ * window, rather than on a run of consecutive failures.
+ *
+ * <p>{@link CircuitBreaker} resets its count on every success, so a backend failing every
+ * other call never trips it, and it cannot tell a slow call from a fast one. This breaker
+ * records each outcome in a window of the last {@code windowSize} calls ({@link WindowType#COUNT})
+ * or of the last {@code windowSize} seconds ({@link WindowType#TIME}). It opens once the
+ * window holds at least {@code minimumCalls} calls and either the share of failures reaches
+ * {@code failureRateThreshold} or the share of calls slower than {@code slowCallDurationMs}
+ * reaches {@code slowCallRateThreshold} (both in percent).
+ *
+ * <p>After {@code openWaitMs} it lets exactly {@code halfOpenPermits} probes through. Each
+ * half-open period has its own permit and result counters, so a late transition cannot reset
+ * counters another thread is using. Once every probe has reported, the same thresholds close
+ * the breaker (with an empty window) or open it again. Every permitted call must report its
+ * outcome with the {@link Permit} it was granted, and is counted in the phase that granted
+ * it: a call let through while closed that completes during a probe is not taken for a probe.
+ *
+ * <p>Nothing on the recording path locks. The count window is a ring of outcome slots whose
+ * totals are kept in a single packed {@code long}; the time window is a ring of per-second
+ * buckets, each one packed {@code long} updated by CAS. A success does no more than record
+ * itself, since it cannot raise either rate; thresholds are only checked after a failed or slow
+ * call. State changes are CAS transitions between immutable phases, and each one is published
+ * to {@link MetricsCollector} by the thread that made it.
+ */
+public class SlidingWindowCircuitBreaker {
+    private static final Logger log = LoggerFactory.getLogger(SlidingWindowCircuitBreaker.class);
+
+    public enum WindowType {
+        COUNT,  // the last windowSize calls
+        TIME    // the calls of the last windowSize seconds
+    }
+
+    private final String name;
+    private final int minimumCalls;
+    private final float failureRateThreshold;
+    private final float slowCallRateThreshold;
+    private final long slowCallDurationNanos;
+    private final long openWaitNanos;
+    private final int halfOpenPermits;
+    private final WindowType windowType;
+    private final int windowSize;
+    private final MetricsCollector metrics;
+    private final LongSupplier nanoClock;
+
+    private final AtomicReference<Phase> phase;
+
+    public SlidingWindowCircuitBreaker(String name, WindowType windowType, int windowSize, int minimumCalls,
+                                       float failureRateThreshold, float slowCallRateThreshold,
+                                       long slowCallDurationMs, long openWaitMs, int halfOpenPermits,
+                                       MetricsCollector metrics) {
+        this(name, windowType, windowSize, minimumCalls, failureRateThreshold, slowCallRateThreshold,
+                slowCallDurationMs, openWaitMs, halfOpenPermits, metrics, System::nanoTime);
+    }
+
+    SlidingWindowCircuitBreaker(String name, WindowType windowType, int windowSize, int minimumCalls,
+                                float failureRateThreshold, float slowCallRateThreshold,
+                                long slowCallDurationMs, long openWaitMs, int halfOpenPermits,
+                                MetricsCollector metrics, LongSupplier nanoClock) {
+        if (windowSize < 1 || windowSize > Window.MAX_CALLS) {
+            throw new IllegalArgumentException("windowSize must be between 1 and " + Window.MAX_CALLS);
+        }
+        if (halfOpenPermits < 1 || halfOpenPermits > Window.MAX_CALLS) {
+            throw new IllegalArgumentException("halfOpenPermits must be between 1 and " + Window.MAX_CALLS);
+        }
+        this.name = name;
+        this.windowType = windowType;
+        this.windowSize = windowSize;
+        this.minimumCalls = Math.max(1, minimumCalls);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDurationNanos = TimeUnit.MILLISECONDS.toNanos(slowCallDurationMs);
+        this.openWaitNanos = TimeUnit.MILLISECONDS.toNanos(openWaitMs);
+        this.halfOpenPermits = halfOpenPermits;
+        this.metrics = metrics;
+        this.nanoClock = nanoClock;
+        this.phase = new AtomicReference<>(Phase.closed(newWindow()));
+        if (metrics != null) metrics.recordCircuitTransition(name, null, label(CircuitBreaker.State.CLOSED));
+    }
+
+    /**
+     * Leave for one call, tied to the phase that granted it. Each phase hands out the same
+     * instance, so acquiring one allocates nothing.
+     */
+    public static final class Permit {
+        private final Phase phase;
+
+        private Permit(Phase phase) {
+            this.phase = phase;
+        }
+    }
+
+    /**
+     * Creates a breaker for inference calls: it opens when half of the last 100 calls failed
+     * or 80% took longer than 10 seconds (once 20 were made), and probes with 5 calls after
+     * 30 seconds.
+     */
+    public static SlidingWindowCircuitBreaker forInference(String name, MetricsCollector metrics) {
+        return new SlidingWindowCircuitBreaker(name, WindowType.COUNT, 100, 20, 50f, 80f, 10_000, 30_000, 5, metrics);
+    }
+
+    /**
+     * Creates a breaker for Triton health checks: it opens when half of the last 10 probes
+     * failed, or all took longer than 5 seconds (once 5 were made), and lets one probe through
+     * after 30 seconds.
+     */
+    public static SlidingWindowCircuitBreaker forHealthCheck(String name, MetricsCollector metrics) {
+        return new SlidingWindowCircuitBreaker(name, WindowType.COUNT, 10, 5, 50f, 100f, 5_000, 30_000, 1, metrics);
+    }
+
+    /**
+     * Execute an operation through the circuit breaker; exceptions count as failures.
+     *
+     * @param operation the operation to execute
+     * @param fallback  fallback value if the circuit is open or the operation fails
+     * @param <T>       return type
+     * @return the result of the operation or fallback
+     */
+    public <T> T execute(Callable<T> operation, T fallback) {
+        Permit permit = tryAcquirePermission();
+        if (permit == null) {
+            log.debug("Circuit breaker {} is {}, returning fallback", name, getState());
+            return fallback;
+        }
+        long start = nanoClock.getAsLong();
+        try {
+            T result = operation.call();
+            onSuccess(permit, nanoClock.getAsLong() - start);
+            return result;
+        } catch (Exception e) {
+            onError(permit, nanoClock.getAsLong() - start);
+            log.warn("Circuit breaker {} recorded failure: {}", name, e.getMessage());
+            return fallback;
+        }
+    }
+
+    /**
+     * Leave for a call, or null when it may not go through: granted always when closed, never
+     * while open, and to as many callers as there are probe permits once half-open.
+     */
+    public Permit tryAcquirePermission() {
+        while (true) {
+            Phase p = phase.get();
+            switch (p.state) {
+                case CLOSED:
+                    return p.permit;
+                case HALF_OPEN:
+                    for (int n = p.permits.get(); n > 0; n = p.permits.get()) {
+                        if (p.permits.compareAndSet(n, n - 1)) return p.permit;
+                    }
+                    return null;
+                default:
+                    if (nanoClock.getAsLong() - p.openedAt < openWaitNanos) return null;
+                    transition(p, Phase.halfOpen(halfOpenPermits));
+                    // Whoever won the transition, take a permit from the current phase.
+            }
+        }
+    }
+
+    /** The call {@code permit} was granted for completed normally after {@code durationNanos}. */
+    public void onSuccess(Permit permit, long durationNanos) {
+        record(permit.phase, false, durationNanos);
+    }
+
+    /** The call {@code permit} was granted for failed after {@code durationNanos}. */
+    public void onError(Permit permit, long durationNanos) {
+        record(permit.phase, true, durationNanos);
+    }
+
+    /**
+     * Counts an outcome in the phase {@code p} that granted the call. Once the breaker has
+     * moved on, the counters written are discarded ones and the transition CAS fails.
+     */
+    private void record(Phase p, boolean failed, long durationNanos) {
+        boolean slow = durationNanos >= slowCallDurationNanos;
+        switch (p.state) {
+            case CLOSED: {
+                // A count window has no use for the clock.
+                long now = windowType == WindowType.TIME ? nanoClock.getAsLong() : 0L;
+                p.window.record(failed, slow, now);
+                if ((failed || slow) && exceeded(p.window.totals(now))) {
+                    transition(p, Phase.open(nanoClock.getAsLong()));
+                }
+                break;
+            }
+            case HALF_OPEN: {
+                long totals = p.probes.addAndGet(Window.pack(1, failed ? 1 : 0, slow ? 1 : 0));
+                // Only the report that completes the probe set decides.
+                if (Window.calls(totals) == halfOpenPermits) {
+                    transition(p, exceeded(totals, 1) ? Phase.open(nanoClock.getAsLong()) : Phase.closed(newWindow()));
+                }
+                break;
+            }
+            default:
+                // Open phases grant nothing.
+        }
+    }
+
+    private boolean exceeded(long totals) {
+        return exceeded(totals, minimumCalls);
+    }
+
+    private boolean exceeded(long totals, int minimum) {
+        int calls = Window.calls(totals);
+        if (calls < minimum) return false;
+        return 100f * Window.failures(totals) >= failureRateThreshold * calls
+                || 100f * Window.slowCalls(totals) >= slowCallRateThreshold * calls;
+    }
+
+    private void transition(Phase from, Phase to) {
+        if (!phase.compareAndSet(from, to)) return;
+        if (to.state == CircuitBreaker.State.OPEN) {
+            log.warn("Circuit breaker {} {} -> OPEN (failure rate {}%, slow call rate {}%)",
+                    name, from.state, rate(from, true), rate(from, false));
+        } else {
+            log.info("Circuit breaker {} {} -> {}", name, from.state, to.state);
+        }
+        if (metrics != null) metrics.recordCircuitTransition(name, label(from.state), label(to.state));
+    }
+
+    private float rate(Phase p, boolean failures) {
+        long totals = p.state == CircuitBreaker.State.CLOSED ? p.window.totals(nanoClock.getAsLong()) : p.probes.get();
+        int calls = Window.calls(totals);
+        if (calls == 0) return 0f;
+        return 100f * (failures ? Window.failures(totals) : Window.slowCalls(totals)) / calls;
+    }
+
+    private static String label(CircuitBreaker.State state) {
+        return state.name().toLowerCase(Locale.ROOT);
+    }
+
+    public CircuitBreaker.State getState() {
+        return phase.get().state;
+    }
+
+    /** Failure rate in percent over the current window (or probe set), -1 below the minimum calls. */
+    public float getFailureRate() {
+        return currentRate(true);
+    }
+
+    /** Slow-call rate in percent over the current window (or probe set), -1 below the minimum calls. */
+    public float getSlowCallRate() {
+        return currentRate(false);
+    }
+
+    private float currentRate(boolean failures) {
+        Phase p = phase.get();
+        if (p.state == CircuitBreaker.State.OPEN) return -1f;
+        long totals = p.state == CircuitBreaker.State.CLOSED ? p.window.totals(nanoClock.getAsLong()) : p.probes.get();
+        if (Window.calls(totals) < (p.state == CircuitBreaker.State.CLOSED ? minimumCalls : 1)) return -1f;
+        return rate(p, failures);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private Window newWindow() {
+        return windowType == WindowType.COUNT ? new CountWindow(windowSize) : new TimeWindow(windowSize);
+    }
+
+    /** One state of the breaker with the counters that only make sense in it. */
+    private static final class Phase {
+        final CircuitBreaker.State state;
+        final Window window;          // CLOSED
+        final long openedAt;          // OPEN
+        final AtomicInteger permits;  // HALF_OPEN
+        final AtomicLong probes;      // HALF_OPEN: packed totals of the probes reported so far
+        final Permit permit = new Permit(this);
+
+        private Phase(CircuitBreaker.State state, Window window, long openedAt, int permits) {
+            this.state = state;
+            this.window = window;
+            this.openedAt = openedAt;
+            this.permits = new AtomicInteger(permits);
+            this.probes = new AtomicLong();
+        }
+
+        static Phase closed(Window window) {
+            return new Phase(CircuitBreaker.State.CLOSED, window, 0L, 0);
+        }
+
+        static Phase open(long now) {
+            return new Phase(CircuitBreaker.State.OPEN, null, now, 0);
+        }
+
+        static Phase halfOpen(int permits) {
+            return new Phase(CircuitBreaker.State.HALF_OPEN, null, 0L, permits);
+        }
+    }
+
+    /**
+     * Outcome window. Totals are packed into one {@code long} as three signed 21-bit fields —
+     * calls, failures, slow calls — so one atomic add updates all three and the packing stays
+     * linear: concurrent adds and removals may briefly drive a field below zero without
+     * corrupting its neighbours.
+     */
+    abstract static class Window {
+        static final int MAX_CALLS = (1 << 20) - 1;
+        private static final int BITS = 21;
+
+        abstract void record(boolean failed, boolean slow, long nowNanos);
+
+        abstract long totals(long nowNanos);
+
+        static long pack(long calls, long failures, long slow) {
+            return calls + (failures << BITS) + (slow << (2 * BITS));
+        }
+
+        private static int field(long packed, int index) {
+            long v = packed;
+            int f = 0;
+            for (int i = 0; i <= index; i++) {
+                f = (int) (v << (64 - BITS) >> (64 - BITS));
+                v = (v - f) >> BITS;
+            }
+            return Math.max(0, f);
+        }
+
+        static int calls(long packed) {
+            return field(packed, 0);
+        }
+
+        static int failures(long packed) {
+            return field(packed, 1);
+        }
+
+        static int slowCalls(long packed) {
+            return field(packed, 2);
+        }
+    }
+
+    /** The last {@code size} calls: a ring of outcome slots and their running totals. */
+    static final class CountWindow extends Window {
+        // Slot codes: 0 empty, otherwise 1 | failed << 1 | slow << 2.
+        private final AtomicIntegerArray slots;
+        private final AtomicInteger cursor = new AtomicInteger();
+        private final AtomicLong totals = new AtomicLong();
+
+        CountWindow(int size) {
+            this.slots = new AtomicIntegerArray(size);
+        }
+
+        @Override
+        void record(boolean failed, boolean slow, long nowNanos) {
+            int code = 1 | (failed ? 2 : 0) | (slow ? 4 : 0);
+            int index = Integer.remainderUnsigned(cursor.getAndIncrement(), slots.length());
+            int old = slots.getAndSet(index, code);
+            totals.addAndGet(delta(code) - delta(old));
+        }
+
+        private static long delta(int code) {
+            return code == 0 ? 0L : pack(1, (code >> 1) & 1, (code >> 2) & 1);
+        }
+
+        @Override
+        long totals(long nowNanos) {
+            return totals.get();
+        }
+    }
+
+    /**
+     * The calls of the last {@code seconds} seconds: a ring of one-second buckets. Each bucket
+     * is a single {@code long} holding the second it counts (low 19 bits, enough to tell
+     * apart six days of seconds) and three 15-bit counts, so recycling a stale bucket and
+     * counting into it is one CAS. A bucket stops counting at 32767 calls per second.
+     */
+    static final class TimeWindow extends Window {
+        private static final int EPOCH_BITS = 19;
+        private static final long EPOCH_MASK = (1L << EPOCH_BITS) - 1;
+        private static final int COUNT_BITS = 15;
+        private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+        private final AtomicLongArray buckets;
+
+        TimeWindow(int seconds) {
+            this.buckets = new AtomicLongArray(seconds);
+        }
+
+        @Override
+        void record(boolean failed, boolean slow, long nowNanos) {
+            long second = TimeUnit.NANOSECONDS.toSeconds(nowNanos);
+            int index = (int) Math.floorMod(second, (long) buckets.length());
+            long epoch = second & EPOCH_MASK;
+            while (true) {
+                long v = buckets.get(index);
+                long calls, failures, slowCalls;
+                if ((v & EPOCH_MASK) == epoch) {
+                    calls = count(v, 0);
+                    failures = count(v, 1);
+                    slowCalls = count(v, 2);
+                    if (calls == COUNT_MASK) return;
+                } else {
+                    calls = failures = slowCalls = 0;
+                }
+                long next = epoch
+                        | (calls + 1) << EPOCH_BITS
+                        | (failures + (failed ? 1 : 0)) << (EPOCH_BITS + COUNT_BITS)
+                        | (slowCalls + (slow ? 1 : 0)) << (EPOCH_BITS + 2 * COUNT_BITS);
+                if (buckets.compareAndSet(index, v, next)) return;
+            }
+        }
+
+        private static long count(long bucket, int field) {
+            return (bucket >>> (EPOCH_BITS + field * COUNT_BITS)) & COUNT_MASK;
+        }
+
+        @Override
+        long totals(long nowNanos) {
+            long second = TimeUnit.NANOSECONDS.toSeconds(nowNanos);
+            int n = buckets.length();
+            long calls = 0, failures = 0, slowCalls = 0;
+            for (int i = 0; i < n; i++) {
+                // The second within the window that maps onto bucket i.
+                long expected = second - Math.floorMod(second - i, (long) n);
+                long v = buckets.get(i);
+                if (v != 0 && (v & EPOCH_MASK) == (expected & EPOCH_MASK)) {
+                    calls += count(v, 0);
+                    failures += count(v, 1);
+                    slowCalls += count(v, 2);
+                }
+            }
+            return pack(Math.min(calls, MAX_CALLS), Math.min(failures, MAX_CALLS), Math.min(slowCalls, MAX_CALLS));
+        }
+    }
+}
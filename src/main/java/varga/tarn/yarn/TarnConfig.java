@@ -53,6 +53,10 @@ public class TarnConfig {
     public String rangerAppId;
     public boolean rangerAudit;
     public boolean rangerStrict;
+    // User -> groups cache for Ranger and quota checks; a TTL of 0 resolves on every request.
+    // Users without groups (or whose lookup failed) are cached for the shorter negative TTL.
+    public long groupCacheTtlMs;
+    public long groupCacheNegativeTtlMs;
     public boolean zkRequired;
     // Local path to a JAAS config file (e.g. for SASL/Kerberos ZK auth). The Client uploads
     // it to HDFS as a LocalResource and sets JAVA_TOOL_OPTIONS on the AM container so the
@@ -60,6 +64,11 @@ public class TarnConfig {
     public String zkJaasPath;
     public long drainTimeoutMs;
     public long monitorIntervalMs;
+    // Backend /metrics scrape engine: runs independently of the monitor loop, which only reads
+    // the latest snapshot. Concurrency bounds in-flight scrapes; timeout is per host.
+    public long scrapeIntervalMs;
+    public int scrapeConcurrency;
+    public long scrapeTimeoutMs;
     // TLS for the AM HTTP server. When enabled, --tls-keystore must be set.
     public boolean tlsEnabled;
     public String tlsKeystorePath;
@@ -68,6 +77,73 @@ public class TarnConfig {
     // OpenAI proxy configuration — zero impact when unset.
     public boolean openaiProxyEnabled;
     public int openaiProxyPort;
+    // Proxy engine: httpserver (JDK HttpServer, thread per exchange) | jetty (async servlets,
+    // non-blocking relay). proxyExecutor/proxyMaxConcurrency apply to the httpserver engine.
+    public String proxyEngine;
+    // Proxy exchange execution: platform (fixed pool) | virtual (thread per exchange, JDK 21+;
+    // a fixed pool of proxyMaxConcurrency threads before that). In virtual mode
+    // proxyMaxConcurrency caps running exchanges; the rest are reported queued.
+    public String proxyExecutor;
+    public int proxyMaxConcurrency;
+    // Largest accepted proxy request body; bigger requests get 413 before reaching a backend.
+    public int proxyMaxBodyBytes;
+    // Backend choice: least_loaded (power-of-two-choices) | prefix_affinity (bounded-load
+    // consistent hash of the session header or prompt prefix, for KV / prefix-cache reuse).
+    public String proxyRouting;
+    // prefix_affinity: a container takes a key only while its load is within this factor of the
+    // fleet average; past it the key spills to the next container on the ring.
+    public double proxyAffinityLoadFactor;
+    // prefix_affinity: prompt characters hashed into the routing key.
+    public int proxyAffinityPrefixChars;
+    // base#lora requests: most containers an adapter is kept warm on, and the request rate one
+    // of them absorbs before the adapter is loaded on another.
+    public int proxyLoraMaxReplicas;
+    public double proxyLoraRpsPerReplica;
+    // Off-heap bytes for cached /v1/embeddings vectors; 0 disables the cache.
+    public long proxyEmbeddingsCacheBytes;
+    // /v1/embeddings micro-batching: most inputs merged into one upstream call (0 or 1 disables
+    // it) and the longest a request waits for company, in microseconds.
+    public int proxyEmbeddingsBatchMaxInputs;
+    public long proxyEmbeddingsBatchMaxWaitUs;
+    // Completion response cache for deterministic requests: comma-separated opted-in models
+    // ("*" for all, empty disables it), entry and byte bounds, and time to live.
+    public String proxyResponseCacheModels;
+    public int proxyResponseCacheMaxEntries;
+    public long proxyResponseCacheMaxBytes;
+    public long proxyResponseCacheTtlMs;
+    // Identical in-flight deterministic requests share one upstream call.
+    public boolean proxyCoalesce;
+    // Adaptive per-container concurrency limit (gradient on upstream RTT, backoff on errors):
+    // on/off, ceiling of each limit, and how long a request waits for a free slot before 503.
+    public boolean proxyConcurrencyLimit;
+    public int proxyConcurrencyMaxLimit;
+    public long proxyConcurrencyQueueMs;
+    // Most requests held in the fair admission queue while every backend is at its limit.
+    public int proxyAdmissionQueueMax;
+    // Hedged requests: comma-separated opted-in models ("*" for all, empty disables it) and
+    // the extra load hedges may add, in percent of hedgeable requests.
+    public String proxyHedgeModels;
+    public double proxyHedgeBudgetPercent;
+    // Passive outlier detection: eject containers that fail or lag from routing, for a base
+    // period doubled on each repeat, never more than a percentage of the fleet at once.
+    public boolean proxyOutlierDetection;
+    public int proxyOutlierConsecutiveErrors;
+    public long proxyOutlierBaseEjectionMs;
+    public int proxyOutlierMaxEjectionPercent;
+    // Other containers a request is resent to when the connection to its backend fails.
+    public int proxyConnectRetries;
+    // Model control: none (Triton loads the whole repository) | explicit (the AM's placement
+    // controller loads and unloads models per container through Triton's repository API).
+    public String modelControlMode;
+    // explicit: request rate one replica of a model absorbs before another is loaded.
+    public double placementRpsPerReplica;
+    // explicit: GPU memory fraction above which a container takes no new models and evicts
+    // its least recently used one.
+    public double placementMemoryWatermark;
+    // explicit: recent p95 latency above which a busy model gets one extra replica; 0 disables.
+    public long placementLatencyTargetMs;
+    // explicit: a model with no request for this long is cold (no replica kept for it).
+    public long placementIdleMs;
     // Observability.
     public String otelEndpoint;
     // Scaling strategy: gpu_util | queue_depth | composite. Composite is safe default for
@@ -129,17 +205,55 @@ public class TarnConfig {
         rangerAudit = Boolean.parseBoolean(getEnv("RANGER_AUDIT", "true"));
         // Default to strict mode when Ranger is configured: fail-closed if plugin init fails.
         rangerStrict = Boolean.parseBoolean(getEnv("RANGER_STRICT", rangerService != null ? "true" : "false"));
+        groupCacheTtlMs = Long.parseLong(getEnv("GROUP_CACHE_TTL_MS", "300000"));
+        groupCacheNegativeTtlMs = Long.parseLong(getEnv("GROUP_CACHE_NEGATIVE_TTL_MS", "30000"));
         // Default to required-ZK when an ensemble is configured.
         zkRequired = Boolean.parseBoolean(getEnv("ZK_REQUIRED", zkEnsemble != null ? "true" : "false"));
         zkJaasPath = getEnv("ZK_JAAS", null);
         drainTimeoutMs = Long.parseLong(getEnv("DRAIN_TIMEOUT_MS", "30000"));
         monitorIntervalMs = Long.parseLong(getEnv("MONITOR_INTERVAL_MS", "15000"));
+        scrapeIntervalMs = Long.parseLong(getEnv("SCRAPE_INTERVAL_MS", "5000"));
+        scrapeConcurrency = Integer.parseInt(getEnv("SCRAPE_CONCURRENCY", "64"));
+        scrapeTimeoutMs = Long.parseLong(getEnv("SCRAPE_TIMEOUT_MS", "3000"));
         tlsEnabled = Boolean.parseBoolean(getEnv("TLS_ENABLED", "false"));
         tlsKeystorePath = getEnv("TLS_KEYSTORE_PATH", null);
         tlsKeystorePasswordAlias = getEnv("TLS_KEYSTORE_PASSWORD_ALIAS", "tarn.tls.keystore.password");
         tlsKeystoreType = getEnv("TLS_KEYSTORE_TYPE", "JKS");
         openaiProxyEnabled = Boolean.parseBoolean(getEnv("OPENAI_PROXY_ENABLED", "false"));
         openaiProxyPort = Integer.parseInt(getEnv("OPENAI_PROXY_PORT", "9000"));
+        proxyEngine = getEnv("PROXY_ENGINE", "httpserver");
+        proxyExecutor = getEnv("PROXY_EXECUTOR", "platform");
+        proxyMaxConcurrency = Integer.parseInt(getEnv("PROXY_MAX_CONCURRENCY", "1024"));
+        proxyMaxBodyBytes = Integer.parseInt(getEnv("PROXY_MAX_BODY_BYTES", String.valueOf(16 * 1024 * 1024)));
+        proxyRouting = getEnv("PROXY_ROUTING", "least_loaded");
+        proxyAffinityLoadFactor = Double.parseDouble(getEnv("PROXY_AFFINITY_LOAD_FACTOR", "1.25"));
+        proxyAffinityPrefixChars = Integer.parseInt(getEnv("PROXY_AFFINITY_PREFIX_CHARS", "2048"));
+        proxyLoraMaxReplicas = Integer.parseInt(getEnv("PROXY_LORA_MAX_REPLICAS", "3"));
+        proxyLoraRpsPerReplica = Double.parseDouble(getEnv("PROXY_LORA_RPS_PER_REPLICA", "2.0"));
+        proxyEmbeddingsCacheBytes = Long.parseLong(getEnv("PROXY_EMBEDDINGS_CACHE_BYTES", "0"));
+        proxyEmbeddingsBatchMaxInputs = Integer.parseInt(getEnv("PROXY_EMBEDDINGS_BATCH_MAX_INPUTS", "0"));
+        proxyEmbeddingsBatchMaxWaitUs = Long.parseLong(getEnv("PROXY_EMBEDDINGS_BATCH_MAX_WAIT_US", "2000"));
+        proxyResponseCacheModels = getEnv("PROXY_RESPONSE_CACHE_MODELS", "");
+        proxyResponseCacheMaxEntries = Integer.parseInt(getEnv("PROXY_RESPONSE_CACHE_MAX_ENTRIES", "10000"));
+        proxyResponseCacheMaxBytes = Long.parseLong(getEnv("PROXY_RESPONSE_CACHE_MAX_BYTES", String.valueOf(64L * 1024 * 1024)));
+        proxyResponseCacheTtlMs = Long.parseLong(getEnv("PROXY_RESPONSE_CACHE_TTL_MS", "300000"));
+        proxyCoalesce = Boolean.parseBoolean(getEnv("PROXY_COALESCE", "false"));
+        proxyConcurrencyLimit = Boolean.parseBoolean(getEnv("PROXY_CONCURRENCY_LIMIT", "false"));
+        proxyConcurrencyMaxLimit = Integer.parseInt(getEnv("PROXY_CONCURRENCY_MAX_LIMIT", "256"));
+        proxyConcurrencyQueueMs = Long.parseLong(getEnv("PROXY_CONCURRENCY_QUEUE_MS", "50"));
+        proxyAdmissionQueueMax = Integer.parseInt(getEnv("PROXY_ADMISSION_QUEUE_MAX", "1024"));
+        proxyHedgeModels = getEnv("PROXY_HEDGE_MODELS", "");
+        proxyHedgeBudgetPercent = Double.parseDouble(getEnv("PROXY_HEDGE_BUDGET_PERCENT", "5.0"));
+        proxyOutlierDetection = Boolean.parseBoolean(getEnv("PROXY_OUTLIER_DETECTION", "false"));
+        proxyOutlierConsecutiveErrors = Integer.parseInt(getEnv("PROXY_OUTLIER_CONSECUTIVE_ERRORS", "5"));
+        proxyOutlierBaseEjectionMs = Long.parseLong(getEnv("PROXY_OUTLIER_BASE_EJECTION_MS", "30000"));
+        proxyOutlierMaxEjectionPercent = Integer.parseInt(getEnv("PROXY_OUTLIER_MAX_EJECTION_PERCENT", "50"));
+        proxyConnectRetries = Integer.parseInt(getEnv("PROXY_CONNECT_RETRIES", "2"));
+        modelControlMode = getEnv("MODEL_CONTROL_MODE", "none");
+        placementRpsPerReplica = Double.parseDouble(getEnv("PLACEMENT_RPS_PER_REPLICA", "4.0"));
+        placementMemoryWatermark = Double.parseDouble(getEnv("PLACEMENT_MEMORY_WATERMARK", "0.85"));
+        placementLatencyTargetMs = Long.parseLong(getEnv("PLACEMENT_LATENCY_TARGET_MS", "0"));
+        placementIdleMs = Long.parseLong(getEnv("PLACEMENT_IDLE_MS", "600000"));
         otelEndpoint = getEnv("OTEL_EXPORTER_OTLP_ENDPOINT", null);
         scaleMode = getEnv("SCALE_MODE", "composite");
         queueCapacityPerContainer = Integer.parseInt(getEnv("QUEUE_CAPACITY_PER_CONTAINER", "16"));
@@ -211,16 +325,54 @@ public class TarnConfig {
         if (line.hasOption("cooldown")) scaleCooldownMs = Long.parseLong(line.getOptionValue("cooldown"));
         if (line.hasOption("client-port")) clientPort = Integer.parseInt(line.getOptionValue("client-port"));
         if (line.hasOption("ranger-strict")) rangerStrict = true;
+        if (line.hasOption("group-cache-ttl-ms")) groupCacheTtlMs = Long.parseLong(line.getOptionValue("group-cache-ttl-ms"));
+        if (line.hasOption("group-cache-negative-ttl-ms")) groupCacheNegativeTtlMs = Long.parseLong(line.getOptionValue("group-cache-negative-ttl-ms"));
         if (line.hasOption("zk-required")) zkRequired = true;
         if (line.hasOption("zk-jaas")) zkJaasPath = line.getOptionValue("zk-jaas");
         if (line.hasOption("drain-timeout-ms")) drainTimeoutMs = Long.parseLong(line.getOptionValue("drain-timeout-ms"));
         if (line.hasOption("monitor-interval-ms")) monitorIntervalMs = Long.parseLong(line.getOptionValue("monitor-interval-ms"));
+        if (line.hasOption("scrape-interval-ms")) scrapeIntervalMs = Long.parseLong(line.getOptionValue("scrape-interval-ms"));
+        if (line.hasOption("scrape-concurrency")) scrapeConcurrency = Integer.parseInt(line.getOptionValue("scrape-concurrency"));
+        if (line.hasOption("scrape-timeout-ms")) scrapeTimeoutMs = Long.parseLong(line.getOptionValue("scrape-timeout-ms"));
         if (line.hasOption("tls-enabled")) tlsEnabled = true;
         if (line.hasOption("tls-keystore")) tlsKeystorePath = line.getOptionValue("tls-keystore");
         if (line.hasOption("tls-keystore-type")) tlsKeystoreType = line.getOptionValue("tls-keystore-type");
         if (line.hasOption("tls-keystore-password-alias")) tlsKeystorePasswordAlias = line.getOptionValue("tls-keystore-password-alias");
         if (line.hasOption("openai-proxy-enabled")) openaiProxyEnabled = true;
         if (line.hasOption("openai-proxy-port")) openaiProxyPort = Integer.parseInt(line.getOptionValue("openai-proxy-port"));
+        if (line.hasOption("proxy-engine")) proxyEngine = line.getOptionValue("proxy-engine");
+        if (line.hasOption("proxy-executor")) proxyExecutor = line.getOptionValue("proxy-executor");
+        if (line.hasOption("proxy-max-concurrency")) proxyMaxConcurrency = Integer.parseInt(line.getOptionValue("proxy-max-concurrency"));
+        if (line.hasOption("proxy-max-body-bytes")) proxyMaxBodyBytes = Integer.parseInt(line.getOptionValue("proxy-max-body-bytes"));
+        if (line.hasOption("proxy-routing")) proxyRouting = line.getOptionValue("proxy-routing");
+        if (line.hasOption("proxy-affinity-load-factor")) proxyAffinityLoadFactor = Double.parseDouble(line.getOptionValue("proxy-affinity-load-factor"));
+        if (line.hasOption("proxy-affinity-prefix-chars")) proxyAffinityPrefixChars = Integer.parseInt(line.getOptionValue("proxy-affinity-prefix-chars"));
+        if (line.hasOption("proxy-lora-max-replicas")) proxyLoraMaxReplicas = Integer.parseInt(line.getOptionValue("proxy-lora-max-replicas"));
+        if (line.hasOption("proxy-lora-rps-per-replica")) proxyLoraRpsPerReplica = Double.parseDouble(line.getOptionValue("proxy-lora-rps-per-replica"));
+        if (line.hasOption("proxy-embeddings-cache-bytes")) proxyEmbeddingsCacheBytes = Long.parseLong(line.getOptionValue("proxy-embeddings-cache-bytes"));
+        if (line.hasOption("proxy-embeddings-batch-max-inputs")) proxyEmbeddingsBatchMaxInputs = Integer.parseInt(line.getOptionValue("proxy-embeddings-batch-max-inputs"));
+        if (line.hasOption("proxy-embeddings-batch-max-wait-us")) proxyEmbeddingsBatchMaxWaitUs = Long.parseLong(line.getOptionValue("proxy-embeddings-batch-max-wait-us"));
+        if (line.hasOption("proxy-response-cache-models")) proxyResponseCacheModels = line.getOptionValue("proxy-response-cache-models");
+        if (line.hasOption("proxy-response-cache-max-entries")) proxyResponseCacheMaxEntries = Integer.parseInt(line.getOptionValue("proxy-response-cache-max-entries"));
+        if (line.hasOption("proxy-response-cache-max-bytes")) proxyResponseCacheMaxBytes = Long.parseLong(line.getOptionValue("proxy-response-cache-max-bytes"));
+        if (line.hasOption("proxy-response-cache-ttl-ms")) proxyResponseCacheTtlMs = Long.parseLong(line.getOptionValue("proxy-response-cache-ttl-ms"));
+        if (line.hasOption("proxy-coalesce")) proxyCoalesce = true;
+        if (line.hasOption("proxy-concurrency-limit")) proxyConcurrencyLimit = true;
+        if (line.hasOption("proxy-concurrency-max-limit")) proxyConcurrencyMaxLimit = Integer.parseInt(line.getOptionValue("proxy-concurrency-max-limit"));
+        if (line.hasOption("proxy-concurrency-queue-ms")) proxyConcurrencyQueueMs = Long.parseLong(line.getOptionValue("proxy-concurrency-queue-ms"));
+        if (line.hasOption("proxy-admission-queue-max")) proxyAdmissionQueueMax = Integer.parseInt(line.getOptionValue("proxy-admission-queue-max"));
+        if (line.hasOption("proxy-hedge-models")) proxyHedgeModels = line.getOptionValue("proxy-hedge-models");
+        if (line.hasOption("proxy-hedge-budget-percent")) proxyHedgeBudgetPercent = Double.parseDouble(line.getOptionValue("proxy-hedge-budget-percent"));
+        if (line.hasOption("proxy-outlier-detection")) proxyOutlierDetection = true;
+        if (line.hasOption("proxy-outlier-consecutive-errors")) proxyOutlierConsecutiveErrors = Integer.parseInt(line.getOptionValue("proxy-outlier-consecutive-errors"));
+        if (line.hasOption("proxy-outlier-base-ejection-ms")) proxyOutlierBaseEjectionMs = Long.parseLong(line.getOptionValue("proxy-outlier-base-ejection-ms"));
+        if (line.hasOption("proxy-outlier-max-ejection-percent")) proxyOutlierMaxEjectionPercent = Integer.parseInt(line.getOptionValue("proxy-outlier-max-ejection-percent"));
+        if (line.hasOption("proxy-connect-retries")) proxyConnectRetries = Integer.parseInt(line.getOptionValue("proxy-connect-retries"));
+        if (line.hasOption("model-control-mode")) modelControlMode = line.getOptionValue("model-control-mode");
+        if (line.hasOption("placement-rps-per-replica")) placementRpsPerReplica = Double.parseDouble(line.getOptionValue("placement-rps-per-replica"));
+        if (line.hasOption("placement-memory-watermark")) placementMemoryWatermark = Double.parseDouble(line.getOptionValue("placement-memory-watermark"));
+        if (line.hasOption("placement-latency-target-ms")) placementLatencyTargetMs = Long.parseLong(line.getOptionValue("placement-latency-target-ms"));
+        if (line.hasOption("placement-idle-ms")) placementIdleMs = Long.parseLong(line.getOptionValue("placement-idle-ms"));
         if (line.hasOption("otel-endpoint")) otelEndpoint = line.getOptionValue("otel-endpoint");
         if (line.hasOption("scale-mode")) scaleMode = line.getOptionValue("scale-mode");
         if (line.hasOption("queue-capacity-per-container")) queueCapacityPerContainer = Integer.parseInt(line.getOptionValue("queue-capacity-per-container"));
@@ -250,6 +402,11 @@ public class TarnConfig {
         if (maxContainers < minContainers) throw new IllegalArgumentException("maxContainers < minContainers");
         if (scaleUpThreshold <= 0 || scaleUpThreshold > 1.0) throw new IllegalArgumentException("scaleUpThreshold must be in (0, 1]");
         if (scaleDownThreshold < 0 || scaleDownThreshold >= scaleUpThreshold) throw new IllegalArgumentException("scaleDownThreshold must be in [0, scaleUpThreshold)");
+        if (scrapeIntervalMs < 100) throw new IllegalArgumentException("scrapeIntervalMs must be >= 100");
+        if (groupCacheTtlMs < 0) throw new IllegalArgumentException("groupCacheTtlMs must be >= 0");
+        if (groupCacheNegativeTtlMs < 0) throw new IllegalArgumentException("groupCacheNegativeTtlMs must be >= 0");
+        if (scrapeConcurrency < 1) throw new IllegalArgumentException("scrapeConcurrency must be >= 1");
+        if (scrapeTimeoutMs <= 0) throw new IllegalArgumentException("scrapeTimeoutMs must be > 0");
         if (tlsEnabled && (tlsKeystorePath == null || tlsKeystorePath.isEmpty())) {
             throw new IllegalArgumentException("--tls-enabled requires --tls-keystore");
         }
@@ -259,6 +416,48 @@ public class TarnConfig {
         if (openaiProxyEnabled && openaiProxyPort == amPort) {
             throw new IllegalArgumentException("openaiProxyPort must differ from amPort");
         }
+        if (!"httpserver".equals(proxyEngine) && !"jetty".equals(proxyEngine)) {
+            throw new IllegalArgumentException("proxy-engine must be 'httpserver' or 'jetty', got '" + proxyEngine + "'");
+        }
+        if (!"platform".equals(proxyExecutor) && !"virtual".equals(proxyExecutor)) {
+            throw new IllegalArgumentException("proxy-executor must be 'platform' or 'virtual', got '" + proxyExecutor + "'");
+        }
+        if (proxyMaxConcurrency < 1) throw new IllegalArgumentException("proxyMaxConcurrency must be >= 1");
+        if (proxyMaxBodyBytes < 1024) throw new IllegalArgumentException("proxyMaxBodyBytes must be >= 1024");
+        if (!"least_loaded".equals(proxyRouting) && !"prefix_affinity".equals(proxyRouting)) {
+            throw new IllegalArgumentException("proxy-routing must be 'least_loaded' or 'prefix_affinity', got '" + proxyRouting + "'");
+        }
+        if (!(proxyAffinityLoadFactor >= 1.0)) throw new IllegalArgumentException("proxyAffinityLoadFactor must be >= 1.0");
+        if (proxyAffinityPrefixChars < 1) throw new IllegalArgumentException("proxyAffinityPrefixChars must be >= 1");
+        if (proxyLoraMaxReplicas < 1) throw new IllegalArgumentException("proxyLoraMaxReplicas must be >= 1");
+        if (!"none".equals(modelControlMode) && !"explicit".equals(modelControlMode)) {
+            throw new IllegalArgumentException("model-control-mode must be 'none' or 'explicit', got '" + modelControlMode + "'");
+        }
+        if ("explicit".equals(modelControlMode) && tensorParallelism * pipelineParallelism > 1) {
+            // Multi-rank launches pin their models per rank; only rank 0 would follow the controller.
+            throw new IllegalArgumentException("model-control-mode=explicit requires tp * pp == 1");
+        }
+        if (!(placementRpsPerReplica > 0)) throw new IllegalArgumentException("placementRpsPerReplica must be > 0");
+        if (!(placementMemoryWatermark > 0 && placementMemoryWatermark <= 1.0)) {
+            throw new IllegalArgumentException("placementMemoryWatermark must be in (0, 1]");
+        }
+        if (placementLatencyTargetMs < 0) throw new IllegalArgumentException("placementLatencyTargetMs must be >= 0");
+        if (placementIdleMs < 1000) throw new IllegalArgumentException("placementIdleMs must be >= 1000");
+        if (!(proxyLoraRpsPerReplica > 0)) throw new IllegalArgumentException("proxyLoraRpsPerReplica must be > 0");
+        if (proxyEmbeddingsCacheBytes < 0) throw new IllegalArgumentException("proxyEmbeddingsCacheBytes must be >= 0");
+        if (proxyEmbeddingsBatchMaxInputs < 0) throw new IllegalArgumentException("proxyEmbeddingsBatchMaxInputs must be >= 0");
+        if (proxyEmbeddingsBatchMaxWaitUs < 0) throw new IllegalArgumentException("proxyEmbeddingsBatchMaxWaitUs must be >= 0");
+        if (proxyResponseCacheMaxEntries < 1) throw new IllegalArgumentException("proxyResponseCacheMaxEntries must be >= 1");
+        if (proxyResponseCacheMaxBytes < 1024) throw new IllegalArgumentException("proxyResponseCacheMaxBytes must be >= 1024");
+        if (proxyResponseCacheTtlMs < 1000) throw new IllegalArgumentException("proxyResponseCacheTtlMs must be >= 1000");
+        if (proxyConcurrencyMaxLimit < 2) throw new IllegalArgumentException("proxyConcurrencyMaxLimit must be >= 2");
+        if (proxyConcurrencyQueueMs < 0) throw new IllegalArgumentException("proxyConcurrencyQueueMs must be >= 0");
+        if (proxyAdmissionQueueMax < 0) throw new IllegalArgumentException("proxyAdmissionQueueMax must be >= 0");
+        if (proxyHedgeBudgetPercent < 0 || proxyHedgeBudgetPercent > 100) throw new IllegalArgumentException("proxyHedgeBudgetPercent must be between 0 and 100");
+        if (proxyOutlierConsecutiveErrors < 1) throw new IllegalArgumentException("proxyOutlierConsecutiveErrors must be >= 1");
+        if (proxyOutlierBaseEjectionMs < 1) throw new IllegalArgumentException("proxyOutlierBaseEjectionMs must be >= 1");
+        if (proxyOutlierMaxEjectionPercent < 0 || proxyOutlierMaxEjectionPercent > 100) throw new IllegalArgumentException("proxyOutlierMaxEjectionPercent must be between 0 and 100");
+        if (proxyConnectRetries < 0) throw new IllegalArgumentException("proxyConnectRetries must be >= 0");
         if (gpuSliceSize != null && !gpuSliceSize.isEmpty()) {
             // Accept NVIDIA MIG profiles (e.g. 1g.10gb, 2g.20gb, 3g.40gb, 7g.80gb) OR a decimal
             // fraction for MPS/time-sharing (e.g. 0.5). Anything else is a typo and would
@@ -301,16 +500,54 @@ public class TarnConfig {
         options.addOption("ra", "ranger-app-id", true, "Apache Ranger App ID (default: tarn)");
         options.addOption("raudit", "ranger-audit", false, "Enable Apache Ranger auditing");
         options.addOption(null, "ranger-strict", false, "Deny-by-default if Ranger plugin fails to initialize (recommended in regulated clusters)");
+        options.addOption(null, "group-cache-ttl-ms", true, "How long a user's resolved groups are reused, refreshed in the background near the end; 0 disables the cache (default 300000)");
+        options.addOption(null, "group-cache-negative-ttl-ms", true, "How long a user without groups, or whose lookup failed, is cached (default 30000)");
         options.addOption(null, "zk-required", false, "Fail the AM if ZooKeeper is unreachable (recommended when Knox depends on ZK discovery)");
         options.addOption(null, "zk-jaas", true, "Local path to a JAAS config for SASL/Kerberos ZooKeeper auth — uploaded to HDFS and set as -Djava.security.auth.login.config on the AM JVM");
         options.addOption(null, "drain-timeout-ms", true, "Max wait for in-flight inferences before stopping a container during scale-down (default 30000)");
         options.addOption(null, "monitor-interval-ms", true, "Interval between scaling evaluations in ms (default 15000)");
+        options.addOption(null, "scrape-interval-ms", true, "Interval between backend /metrics scrape rounds in ms, jittered +/-10% (default 5000)");
+        options.addOption(null, "scrape-concurrency", true, "Max concurrent backend /metrics scrapes per round (default 64)");
+        options.addOption(null, "scrape-timeout-ms", true, "Per-host deadline for a backend /metrics scrape in ms (default 3000)");
         options.addOption(null, "tls-enabled", false, "Serve AM endpoints over HTTPS (requires --tls-keystore)");
         options.addOption(null, "tls-keystore", true, "HDFS path or local path to the TLS keystore (JKS/PKCS12)");
         options.addOption(null, "tls-keystore-type", true, "Keystore type (JKS or PKCS12, default JKS)");
         options.addOption(null, "tls-keystore-password-alias", true, "JCEKS alias holding the keystore password (default tarn.tls.keystore.password)");
         options.addOption(null, "openai-proxy-enabled", false, "Enable OpenAI-compatible /v1 proxy endpoints (requires a Triton openai_frontend container)");
         options.addOption(null, "openai-proxy-port", true, "Port for the OpenAI proxy (default 9000)");
+        options.addOption(null, "proxy-engine", true, "OpenAI proxy engine: httpserver (blocking, thread per exchange) or jetty (async servlets, non-blocking relay) (default httpserver)");
+        options.addOption(null, "proxy-executor", true, "OpenAI proxy exchange executor: platform (fixed pool) or virtual (thread per exchange, JDK 21+) (default platform)");
+        options.addOption(null, "proxy-max-body-bytes", true, "Largest accepted OpenAI proxy request body in bytes; larger requests get 413 (default 16777216)");
+        options.addOption(null, "proxy-routing", true, "OpenAI proxy backend choice: least_loaded or prefix_affinity (session header / prompt prefix consistent hash) (default least_loaded)");
+        options.addOption(null, "proxy-affinity-load-factor", true, "prefix_affinity: max container load relative to the fleet average before a key spills to the next container (default 1.25)");
+        options.addOption(null, "proxy-affinity-prefix-chars", true, "prefix_affinity: prompt characters hashed into the routing key (default 2048)");
+        options.addOption(null, "model-control-mode", true, "Triton model control: none (load the whole repository) or explicit (AM loads/unloads models per container on demand) (default none)");
+        options.addOption(null, "placement-rps-per-replica", true, "explicit model control: request rate one model replica absorbs before another is loaded (default 4.0)");
+        options.addOption(null, "placement-memory-watermark", true, "explicit model control: GPU memory fraction above which a container takes no new model and evicts its least recently used one (default 0.85)");
+        options.addOption(null, "placement-latency-target-ms", true, "explicit model control: p95 latency above which a busy model gets an extra replica, 0 to ignore latency (default 0)");
+        options.addOption(null, "placement-idle-ms", true, "explicit model control: time without requests after which a model no longer keeps a replica (default 600000)");
+        options.addOption(null, "proxy-lora-max-replicas", true, "Most containers a LoRA adapter is routed to (kept warm on) at peak traffic (default 3)");
+        options.addOption(null, "proxy-lora-rps-per-replica", true, "LoRA adapter request rate one container absorbs before the adapter spreads to another (default 2.0)");
+        options.addOption(null, "proxy-embeddings-cache-bytes", true, "Off-heap bytes for the proxy's /v1/embeddings vector cache; 0 disables it (default 0)");
+        options.addOption(null, "proxy-embeddings-batch-max-inputs", true, "Most inputs the proxy merges from concurrent /v1/embeddings requests into one upstream call; 0 disables batching (default 0)");
+        options.addOption(null, "proxy-embeddings-batch-max-wait-us", true, "Longest an embeddings request waits for others to batch with, in microseconds (default 2000)");
+        options.addOption(null, "proxy-response-cache-models", true, "Comma-separated models whose deterministic (temperature 0 or seeded) completions the proxy caches; '*' for all (default: none)");
+        options.addOption(null, "proxy-response-cache-max-entries", true, "Most responses kept in the completion response cache (default 10000)");
+        options.addOption(null, "proxy-response-cache-max-bytes", true, "Most bytes kept in the completion response cache (default 67108864)");
+        options.addOption(null, "proxy-response-cache-ttl-ms", true, "Time a cached completion response stays valid (default 300000)");
+        options.addOption(null, "proxy-coalesce", false, "Let identical in-flight deterministic requests (temperature 0 or seeded) share one upstream call");
+        options.addOption(null, "proxy-concurrency-limit", false, "Cap in-flight requests per container with an adaptive limit that follows upstream latency; excess is queued briefly, then shed with 503");
+        options.addOption(null, "proxy-concurrency-max-limit", true, "Ceiling of each container's adaptive concurrency limit (default 256)");
+        options.addOption(null, "proxy-concurrency-queue-ms", true, "How long a request waits for a container under its concurrency limit before 503 (default 50)");
+        options.addOption(null, "proxy-hedge-models", true, "Comma-separated models whose non-streaming requests are hedged to a second container after the model's p95 latency; '*' for all (default: none)");
+        options.addOption(null, "proxy-hedge-budget-percent", true, "Most extra upstream load hedges may add, in percent of hedgeable requests (default 5.0)");
+        options.addOption(null, "proxy-outlier-detection", false, "Eject containers from proxy routing after consecutive errors, a high error ratio or latency far above their peers");
+        options.addOption(null, "proxy-outlier-consecutive-errors", true, "Consecutive 5xx or transport errors that eject a container (default 5)");
+        options.addOption(null, "proxy-outlier-base-ejection-ms", true, "Length of a first ejection, doubled on each repeat (default 30000)");
+        options.addOption(null, "proxy-outlier-max-ejection-percent", true, "Most containers ejected at once, in percent of those seen (default 50)");
+        options.addOption(null, "proxy-connect-retries", true, "Other containers a request is resent to when connecting to its backend fails; 0 disables (default 2)");
+        options.addOption(null, "proxy-admission-queue-max", true, "Most requests queued (fairly, per tenant and priority) while every container is at its concurrency limit (default 1024)");
+        options.addOption(null, "proxy-max-concurrency", true, "Max concurrently handled proxy exchanges with --proxy-executor=virtual; excess exchanges queue (default 1024)");
         options.addOption(null, "otel-endpoint", true, "OTLP gRPC endpoint for trace export (e.g. http://collector:4317)");
         options.addOption(null, "scale-mode", true, "Scaling signal: gpu_util | queue_depth | composite (default composite)");
         options.addOption(null, "queue-capacity-per-container", true, "Pending requests per container treated as 'full' for queue-normalized load (default 16)");
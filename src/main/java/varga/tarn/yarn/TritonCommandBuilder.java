@@ -36,6 +36,7 @@ public class TritonCommandBuilder {
     private int tp = 1;
     private int pp = 1;
     private String secretsPath;
+    private boolean explicitModelControl;
 
     public static void requireSafePath(String label, String value) {
         if (value == null || value.isEmpty()) return;
@@ -95,6 +96,16 @@ public class TritonCommandBuilder {
         return this;
     }
 
+    /**
+     * Starts Triton in explicit model-control mode: no model is loaded at startup and the AM's
+     * {@link PlacementController} loads / unloads them through the repository API. Also turns
+     * on the GPU metrics it places by.
+     */
+    public TritonCommandBuilder explicitModelControl(boolean explicitModelControl) {
+        this.explicitModelControl = explicitModelControl;
+        return this;
+    }
+
     public String build() {
         // Defense-in-depth: re-validate in case fields were set reflectively or via no-arg ctor.
         requireSafePath("model-repository", modelRepository);
@@ -154,8 +165,9 @@ public class TritonCommandBuilder {
     private String getCommonArgs(int httpPort, int grpcPort, int metricsPort, String bindAddress) {
         return String.format("--http-port %d --grpc-port %d --metrics-port %d " +
                         "--http-address %s --metrics-address %s " +
-                        "--allow-cpu-metrics false --allow-gpu-metrics false --allow-metrics true " +
-                        "--metrics-interval-ms 1000 --model-load-thread-count 2 --strict-readiness true ",
-                httpPort, grpcPort, metricsPort, bindAddress, bindAddress);
+                        "--allow-cpu-metrics false --allow-gpu-metrics %b --allow-metrics true " +
+                        "--metrics-interval-ms 1000 --model-load-thread-count 2 --strict-readiness true " +
+                        (explicitModelControl ? "--model-control-mode explicit " : ""),
+                httpPort, grpcPort, metricsPort, bindAddress, bindAddress, explicitModelControl);
     }
 }
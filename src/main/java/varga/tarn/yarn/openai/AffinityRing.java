@@ -0,0 +1,194 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import varga.tarn.yarn.RoutingTable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Consistent-hash ring with bounded loads over the READY containers of one
+ * {@link RoutingTable}, used to send requests that share a prompt prefix (or a session) to the
+ * same backend so its KV / prefix cache is reused.
+ *
+ * <p>Each container owns {@link #VNODES} points on a 64-bit ring. A key goes to the first
+ * container clockwise from its hash whose load is within {@code loadFactor} times the
+ * fleet average (counting the request being placed); an overloaded container passes the key
+ * on to the next one on the ring, so a hot prefix spills onto a stable second choice instead
+ * of piling up. Adding or removing a container moves only the keys it owned.
+ *
+ * <p>Immutable; rebuilt whenever the routing table is republished.
+ */
+final class AffinityRing {
+
+    static final int VNODES = 64;
+
+    /** Where a key was placed. */
+    enum Outcome {
+        /** The key's home container. */
+        HIT,
+        /** Home was over the load bound; a later container on the ring took it. */
+        SPILL
+    }
+
+    static final class Choice {
+        final RoutingTable.Backend backend;
+        final Outcome outcome;
+
+        Choice(RoutingTable.Backend backend, Outcome outcome) {
+            this.backend = backend;
+            this.outcome = outcome;
+        }
+    }
+
+    final RoutingTable table;
+    private final List<RoutingTable.Backend> backends;
+    private final long[] points;
+    private final int[] owners;
+
+    private AffinityRing(RoutingTable table, long[] points, int[] owners) {
+        this.table = table;
+        this.backends = table.backends();
+        this.points = points;
+        this.owners = owners;
+    }
+
+    static AffinityRing build(RoutingTable table) {
+        List<RoutingTable.Backend> backends = table.backends();
+        int n = backends.size() * VNODES;
+        long[] packed = new long[n];
+        long[] hashes = new long[n];
+        int k = 0;
+        for (int b = 0; b < backends.size(); b++) {
+            String id = backends.get(b).containerId;
+            for (int v = 0; v < VNODES; v++) {
+                hashes[k] = hash(id + "#" + v);
+                k++;
+            }
+        }
+        // Sort point indexes by hash; ties (practically impossible) break by index.
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (x, y) -> {
+            int c = Long.compareUnsigned(hashes[x], hashes[y]);
+            return c != 0 ? c : Integer.compare(x, y);
+        });
+        long[] points = new long[n];
+        int[] owners = new int[n];
+        for (int i = 0; i < n; i++) {
+            points[i] = hashes[order[i]];
+            owners[i] = order[i] / VNODES;
+        }
+        return new AffinityRing(table, points, owners);
+    }
+
+    /**
+     * Places {@code key}, or returns null when the ring is empty or every container is over
+     * the bound (the caller then falls back to least-loaded selection).
+     *
+     * @param load       container id -> current load (in-flight / queued requests)
+     * @param loadFactor allowed load relative to the fleet average, at least 1
+     */
+    Choice pick(long key, ToIntFunction<String> load, double loadFactor) {
+        return pick(key, table, load, loadFactor);
+    }
+
+    /**
+     * Like {@link #pick(long, ToIntFunction, double)}, restricted to {@code candidates}, a
+     * subset of this ring's table (e.g. the containers serving one model). Same placement as a
+     * ring built from {@code candidates} alone, without building it.
+     */
+    Choice pick(long key, RoutingTable candidates, ToIntFunction<String> load, double loadFactor) {
+        int n = backends.size();
+        if (n == 0 || candidates.isEmpty()) return null;
+        int[] loads = new int[n];
+        boolean[] tried = new boolean[n];
+        long total = 0;
+        int eligible = 0;
+        for (int i = 0; i < n; i++) {
+            String id = backends.get(i).containerId;
+            if (candidates != table && !candidates.contains(id)) {
+                tried[i] = true;
+                continue;
+            }
+            loads[i] = load.applyAsInt(id);
+            total += loads[i];
+            eligible++;
+        }
+        if (eligible == 0) return null;
+        // Mirrokni et al.: capacity ceil(c * (m + 1) / n) where m counts requests in flight.
+        long bound = (long) Math.ceil(loadFactor * (total + 1) / eligible);
+        int start = firstPointAtOrAfter(key);
+        int distinct = 0;
+        for (int step = 0; step < points.length && distinct < eligible; step++) {
+            int owner = owners[(start + step) % points.length];
+            if (tried[owner]) continue;
+            tried[owner] = true;
+            distinct++;
+            if (loads[owner] + 1 <= bound) {
+                return new Choice(backends.get(owner), distinct == 1 ? Outcome.HIT : Outcome.SPILL);
+            }
+        }
+        return null;
+    }
+
+    /** Owner of {@code key} ignoring load, for tests and diagnostics. */
+    RoutingTable.Backend home(long key) {
+        if (points.length == 0) return null;
+        return backends.get(owners[firstPointAtOrAfter(key) % points.length]);
+    }
+
+    private int firstPointAtOrAfter(long key) {
+        int lo = 0;
+        int hi = points.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(points[mid], key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo == points.length ? 0 : lo;
+    }
+
+    /** 64-bit FNV-1a over UTF-8, finished with a murmur3 mix so nearby strings spread out. */
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
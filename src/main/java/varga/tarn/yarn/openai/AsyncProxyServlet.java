@@ -0,0 +1,308 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Scope;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Non-blocking proxy engine: a Servlet 5 async servlet that reads the request body with a
+ * {@link ReadListener}, calls Triton with {@code HttpClient.sendAsync} and relays the response
+ * through {@link ServletBodyRelay}. No thread is held while waiting on either socket, so a
+ * small Jetty pool carries thousands of concurrent SSE completions.
+ *
+ * <p>Request handling is identical to the blocking engine: every exchange goes through the
+ * same {@link ProxyPipeline} stages. Those stages are CPU-bound or cached (JSON parse, quota
+ * buckets, Ranger policy evaluation, UGI group lookup) and run on the Jetty thread that
+ * delivered the last body byte.
+ */
+final class AsyncProxyServlet extends HttpServlet {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncProxyServlet.class);
+
+    private final ProxyPipeline pipeline;
+    private final AtomicInteger active = new AtomicInteger();
+
+    AsyncProxyServlet(ProxyPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /** Exchanges started and not yet completed, including idle streams. */
+    int getActive() {
+        return active.get();
+    }
+
+    @Override
+    protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        AsyncContext ctx = req.startAsync();
+        // The upstream request timeout bounds the exchange; a servlet timeout would cut long streams.
+        ctx.setTimeout(0);
+        active.incrementAndGet();
+        ctx.addListener(new AsyncListener() {
+            @Override public void onComplete(AsyncEvent e) { active.decrementAndGet(); }
+            @Override public void onTimeout(AsyncEvent e) { }
+            @Override public void onError(AsyncEvent e) { }
+            @Override public void onStartAsync(AsyncEvent e) { }
+        });
+        ServletRequestView view = new ServletRequestView(req);
+        ProxyPipeline.Reply oversize = pipeline.rejectDeclaredOversize(view);
+        if (oversize != null) {
+            writeReply(ctx, oversize);
+            return;
+        }
+        BodyBufferPool.Body body = pipeline.newBody();
+        ServletInputStream in = req.getInputStream();
+        in.setReadListener(new BodyReader(in, body,
+                () -> dispatch(ctx, view, body),
+                () -> {
+                    body.close();
+                    writeReply(ctx, pipeline.tooLarge());
+                },
+                t -> {
+                    body.close();
+                    log.debug("Failed to read proxy request body: {}", t.toString());
+                    ctx.complete();
+                }));
+    }
+
+    private void dispatch(AsyncContext ctx, ServletRequestView req, BodyBufferPool.Body body) {
+        String path = req.path();
+        try {
+            switch (ProxyPipeline.endpoint(path)) {
+                case MODELS:
+                    body.close();
+                    writeReply(ctx, pipeline.listModels(req));
+                    return;
+                case INFERENCE:
+                    handleInference(ctx, req, body);
+                    return;
+                case USAGE:
+                    try {
+                        writeReply(ctx, pipeline.usageReport(req, body.array(), body.length()));
+                    } finally {
+                        body.close();
+                    }
+                    return;
+                default:
+                    body.close();
+                    writeReply(ctx, pipeline.error(404, "not_found", "Unknown endpoint: " + path));
+            }
+        } catch (Exception e) {
+            body.close();
+            log.error("Proxy handler failed", e);
+            writeReply(ctx, pipeline.error(500, "internal_error", e.getMessage() == null ? "unknown" : e.getMessage()));
+        }
+    }
+
+    private void handleInference(AsyncContext ctx, ServletRequestView req, BodyBufferPool.Body body) {
+        if (!"POST".equalsIgnoreCase(req.method())) {
+            body.close();
+            writeReply(ctx, pipeline.error(405, "method_not_allowed", "Use POST"));
+            return;
+        }
+        Span span = TarnTracing.startIncomingSpan("POST " + req.path(), req.headers());
+        ProxyPipeline.Admission adm;
+        try (Scope scope = span.makeCurrent(); AutoCloseable mdc = TarnTracing.pushMdc(span)) {
+            adm = pipeline.admit(req, body, span);
+        } catch (Exception e) {
+            span.setStatus(StatusCode.ERROR, e.getClass().getSimpleName());
+            span.recordException(e);
+            span.end();
+            log.error("Proxy handler failed", e);
+            writeReply(ctx, pipeline.error(500, "internal_error", e.getMessage() == null ? "unknown" : e.getMessage()));
+            return;
+        }
+        if (adm.rejection != null) {
+            span.end();
+            writeReply(ctx, adm.rejection);
+            return;
+        }
+
+        pipeline.dispatch(adm)
+                .whenComplete((resp, err) -> {
+                    if (err != null) {
+                        failBeforeResponse(ctx, adm, span, err);
+                        return;
+                    }
+                    int status = resp.status;
+                    pipeline.upstreamStatus(adm, status);
+                    HttpServletResponse r = (HttpServletResponse) ctx.getResponse();
+                    r.setStatus(status);
+                    if (adm.streaming) {
+                        r.setContentType(ProxyPipeline.firstHeader(resp, "Content-Type", "text/event-stream"));
+                        r.setHeader("Cache-Control", "no-cache");
+                        r.setHeader("X-Accel-Buffering", "no"); // Disable nginx buffering if fronted by one.
+                    } else {
+                        r.setContentType(ProxyPipeline.firstHeader(resp, "Content-Type", "application/json"));
+                    }
+                    try {
+                        ServletBodyRelay.relay(ctx, resp.body, pipeline.responseFilter(adm, status),
+                                () -> {
+                                    pipeline.onRelayComplete(adm, status);
+                                    pipeline.finish(adm);
+                                    span.end();
+                                },
+                                // Headers are already out: account the failure, nothing more to tell the client.
+                                t -> {
+                                    pipeline.onUpstreamFailure(adm, t);
+                                    pipeline.finish(adm);
+                                    span.end();
+                                },
+                                t -> {
+                                    pipeline.onClientFailure(adm, t);
+                                    pipeline.finish(adm);
+                                    span.end();
+                                });
+                    } catch (IOException e) {
+                        // The response output stream could not be had: the client is gone.
+                        pipeline.onClientFailure(adm, e);
+                        pipeline.finish(adm);
+                        span.end();
+                        ctx.complete();
+                    }
+                });
+    }
+
+    private void failBeforeResponse(AsyncContext ctx, ProxyPipeline.Admission adm, Span span, Throwable err) {
+        ProxyPipeline.Reply reply = pipeline.onUpstreamFailure(adm, err);
+        pipeline.finish(adm);
+        span.end();
+        writeReply(ctx, reply);
+    }
+
+    private static void writeReply(AsyncContext ctx, ProxyPipeline.Reply reply) {
+        HttpServletResponse r = (HttpServletResponse) ctx.getResponse();
+        r.setStatus(reply.status);
+        reply.headers.forEach(r::setHeader);
+        r.setContentType(reply.contentType);
+        r.setContentLength(reply.body.length);
+        try {
+            ServletBodyRelay.write(ctx, reply.body);
+        } catch (IOException e) {
+            log.debug("Unable to write proxy response", e);
+            ctx.complete();
+        }
+    }
+
+    /**
+     * Accumulates the request body into a pooled buffer as the container makes it available.
+     * Past the size limit the rest of the body is drained and discarded and the caller answers
+     * 413 right away.
+     */
+    private static final class BodyReader implements ReadListener {
+        private final ServletInputStream in;
+        private final BodyBufferPool.Body body;
+        private final Runnable onBody;
+        private final Runnable onOversize;
+        private final Consumer<Throwable> onFailure;
+        private final byte[] buf = new byte[8192];
+        private boolean oversize;
+
+        BodyReader(ServletInputStream in, BodyBufferPool.Body body, Runnable onBody,
+                   Runnable onOversize, Consumer<Throwable> onFailure) {
+            this.in = in;
+            this.body = body;
+            this.onBody = onBody;
+            this.onOversize = onOversize;
+            this.onFailure = onFailure;
+        }
+
+        @Override
+        public void onDataAvailable() throws IOException {
+            while (in.isReady()) {
+                int n = in.read(buf);
+                if (n < 0) break;
+                if (!oversize && !body.append(buf, 0, n)) {
+                    oversize = true;
+                    onOversize.run();
+                }
+            }
+        }
+
+        @Override
+        public void onAllDataRead() {
+            if (!oversize) {
+                onBody.run();
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            onFailure.accept(t);
+        }
+    }
+
+    /** {@link ProxyRequest} over a servlet request. */
+    private static final class ServletRequestView implements ProxyRequest {
+        private final String method;
+        private final String rawPath;
+        private final String path;
+        private final Map<String, String> headers = new HashMap<>();
+        private final Map<String, String> headersLower = new HashMap<>();
+        private final String remoteIp;
+
+        ServletRequestView(HttpServletRequest req) {
+            // Captured eagerly: the request object must not be touched once the pipeline runs
+            // on an HttpClient thread.
+            this.method = req.getMethod();
+            this.rawPath = req.getRequestURI();
+            this.path = URI.create(rawPath).getPath();
+            for (String name : Collections.list(req.getHeaderNames())) {
+                String v = req.getHeader(name);
+                headers.put(name, v);
+                headersLower.put(name.toLowerCase(Locale.ROOT), v);
+            }
+            this.remoteIp = req.getRemoteAddr();
+        }
+
+        @Override public String method() { return method; }
+
+        @Override public String path() { return path; }
+
+        @Override public String rawPath() { return rawPath; }
+
+        @Override public String header(String name) { return headersLower.get(name.toLowerCase(Locale.ROOT)); }
+
+        @Override public Map<String, String> headers() { return headers; }
+
+        @Override public String remoteIp() { return remoteIp; }
+    }
+}
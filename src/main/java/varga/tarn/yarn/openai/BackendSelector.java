@@ -0,0 +1,144 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import varga.tarn.yarn.RoutingTable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Power-of-two-choices backend selection fed by live, per-container in-flight counters.
+ *
+ * <p>The scraped Triton pending count alone refreshes once per scrape interval, so between two
+ * scrapes every request in a burst lands on the same "least loaded" host. This selector keeps
+ * an exact count of requests the proxy currently has outstanding on each container
+ * (incremented when the upstream call starts, decremented when the last byte — including
+ * the tail of an SSE stream — has been relayed) and blends it with the scraped count.
+ *
+ * <p>Selection samples two distinct candidates at random and keeps the less loaded one. It
+ * is O(1) regardless of fleet size, touches no shared lock, and — unlike a strict
+ * least-outstanding scan — does not herd concurrent callers onto one host when counts tie.
+ * Counters of containers that left the routing table are dropped (see {@link #retain}).
+ */
+public class BackendSelector {
+
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+    private final ToIntFunction<String> scrapedPending;
+    /** Routing table last passed to {@link #retain}. */
+    private volatile RoutingTable live = RoutingTable.EMPTY;
+
+    /**
+     * @param scrapedPending container id -> last scraped Triton pending count
+     *                       (typically {@code MetricsCollector::getQueueDepth})
+     */
+    public BackendSelector(ToIntFunction<String> scrapedPending) {
+        this.scrapedPending = scrapedPending;
+    }
+
+    /**
+     * Follows the routing table: counters of containers no longer in it are dropped, or, while
+     * leases are still open there, once the last of them closes — a container that comes back
+     * meanwhile still counts them. Costs a version check while the table is unchanged; an older
+     * table than the last one is ignored.
+     */
+    public void retain(RoutingTable table) {
+        if (table.version <= live.version) return;
+        synchronized (inFlight) {
+            if (table.version <= live.version) return;
+            live = table;
+            inFlight.entrySet().removeIf(e -> e.getValue().get() == 0 && !table.contains(e.getKey()));
+        }
+    }
+
+    /**
+     * Picks a backend among {@code candidates}, or null when the list is empty. With a single
+     * candidate no randomness is involved; with two or more, the less loaded of two distinct
+     * random picks wins (ties go to the first pick).
+     */
+    public <T> T pick(List<T> candidates, Function<? super T, String> idOf) {
+        int n = candidates.size();
+        if (n == 0) return null;
+        if (n == 1) return candidates.get(0);
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        int i = rnd.nextInt(n);
+        int j = rnd.nextInt(n - 1);
+        if (j >= i) j++;
+        T a = candidates.get(i);
+        T b = candidates.get(j);
+        return load(idOf.apply(b)) < load(idOf.apply(a)) ? b : a;
+    }
+
+    /**
+     * Effective load of a container. The scraped pending count already includes requests this
+     * proxy has queued on Triton, so the two are not summed; taking the max lets the live count
+     * react instantly while still accounting for traffic that reached Triton by another route.
+     */
+    public int load(String containerId) {
+        return Math.max(inFlight(containerId), scrapedPending.applyAsInt(containerId));
+    }
+
+    public int inFlight(String containerId) {
+        AtomicInteger c = inFlight.get(containerId);
+        return c == null ? 0 : c.get();
+    }
+
+    /** Containers that have an in-flight counter. */
+    int tracked() {
+        return inFlight.size();
+    }
+
+    /**
+     * Marks one request as outstanding on {@code containerId}. Close the returned lease once
+     * the response (or stream) is fully relayed; closing twice is a no-op.
+     */
+    public Lease acquire(String containerId) {
+        AtomicInteger c = inFlight.computeIfAbsent(containerId, k -> new AtomicInteger());
+        c.incrementAndGet();
+        return new Lease(containerId, c);
+    }
+
+    /** Handle on one outstanding request. */
+    public final class Lease implements AutoCloseable {
+        private final String containerId;
+        private final AtomicInteger counter;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(String containerId, AtomicInteger counter) {
+            this.containerId = containerId;
+            this.counter = counter;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)
+                    && counter.decrementAndGet() == 0 && !live.contains(containerId)) {
+                inFlight.remove(containerId, counter);
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Recycles the byte arrays that hold proxied request bodies between being read from the
+ * client and being forwarded to Triton.
+ *
+ * <p>A body grows by doubling up to the configured maximum request size. On release, arrays up
+ * to {@code maxRetainedBytes} go back to a bounded free list, so the steady state for typical
+ * chat requests allocates nothing and retained memory is capped at
+ * {@code capacity * maxRetainedBytes}. Larger bodies (multi-MB embedding batches) use one-off
+ * arrays and are left to the GC.
+ */
+final class BodyBufferPool {
+
+    private final ArrayBlockingQueue<byte[]> free;
+    private final int initialBytes;
+    private final int maxRetainedBytes;
+    private final int maxBodyBytes;
+
+    BodyBufferPool(int capacity, int initialBytes, int maxRetainedBytes, int maxBodyBytes) {
+        this.free = new ArrayBlockingQueue<>(capacity);
+        this.initialBytes = initialBytes;
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    int maxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    Body acquire() {
+        byte[] b = free.poll();
+        return new Body(b != null ? b : new byte[Math.min(initialBytes, Math.max(1, maxBodyBytes))]);
+    }
+
+    /** Arrays currently on the free list. */
+    int pooled() {
+        return free.size();
+    }
+
+    private void release(byte[] b) {
+        if (b.length <= maxRetainedBytes) {
+            free.offer(b);
+        }
+    }
+
+    /**
+     * One request body, filled by one reader and then only read. Close it once the upstream
+     * exchange is over. The forwarded publisher reads the array directly, and HttpClient may
+     * still be doing so after a cancelled or timed-out send completed: the array goes back to
+     * the pool only once every subscription to it has completed or been cancelled.
+     */
+    final class Body implements AutoCloseable {
+        private byte[] buf;
+        private int len;
+        private boolean released;
+        // Publisher subscriptions still reading buf; guarded by this.
+        private int readers;
+
+        private Body(byte[] buf) {
+            this.buf = buf;
+        }
+
+        /**
+         * Appends bytes. Returns false — leaving the body unusable — when the total would
+         * exceed the maximum request size.
+         */
+        boolean append(byte[] src, int off, int n) {
+            if (n > maxBodyBytes - len) {
+                return false;
+            }
+            ensureCapacity(len + n);
+            System.arraycopy(src, off, buf, len, n);
+            len += n;
+            return true;
+        }
+
+        /** Reads {@code in} to EOF; false when it holds more than the maximum request size. */
+        boolean readFrom(InputStream in) throws IOException {
+            while (true) {
+                if (len == buf.length) {
+                    if (len == maxBodyBytes) {
+                        // Full at the limit: only acceptable if the stream is exhausted.
+                        return in.read() == -1;
+                    }
+                    ensureCapacity(len + 1);
+                }
+                int n = in.read(buf, len, buf.length - len);
+                if (n < 0) return true;
+                len += n;
+            }
+        }
+
+        /**
+         * Splices {@code bytes} in at {@code at}. Used for the proxy's own small rewrites, so
+         * the maximum request size is not enforced here.
+         */
+        void insert(int at, byte[] bytes) {
+            ensureCapacity(len + bytes.length);
+            System.arraycopy(buf, at, buf, at + bytes.length, len - at);
+            System.arraycopy(bytes, 0, buf, at, bytes.length);
+            len += bytes.length;
+        }
+
+        /** Replaces the whole content with a proxy rewrite; the maximum size is not enforced. */
+        void replace(byte[] bytes) {
+            len = 0;
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buf, 0, bytes.length);
+            len = bytes.length;
+        }
+
+        private void ensureCapacity(int needed) {
+            if (needed <= buf.length) return;
+            int cap = (int) Math.max(needed, Math.min((long) maxBodyBytes, (long) buf.length * 2));
+            byte[] grown = Arrays.copyOf(buf, cap);
+            // The outgrown array is still a good pooled buffer for the next small body.
+            release(buf);
+            buf = grown;
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        int length() {
+            return len;
+        }
+
+        /**
+         * Forwards the body without copying. A subscription made after {@link #close()} fails
+         * rather than read an array that may have been handed out again.
+         */
+        HttpRequest.BodyPublisher publisher() {
+            int length = len;
+            return new HttpRequest.BodyPublisher() {
+                @Override
+                public long contentLength() {
+                    return length;
+                }
+
+                @Override
+                public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+                    HttpRequest.BodyPublisher bytes;
+                    synchronized (Body.this) {
+                        if (released) {
+                            bytes = null;
+                        } else {
+                            readers++;
+                            bytes = HttpRequest.BodyPublishers.ofByteArray(buf, 0, length);
+                        }
+                    }
+                    if (bytes == null) {
+                        subscriber.onSubscribe(new Flow.Subscription() {
+                            @Override
+                            public void request(long n) {
+                            }
+
+                            @Override
+                            public void cancel() {
+                            }
+                        });
+                        subscriber.onError(new IllegalStateException("request body already released"));
+                        return;
+                    }
+                    bytes.subscribe(new Reader(subscriber));
+                }
+            };
+        }
+
+        private synchronized void readerDone() {
+            if (--readers == 0 && released) recycle();
+        }
+
+        private void recycle() {
+            release(buf);
+            buf = null;
+        }
+
+        /** Relays one subscription, telling the body when it no longer reads the array. */
+        private final class Reader implements Flow.Subscriber<ByteBuffer> {
+            private final Flow.Subscriber<? super ByteBuffer> downstream;
+            private final AtomicBoolean done = new AtomicBoolean();
+
+            Reader(Flow.Subscriber<? super ByteBuffer> downstream) {
+                this.downstream = downstream;
+            }
+
+            private void done() {
+                if (done.compareAndSet(false, true)) readerDone();
+            }
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                downstream.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                        subscription.request(n);
+                    }
+
+                    @Override
+                    public void cancel() {
+                        subscription.cancel();
+                        done();
+                    }
+                });
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                downstream.onNext(item);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                done();
+                downstream.onError(t);
+            }
+
+            @Override
+            public void onComplete() {
+                done();
+                downstream.onComplete();
+            }
+        }
+
+        /** Detached copy, for consumers that outlive this exchange (shadow traffic). */
+        byte[] copy() {
+            return Arrays.copyOf(buf, len);
+        }
+
+        /** Gives the array back, at once or when the last subscription is over. Idempotent. */
+        @Override
+        public synchronized void close() {
+            if (released) return;
+            released = true;
+            if (readers == 0) recycle();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import varga.tarn.yarn.MetricsCollector;
+import varga.tarn.yarn.RoutingTable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * Adaptive per-container cap on the requests the proxy has in flight, so a container that is
+ * slowing down stops receiving work before Triton's queue — and every request's latency —
+ * runs away.
+ *
+ * <p>Each limit follows the gradient of upstream round-trip time, as in Netflix's
+ * concurrency-limits "Gradient2": a long-window average RTT is compared with each new
+ * sample, and the limit shrinks when samples run above the average by more than a tolerance
+ * and grows by about its square root otherwise. Only samples taken while the container is
+ * at least half busy move the limit; an idle container says nothing about its capacity.
+ * Upstream errors, timeouts and 429/503 answers multiply the limit by {@link #BACKOFF}
+ * (the multiplicative-decrease half of AIMD). The RTT is the time until Triton's response
+ * headers — the end of queueing and prefill for a stream — so generation length does not
+ * pass for congestion.
+ *
+ * <p>Limits are soft: the in-flight count is read when a backend is picked and incremented
+ * later when the lease is taken, so concurrent admissions can overshoot by a few. Containers
+ * that leave the routing table are forgotten, gauges included (see {@link #retain}).
+ */
+final class ConcurrencyLimiter {
+
+    static final int INITIAL_LIMIT = 20;
+    static final int MIN_LIMIT = 2;
+    /** Samples averaged by the long-window RTT, as an exponential moving average. */
+    private static final int LONG_WINDOW = 600;
+    /** Samples above this ratio to the long-window RTT count as congestion. */
+    private static final double TOLERANCE = 1.5;
+    /** Weight of each new limit estimate against the current limit. */
+    private static final double SMOOTHING = 0.2;
+    static final double BACKOFF = 0.9;
+
+    private static final class State {
+        double limit;
+        /** Long-window RTT in nanoseconds; 0 before the first sample. */
+        double longRtt;
+        int samples;
+
+        State(double limit) {
+            this.limit = limit;
+        }
+    }
+
+    private final int maxLimit;
+    private final ToIntFunction<String> inFlight;
+    private final MetricsCollector metrics;
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+    /** Routing table last passed to {@link #retain}; only its containers have a state. */
+    private volatile RoutingTable live = RoutingTable.EMPTY;
+
+    /**
+     * @param inFlight container id -> requests the proxy has outstanding there
+     *                 (typically {@link BackendSelector#inFlight})
+     */
+    ConcurrencyLimiter(int maxLimit, ToIntFunction<String> inFlight, MetricsCollector metrics) {
+        this.maxLimit = maxLimit;
+        this.inFlight = inFlight;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Follows the routing table: containers no longer in it lose their limit and their
+     * {@code tarn_proxy_concurrency_*} gauges. Costs a version check while the table is
+     * unchanged; an older table than the last one is ignored.
+     */
+    void retain(RoutingTable table) {
+        if (table.version <= live.version) return;
+        synchronized (states) {
+            if (table.version <= live.version) return;
+            live = table;
+            states.keySet().removeIf(cid -> !table.contains(cid));
+            for (String cid : metrics.getConcurrencyLimits().keySet()) {
+                if (!table.contains(cid)) metrics.removeConcurrency(cid);
+            }
+        }
+    }
+
+    int limit(String containerId) {
+        State s = states.get(containerId);
+        if (s == null) return Math.min(INITIAL_LIMIT, maxLimit);
+        synchronized (s) {
+            return (int) s.limit;
+        }
+    }
+
+    /**
+     * The backends of {@code serving} still under their limit: {@code serving} itself when
+     * all are, an empty table when none is.
+     */
+    RoutingTable open(RoutingTable serving) {
+        List<RoutingTable.Backend> open = null;
+        List<RoutingTable.Backend> all = serving.backends();
+        for (int i = 0; i < all.size(); i++) {
+            RoutingTable.Backend b = all.get(i);
+            boolean free = inFlight.applyAsInt(b.containerId) < limit(b.containerId);
+            if (free && open != null) {
+                open.add(b);
+            } else if (!free && open == null) {
+                open = new ArrayList<>(all.subList(0, i));
+            }
+        }
+        return open == null ? serving : new RoutingTable(serving.version, open);
+    }
+
+    /** Feeds the time {@code containerId} took to answer a request that did not fail. */
+    void onSample(String containerId, long rttNanos) {
+        if (rttNanos <= 0) return;
+        State s = state(containerId);
+        if (s == null) return;
+        int busy = inFlight.applyAsInt(containerId);
+        int limit;
+        synchronized (s) {
+            double rtt = rttNanos;
+            s.samples = Math.min(s.samples + 1, LONG_WINDOW);
+            s.longRtt = s.longRtt == 0 ? rtt : s.longRtt + (rtt - s.longRtt) / s.samples;
+            // After a spell of congestion the average lags far behind; let it recover quickly.
+            if (s.longRtt / rtt > 2) s.longRtt *= 0.95;
+            if (busy >= s.limit / 2) {
+                double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * s.longRtt / rtt));
+                double estimate = s.limit * gradient + Math.sqrt(s.limit);
+                s.limit = clamp(s.limit * (1 - SMOOTHING) + estimate * SMOOTHING);
+            }
+            limit = (int) s.limit;
+        }
+        metrics.setConcurrency(containerId, limit, busy);
+    }
+
+    /** {@code containerId} failed, timed out or pushed back on a request. */
+    void onDrop(String containerId) {
+        State s = state(containerId);
+        if (s == null) return;
+        int limit;
+        synchronized (s) {
+            s.limit = clamp(s.limit * BACKOFF);
+            limit = (int) s.limit;
+        }
+        metrics.setConcurrency(containerId, limit, inFlight.applyAsInt(containerId));
+    }
+
+    /** A request on {@code containerId} completed and its lease is closed. */
+    void release(String containerId) {
+        if (!live.contains(containerId)) return;
+        metrics.setConcurrency(containerId, limit(containerId), inFlight.applyAsInt(containerId));
+    }
+
+    /** Null for a container outside the routing table: a late outcome does not bring it back. */
+    private State state(String containerId) {
+        State s = states.get(containerId);
+        if (s == null) {
+            if (!live.contains(containerId)) return null;
+            s = states.computeIfAbsent(containerId, k -> new State(Math.min(INITIAL_LIMIT, maxLimit)));
+        }
+        return s;
+    }
+
+    private double clamp(double limit) {
+        return Math.max(MIN_LIMIT, Math.min(maxLimit, limit));
+    }
+}
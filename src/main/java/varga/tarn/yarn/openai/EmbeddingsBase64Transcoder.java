@@ -0,0 +1,328 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Rewrites the {@code embedding} float arrays of an OpenAI embeddings response into the
+ * base64 strings a client asked for with {@code "encoding_format":"base64"}: little-endian
+ * float32, standard alphabet, padded — the same bytes the OpenAI API returns.
+ *
+ * <p>Triton's OpenAI frontend answers with JSON floats whatever the request said, and a
+ * 4096-dimension vector printed as decimals is roughly four times its binary size. The
+ * rewrite happens byte by byte as chunks are relayed, with no tree and no per-value objects:
+ * a small scanner tracks strings and escapes, spots the value of an {@code "embedding"} key
+ * opening with {@code [}, parses each number into a float, and base64-encodes the bytes
+ * as they accrue. Only the vector being rewritten is held back, so memory stays at a few
+ * times the size of one vector however large the batch.
+ *
+ * <p>Everything else passes through unchanged, including embeddings that are already
+ * strings. A vector holding anything other than numbers is relayed as it came. The
+ * transcoded bytes are handed to {@code next}, so usage accounting (or the cache merge)
+ * sees the body the client gets.
+ */
+final class EmbeddingsBase64Transcoder implements ResponseFilter {
+
+    private static final byte[] KEY = "embedding".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.US_ASCII);
+    /** Longest number literal accepted; float32 needs far fewer digits. */
+    private static final int MAX_NUMBER = 64;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private final ResponseFilter next;
+
+    // Scanner state outside vectors.
+    private boolean inString;
+    private boolean escape;
+    /** Bytes of {@link #KEY} matched by the current string so far; -1 once it diverged. */
+    private int keyMatch;
+    /** 1 after an {@code "embedding"} string (a colon may follow), 2 after its colon. */
+    private int expect;
+
+    // The vector being rewritten.
+    private boolean inVector;
+    /** Everything after the opening bracket, relayed as is should the vector not be numeric. */
+    private byte[] raw = new byte[1024];
+    private int rawLen;
+    private final byte[] number = new byte[MAX_NUMBER];
+    private int numberLen;
+    private float value;
+    private byte[] encoded = new byte[1024];
+    private int encodedLen;
+    /** Up to two bytes not yet encoded, most significant first. */
+    private int pending;
+    private int pendingLen;
+
+    private final byte[] out = new byte[8192];
+    private int outLen;
+
+    EmbeddingsBase64Transcoder(ResponseFilter next) {
+        this.next = next;
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len, Sink sink) throws IOException {
+        for (int i = off, end = off + len; i < end; i++) {
+            byte b = buf[i];
+            if (inVector) {
+                vector(b, sink);
+            } else {
+                scan(b, sink);
+            }
+        }
+        flush(sink);
+    }
+
+    @Override
+    public void finish(Sink sink) throws IOException {
+        if (inVector) {
+            // Truncated mid-vector: relay what came.
+            abandon(sink);
+        }
+        flush(sink);
+        next.finish(sink);
+    }
+
+    private void scan(byte b, Sink sink) throws IOException {
+        if (inString) {
+            if (escape) {
+                escape = false;
+                keyMatch = -1;
+            } else if (b == '\\') {
+                escape = true;
+                keyMatch = -1;
+            } else if (b == '"') {
+                inString = false;
+                expect = keyMatch == KEY.length ? 1 : 0;
+            } else if (keyMatch >= 0 && keyMatch < KEY.length && b == KEY[keyMatch]) {
+                keyMatch++;
+            } else {
+                keyMatch = -1;
+            }
+            emit(b, sink);
+            return;
+        }
+        if (b == '[' && expect == 2) {
+            expect = 0;
+            inVector = true;
+            rawLen = 0;
+            numberLen = 0;
+            encodedLen = 0;
+            pendingLen = 0;
+            return;
+        }
+        if (b == '"') {
+            inString = true;
+            keyMatch = 0;
+            expect = 0;
+        } else if (b == ':' && expect == 1) {
+            expect = 2;
+        } else if (!whitespace(b)) {
+            expect = 0;
+        }
+        emit(b, sink);
+    }
+
+    private void vector(byte b, Sink sink) throws IOException {
+        if ((b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E') {
+            if (numberLen == MAX_NUMBER) {
+                abandon(sink);
+                scan(b, sink);
+                return;
+            }
+            number[numberLen++] = b;
+            keep(b);
+            return;
+        }
+        if (b != ',' && b != ']' && !whitespace(b)) {
+            abandon(sink);
+            scan(b, sink);
+            return;
+        }
+        if (numberLen > 0) {
+            if (!parseNumber()) {
+                abandon(sink);
+                scan(b, sink);
+                return;
+            }
+            numberLen = 0;
+            int bits = Float.floatToRawIntBits(value);
+            encode(bits & 0xff);
+            encode((bits >>> 8) & 0xff);
+            encode((bits >>> 16) & 0xff);
+            encode(bits >>> 24);
+        }
+        if (b == ']') {
+            inVector = false;
+            if (pendingLen == 1) {
+                grow(4);
+                encoded[encodedLen++] = ALPHABET[(pending >>> 2) & 0x3f];
+                encoded[encodedLen++] = ALPHABET[(pending << 4) & 0x3f];
+                encoded[encodedLen++] = '=';
+                encoded[encodedLen++] = '=';
+            } else if (pendingLen == 2) {
+                grow(4);
+                encoded[encodedLen++] = ALPHABET[(pending >>> 10) & 0x3f];
+                encoded[encodedLen++] = ALPHABET[(pending >>> 4) & 0x3f];
+                encoded[encodedLen++] = ALPHABET[(pending << 2) & 0x3f];
+                encoded[encodedLen++] = '=';
+            }
+            emit((byte) '"', sink);
+            emit(encoded, 0, encodedLen, sink);
+            emit((byte) '"', sink);
+            return;
+        }
+        keep(b);
+    }
+
+    /**
+     * Parses {@link #number} into {@link #value}; false when it is not a JSON number. A
+     * mantissa below 2^53 with a decimal exponent within 22 — which covers every float printed
+     * by its shortest representation — takes Clinger's fast path: one exact double product or
+     * quotient, correctly rounded, then narrowed. The narrowing is only trusted when the
+     * double does not sit exactly between two floats; those and longer literals go through
+     * {@link Float#parseFloat}.
+     */
+    private boolean parseNumber() {
+        int i = 0;
+        boolean negative = number[0] == '-';
+        if (negative) i++;
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean slow = false;
+        int start = i;
+        for (; i < numberLen && number[i] >= '0' && number[i] <= '9'; i++) {
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (number[i] - '0');
+                if (mantissa != 0) digits++;
+            } else {
+                exponent++;
+                slow = true;
+            }
+        }
+        if (i == start) return false;
+        if (i < numberLen && number[i] == '.') {
+            start = ++i;
+            for (; i < numberLen && number[i] >= '0' && number[i] <= '9'; i++) {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (number[i] - '0');
+                    if (mantissa != 0) digits++;
+                    exponent--;
+                } else {
+                    slow = true;
+                }
+            }
+            if (i == start) return false;
+        }
+        if (i < numberLen && (number[i] == 'e' || number[i] == 'E')) {
+            i++;
+            boolean negativeExponent = i < numberLen && number[i] == '-';
+            if (i < numberLen && (number[i] == '-' || number[i] == '+')) i++;
+            start = i;
+            int e = 0;
+            for (; i < numberLen && number[i] >= '0' && number[i] <= '9'; i++) {
+                if (e < 10_000) e = e * 10 + (number[i] - '0');
+            }
+            if (i == start) return false;
+            exponent += negativeExponent ? -e : e;
+        }
+        if (i != numberLen) return false;
+        if (mantissa == 0 && !slow) {
+            value = negative ? -0f : 0f;
+            return true;
+        }
+        if (!slow && mantissa < (1L << 53) && exponent >= -22 && exponent <= 22) {
+            double d = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+            if (d >= Float.MIN_NORMAL && d <= Float.MAX_VALUE
+                    && (Double.doubleToRawLongBits(d) & 0x1FFF_FFFFL) != 0x1000_0000L) {
+                value = (float) (negative ? -d : d);
+                return true;
+            }
+        }
+        value = Float.parseFloat(new String(number, 0, numberLen, StandardCharsets.US_ASCII));
+        return true;
+    }
+
+    private void encode(int octet) {
+        pending = (pending << 8) | octet;
+        if (++pendingLen < 3) return;
+        grow(4);
+        encoded[encodedLen++] = ALPHABET[(pending >>> 18) & 0x3f];
+        encoded[encodedLen++] = ALPHABET[(pending >>> 12) & 0x3f];
+        encoded[encodedLen++] = ALPHABET[(pending >>> 6) & 0x3f];
+        encoded[encodedLen++] = ALPHABET[pending & 0x3f];
+        pending = 0;
+        pendingLen = 0;
+    }
+
+    private void grow(int n) {
+        if (encodedLen + n > encoded.length) {
+            encoded = Arrays.copyOf(encoded, Math.max(encoded.length * 2, encodedLen + n));
+        }
+    }
+
+    private void keep(byte b) {
+        if (rawLen == raw.length) {
+            raw = Arrays.copyOf(raw, raw.length * 2);
+        }
+        raw[rawLen++] = b;
+    }
+
+    /** Not a float vector after all: relays the bracket and what followed it untouched. */
+    private void abandon(Sink sink) throws IOException {
+        inVector = false;
+        emit((byte) '[', sink);
+        emit(raw, 0, rawLen, sink);
+    }
+
+    private void emit(byte b, Sink sink) throws IOException {
+        if (outLen == out.length) flush(sink);
+        out[outLen++] = b;
+    }
+
+    private void emit(byte[] buf, int off, int len, Sink sink) throws IOException {
+        while (len > 0) {
+            if (outLen == out.length) flush(sink);
+            int n = Math.min(len, out.length - outLen);
+            System.arraycopy(buf, off, out, outLen, n);
+            outLen += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void flush(Sink sink) throws IOException {
+        if (outLen == 0) return;
+        next.write(out, 0, outLen, sink);
+        outLen = 0;
+    }
+
+    private static boolean whitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+}
@@ -0,0 +1,306 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import varga.tarn.yarn.MetricsCollector;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges concurrent {@code /v1/embeddings} requests into one upstream call.
+ *
+ * <p>Requests for the same path, model, {@code encoding_format} and {@code dimensions} join an
+ * open batch, whoever sent them. The batch goes upstream, with every caller's inputs
+ * concatenated into one {@code input} array, once it holds {@code maxInputs} inputs or
+ * {@code maxWaitMicros} after its first request arrived, whichever comes first. A request
+ * that would overflow the open batch sends it and starts the next one. The response is split
+ * back per caller: each gets its own items re-indexed from 0, and a share of
+ * {@code usage.prompt_tokens} proportional to the UTF-8 size of its inputs (largest remainder,
+ * so the shares add up to Triton's count) — which is what its user's tokens are counted from.
+ *
+ * <p>An error status is relayed as-is to every caller of the batch; a 2xx body that cannot be
+ * split fails them all.
+ */
+final class EmbeddingsBatcher {
+
+    /**
+     * Sends a merged body at the most urgent priority among its callers; completes with
+     * Triton's whole response.
+     */
+    @FunctionalInterface
+    interface Sender {
+        CompletableFuture<ProxyPipeline.Reply> send(String path, String routeModel,
+                                                    FairAdmissionQueue.Priority priority, byte[] body);
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Set<String> BATCHABLE_FIELDS = Set.of("model", "input", "encoding_format", "dimensions", "user");
+
+    /** One caller's part of a batch. */
+    static final class Request {
+        final String group;
+        final String path;
+        final String routeModel;
+        final FairAdmissionQueue.Priority priority;
+        /** The body without {@code input} and {@code user}. */
+        final ObjectNode template;
+        final List<String> inputs;
+        final long weight;
+        final CompletableFuture<ProxyPipeline.Upstream> response = new CompletableFuture<>();
+
+        private Request(String group, String path, String routeModel, FairAdmissionQueue.Priority priority,
+                        ObjectNode template, List<String> inputs) {
+            this.group = group;
+            this.path = path;
+            this.routeModel = routeModel;
+            this.priority = priority;
+            this.template = template;
+            this.inputs = inputs;
+            long w = 0;
+            for (String s : inputs) w += Math.max(1, s.getBytes(StandardCharsets.UTF_8).length);
+            this.weight = w;
+        }
+    }
+
+    private static final class Batch {
+        final String group;
+        final List<Request> requests = new ArrayList<>();
+        int inputs;
+
+        Batch(String group) {
+            this.group = group;
+        }
+    }
+
+    private final int maxInputs;
+    private final long maxWaitMicros;
+    private final Sender sender;
+    private final MetricsCollector metrics;
+    private final ScheduledExecutorService timer;
+    // Guarded by this.
+    private final Map<String, Batch> open = new HashMap<>();
+
+    EmbeddingsBatcher(int maxInputs, long maxWaitMicros, Sender sender, MetricsCollector metrics) {
+        this.maxInputs = maxInputs;
+        this.maxWaitMicros = maxWaitMicros;
+        this.sender = sender;
+        this.metrics = metrics;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "tarn-embeddings-batcher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * The batchable form of a request body, or null: only string or string-array
+     * {@code input} with the standard options can be merged.
+     */
+    static Request parse(String path, String routeModel, FairAdmissionQueue.Priority priority,
+                         byte[] body, int off, int len) {
+        JsonNode root;
+        try {
+            root = MAPPER.readTree(body, off, len);
+        } catch (IOException e) {
+            return null;
+        }
+        if (root == null || !root.isObject()) return null;
+        for (Iterator<String> it = root.fieldNames(); it.hasNext(); ) {
+            if (!BATCHABLE_FIELDS.contains(it.next())) return null;
+        }
+        JsonNode input = root.path("input");
+        List<String> inputs = new ArrayList<>();
+        if (input.isTextual()) {
+            inputs.add(input.asText());
+        } else if (input.isArray() && input.size() > 0) {
+            for (JsonNode n : input) {
+                if (!n.isTextual()) return null;
+                inputs.add(n.asText());
+            }
+        } else {
+            return null;
+        }
+        ObjectNode template = ((ObjectNode) root).deepCopy();
+        template.remove("input");
+        template.remove("user");
+        String group = path + '\0' + template.path("model").asText("") + '\0'
+                + template.path("encoding_format").asText("float") + '\0' + template.path("dimensions").asText("");
+        return new Request(group, path, routeModel, priority, template, inputs);
+    }
+
+    /** Queues {@code r}; completes with its share of the batched response. */
+    CompletableFuture<ProxyPipeline.Upstream> submit(Request r) {
+        List<Batch> ready = new ArrayList<>(2);
+        Batch started = null;
+        synchronized (this) {
+            Batch b = open.get(r.group);
+            if (b != null && b.inputs + r.inputs.size() > maxInputs) {
+                open.remove(r.group);
+                ready.add(b);
+                b = null;
+            }
+            if (b == null) {
+                b = new Batch(r.group);
+                open.put(r.group, b);
+                started = b;
+            }
+            b.requests.add(r);
+            b.inputs += r.inputs.size();
+            if (b.inputs >= maxInputs) {
+                open.remove(r.group);
+                ready.add(b);
+                started = null;
+            }
+        }
+        for (Batch b : ready) send(b);
+        if (started != null) {
+            Batch expiring = started;
+            timer.schedule(() -> expire(expiring), maxWaitMicros, TimeUnit.MICROSECONDS);
+        }
+        return r.response;
+    }
+
+    private void expire(Batch b) {
+        synchronized (this) {
+            if (!open.remove(b.group, b)) return;
+        }
+        send(b);
+    }
+
+    private void send(Batch b) {
+        Request first = b.requests.get(0);
+        metrics.recordEmbeddingsBatch(first.template.path("model").asText(""), b.requests.size());
+        ObjectNode merged = first.template.deepCopy();
+        ArrayNode input = merged.putArray("input");
+        FairAdmissionQueue.Priority priority = first.priority;
+        for (Request r : b.requests) {
+            for (String s : r.inputs) input.add(s);
+            if (r.priority.compareTo(priority) < 0) priority = r.priority;
+        }
+        byte[] body;
+        try {
+            body = MAPPER.writeValueAsBytes(merged);
+        } catch (IOException e) {
+            fail(b, e);
+            return;
+        }
+        sender.send(first.path, first.routeModel, priority, body).whenComplete((reply, err) -> {
+            if (err != null) {
+                fail(b, err);
+            } else {
+                split(b, reply);
+            }
+        });
+    }
+
+    private static void fail(Batch b, Throwable t) {
+        for (Request r : b.requests) r.response.completeExceptionally(t);
+    }
+
+    private static void split(Batch b, ProxyPipeline.Reply reply) {
+        if (reply.status / 100 != 2 || b.requests.size() == 1) {
+            for (Request r : b.requests) {
+                r.response.complete(ProxyPipeline.Upstream.of(reply.status, reply.contentType, reply.body));
+            }
+            return;
+        }
+        try {
+            JsonNode root = MAPPER.readTree(reply.body);
+            JsonNode data = root == null ? null : root.path("data");
+            if (data == null || !data.isArray() || data.size() != b.inputs) {
+                throw new IOException("Batched embeddings response has "
+                        + (data == null ? 0 : data.size()) + " items for " + b.inputs + " inputs");
+            }
+            ObjectNode[] byIndex = new ObjectNode[b.inputs];
+            for (JsonNode item : data) {
+                int idx = item.path("index").asInt(-1);
+                if (!item.isObject() || idx < 0 || idx >= byIndex.length || byIndex[idx] != null) {
+                    throw new IOException("Batched embeddings response has a bad item index: " + idx);
+                }
+                byIndex[idx] = (ObjectNode) item;
+            }
+            long[] weights = new long[b.requests.size()];
+            for (int i = 0; i < weights.length; i++) weights[i] = b.requests.get(i).weight;
+            long[] tokens = apportion(root.path("usage").path("prompt_tokens").asLong(0L), weights);
+
+            byte[][] bodies = new byte[b.requests.size()][];
+            int at = 0;
+            for (int i = 0; i < bodies.length; i++) {
+                Request r = b.requests.get(i);
+                ObjectNode out = MAPPER.createObjectNode();
+                out.put("object", root.path("object").asText("list"));
+                ArrayNode items = out.putArray("data");
+                for (int j = 0; j < r.inputs.size(); j++) {
+                    items.add(byIndex[at + j].deepCopy().put("index", j));
+                }
+                at += r.inputs.size();
+                if (root.has("model")) out.set("model", root.get("model"));
+                out.putObject("usage").put("prompt_tokens", tokens[i]).put("total_tokens", tokens[i]);
+                bodies[i] = MAPPER.writeValueAsBytes(out);
+            }
+            for (int i = 0; i < bodies.length; i++) {
+                b.requests.get(i).response.complete(
+                        ProxyPipeline.Upstream.of(reply.status, reply.contentType, bodies[i]));
+            }
+        } catch (IOException e) {
+            fail(b, e);
+        }
+    }
+
+    /** Splits {@code total} in proportion to {@code weights}; the parts add up to it exactly. */
+    static long[] apportion(long total, long[] weights) {
+        long sum = 0;
+        for (long w : weights) sum += w;
+        long[] out = new long[weights.length];
+        double[] remainder = new double[weights.length];
+        long given = 0;
+        for (int i = 0; i < weights.length; i++) {
+            double exact = sum == 0 ? (double) total / weights.length : (double) total * weights[i] / sum;
+            out[i] = (long) Math.floor(exact);
+            remainder[i] = exact - out[i];
+            given += out[i];
+        }
+        for (long left = total - given; left > 0; left--) {
+            int best = 0;
+            for (int i = 1; i < weights.length; i++) {
+                if (remainder[i] > remainder[best]) best = i;
+            }
+            out[best]++;
+            remainder[best] = -1;
+        }
+        return out;
+    }
+}
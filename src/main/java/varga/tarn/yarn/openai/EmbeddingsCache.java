@@ -0,0 +1,217 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import varga.tarn.yarn.MetricsCollector;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Content-addressed cache of embedding vectors, stored off-heap.
+ *
+ * <p>A vector is keyed by a 128-bit digest of (model, requested dimensions, NFC-normalized
+ * input) and stored as raw little-endian float32, so the same entry serves both
+ * {@code encoding_format}s. Vectors live in {@link #PAGE_BYTES} direct-buffer pages, each cut
+ * into equal slots for one vector size; the page count is capped by the configured byte
+ * bound, so off-heap use never exceeds it and evicted vectors are reused in place rather than
+ * left to the GC. Eviction is LRU: when no slot of the needed size is free and no page can be
+ * added, least recently used entries go until one is — an emptied page can then serve any
+ * size.
+ *
+ * <p>One lock guards the index and the slabs; a hit copies the vector out under it, so a slot
+ * can be reused as soon as its entry is evicted.
+ */
+final class EmbeddingsCache {
+
+    static final int PAGE_BYTES = 1 << 20;
+
+    /** 128-bit content address. */
+    static final class Key {
+        final long hi;
+        final long lo;
+
+        Key(long hi, long lo) {
+            this.hi = hi;
+            this.lo = lo;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).hi == hi && ((Key) o).lo == lo;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hi ^ lo);
+        }
+    }
+
+    private static final class Page {
+        final ByteBuffer buf;
+        final int slotBytes;
+        final int[] freeSlots;
+        int freeCount;
+
+        Page(ByteBuffer buf, int slotBytes) {
+            this.buf = buf;
+            this.slotBytes = slotBytes;
+            int slots = PAGE_BYTES / slotBytes;
+            this.freeSlots = new int[slots];
+            for (int i = 0; i < slots; i++) freeSlots[i] = slots - 1 - i;
+            this.freeCount = slots;
+        }
+
+        boolean empty() {
+            return freeCount == freeSlots.length;
+        }
+    }
+
+    private static final class Entry {
+        final Page page;
+        final int slot;
+
+        Entry(Page page, int slot) {
+            this.page = page;
+            this.slot = slot;
+        }
+    }
+
+    private final int maxPages;
+    private final MetricsCollector metrics;
+    // Guarded by this.
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private final Map<Integer, ArrayDeque<Page>> withFreeSlots = new HashMap<>();
+    private final ArrayDeque<ByteBuffer> idlePages = new ArrayDeque<>();
+    private int pages;
+    private long usedBytes;
+
+    EmbeddingsCache(long maxBytes, MetricsCollector metrics) {
+        this.maxPages = (int) Math.min(Integer.MAX_VALUE, maxBytes / PAGE_BYTES);
+        this.metrics = metrics;
+    }
+
+    /** Digest of one input; {@code dimensions} is 0 when the request did not set it. */
+    static Key key(String model, int dimensions, String input) {
+        MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        sha.update(model.getBytes(StandardCharsets.UTF_8));
+        sha.update((byte) 0);
+        sha.update(Integer.toString(dimensions).getBytes(StandardCharsets.US_ASCII));
+        sha.update((byte) 0);
+        String normalized = Normalizer.isNormalized(input, Normalizer.Form.NFC)
+                ? input : Normalizer.normalize(input, Normalizer.Form.NFC);
+        byte[] d = sha.digest(normalized.getBytes(StandardCharsets.UTF_8));
+        ByteBuffer b = ByteBuffer.wrap(d);
+        return new Key(b.getLong(), b.getLong());
+    }
+
+    /** Copy of the cached float32 vector bytes, or null. */
+    synchronized byte[] get(Key key) {
+        Entry e = entries.get(key);
+        if (e == null) return null;
+        byte[] out = new byte[e.page.slotBytes];
+        e.page.buf.get(e.slot * e.page.slotBytes, out);
+        return out;
+    }
+
+    /**
+     * Stores a float32 vector. Vectors larger than a page, or that cannot be placed at all
+     * (zero capacity), are skipped.
+     */
+    synchronized void put(Key key, byte[] vector) {
+        int n = vector.length;
+        if (n == 0 || n > PAGE_BYTES || maxPages == 0 || entries.containsKey(key)) return;
+        Page page = pageWithFreeSlot(n);
+        while (page == null && !entries.isEmpty()) {
+            evictEldest();
+            page = pageWithFreeSlot(n);
+        }
+        if (page == null) return;
+        int slot = page.freeSlots[--page.freeCount];
+        if (page.freeCount == 0) withFreeSlots.get(n).remove(page);
+        page.buf.put(slot * n, vector);
+        entries.put(key, new Entry(page, slot));
+        usedBytes += n;
+        metrics.setEmbeddingsCacheBytes(usedBytes, bytes());
+    }
+
+    void countLookups(int hits, int misses) {
+        metrics.recordEmbeddingsCacheLookups(hits, misses);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /** Off-heap bytes reserved in pages. */
+    synchronized long bytes() {
+        return (long) pages * PAGE_BYTES;
+    }
+
+    /** Bytes of the vectors currently cached. */
+    synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    private Page pageWithFreeSlot(int slotBytes) {
+        ArrayDeque<Page> q = withFreeSlots.get(slotBytes);
+        if (q != null && !q.isEmpty()) return q.peekFirst();
+        ByteBuffer buf = idlePages.pollFirst();
+        if (buf == null) {
+            if (pages >= maxPages) return null;
+            buf = ByteBuffer.allocateDirect(PAGE_BYTES);
+            pages++;
+        }
+        Page p = new Page(buf, slotBytes);
+        withFreeSlots.computeIfAbsent(slotBytes, k -> new ArrayDeque<>()).addFirst(p);
+        return p;
+    }
+
+    private void evictEldest() {
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        Entry e = it.next().getValue();
+        it.remove();
+        metrics.recordEmbeddingsCacheEviction();
+        Page p = e.page;
+        usedBytes -= p.slotBytes;
+        ArrayDeque<Page> q = withFreeSlots.get(p.slotBytes);
+        if (p.freeCount == 0) q.addLast(p);
+        p.freeSlots[p.freeCount++] = e.slot;
+        if (p.empty()) {
+            // Hand the whole page back so any vector size can use it.
+            q.remove(p);
+            idlePages.addFirst(p.buf);
+        }
+    }
+}
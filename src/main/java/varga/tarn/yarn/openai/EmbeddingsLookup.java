@@ -0,0 +1,276 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * One {@code /v1/embeddings} request served through the {@link EmbeddingsCache}.
+ *
+ * <p>{@link #lookup} resolves every input against the cache. When all of them hit, the proxy
+ * answers with {@link #render()} and Triton is not called. Otherwise the request is forwarded
+ * with only the missing inputs ({@link #upstreamBody()}), and this object — installed as the
+ * response filter — buffers Triton's answer, caches the new vectors and writes the full
+ * response with every item back at its original index. {@code usage} then covers the
+ * forwarded inputs only, which is what Triton actually computed.
+ *
+ * <p>Only plain requests are cached: string or string-array {@code input}, optional
+ * {@code encoding_format}, {@code dimensions} and {@code user}. Anything else (token-id
+ * input, backend-specific options) may change the vectors and is forwarded untouched.
+ */
+final class EmbeddingsLookup implements ResponseFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingsLookup.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Set<String> CACHEABLE_FIELDS = Set.of("model", "input", "encoding_format", "dimensions", "user");
+
+    private final EmbeddingsCache cache;
+    private final String model;
+    private final boolean base64;
+    private final EmbeddingsCache.Key[] keys;
+    /** Float32 little-endian vector per input; null until known. */
+    private final byte[][] vectors;
+    /** Original index of each forwarded input, in forwarding order. */
+    private final int[] missAt;
+    private final byte[] upstreamBody;
+    private final ByteArrayOutputStream upstream = new ByteArrayOutputStream();
+    private UsageExtractor.Listener tokens;
+
+    private EmbeddingsLookup(EmbeddingsCache cache, String model, boolean base64, EmbeddingsCache.Key[] keys,
+                             byte[][] vectors, int[] missAt, byte[] upstreamBody) {
+        this.cache = cache;
+        this.model = model;
+        this.base64 = base64;
+        this.keys = keys;
+        this.vectors = vectors;
+        this.missAt = missAt;
+        this.upstreamBody = upstreamBody;
+    }
+
+    /** Resolves a request body against {@code cache}; null when the request is not cacheable. */
+    static EmbeddingsLookup lookup(EmbeddingsCache cache, byte[] body, int off, int len) {
+        JsonNode root;
+        try {
+            root = MAPPER.readTree(body, off, len);
+        } catch (IOException e) {
+            return null;
+        }
+        if (root == null || !root.isObject()) return null;
+        for (Iterator<String> it = root.fieldNames(); it.hasNext(); ) {
+            if (!CACHEABLE_FIELDS.contains(it.next())) return null;
+        }
+        String model = root.path("model").asText("");
+        JsonNode input = root.path("input");
+        List<String> inputs = new ArrayList<>();
+        if (input.isTextual()) {
+            inputs.add(input.asText());
+        } else if (input.isArray() && input.size() > 0) {
+            for (JsonNode n : input) {
+                if (!n.isTextual()) return null;
+                inputs.add(n.asText());
+            }
+        } else {
+            return null;
+        }
+        JsonNode format = root.path("encoding_format");
+        boolean base64;
+        if (format.isMissingNode() || format.isNull() || "float".equals(format.asText())) {
+            base64 = false;
+        } else if ("base64".equals(format.asText())) {
+            base64 = true;
+        } else {
+            return null;
+        }
+        JsonNode dims = root.path("dimensions");
+        int dimensions = 0;
+        if (!dims.isMissingNode() && !dims.isNull()) {
+            if (!dims.canConvertToInt() || !dims.isIntegralNumber() || dims.asInt() <= 0) return null;
+            dimensions = dims.asInt();
+        }
+
+        int n = inputs.size();
+        EmbeddingsCache.Key[] keys = new EmbeddingsCache.Key[n];
+        byte[][] vectors = new byte[n][];
+        int misses = 0;
+        for (int i = 0; i < n; i++) {
+            keys[i] = EmbeddingsCache.key(model, dimensions, inputs.get(i));
+            vectors[i] = cache.get(keys[i]);
+            if (vectors[i] == null) misses++;
+        }
+        cache.countLookups(n - misses, misses);
+        int[] missAt = new int[misses];
+        ArrayNode forwarded = MAPPER.createArrayNode();
+        for (int i = 0, j = 0; i < n; i++) {
+            if (vectors[i] == null) {
+                missAt[j++] = i;
+                forwarded.add(inputs.get(i));
+            }
+        }
+        byte[] upstreamBody = null;
+        if (misses > 0 && misses < n) {
+            ObjectNode rewritten = ((ObjectNode) root).deepCopy();
+            rewritten.set("input", forwarded);
+            try {
+                upstreamBody = MAPPER.writeValueAsBytes(rewritten);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return new EmbeddingsLookup(cache, model, base64, keys, vectors, missAt, upstreamBody);
+    }
+
+    /** Every input was cached. */
+    boolean complete() {
+        return missAt.length == 0;
+    }
+
+    /** Body to forward instead of the client's, or null to forward the client's unchanged. */
+    byte[] upstreamBody() {
+        return upstreamBody;
+    }
+
+    /** Installs the token listener and returns this as the response filter. */
+    ResponseFilter filter(UsageExtractor.Listener tokens) {
+        this.tokens = tokens;
+        return this;
+    }
+
+    /** The response for a {@link #complete()} lookup. */
+    byte[] render() throws IOException {
+        return render(model, 0L);
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len, Sink out) {
+        upstream.write(buf, off, len);
+    }
+
+    @Override
+    public void finish(Sink out) throws IOException {
+        byte[] raw = upstream.toByteArray();
+        JsonNode root;
+        try {
+            root = MAPPER.readTree(raw);
+        } catch (IOException e) {
+            root = null;
+        }
+        long prompt = root == null ? 0L : root.path("usage").path("prompt_tokens").asLong(0L);
+        if (prompt > 0 && tokens != null) tokens.onUsage(prompt, 0L);
+        if (root == null || !fill(root.path("data"))) {
+            // Nothing to merge with; the client at least sees what Triton said.
+            if (missAt.length < keys.length) {
+                log.warn("Embeddings response did not match the {} forwarded inputs; relaying it as-is", missAt.length);
+            }
+            out.write(raw, 0, raw.length);
+            return;
+        }
+        if (missAt.length == keys.length) {
+            // Nothing came from the cache: Triton's own bytes are the answer.
+            out.write(raw, 0, raw.length);
+            return;
+        }
+        byte[] merged = render(root.path("model").asText(model), prompt);
+        out.write(merged, 0, merged.length);
+    }
+
+    /** Takes the forwarded inputs' vectors from Triton's {@code data} and caches them. */
+    private boolean fill(JsonNode data) {
+        if (!data.isArray() || data.size() != missAt.length) return false;
+        byte[][] fresh = new byte[missAt.length][];
+        for (JsonNode item : data) {
+            int idx = item.path("index").asInt(-1);
+            if (idx < 0 || idx >= missAt.length || fresh[idx] != null) return false;
+            fresh[idx] = decode(item.path("embedding"));
+            if (fresh[idx] == null) return false;
+        }
+        for (int j = 0; j < missAt.length; j++) {
+            vectors[missAt[j]] = fresh[j];
+            cache.put(keys[missAt[j]], fresh[j]);
+        }
+        return true;
+    }
+
+    private static byte[] decode(JsonNode embedding) {
+        if (embedding.isTextual()) {
+            try {
+                byte[] b = Base64.getDecoder().decode(embedding.asText());
+                return b.length % Float.BYTES == 0 ? b : null;
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        if (!embedding.isArray()) return null;
+        ByteBuffer b = ByteBuffer.allocate(embedding.size() * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (JsonNode v : embedding) {
+            if (!v.isNumber()) return null;
+            b.putFloat(v.floatValue());
+        }
+        return b.array();
+    }
+
+    private byte[] render(String responseModel, long promptTokens) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JsonGenerator g = MAPPER.getFactory().createGenerator(bytes)) {
+            g.writeStartObject();
+            g.writeStringField("object", "list");
+            g.writeArrayFieldStart("data");
+            for (int i = 0; i < vectors.length; i++) {
+                g.writeStartObject();
+                g.writeStringField("object", "embedding");
+                g.writeNumberField("index", i);
+                g.writeFieldName("embedding");
+                if (base64) {
+                    g.writeString(Base64.getEncoder().encodeToString(vectors[i]));
+                } else {
+                    ByteBuffer v = ByteBuffer.wrap(vectors[i]).order(ByteOrder.LITTLE_ENDIAN);
+                    g.writeStartArray();
+                    while (v.hasRemaining()) g.writeNumber(v.getFloat());
+                    g.writeEndArray();
+                }
+                g.writeEndObject();
+            }
+            g.writeEndArray();
+            g.writeStringField("model", responseModel);
+            g.writeObjectFieldStart("usage");
+            g.writeNumberField("prompt_tokens", promptTokens);
+            g.writeNumberField("total_tokens", promptTokens);
+            g.writeEndObject();
+            g.writeEndObject();
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,278 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Bounded queue in front of upstream dispatch for requests that found every backend at its
+ * concurrency limit. Requests are held per flow — one flow per (priority class, tenant) —
+ * and released one per freed slot in deficit round robin order: each flow whose turn comes
+ * up may release as many requests as its class weight before the next flow's turn. A tenant
+ * firing a thousand batch requests therefore gets one flow's share, not a thousand places
+ * ahead of an interactive user, and interactive flows get {@link Priority#weight} times the
+ * share of batch flows while both are backlogged.
+ *
+ * <p>No thread waits in the queue: each ticket's {@link Ticket#outcome} completes with true
+ * when {@link #grant} hands it a slot — on the granting thread, so continuations should be
+ * short or hand off — and with false once its deadline passes, at which point it leaves the
+ * queue and the caller answers 503. A ticket may carry a check of whether it can use a slot
+ * right now — whether a container serving its model has room — and a grant passes over
+ * tickets that cannot, so a slot freed on one model's containers goes to a request for that
+ * model rather than idling while it waits out another's turn. A grant still does not
+ * guarantee a slot, since another request may take it first: the caller re-checks its
+ * backends and, if none has room, {@link #requeue}s at the head of its flow.
+ */
+final class FairAdmissionQueue {
+
+    /** Scheduling class of a request, from its quota rule or {@code X-TARN-Priority}. */
+    enum Priority {
+        INTERACTIVE(4),
+        STANDARD(2),
+        BATCH(1);
+
+        /** Requests a flow of this class releases per round. */
+        final int weight;
+
+        Priority(int weight) {
+            this.weight = weight;
+        }
+
+        /** Null for null or unknown names. */
+        static Priority parse(String s) {
+            if (s == null) return null;
+            try {
+                return valueOf(s.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /** One queued request. */
+    static final class Ticket {
+        final Priority priority;
+        // Guarded by the queue: a requeued ticket may join a newer flow of the same key.
+        private Flow flow;
+        private final long deadlineNs;
+        /** Whether a slot would be of use to the request now; asked under the queue lock. */
+        private final BooleanSupplier eligible;
+        // Replaced under the queue lock when the ticket is requeued.
+        private volatile CompletableFuture<Boolean> outcome;
+
+        private Ticket(Priority priority, Flow flow, long deadlineNs, BooleanSupplier eligible) {
+            this.priority = priority;
+            this.flow = flow;
+            this.deadlineNs = deadlineNs;
+            this.eligible = eligible;
+        }
+
+        /**
+         * Completes with true when the ticket is granted a slot, false when its deadline passes
+         * first. A requeued ticket has a new one.
+         */
+        CompletableFuture<Boolean> outcome() {
+            return outcome;
+        }
+
+        boolean granted() {
+            return outcome.getNow(false);
+        }
+    }
+
+    private static final class Flow {
+        final String key;
+        final int quantum;
+        final ArrayDeque<Ticket> tickets = new ArrayDeque<>();
+        int deficit;
+        boolean active;
+
+        Flow(String key, int quantum) {
+            this.key = key;
+            this.quantum = quantum;
+        }
+    }
+
+    private final int capacity;
+    // Guarded by this.
+    private final Map<String, Flow> flows = new HashMap<>();
+    private final ArrayDeque<Flow> active = new ArrayDeque<>();
+    private int queued;
+    // Lets the release path skip the lock when nothing waits.
+    private volatile boolean empty = true;
+
+    /** @param capacity most requests held at once; further ones are refused */
+    FairAdmissionQueue(int capacity) {
+        this.capacity = capacity;
+    }
+
+    boolean isEmpty() {
+        return empty;
+    }
+
+    /** Queues a request of {@code tenant} that can use any slot; null when the queue is full. */
+    Ticket enqueue(String tenant, Priority priority, long deadlineNs) {
+        return enqueue(tenant, priority, deadlineNs, () -> true);
+    }
+
+    /**
+     * Queues a request of {@code tenant} that is only granted a slot while {@code eligible}
+     * holds; null when the queue is full. The check must be cheap and must not block.
+     */
+    Ticket enqueue(String tenant, Priority priority, long deadlineNs, BooleanSupplier eligible) {
+        Ticket t;
+        synchronized (this) {
+            if (queued >= capacity) return null;
+            String key = priority.ordinal() + "|" + tenant;
+            Flow f = flows.computeIfAbsent(key, k -> new Flow(k, priority.weight));
+            t = new Ticket(priority, f, deadlineNs, eligible);
+            t.outcome = new CompletableFuture<>();
+            f.tickets.addLast(t);
+            activate(f);
+            queued++;
+            empty = false;
+        }
+        expire(t, t.outcome);
+        return t;
+    }
+
+    /**
+     * Hands one freed slot to the next request in deficit round robin order that is eligible
+     * for it, skipping those past their deadline. False when no waiting request could use it.
+     */
+    boolean grant() {
+        if (empty) return false;
+        while (true) {
+            Ticket t;
+            synchronized (this) {
+                t = next(System.nanoTime());
+                if (t == null) return false;
+            }
+            // Outside the lock: the ticket's continuation runs here. Its deadline may have
+            // fired in between, in which case the slot goes to the next one.
+            if (t.outcome.complete(true)) return true;
+        }
+    }
+
+    /** Puts a granted ticket back at the head of its flow, e.g. when the slot was unusable. */
+    void requeue(Ticket t) {
+        CompletableFuture<Boolean> outcome = new CompletableFuture<>();
+        synchronized (this) {
+            t.outcome = outcome;
+            Flow f = flows.computeIfAbsent(t.flow.key, k -> t.flow);
+            t.flow = f;
+            f.tickets.addFirst(t);
+            activate(f);
+            queued++;
+            empty = false;
+        }
+        expire(t, outcome);
+    }
+
+    synchronized int size() {
+        return queued;
+    }
+
+    /** Completes {@code outcome} with false at the ticket's deadline and takes it off the queue. */
+    private void expire(Ticket t, CompletableFuture<Boolean> outcome) {
+        outcome.completeOnTimeout(false, t.deadlineNs - System.nanoTime(), TimeUnit.NANOSECONDS)
+                .thenAccept(granted -> {
+                    if (!granted) cancel(t);
+                });
+    }
+
+    private synchronized void cancel(Ticket t) {
+        if (t.flow.tickets.remove(t)) {
+            queued--;
+            if (t.flow.tickets.isEmpty()) retire(t.flow);
+            empty = queued == 0;
+        }
+    }
+
+    // Caller holds the lock. Flows with nothing eligible keep their place for the next grant.
+    private Ticket next(long now) {
+        Ticket chosen = null;
+        Flow from = null;
+        for (Iterator<Flow> it = active.iterator(); it.hasNext() && chosen == null; ) {
+            Flow f = it.next();
+            for (Iterator<Ticket> ts = f.tickets.iterator(); ts.hasNext(); ) {
+                Ticket t = ts.next();
+                if (t.deadlineNs - now <= 0) {
+                    // Its own deadline completes it, if that has not happened yet.
+                    ts.remove();
+                    queued--;
+                } else if (t.eligible.getAsBoolean()) {
+                    ts.remove();
+                    queued--;
+                    chosen = t;
+                    from = f;
+                    break;
+                }
+            }
+            if (chosen == null && f.tickets.isEmpty()) {
+                it.remove();
+                forget(f);
+            }
+        }
+        empty = queued == 0;
+        if (chosen == null) return null;
+        if (from.deficit <= 0) from.deficit += from.quantum;
+        from.deficit--;
+        if (from.tickets.isEmpty()) {
+            retire(from);
+        } else if (from.deficit <= 0) {
+            active.remove(from);
+            active.addLast(from);
+        }
+        return chosen;
+    }
+
+    private void activate(Flow f) {
+        if (!f.active) {
+            f.active = true;
+            f.deficit = 0;
+            active.addLast(f);
+        }
+    }
+
+    private void retire(Flow f) {
+        active.remove(f);
+        forget(f);
+    }
+
+    // Leaves f in the active list; the caller takes it off.
+    private void forget(Flow f) {
+        f.active = false;
+        f.deficit = 0;
+        flows.remove(f.key);
+    }
+}
@@ -0,0 +1,175 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import varga.tarn.yarn.MetricsCollector;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Hedged requests for short, non-streaming calls of opted-in models (embeddings,
+ * classifiers). When the first attempt has not answered within the model's observed p95
+ * latency, a second attempt goes to another READY container; the first reply wins and the
+ * other attempt is cancelled. A slow container — a garbage-collecting Python backend, a
+ * throttling GPU — then costs the tail one p95 plus a normal response time instead of its
+ * own latency.
+ *
+ * <p>Hedges are paid for from a budget: every hedgeable request deposits
+ * {@code budgetPercent / 100} of a hedge, each hedge withdraws one, and the balance is capped
+ * at {@link #BURST} hedges. Over any stretch of traffic, hedges therefore add at most that
+ * percentage (plus the burst) to the load, and a fleet-wide slowdown — where every request
+ * would qualify — cannot double it.
+ *
+ * <p>No hedge is sent until the model has {@link #MIN_SAMPLES} latencies on record.
+ */
+final class Hedger {
+
+    static final int MIN_SAMPLES = 50;
+    static final int BURST = 10;
+    /** One hedge in budget units, which are millionths of a hedge. */
+    private static final long HEDGE = 1_000_000L;
+
+    /** The reply of a hedged call and the attempt it came from. */
+    static final class Outcome<T> {
+        final T value;
+        /** True when the hedge answered first; the first attempt was then cancelled. */
+        final boolean hedge;
+
+        private Outcome(T value, boolean hedge) {
+            this.value = value;
+            this.hedge = hedge;
+        }
+    }
+
+    private final Set<String> models;
+    private final boolean allModels;
+    private final long deposit;
+    private final AtomicLong balance = new AtomicLong();
+    private final MetricsCollector metrics;
+
+    /** @param models opted-in models; {@code "*"} hedges every model */
+    Hedger(List<String> models, double budgetPercent, MetricsCollector metrics) {
+        this.models = new HashSet<>(models);
+        this.allModels = this.models.contains("*");
+        this.deposit = Math.round(budgetPercent / 100.0 * HEDGE);
+        this.metrics = metrics;
+    }
+
+    boolean hedges(String model) {
+        return allModels || models.contains(model);
+    }
+
+    /** How long to wait for the first attempt, or -1 while the model has too few samples. */
+    long delayNanos(String model) {
+        if (metrics.getHistogramCount(model) < MIN_SAMPLES) return -1;
+        double p95 = metrics.getLatencyQuantile(model, 0.95);
+        return p95 > 0 ? (long) (p95 * 1e9) : -1;
+    }
+
+    /**
+     * Sends {@code primary} and, if it has not completed after the model's p95, {@code backup}
+     * (which returns null when there is nowhere else to send). The result is the first
+     * successful completion, tagged with the attempt that produced it; it fails only when
+     * every attempt made failed. The losing attempt is cancelled, so both must return the
+     * transport's own futures, not derived ones.
+     */
+    <T> CompletableFuture<Outcome<T>> send(String model, Supplier<CompletableFuture<T>> primary,
+                                           Supplier<CompletableFuture<T>> backup) {
+        credit();
+        CompletableFuture<T> first = primary.get();
+        long delay = delayNanos(model);
+        if (delay < 0) return first.thenApply(v -> new Outcome<>(v, false));
+
+        CompletableFuture<Outcome<T>> result = new CompletableFuture<>();
+        // Attempts that have not failed yet; the last failure fails the result.
+        AtomicInteger alive = new AtomicInteger(1);
+        AtomicReference<CompletableFuture<T>> second = new AtomicReference<>();
+        first.whenComplete((v, e) -> {
+            if (e == null) {
+                if (result.complete(new Outcome<>(v, false))) cancel(second.get());
+            } else if (alive.decrementAndGet() == 0) {
+                result.completeExceptionally(e);
+            }
+        });
+        CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(() -> {
+            if (result.isDone() || first.isDone() || !join(alive)) return;
+            CompletableFuture<T> h = withdraw() ? backup.get() : null;
+            if (h == null) {
+                if (alive.decrementAndGet() == 0) first.whenComplete((v, e) -> result.completeExceptionally(e));
+                return;
+            }
+            metrics.recordHedgeSent(model);
+            second.set(h);
+            if (result.isDone()) cancel(h);
+            h.whenComplete((v, e) -> {
+                if (e == null) {
+                    if (result.complete(new Outcome<>(v, true))) {
+                        metrics.recordHedgeWon(model);
+                        cancel(first);
+                    }
+                } else if (alive.decrementAndGet() == 0) {
+                    result.completeExceptionally(e);
+                }
+            });
+        });
+        return result;
+    }
+
+    /** Hedges currently affordable, rounded down. */
+    long budget() {
+        return balance.get() / HEDGE;
+    }
+
+    private void credit() {
+        balance.accumulateAndGet(deposit, (b, d) -> Math.min(BURST * HEDGE, b + d));
+    }
+
+    private boolean withdraw() {
+        long b;
+        do {
+            b = balance.get();
+            if (b < HEDGE) return false;
+        } while (!balance.compareAndSet(b, b - HEDGE));
+        return true;
+    }
+
+    /** Counts a second attempt in, unless the first already failed and settled the result. */
+    private static boolean join(AtomicInteger alive) {
+        int n;
+        do {
+            n = alive.get();
+            if (n == 0) return false;
+        } while (!alive.compareAndSet(n, n + 1));
+        return true;
+    }
+
+    private static void cancel(CompletableFuture<?> f) {
+        if (f != null) f.cancel(true);
+    }
+}
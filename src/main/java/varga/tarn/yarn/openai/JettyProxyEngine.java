@@ -0,0 +1,139 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import varga.tarn.yarn.ApplicationMaster;
+import varga.tarn.yarn.TarnConfig;
+import varga.tarn.yarn.TlsContextLoader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Embedded Jetty hosting {@link AsyncProxyServlet} on {@code /v1/*} and a health servlet on
+ * {@code /health}. Selected with {@code --proxy-engine=jetty}.
+ *
+ * <p>The thread pool is deliberately small: with non-blocking reads, {@code sendAsync}
+ * upstream and listener-driven writes, a thread is only busy while bytes are actually being
+ * moved or a pipeline stage runs, never while a stream is idle between tokens.
+ */
+final class JettyProxyEngine {
+
+    private final Server server;
+    private final ServerConnector connector;
+    private final AsyncProxyServlet proxy;
+    private final int maxThreads;
+
+    JettyProxyEngine(TarnConfig config, ApplicationMaster am,
+                     org.apache.hadoop.conf.Configuration hadoopConf) throws IOException {
+        this.maxThreads = Math.max(16, Runtime.getRuntime().availableProcessors() * 2);
+        QueuedThreadPool threads = new QueuedThreadPool(maxThreads, 4);
+        threads.setName("tarn-openai-proxy-jetty");
+        threads.setDaemon(true);
+        this.server = new Server(threads);
+
+        HttpConfiguration http = new HttpConfiguration();
+        http.setSendServerVersion(false);
+        if (config.tlsEnabled) {
+            try {
+                SslContextFactory.Server ssl = new SslContextFactory.Server();
+                ssl.setSslContext(TlsContextLoader.buildSslContext(config,
+                        hadoopConf != null ? hadoopConf : new org.apache.hadoop.conf.Configuration()));
+                this.connector = new ServerConnector(server, ssl, new HttpConnectionFactory(http));
+            } catch (Exception e) {
+                throw new IOException("Failed to initialize TLS for OpenAI proxy on port "
+                        + config.openaiProxyPort, e);
+            }
+        } else {
+            this.connector = new ServerConnector(server, new HttpConnectionFactory(http));
+        }
+        connector.setHost(config.bindAddress);
+        connector.setPort(config.openaiProxyPort);
+        server.addConnector(connector);
+
+        this.proxy = new AsyncProxyServlet(new ProxyPipeline(am, config));
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
+        context.setContextPath("/");
+        ServletHolder proxyHolder = new ServletHolder("openai-proxy", proxy);
+        proxyHolder.setAsyncSupported(true);
+        context.addServlet(proxyHolder, "/v1/*");
+        context.addServlet(new ServletHolder("health", new HealthServlet(am)), "/health");
+        server.setHandler(context);
+    }
+
+    void start() {
+        try {
+            server.start();
+        } catch (Exception e) {
+            // Binding happens here with Jetty (HttpServer binds in create()); surface it like a bind failure.
+            throw new IllegalStateException("Failed to start Jetty OpenAI proxy", e);
+        }
+    }
+
+    void stop() {
+        try {
+            server.stop();
+        } catch (Exception e) {
+            // Best effort during AM shutdown.
+        }
+    }
+
+    int getPort() {
+        return connector.getLocalPort();
+    }
+
+    int getActive() {
+        return proxy.getActive();
+    }
+
+    int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /** Same contract as {@link ProxyHealthHandler}. */
+    private static final class HealthServlet extends HttpServlet {
+        private final ApplicationMaster am;
+
+        HealthServlet(ApplicationMaster am) {
+            this.am = am;
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            boolean ok = ProxyHealthHandler.isHealthy(am);
+            byte[] bytes = (ok ? "OK" : "NO_BACKENDS").getBytes(StandardCharsets.UTF_8);
+            resp.setStatus(ok ? 200 : 503);
+            resp.setContentLength(bytes.length);
+            resp.getOutputStream().write(bytes);
+        }
+    }
+}
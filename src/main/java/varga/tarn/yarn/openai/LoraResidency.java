@@ -0,0 +1,133 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import varga.tarn.yarn.RoutingTable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks which containers recently served — and therefore most likely still hold — each LoRA
+ * adapter, and routes {@code base#lora} requests to them.
+ *
+ * <p>Every adapter has a small replica set. Its target size follows the adapter's own request
+ * rate (an exponentially decayed rate with a {@value #RATE_TAU_SECONDS}s time constant):
+ * one replica per {@code rpsPerReplica}, at least one and at most {@code maxReplicas}. While
+ * the set is below target the request goes to the least loaded container that does not hold
+ * the adapter yet — a cold load, counted per container — and that container joins the set;
+ * otherwise it goes to the less loaded of the most recently used replicas. Replicas that left
+ * the routing table or sat idle for {@link #RESIDENCY_TTL_NANOS} are forgotten, since the
+ * backend's adapter cache will have evicted them as well.
+ */
+final class LoraResidency {
+
+    static final long RESIDENCY_TTL_NANOS = TimeUnit.MINUTES.toNanos(10);
+    static final double RATE_TAU_SECONDS = 30.0;
+
+    /** Where an adapter request was sent. */
+    static final class Choice {
+        final RoutingTable.Backend backend;
+        /** The container was not known to hold the adapter. */
+        final boolean cold;
+        /** Containers now believed to hold the adapter, this one included. */
+        final int replicas;
+
+        Choice(RoutingTable.Backend backend, boolean cold, int replicas) {
+            this.backend = backend;
+            this.cold = cold;
+            this.replicas = replicas;
+        }
+    }
+
+    private static final class Adapter {
+        // containerId -> last use (nanos), least recently used first.
+        final LinkedHashMap<String, Long> residents = new LinkedHashMap<>(8, 0.75f, true);
+        double rate;
+        long rateAtNs;
+    }
+
+    private final BackendSelector selector;
+    private final int maxReplicas;
+    private final double rpsPerReplica;
+    private final LongSupplier nanoClock;
+    private final Map<String, Adapter> adapters = new ConcurrentHashMap<>();
+
+    LoraResidency(BackendSelector selector, int maxReplicas, double rpsPerReplica) {
+        this(selector, maxReplicas, rpsPerReplica, System::nanoTime);
+    }
+
+    LoraResidency(BackendSelector selector, int maxReplicas, double rpsPerReplica, LongSupplier nanoClock) {
+        this.selector = selector;
+        this.maxReplicas = maxReplicas;
+        this.rpsPerReplica = rpsPerReplica;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Picks the backend for one request on {@code adapter} (the combined {@code base#lora}
+     * name), or null when {@code table} is empty.
+     */
+    Choice pick(String adapter, RoutingTable table) {
+        if (table.isEmpty()) return null;
+        Adapter a = adapters.computeIfAbsent(adapter, k -> new Adapter());
+        synchronized (a) {
+            long now = nanoClock.getAsLong();
+            double dt = a.rateAtNs == 0L ? 0.0 : (now - a.rateAtNs) / 1e9;
+            a.rate = a.rate * Math.exp(-dt / RATE_TAU_SECONDS) + 1.0 / RATE_TAU_SECONDS;
+            a.rateAtNs = now;
+            a.residents.entrySet().removeIf(e ->
+                    !table.contains(e.getKey()) || now - e.getValue() > RESIDENCY_TTL_NANOS);
+
+            int target = targetReplicas(a.rate);
+            List<RoutingTable.Backend> warm = new ArrayList<>(a.residents.size());
+            for (String id : a.residents.keySet()) {
+                warm.add(table.get(id));
+            }
+            RoutingTable.Backend chosen;
+            boolean cold = warm.size() < target && warm.size() < table.size();
+            if (cold) {
+                List<RoutingTable.Backend> others = new ArrayList<>(table.size() - warm.size());
+                for (RoutingTable.Backend b : table.backends()) {
+                    if (!a.residents.containsKey(b.containerId)) others.add(b);
+                }
+                chosen = selector.pick(others, b -> b.containerId);
+            } else {
+                // Past the target (traffic dropped) only the most recent replicas keep serving;
+                // the rest age out.
+                List<RoutingTable.Backend> recent = warm.subList(Math.max(0, warm.size() - target), warm.size());
+                chosen = selector.pick(recent, b -> b.containerId);
+            }
+            a.residents.put(chosen.containerId, now);
+            return new Choice(chosen, cold, a.residents.size());
+        }
+    }
+
+    int targetReplicas(double rate) {
+        int n = (int) Math.ceil(rate / rpsPerReplica);
+        return Math.max(1, Math.min(maxReplicas, n));
+    }
+}
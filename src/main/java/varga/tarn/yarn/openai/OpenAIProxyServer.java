@@ -31,8 +31,6 @@ import varga.tarn.yarn.TlsContextLoader;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * OpenAI-compatible HTTP(S) reverse proxy exposed on its own port (default 9000).
@@ -46,18 +44,35 @@ import java.util.concurrent.Executors;
  *   <li>Enabled only when {@code --openai-proxy-enabled} is set, so installations that don't
  *       need it pay zero cost.</li>
  * </ul>
+ *
+ * <p>Two engines share the same request pipeline ({@link ProxyPipeline}):
+ * {@code --proxy-engine=httpserver} (default) runs {@link OpenAIProxyHandler} on the JDK
+ * {@code HttpServer} with a thread per exchange; {@code --proxy-engine=jetty} runs the
+ * non-blocking {@link AsyncProxyServlet} on embedded Jetty.
  */
 public class OpenAIProxyServer {
 
     private static final Logger log = LoggerFactory.getLogger(OpenAIProxyServer.class);
 
+    public static final String ENGINE_HTTPSERVER = "httpserver";
+    public static final String ENGINE_JETTY = "jetty";
+
     private final TarnConfig config;
+    // Exactly one engine is set: server+executor for httpserver, jetty for jetty.
     private final HttpServer server;
-    private final ExecutorService pool;
+    private final ProxyExecutor executor;
+    private final JettyProxyEngine jetty;
 
     public OpenAIProxyServer(TarnConfig config, ApplicationMaster am,
                              org.apache.hadoop.conf.Configuration hadoopConf) throws IOException {
         this.config = config;
+        if (ENGINE_JETTY.equals(config.proxyEngine)) {
+            this.jetty = new JettyProxyEngine(config, am, hadoopConf);
+            this.server = null;
+            this.executor = null;
+            return;
+        }
+        this.jetty = null;
         InetSocketAddress addr = new InetSocketAddress(config.bindAddress, config.openaiProxyPort);
         if (config.tlsEnabled) {
             try {
@@ -74,35 +89,64 @@ public class OpenAIProxyServer {
             this.server = HttpServer.create(addr, 0);
         }
 
-        // Fixed-size pool: inference requests are long; unbounded would let a burst exhaust
-        // upstream connections. Tuned low by default; operators can override once they benchmark.
-        this.pool = Executors.newFixedThreadPool(
-                Math.max(8, Runtime.getRuntime().availableProcessors() * 4),
-                r -> {
-                    Thread t = new Thread(r, "tarn-openai-proxy");
-                    t.setDaemon(true);
-                    return t;
-                });
-        this.server.setExecutor(pool);
-
-        OpenAIProxyHandler handler = new OpenAIProxyHandler(am, config);
+        // platform: fixed pool, one slot held per stream for its whole generation.
+        // virtual: one thread per exchange, bounded by --proxy-max-concurrency.
+        this.executor = ProxyExecutor.create(config.proxyExecutor, config.proxyMaxConcurrency);
+        this.server.setExecutor(executor);
+
+        OpenAIProxyHandler handler = new OpenAIProxyHandler(am, config, executor::resume);
         this.server.createContext("/v1", handler);
         this.server.createContext("/health", new ProxyHealthHandler(am));
     }
 
     public void start() {
+        if (jetty != null) {
+            jetty.start();
+            log.info("OpenAI proxy listening on {}:{}{} (jetty async engine, {} threads)",
+                    config.bindAddress, getPort(),
+                    config.tlsEnabled ? " (TLS)" : "",
+                    jetty.getMaxThreads());
+            return;
+        }
         server.start();
-        log.info("OpenAI proxy listening on {}:{}{}",
+        log.info("OpenAI proxy listening on {}:{}{} ({} executor, max {} concurrent exchanges)",
                 config.bindAddress, config.openaiProxyPort,
-                config.tlsEnabled ? " (TLS)" : "");
+                config.tlsEnabled ? " (TLS)" : "",
+                executor.usesVirtualThreads() ? "virtual-thread" : "platform-thread",
+                executor.getMaxConcurrency());
     }
 
     public void stop() {
+        if (jetty != null) {
+            jetty.stop();
+            return;
+        }
         server.stop(1);
-        pool.shutdown();
+        executor.shutdown();
+    }
+
+    /** Exchanges currently being handled (for the async engine: open, including idle streams). */
+    public int getActiveExchanges() {
+        return jetty != null ? jetty.getActive() : executor.getActive();
+    }
+
+    /** Exchanges waiting for a slot; the async engine never queues. */
+    public int getQueuedExchanges() {
+        return jetty != null ? 0 : executor.getQueued();
+    }
+
+    /** Ceiling on concurrently handled exchanges, or -1 when only upstream limits apply. */
+    public int getMaxConcurrency() {
+        return jetty != null ? -1 : executor.getMaxConcurrency();
+    }
+
+    /** {@code platform}, {@code virtual} or {@code jetty}, for metric labels. */
+    public String getExecutorKind() {
+        if (jetty != null) return ENGINE_JETTY;
+        return executor.usesVirtualThreads() ? ProxyExecutor.MODE_VIRTUAL : ProxyExecutor.MODE_PLATFORM;
     }
 
     public int getPort() {
-        return server.getAddress().getPort();
+        return jetty != null ? jetty.getPort() : server.getAddress().getPort();
     }
 }
@@ -0,0 +1,260 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import varga.tarn.yarn.MetricsCollector;
+import varga.tarn.yarn.RoutingTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Passive health of the containers the proxy routes to, judged from the inference traffic
+ * itself rather than from {@code /v2/health/ready} probes. A container is ejected from
+ * routing when it
+ * <ul>
+ *   <li>fails {@code consecutiveErrors} requests in a row (5xx or transport error),</li>
+ *   <li>fails at least half of its last {@link #WINDOW} requests, or</li>
+ *   <li>answers {@link #SLOW_FACTOR} times slower than the median of its peers.</li>
+ * </ul>
+ *
+ * <p>The first ejection lasts {@code baseEjectionMs}; each further one doubles it, up to
+ * {@link #MAX_EJECTION_DOUBLINGS} doublings, and the count is forgiven once a container has
+ * stayed in rotation for the longest ejection. A returning container starts with a clean
+ * history. At most {@code maxEjectionPercent} of the routable containers are ejected at once,
+ * and a model whose every backend is ejected is still routed to all of them: a proxy that
+ * routes nowhere is worse than one that routes to slow backends. Containers that leave the
+ * routing table are forgotten (see {@link #retain}).
+ */
+final class OutlierDetector {
+
+    static final int WINDOW = 100;
+    /** Requests a container must have in its window before its error ratio or latency count. */
+    static final int MIN_REQUESTS = 20;
+    static final double FAILURE_RATIO = 0.5;
+    static final double SLOW_FACTOR = 3.0;
+    /** Other containers with enough requests needed for a meaningful latency median. */
+    static final int MIN_PEERS = 2;
+    static final int MAX_EJECTION_DOUBLINGS = 4;
+    /** Weight of the newest sample in the latency average. */
+    private static final double LATENCY_ALPHA = 0.1;
+
+    static final String CONSECUTIVE = "consecutive_errors";
+    static final String FAILURE_RATE = "failure_rate";
+    static final String SLOW = "latency";
+
+    private final int consecutiveErrors;
+    private final long baseEjectionNanos;
+    private final int maxEjectionPercent;
+    private final MetricsCollector metrics;
+    private final LongSupplier nanoClock;
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+    /** Routing table last passed to {@link #retain}; only its containers have a state. */
+    private volatile RoutingTable live = RoutingTable.EMPTY;
+
+    OutlierDetector(int consecutiveErrors, long baseEjectionMs, int maxEjectionPercent, MetricsCollector metrics) {
+        this(consecutiveErrors, baseEjectionMs, maxEjectionPercent, metrics, System::nanoTime);
+    }
+
+    OutlierDetector(int consecutiveErrors, long baseEjectionMs, int maxEjectionPercent, MetricsCollector metrics,
+                    LongSupplier nanoClock) {
+        this.consecutiveErrors = consecutiveErrors;
+        this.baseEjectionNanos = baseEjectionMs * 1_000_000L;
+        this.maxEjectionPercent = maxEjectionPercent;
+        this.metrics = metrics;
+        this.nanoClock = nanoClock;
+    }
+
+    private static final class State {
+        // Guarded by this.
+        final boolean[] failed = new boolean[WINDOW];
+        int next;
+        int requests;
+        int failures;
+        int consecutive;
+        double latencyNanos;
+        /** {@link #nanoClock} time the current ejection ends; 0 when in rotation. */
+        volatile long ejectedUntil;
+        int ejections;
+        long lastEjectionEnd;
+    }
+
+    /**
+     * Follows the routing table: containers no longer in it — drained, stopped or lost — are
+     * forgotten, so neither the ejection cap nor the peer latency median counts them. Costs a
+     * version check while the table is unchanged; an older table than the last one is ignored.
+     */
+    void retain(RoutingTable table) {
+        if (table.version <= live.version) return;
+        synchronized (states) {
+            if (table.version <= live.version) return;
+            live = table;
+            states.keySet().removeIf(cid -> !table.contains(cid));
+        }
+    }
+
+    /**
+     * The backends of {@code serving} that are not ejected: {@code serving} itself when none
+     * is, and also when all are.
+     */
+    RoutingTable admit(RoutingTable serving) {
+        List<RoutingTable.Backend> admitted = null;
+        List<RoutingTable.Backend> all = serving.backends();
+        long now = nanoClock.getAsLong();
+        for (int i = 0; i < all.size(); i++) {
+            RoutingTable.Backend b = all.get(i);
+            boolean ejected = isEjected(b.containerId, now);
+            if (!ejected && admitted != null) {
+                admitted.add(b);
+            } else if (ejected && admitted == null) {
+                admitted = new ArrayList<>(all.subList(0, i));
+            }
+        }
+        if (admitted == null) return serving;
+        return admitted.isEmpty() ? serving : new RoutingTable(serving.version, admitted);
+    }
+
+    boolean isEjected(String containerId) {
+        return isEjected(containerId, nanoClock.getAsLong());
+    }
+
+    private boolean isEjected(String containerId, long now) {
+        State s = states.get(containerId);
+        return s != null && ejected(s, now);
+    }
+
+    private static boolean ejected(State s, long now) {
+        long until = s.ejectedUntil;
+        return until != 0 && now - until < 0;
+    }
+
+    /** {@code containerId} answered without a server error, after {@code latencyNanos}. */
+    void onSuccess(String containerId, long latencyNanos) {
+        State s = state(containerId);
+        if (s == null) return;
+        boolean check;
+        synchronized (s) {
+            record(s, false);
+            s.consecutive = 0;
+            s.latencyNanos = s.latencyNanos == 0 ? latencyNanos
+                    : s.latencyNanos + LATENCY_ALPHA * (latencyNanos - s.latencyNanos);
+            // The peer median costs a pass over every container; a tenth of the samples suffice.
+            check = s.requests >= MIN_REQUESTS && s.requests % 10 == 0;
+        }
+        if (check && isSlow(containerId, s)) {
+            eject(containerId, s, SLOW);
+        }
+    }
+
+    /** {@code containerId} answered with a server error, or the call failed in transport. */
+    void onFailure(String containerId) {
+        State s = state(containerId);
+        if (s == null) return;
+        String reason = null;
+        synchronized (s) {
+            record(s, true);
+            s.consecutive++;
+            if (s.consecutive >= consecutiveErrors) {
+                reason = CONSECUTIVE;
+            } else if (s.requests >= MIN_REQUESTS && s.failures >= FAILURE_RATIO * s.requests) {
+                reason = FAILURE_RATE;
+            }
+        }
+        if (reason != null) eject(containerId, s, reason);
+    }
+
+    private static void record(State s, boolean failed) {
+        if (s.requests == WINDOW) {
+            if (s.failed[s.next]) s.failures--;
+        } else {
+            s.requests++;
+        }
+        s.failed[s.next] = failed;
+        if (failed) s.failures++;
+        s.next = (s.next + 1) % WINDOW;
+    }
+
+    private boolean isSlow(String containerId, State self) {
+        long now = nanoClock.getAsLong();
+        double[] peers = new double[states.size()];
+        int n = 0;
+        for (Map.Entry<String, State> e : states.entrySet()) {
+            State p = e.getValue();
+            if (e.getKey().equals(containerId) || ejected(p, now)) continue;
+            synchronized (p) {
+                if (p.requests >= MIN_REQUESTS && n < peers.length) peers[n++] = p.latencyNanos;
+            }
+        }
+        if (n < MIN_PEERS) return false;
+        Arrays.sort(peers, 0, n);
+        double median = n % 2 == 1 ? peers[n / 2] : (peers[n / 2 - 1] + peers[n / 2]) / 2;
+        synchronized (self) {
+            return self.latencyNanos > SLOW_FACTOR * median;
+        }
+    }
+
+    private void eject(String containerId, State s, String reason) {
+        long now = nanoClock.getAsLong();
+        // Decided under the map-wide lock so concurrent ejections respect the cap.
+        synchronized (states) {
+            int ejected = 0;
+            for (State p : states.values()) {
+                if (ejected(p, now)) ejected++;
+            }
+            if (isEjected(containerId, now) || (ejected + 1) * 100L > (long) maxEjectionPercent * live.size()) {
+                return;
+            }
+            long until;
+            synchronized (s) {
+                long longest = baseEjectionNanos << MAX_EJECTION_DOUBLINGS;
+                if (s.ejections > 0 && now - s.lastEjectionEnd > longest) s.ejections = 0;
+                long duration = baseEjectionNanos << Math.min(s.ejections, MAX_EJECTION_DOUBLINGS);
+                s.ejections++;
+                until = now + duration;
+                s.ejectedUntil = until;
+                s.lastEjectionEnd = until;
+                // Back in rotation with a clean history.
+                Arrays.fill(s.failed, false);
+                s.next = 0;
+                s.requests = 0;
+                s.failures = 0;
+                s.consecutive = 0;
+                s.latencyNanos = 0;
+            }
+            metrics.recordOutlierEjection(containerId, reason,
+                    System.currentTimeMillis() + (until - now) / 1_000_000L);
+        }
+    }
+
+    /** State of {@code containerId}, or null once it has left the routing table. */
+    private State state(String containerId) {
+        State s = states.get(containerId);
+        if (s == null) {
+            if (!live.contains(containerId)) return null;
+            s = states.computeIfAbsent(containerId, k -> new State());
+        }
+        return s;
+    }
+}
@@ -0,0 +1,190 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor handed to the proxy {@code HttpServer}: one task per exchange, with the number of
+ * exchanges running at once capped by a semaphore rather than by a pool size.
+ *
+ * <p>Two modes:
+ * <ul>
+ *   <li>{@code platform} — the historical fixed pool of platform threads. The ceiling equals
+ *       the pool size, so behaviour is unchanged; only the gauges are new.</li>
+ *   <li>{@code virtual} — a thread per exchange. The handler, including its blocking upstream
+ *       {@code send} and the whole SSE relay, runs on that thread, so a minutes-long stream
+ *       costs a parked thread instead of a pool slot. The ceiling comes from
+ *       {@code --proxy-max-concurrency}. Virtual threads need JDK 21+; an older runtime gets a
+ *       fixed pool of that many platform threads instead.</li>
+ * </ul>
+ *
+ * <p>Exchanges over the ceiling wait on the semaphore and are reported as queued, instead of
+ * piling up unseen inside the {@code HttpServer} work queue. {@link #execute} never blocks:
+ * the permit is taken on the exchange's own thread, so the {@code HttpServer} dispatcher keeps
+ * accepting connections at the ceiling. With virtual threads a waiting exchange is a parked
+ * thread, which costs next to nothing.
+ */
+public class ProxyExecutor implements Executor {
+
+    private static final Logger log = LoggerFactory.getLogger(ProxyExecutor.class);
+
+    public static final String MODE_PLATFORM = "platform";
+    public static final String MODE_VIRTUAL = "virtual";
+
+    private final ExecutorService delegate;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+    private final boolean virtualThreads;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    ProxyExecutor(ExecutorService delegate, int maxConcurrency, boolean virtualThreads) {
+        this.delegate = delegate;
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency);
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * @param mode           {@link #MODE_PLATFORM} or {@link #MODE_VIRTUAL}
+     * @param maxConcurrency ceiling on concurrently running exchanges; ignored in platform mode,
+     *                       where the pool size is the ceiling
+     */
+    public static ProxyExecutor create(String mode, int maxConcurrency) {
+        if (MODE_VIRTUAL.equalsIgnoreCase(mode)) {
+            ExecutorService vt = newVirtualThreadExecutor();
+            if (vt != null) {
+                return new ProxyExecutor(vt, maxConcurrency, true);
+            }
+            log.warn("--proxy-executor=virtual requires JDK 21+ (running {}); using a pool of {} platform threads",
+                    System.getProperty("java.version"), maxConcurrency);
+            return new ProxyExecutor(Executors.newFixedThreadPool(maxConcurrency, daemonFactory()), maxConcurrency, false);
+        }
+        // Fixed-size pool: inference requests are long; unbounded would let a burst exhaust
+        // upstream connections. Tuned low by default; operators can override once they benchmark.
+        int size = Math.max(8, Runtime.getRuntime().availableProcessors() * 4);
+        return new ProxyExecutor(Executors.newFixedThreadPool(size, daemonFactory()), size, false);
+    }
+
+    @Override
+    public void execute(Runnable exchange) {
+        resume(exchange);
+    }
+
+    /**
+     * Runs the rest of an exchange that waited for a concurrency slot without a thread. Like
+     * {@link #execute} it never blocks the caller, typically the thread that just freed the slot.
+     */
+    public void resume(Runnable exchange) {
+        queued.incrementAndGet();
+        delegate.execute(() -> {
+            if (acquire()) run(exchange);
+        });
+    }
+
+    /** Waits for a slot under the ceiling; false when interrupted, i.e. shutting down. */
+    private boolean acquire() {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            // Shutting down: the exchange is abandoned and HttpServer closes its socket.
+            queued.decrementAndGet();
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        queued.decrementAndGet();
+        active.incrementAndGet();
+        return true;
+    }
+
+    private void run(Runnable exchange) {
+        try {
+            exchange.run();
+        } finally {
+            active.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    /** Exchanges currently being handled. */
+    public int getActive() {
+        return active.get();
+    }
+
+    /** Exchanges accepted but waiting for a slot under the ceiling. */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void shutdown() {
+        delegate.shutdownNow();
+        try {
+            delegate.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ThreadFactory daemonFactory() {
+        return r -> {
+            Thread t = new Thread(r, "tarn-openai-proxy");
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * {@code Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(...).factory())}, looked
+     * up reflectively so the build keeps targeting Java 17. Returns null when unavailable.
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class)
+                    .invoke(builder, "tarn-openai-proxy-vt-", 0L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            Method perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) perTask.invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
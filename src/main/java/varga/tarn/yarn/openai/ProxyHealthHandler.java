@@ -23,6 +23,7 @@ package varga.tarn.yarn.openai;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import varga.tarn.yarn.ApplicationMaster;
+import varga.tarn.yarn.RoutingTable;
 
 import java.io.IOException;
 import java.io.OutputStream;
@@ -42,7 +43,7 @@ public class ProxyHealthHandler implements HttpHandler {
 
     @Override
     public void handle(HttpExchange ex) throws IOException {
-        boolean ok = am != null && !am.getRunningContainers().isEmpty();
+        boolean ok = isHealthy(am);
         String body = ok ? "OK" : "NO_BACKENDS";
         byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
         ex.sendResponseHeaders(ok ? 200 : 503, bytes.length);
@@ -50,4 +51,13 @@ public class ProxyHealthHandler implements HttpHandler {
             os.write(bytes);
         }
     }
+
+    /**
+     * Healthy only when at least one backend is READY — allocated, warming or draining
+     * containers can't serve.
+     */
+    static boolean isHealthy(ApplicationMaster am) {
+        RoutingTable table = am != null ? am.getRoutingTable() : null;
+        return table != null && !table.isEmpty();
+    }
 }
@@ -0,0 +1,1380 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Scope;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import varga.tarn.yarn.ApplicationMaster;
+import varga.tarn.yarn.GroupCache;
+import varga.tarn.yarn.MetricsCollector;
+import varga.tarn.yarn.QuotaEnforcer;
+import varga.tarn.yarn.RangerAuthorizer;
+import varga.tarn.yarn.RoutingTable;
+import varga.tarn.yarn.TarnConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The engine-independent stages of the OpenAI proxy ({@code /v1/chat/completions},
+ * {@code /v1/completions}, {@code /v1/models}, {@code /v1/embeddings}). Both the blocking
+ * {@link OpenAIProxyHandler} and the asynchronous {@link AsyncProxyServlet} run every request
+ * through these stages and differ only in how bytes move.
+ *
+ * <p>Pipeline for every inference request:
+ * <ol>
+ *   <li>Identify the user (Kerberos via UGI or {@code X-Forwarded-User} / {@code X-TARN-User}
+ *       header when behind Knox).</li>
+ *   <li>Parse the JSON body, extract {@code model}, split an optional LoRA suffix
+ *       (format {@code base#lora}).</li>
+ *   <li>Ask Ranger for {@code infer} permission on both the base model and the combined
+ *       {@code base#lora} resource — this is the inference-level enforcement that was
+ *       missing before P1.1.</li>
+ *   <li>Pick a READY container from the AM's {@link RoutingTable} by power-of-two-choices over
+ *       live in-flight counts blended with the scraped Triton queue depth
+ *       (see {@link BackendSelector}).</li>
+ *   <li>Forward the request and relay the upstream response to the client as it arrives —
+ *       SSE streams and plain JSON alike — recording the full duration in the latency
+ *       histogram once the last byte is out. Token usage — the {@code usage} object of a JSON
+ *       body or the final usage event of an SSE stream — is picked out of the relayed bytes
+ *       by a {@link ResponseFilter}.</li>
+ * </ol>
+ */
+final class ProxyPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(ProxyPipeline.class);
+    /** Upstream timeout: long enough for large LLM generations, but bounded. */
+    static final Duration UPSTREAM_TIMEOUT = Duration.ofMinutes(10);
+    /** Usage reports are tiny; anything past this is not read. */
+    static final int USAGE_MAX_BODY = 16 * 1024;
+    // Body pool sizing: 32 recycled arrays of at most 1 MiB caps retained memory at 32 MiB.
+    /** Admission-queue tenant merged embeddings calls wait as; they serve several users. */
+    private static final String EMBEDDINGS_BATCH_TENANT = "tarn-embeddings-batch";
+    private static final int BODY_POOL_CAPACITY = 32;
+    private static final int BODY_INITIAL_BYTES = 16 * 1024;
+    private static final int BODY_MAX_RETAINED_BYTES = 1024 * 1024;
+
+    enum Endpoint { MODELS, INFERENCE, USAGE, UNKNOWN }
+
+    private final ApplicationMaster am;
+    private final TarnConfig config;
+    private final HttpClient upstream;
+    private final ObjectMapper om = new ObjectMapper();
+    private final BackendSelector selector;
+    private final boolean prefixAffinity;
+    // Ring for the routing table it was built from; rebuilt lazily when the table is republished.
+    private volatile AffinityRing ring;
+    private final LoraResidency loraResidency;
+    private final BodyBufferPool bodies;
+    // Null when --proxy-embeddings-cache-bytes is 0.
+    private final EmbeddingsCache embeddingsCache;
+    // Null when no model opted in with --proxy-response-cache-models.
+    private final ResponseCache responseCache;
+    // Null unless --proxy-coalesce.
+    private final SingleFlight singleFlight;
+    // Null unless --proxy-embeddings-batch-max-inputs is above 1.
+    private final EmbeddingsBatcher embeddingsBatcher;
+    // Null unless --proxy-concurrency-limit.
+    private final ConcurrencyLimiter concurrencyLimiter;
+    // Holds requests while every backend is at its limit; null with the limiter.
+    private final FairAdmissionQueue admissionQueue;
+    // Null when no model opted in with --proxy-hedge-models.
+    private final Hedger hedger;
+    // Null unless --proxy-outlier-detection.
+    private final OutlierDetector outlierDetector;
+
+    ProxyPipeline(ApplicationMaster am, TarnConfig config) {
+        this.am = am;
+        this.config = config;
+        this.upstream = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1) // Triton openai_frontend is HTTP/1.1 today.
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        this.selector = new BackendSelector(cid -> am.getMetricsCollector().getQueueDepth(cid));
+        this.prefixAffinity = "prefix_affinity".equals(config.proxyRouting);
+        this.loraResidency = new LoraResidency(selector, config.proxyLoraMaxReplicas, config.proxyLoraRpsPerReplica);
+        this.bodies = new BodyBufferPool(BODY_POOL_CAPACITY, BODY_INITIAL_BYTES,
+                BODY_MAX_RETAINED_BYTES, config.proxyMaxBodyBytes);
+        this.embeddingsCache = config.proxyEmbeddingsCacheBytes > 0
+                ? new EmbeddingsCache(config.proxyEmbeddingsCacheBytes, am.getMetricsCollector())
+                : null;
+        List<String> cachedModels = new ArrayList<>();
+        for (String m : config.proxyResponseCacheModels.split(",")) {
+            if (!m.trim().isEmpty()) cachedModels.add(m.trim());
+        }
+        this.responseCache = cachedModels.isEmpty() ? null
+                : new ResponseCache(cachedModels, config.proxyResponseCacheMaxEntries,
+                        config.proxyResponseCacheMaxBytes, config.proxyResponseCacheTtlMs, am.getMetricsCollector());
+        this.singleFlight = config.proxyCoalesce ? new SingleFlight() : null;
+        this.embeddingsBatcher = config.proxyEmbeddingsBatchMaxInputs > 1
+                ? new EmbeddingsBatcher(config.proxyEmbeddingsBatchMaxInputs, config.proxyEmbeddingsBatchMaxWaitUs,
+                        this::sendBatch, am.getMetricsCollector())
+                : null;
+        this.concurrencyLimiter = config.proxyConcurrencyLimit
+                ? new ConcurrencyLimiter(config.proxyConcurrencyMaxLimit, selector::inFlight, am.getMetricsCollector())
+                : null;
+        this.admissionQueue = config.proxyConcurrencyLimit ? new FairAdmissionQueue(config.proxyAdmissionQueueMax) : null;
+        List<String> hedgedModels = new ArrayList<>();
+        for (String m : config.proxyHedgeModels.split(",")) {
+            if (!m.trim().isEmpty()) hedgedModels.add(m.trim());
+        }
+        this.hedger = hedgedModels.isEmpty() ? null
+                : new Hedger(hedgedModels, config.proxyHedgeBudgetPercent, am.getMetricsCollector());
+        this.outlierDetector = config.proxyOutlierDetection
+                ? new OutlierDetector(config.proxyOutlierConsecutiveErrors, config.proxyOutlierBaseEjectionMs,
+                        config.proxyOutlierMaxEjectionPercent, am.getMetricsCollector())
+                : null;
+    }
+
+    static Endpoint endpoint(String path) {
+        if (path.endsWith("/models") || path.endsWith("/v1/models")) return Endpoint.MODELS;
+        if (path.endsWith("/chat/completions") || path.endsWith("/completions")
+                || path.endsWith("/embeddings")) return Endpoint.INFERENCE;
+        if (path.endsWith("/usage") || path.endsWith("/v1/usage")) return Endpoint.USAGE;
+        return Endpoint.UNKNOWN;
+    }
+
+    /** A complete, non-streaming response ready to be written by an engine. */
+    static final class Reply {
+        final int status;
+        final String contentType;
+        final byte[] body;
+        final Map<String, String> headers = new LinkedHashMap<>();
+
+        Reply(int status, String contentType, byte[] body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        Reply header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+    }
+
+    /** Status, headers and body publisher of an upstream response, possibly shared. */
+    static final class Upstream {
+        final int status;
+        final HttpHeaders headers;
+        final Flow.Publisher<List<ByteBuffer>> body;
+
+        Upstream(int status, HttpHeaders headers, Flow.Publisher<List<ByteBuffer>> body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        /** A response already read in full. */
+        static Upstream of(int status, String contentType, byte[] body) {
+            return of(status, HttpHeaders.of(Map.of("Content-Type", List.of(contentType)), (k, v) -> true), body);
+        }
+
+        /** A response already read in full, keeping the upstream headers. */
+        static Upstream of(int status, HttpHeaders headers, byte[] body) {
+            return new Upstream(status, headers, subscriber -> subscriber.onSubscribe(new Flow.Subscription() {
+                private final AtomicBoolean done = new AtomicBoolean();
+
+                @Override
+                public void request(long n) {
+                    if (!done.compareAndSet(false, true)) return;
+                    if (n <= 0) {
+                        subscriber.onError(new IllegalArgumentException("non-positive request: " + n));
+                        return;
+                    }
+                    subscriber.onNext(List.of(ByteBuffer.wrap(body).asReadOnlyBuffer()));
+                    subscriber.onComplete();
+                }
+
+                @Override
+                public void cancel() {
+                    done.set(true);
+                }
+            }));
+        }
+
+        /** The body as a blocking stream, for the thread-per-exchange engine. */
+        InputStream inputStream() {
+            HttpResponse.BodySubscriber<InputStream> in = HttpResponse.BodySubscribers.ofInputStream();
+            body.subscribe(in);
+            return in.getBody().toCompletableFuture().join();
+        }
+    }
+
+    /**
+     * Outcome of the admission stages. Either {@link #rejection} is set and must be written
+     * as-is, or the request was routed: the upstream request is built, a lease is held on the
+     * target and the upstream span is open. A coalesced follower has neither request nor lease:
+     * it reads the response of the {@link #flight} it joined, and a {@link #batch}ed embeddings
+     * request its share of the merged call. A routed admission must be passed to
+     * {@link #finish} exactly once, after the response (or stream) has been relayed. Its
+     * target and lease move to another container when the connection fails (see
+     * {@link #send}); they are settled once the upstream response has arrived.
+     */
+    static final class Admission {
+        final Reply rejection;
+        final String user;
+        final String baseModel;
+        /** LoRA adapter of a {@code base#lora} model, null for the base model. */
+        final String lora;
+        final boolean streaming;
+        /** The proxy added {@code stream_options.include_usage}; the client never asked for it. */
+        final boolean usageInjected;
+        volatile RoutingTable.Backend target;
+        final BodyBufferPool.Body body;
+        /** Embeddings request partly served from cache; merges the response. Null otherwise. */
+        final EmbeddingsLookup embeddings;
+        /** Response cache key of a deterministic request whose response is recorded, or null. */
+        final String cacheKey;
+        /** Identical in-flight requests this one shares an upstream call with, or null. */
+        final SingleFlight.Flight flight;
+        /** Embeddings request merged into a batched upstream call, or null. */
+        final EmbeddingsBatcher.Request batch;
+        /** Client asked for base64 embeddings; float vectors from Triton are transcoded. */
+        final boolean base64Embeddings;
+        volatile HttpRequest upstreamRequest;
+        final Span upstreamSpan;
+        volatile BackendSelector.Lease lease;
+        /** When the proxy admitted the request: time to first token and end-to-end latency start here. */
+        final long acceptedNs = System.nanoTime();
+        /** When the request went upstream, after any wait for a concurrency slot; RTTs start here. */
+        volatile long startNs;
+        /**
+         * Completes once a request that queued for a concurrency slot has been routed: with
+         * null, or with the reply to answer instead. Null when it was routed at admission.
+         */
+        volatile CompletableFuture<Reply> queued;
+        /** The response came from a hedge to another container; {@link #target} was cancelled. */
+        volatile boolean hedgeWon;
+        /** Time to the upstream response headers; the latency the outlier detector is fed. */
+        volatile long rttNanos;
+        /** The concurrency limiter already had its sample, or drop, from the response status. */
+        volatile boolean sampled;
+        /** The outlier detector has heard how {@link #target} did; it hears once per request. */
+        private final AtomicBoolean scored = new AtomicBoolean();
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private Admission(Reply rejection) {
+            this(rejection, null, null, null, false, false, null, null, null, null, null, null, null, 0L, null, null, false);
+        }
+
+        private Admission(Reply rejection, String user, String baseModel, String lora, boolean streaming,
+                          boolean usageInjected, RoutingTable.Backend target, BodyBufferPool.Body body,
+                          EmbeddingsLookup embeddings, String cacheKey, HttpRequest upstreamRequest,
+                          Span upstreamSpan, BackendSelector.Lease lease, long startNs, SingleFlight.Flight flight,
+                          EmbeddingsBatcher.Request batch, boolean base64Embeddings) {
+            this.rejection = rejection;
+            this.user = user;
+            this.baseModel = baseModel;
+            this.lora = lora;
+            this.streaming = streaming;
+            this.usageInjected = usageInjected;
+            this.target = target;
+            this.body = body;
+            this.embeddings = embeddings;
+            this.cacheKey = cacheKey;
+            this.upstreamRequest = upstreamRequest;
+            this.upstreamSpan = upstreamSpan;
+            this.lease = lease;
+            this.startNs = startNs;
+            this.flight = flight;
+            this.batch = batch;
+            this.base64Embeddings = base64Embeddings;
+        }
+    }
+
+    /** Completes a dispatch that ends in a proxy reply rather than an upstream call. */
+    static final class Rejected extends IOException {
+        final Reply reply;
+
+        Rejected(Reply reply) {
+            super("Rejected with status " + reply.status);
+            this.reply = reply;
+        }
+    }
+
+    Reply listModels(ProxyRequest req) throws IOException {
+        String user = getUser(req);
+        Set<String> groups = getGroups(user);
+        String clientIp = resolveClientIp(req);
+        RangerAuthorizer ra = am.getRangerAuthorizer();
+
+        List<Map<String, Object>> data = new ArrayList<>();
+        for (String m : am.getAvailableModels()) {
+            if (ra != null && !ra.isAllowed(user, groups, "list", m, clientIp)) continue;
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("id", m);
+            entry.put("object", "model");
+            entry.put("owned_by", "tarn");
+            entry.put("created", System.currentTimeMillis() / 1000L);
+            data.add(entry);
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("object", "list");
+        body.put("data", data);
+        return json(200, body);
+    }
+
+    /** A pooled buffer for one request body, bounded by {@code --proxy-max-body-bytes}. */
+    BodyBufferPool.Body newBody() {
+        return bodies.acquire();
+    }
+
+    /**
+     * 413 when the declared Content-Length already exceeds the limit, so the body is never
+     * read; null otherwise. Chunked bodies are bounded while being read instead.
+     */
+    Reply rejectDeclaredOversize(ProxyRequest req) {
+        String cl = req.header("Content-Length");
+        if (cl == null) return null;
+        try {
+            return Long.parseLong(cl.trim()) > bodies.maxBodyBytes() ? tooLarge() : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    Reply tooLarge() {
+        return error(413, "request_too_large",
+                "Request body exceeds the " + bodies.maxBodyBytes() + " byte limit");
+    }
+
+    /**
+     * Runs identity, quota, Ranger and routing for an inference request. Must be called with
+     * the incoming server span current so the upstream span becomes its child.
+     *
+     * <p>Takes ownership of {@code body}: it is released here when the request is rejected,
+     * otherwise by {@link #finish} once the upstream exchange is over.
+     */
+    Admission admit(ProxyRequest req, BodyBufferPool.Body body, Span span) throws IOException {
+        boolean routed = false;
+        try {
+            Admission a = admitRouted(req, body, span);
+            routed = a.rejection == null;
+            return a;
+        } finally {
+            if (!routed) body.close();
+        }
+    }
+
+    private Admission admitRouted(ProxyRequest req, BodyBufferPool.Body body, Span span) throws IOException {
+        // Only the routing fields are read; the body itself is forwarded byte-for-byte.
+        RequestBodyInspector.Fields fields;
+        try {
+            fields = RequestBodyInspector.inspect(body.array(), 0, body.length(),
+                    prefixAffinity ? config.proxyAffinityPrefixChars : 0);
+        } catch (IOException e) {
+            return new Admission(error(400, "invalid_json", "Request body is not valid JSON"));
+        }
+
+        if (fields.model == null || fields.model.isEmpty()) {
+            return new Admission(error(400, "missing_model", "Request must include 'model' field"));
+        }
+        String requestedModel = fields.model;
+        String baseModel = requestedModel;
+        String lora = null;
+        int sep = requestedModel.indexOf(OpenAIProxyHandler.LORA_SEPARATOR);
+        if (sep > 0 && sep < requestedModel.length() - 1) {
+            baseModel = requestedModel.substring(0, sep);
+            lora = requestedModel.substring(sep + 1);
+        }
+
+        String user = getUser(req);
+        Set<String> groups = getGroups(user);
+        span.setAttribute(TarnTracing.ATTR_USER, user);
+        span.setAttribute(TarnTracing.ATTR_MODEL, baseModel);
+        if (lora != null) span.setAttribute(TarnTracing.ATTR_LORA, lora);
+
+        // Quotas run BEFORE Ranger: rate-limit cheaply, don't waste a policy-engine call on
+        // a request we're going to reject anyway.
+        QuotaEnforcer quotas = am.getQuotaEnforcer();
+        if (quotas != null) {
+            QuotaEnforcer.Decision q = quotas.check(user, groups, baseModel);
+            if (!q.allowed) {
+                span.setStatus(StatusCode.ERROR, "quota_denied");
+                span.setAttribute("tarn.quota.reason", q.reason);
+                long retryAfterSec = Math.max(1L, (q.retryAfterMs + 999L) / 1000L);
+                return new Admission(error(429, q.reason,
+                        "Request rate limit exceeded (" + q.ruleDesc + "). Retry after "
+                                + retryAfterSec + "s.")
+                        .header("Retry-After", String.valueOf(retryAfterSec)));
+            }
+        }
+
+        String clientIp = resolveClientIp(req);
+        RangerAuthorizer ra = am.getRangerAuthorizer();
+        if (ra != null) {
+            if (!ra.isAllowed(user, groups, "infer", baseModel, clientIp)) {
+                log.info("Ranger DENY infer: user={} model={} ip={}", user, baseModel, clientIp);
+                span.setStatus(StatusCode.ERROR, "ranger_deny");
+                return new Admission(error(403, "permission_denied",
+                        "Access to model '" + baseModel + "' is denied by policy"));
+            }
+            // When a LoRA adapter is requested, the combined name is also a resource so policies
+            // can grant base but restrict specific LoRAs.
+            if (lora != null && !ra.isAllowed(user, groups, "infer", requestedModel, clientIp)) {
+                log.info("Ranger DENY LoRA infer: user={} combined={} ip={}", user, requestedModel, clientIp);
+                span.setStatus(StatusCode.ERROR, "ranger_deny_lora");
+                return new Admission(error(403, "permission_denied",
+                        "Access to LoRA '" + lora + "' on '" + baseModel + "' is denied by policy"));
+            }
+        }
+
+        boolean base64 = req.rawPath().endsWith("/embeddings")
+                && RequestBodyInspector.wantsBase64(body.array(), 0, body.length());
+
+        // Embedding vectors already computed are answered here; a partial hit forwards only
+        // the missing inputs and the response filter merges the rest back in.
+        EmbeddingsLookup embeddings = null;
+        if (embeddingsCache != null && req.rawPath().endsWith("/embeddings")) {
+            embeddings = EmbeddingsLookup.lookup(embeddingsCache, body.array(), 0, body.length());
+            if (embeddings != null && embeddings.complete()) {
+                span.setAttribute("tarn.embeddings.cache", "hit");
+                am.getMetricsCollector().recordModelRequest(baseModel, true);
+                // Not a rejection, but written the same way: nothing goes upstream.
+                return new Admission(new Reply(200, "application/json", embeddings.render()));
+            }
+            if (embeddings != null && embeddings.upstreamBody() != null) {
+                span.setAttribute("tarn.embeddings.cache", "partial");
+                body.replace(embeddings.upstreamBody());
+            }
+        }
+
+        // Deterministic completions already answered for this user are replayed; a miss is
+        // recorded on its way back.
+        String cacheKey = null;
+        if (responseCache != null && !req.rawPath().endsWith("/embeddings") && responseCache.cachesModel(baseModel)) {
+            cacheKey = ResponseCache.key(req.rawPath(), user, body.array(), 0, body.length());
+            if (cacheKey != null) {
+                byte[] cached = responseCache.get(cacheKey);
+                am.getMetricsCollector().recordResponseCacheLookup(baseModel, cached != null);
+                if (cached != null) {
+                    span.setAttribute("tarn.response_cache", "hit");
+                    am.getMetricsCollector().recordModelRequest(baseModel, true);
+                    return new Admission(fields.stream
+                            ? new Reply(200, "text/event-stream", replaySse(cached, fields.usageInjection != null))
+                            : new Reply(200, "application/json", cached));
+                }
+            }
+        }
+
+        RoutingTable table = am.getRoutingTable();
+        RoutingTable serving = table == null ? RoutingTable.EMPTY
+                : am.getMetricsCollector().getModelPlacement().routable(table, baseModel);
+        if (serving.isEmpty() && table != null && !table.isEmpty()) {
+            // Containers are up but none has the model READY; the next scrape (or a load event)
+            // may change that.
+            span.setStatus(StatusCode.ERROR, "model_not_placed");
+            // Counts as demand for the placement controller.
+            am.getMetricsCollector().recordModelRequest(baseModel, false);
+            long retryAfterSec = Math.max(1L, (config.scrapeIntervalMs + 999L) / 1000L);
+            return new Admission(error(503, "model_not_loaded",
+                    "Model '" + baseModel + "' is not loaded on any Triton instance")
+                    .header("Retry-After", String.valueOf(retryAfterSec)));
+        }
+        if (table != null) {
+            selector.retain(table);
+            if (concurrencyLimiter != null) concurrencyLimiter.retain(table);
+        }
+        // Containers ejected by passive health checks get no traffic until their ejection ends.
+        if (outlierDetector != null) {
+            if (table != null) outlierDetector.retain(table);
+            serving = outlierDetector.admit(serving);
+        }
+        // Identical deterministic requests already on their way to Triton are joined rather
+        // than sent again.
+        SingleFlight.Flight flight = null;
+        if (singleFlight != null && embeddings == null && !req.rawPath().endsWith("/embeddings")) {
+            String flightKey = RequestKey.deterministic(req.rawPath(), "", body.array(), 0, body.length());
+            if (flightKey != null) {
+                flight = singleFlight.join(flightKey);
+                if (!flight.leader()) {
+                    span.setAttribute("tarn.coalesced", true);
+                    am.getMetricsCollector().recordCoalescedRequest(baseModel);
+                    Span upstreamSpan = TarnTracing.startUpstreamSpan("triton.coalesced");
+                    span.setAttribute(TarnTracing.ATTR_STREAM, fields.stream);
+                    return new Admission(null, user, baseModel, lora, fields.stream,
+                            fields.stream && fields.usageInjection != null, null, body, null, cacheKey, null,
+                            upstreamSpan, null, System.nanoTime(), flight, null, false);
+                }
+            }
+        }
+
+        // Followers wait on the leader's flight, so it fails whenever the leader is not routed.
+        boolean routed = false;
+        try {
+            // Embeddings for the base model are merged with concurrent ones; the batch picks its
+            // backend when it is sent.
+            if (embeddingsBatcher != null && lora == null && req.rawPath().endsWith("/embeddings")) {
+                EmbeddingsBatcher.Request batch = EmbeddingsBatcher.parse(req.rawPath(), baseModel,
+                        priority(req, user, groups, baseModel), body.array(), 0, body.length());
+                if (batch != null) {
+                    span.setAttribute("tarn.embeddings.batched", true);
+                    Span upstreamSpan = TarnTracing.startUpstreamSpan("triton.batched");
+                    return new Admission(null, user, baseModel, null, false, false, null, body, embeddings, null, null,
+                            upstreamSpan, null, System.nanoTime(), null, batch, base64);
+                }
+            }
+
+            boolean streaming = fields.stream;
+            span.setAttribute(TarnTracing.ATTR_STREAM, streaming);
+            // Ask Triton for the final usage chunk so streamed tokens are accounted in-band; the
+            // relay strips it again when the client did not request it.
+            boolean usageInjected = streaming && fields.usageInjection != null;
+            if (usageInjected) {
+                body.insert(fields.usageInjectAt, fields.usageInjection);
+            }
+            Span upstreamSpan = TarnTracing.startUpstreamSpan("triton.upstream");
+            Admission a = new Admission(null, user, baseModel, lora, streaming, usageInjected, null, body,
+                    embeddings, cacheKey, null, upstreamSpan, null, 0L, flight, null, base64);
+            String adapter = lora != null && isCatalogued(baseModel, lora) ? requestedModel : null;
+            long affinityKey = prefixAffinity ? affinityKey(req, fields) : 0L;
+            String path = req.rawPath();
+
+            // Containers at their adaptive concurrency limit take no more; when all are, the
+            // request queues fairly per tenant and priority for a slot, then is shed. It waits
+            // without a thread: whoever frees the slot routes it, and dispatch continues from
+            // there.
+            Reply rejection = null;
+            if (concurrencyLimiter != null && !serving.isEmpty()) {
+                CompletableFuture<RoutingTable> slot = openBackends(serving, user,
+                        priority(req, user, groups, baseModel));
+                if (!slot.isDone()) {
+                    a.queued = slot.thenApply(open -> open.isEmpty()
+                            ? shed(a.baseModel, span)
+                            : route(a, table, open, adapter, affinityKey, path, span));
+                    if (flight != null) {
+                        a.queued.whenComplete((reply, e) -> {
+                            if (e != null) a.flight.fail(e);
+                            else if (reply != null) a.flight.fail(new Rejected(reply));
+                        });
+                    }
+                    routed = true;
+                    return a;
+                }
+                serving = slot.join();
+                if (serving.isEmpty()) rejection = shed(baseModel, span);
+            }
+            if (rejection == null) rejection = route(a, table, serving, adapter, affinityKey, path, span);
+            if (rejection != null) {
+                if (flight != null) flight.fail(new Rejected(rejection));
+                upstreamSpan.end();
+                return new Admission(rejection);
+            }
+            routed = true;
+            return a;
+        } finally {
+            if (!routed && flight != null) flight.fail(new IOException("Request was not routed to Triton"));
+        }
+    }
+
+    /**
+     * Picks the backend of {@code a} among {@code serving} and builds its upstream request;
+     * returns the reply to answer instead when there is none. {@code adapter} is the full
+     * {@code base#lora} name when the adapter is catalogued, otherwise null.
+     */
+    private Reply route(Admission a, RoutingTable table, RoutingTable serving, String adapter, long affinityKey,
+                        String path, Span span) {
+        RoutingTable.Backend target = adapter != null
+                ? pickLoraBackend(serving, adapter, span)
+                : pickBackend(table, serving, affinityKey, span);
+        if (target == null) {
+            span.setStatus(StatusCode.ERROR, "no_backends");
+            return error(503, "service_unavailable", "No Triton instances are ready");
+        }
+        span.setAttribute(TarnTracing.ATTR_CONTAINER, target.containerId);
+        am.getMetricsCollector().getModelPlacement().touch(target.containerId, a.baseModel, System.currentTimeMillis());
+
+        URI upstreamUri = URI.create("http://" + target.host + ":" + config.tritonPort + path);
+
+        // Build a child CLIENT span for the upstream call; inject W3C headers so Triton can join.
+        Map<String, String> upstreamHeaders = new HashMap<>();
+        upstreamHeaders.put("Content-Type", "application/json");
+        upstreamHeaders.put("Accept", "text/event-stream, application/json");
+        upstreamHeaders.put("X-Forwarded-User", a.user);
+
+        a.startNs = System.nanoTime();
+
+        // Shadow traffic: asynchronously mirror a sampled fraction of requests to a parallel
+        // endpoint for A/B comparison. Responses are discarded, only latency & error counts
+        // are recorded against a "shadow" model tag so operators can diff distributions.
+        maybeFireShadow(a.body, path, a.baseModel);
+
+        a.upstreamSpan.setAttribute("http.url", upstreamUri.toString());
+        a.upstreamSpan.setAttribute(TarnTracing.ATTR_CONTAINER, target.containerId);
+        try (Scope ignored = a.upstreamSpan.makeCurrent()) {
+            TarnTracing.injectHeaders(upstreamHeaders);
+        }
+        HttpRequest.Builder rb = HttpRequest.newBuilder()
+                .uri(upstreamUri)
+                .POST(a.body.publisher())
+                .timeout(UPSTREAM_TIMEOUT);
+        upstreamHeaders.forEach(rb::header);
+
+        // Held until the response — or the whole SSE stream — has been relayed.
+        a.lease = selector.acquire(target.containerId);
+        a.target = target;
+        a.upstreamRequest = rb.build();
+        return null;
+    }
+
+    /** Answer for a request that found no container under its concurrency limit in time. */
+    private Reply shed(String baseModel, Span span) {
+        span.setStatus(StatusCode.ERROR, "concurrency_limited");
+        am.getMetricsCollector().recordShedRequest(baseModel);
+        return error(503, "overloaded",
+                "Every Triton instance serving '" + baseModel + "' is at its concurrency limit")
+                .header("Retry-After", "1");
+    }
+
+    /**
+     * Sends the admitted request upstream — or, for a coalesced follower, waits for the call
+     * its flight leader made. Each caller gets a body publisher of its own.
+     */
+    CompletableFuture<Upstream> dispatch(Admission a) {
+        if (a.batch != null) {
+            return embeddingsBatcher.submit(a.batch);
+        }
+        if (a.queued != null) {
+            // Routed, or shed, once the admission queue had a slot for it.
+            return a.queued.thenCompose(rejection -> rejection == null
+                    ? dispatchRouted(a)
+                    : CompletableFuture.failedFuture(new Rejected(rejection)));
+        }
+        return dispatchRouted(a);
+    }
+
+    private CompletableFuture<Upstream> dispatchRouted(Admission a) {
+        if (a.flight == null && hedger != null && !a.streaming && a.lora == null && hedger.hedges(a.baseModel)) {
+            // Hedged attempts are read in full so the loser can be dropped without a relay.
+            return hedger.send(a.baseModel,
+                            () -> send(a, HttpResponse.BodyHandlers.ofByteArray()),
+                            () -> sendHedge(a))
+                    .thenApply(o -> {
+                        a.hedgeWon = o.hedge;
+                        return Upstream.of(o.value.statusCode(), o.value.headers(), o.value.body());
+                    });
+        }
+        if (a.flight == null) {
+            return send(a, HttpResponse.BodyHandlers.ofPublisher())
+                    .thenApply(r -> new Upstream(r.statusCode(), r.headers(), r.body()));
+        }
+        if (a.flight.leader()) {
+            send(a, HttpResponse.BodyHandlers.ofPublisher())
+                    .whenComplete(a.flight::upstream);
+        }
+        // Bounded like the leader's own call; the copy keeps the timeout private to this caller.
+        return a.flight.response().copy().orTimeout(UPSTREAM_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends the admitted request to its target. When the connection cannot be established —
+     * so Triton never saw the request — it moves to another container serving the model, up
+     * to {@code --proxy-connect-retries} times. Cancelling the returned future cancels the
+     * attempt in flight.
+     */
+    private <T> CompletableFuture<HttpResponse<T>> send(Admission a, HttpResponse.BodyHandler<T> handler) {
+        CompletableFuture<HttpResponse<T>> first = upstream.sendAsync(a.upstreamRequest, handler);
+        if (config.proxyConnectRetries == 0) return first;
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<HttpResponse<T>>> current = new AtomicReference<>(first);
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) current.get().cancel(true);
+        });
+        retryConnect(a, handler, first, config.proxyConnectRetries, new HashSet<>(), result, current);
+        return result;
+    }
+
+    private <T> void retryConnect(Admission a, HttpResponse.BodyHandler<T> handler,
+                                  CompletableFuture<HttpResponse<T>> attempt, int retriesLeft, Set<String> tried,
+                                  CompletableFuture<HttpResponse<T>> result,
+                                  AtomicReference<CompletableFuture<HttpResponse<T>>> current) {
+        attempt.whenComplete((r, e) -> {
+            if (e == null) {
+                result.complete(r);
+                return;
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            boolean connectFailure = cause instanceof ConnectException || cause instanceof HttpConnectTimeoutException;
+            HttpRequest next = retriesLeft > 0 && connectFailure && !result.isDone() ? reroute(a, tried) : null;
+            if (next == null) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            am.getMetricsCollector().recordConnectRetry(a.baseModel);
+            CompletableFuture<HttpResponse<T>> retry = upstream.sendAsync(next, handler);
+            current.set(retry);
+            if (result.isDone()) retry.cancel(true);
+            retryConnect(a, handler, retry, retriesLeft - 1, tried, result, current);
+        });
+    }
+
+    /**
+     * Moves {@code a} off the container it could not connect to, onto another one that serves
+     * the model and was not tried yet; returns the request for it, or null when there is none.
+     */
+    private HttpRequest reroute(Admission a, Set<String> tried) {
+        RoutingTable.Backend failed = a.target;
+        tried.add(failed.containerId);
+        RoutingTable table = am.getRoutingTable();
+        if (table == null) return null;
+        RoutingTable serving = am.getMetricsCollector().getModelPlacement().routable(table, a.baseModel);
+        if (outlierDetector != null) serving = outlierDetector.admit(serving);
+        if (concurrencyLimiter != null) serving = concurrencyLimiter.open(serving);
+        List<RoutingTable.Backend> untried = new ArrayList<>();
+        for (RoutingTable.Backend b : serving.backends()) {
+            if (!tried.contains(b.containerId)) untried.add(b);
+        }
+        RoutingTable.Backend target = selector.pick(untried, b -> b.containerId);
+        // Without a target the failure is left for onUpstreamFailure to account.
+        if (target == null) return null;
+
+        if (outlierDetector != null) outlierDetector.onFailure(failed.containerId);
+        if (concurrencyLimiter != null) concurrencyLimiter.onDrop(failed.containerId);
+        BackendSelector.Lease previous = a.lease;
+        a.lease = selector.acquire(target.containerId);
+        a.target = target;
+        previous.close();
+        if (concurrencyLimiter != null) {
+            concurrencyLimiter.release(failed.containerId);
+            admissionQueue.grant();
+        }
+        a.upstreamSpan.setAttribute(TarnTracing.ATTR_CONTAINER, target.containerId);
+        am.getMetricsCollector().getModelPlacement().touch(target.containerId, a.baseModel, System.currentTimeMillis());
+        return HttpRequest.newBuilder(a.upstreamRequest, (k, v) -> true)
+                .uri(rebase(a.upstreamRequest.uri(), target))
+                .build();
+    }
+
+    /** {@code uri} with its host and port replaced by {@code target}'s Triton endpoint. */
+    private URI rebase(URI uri, RoutingTable.Backend target) {
+        return URI.create("http://" + target.host + ":" + config.tritonPort + uri.getRawPath()
+                + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery()));
+    }
+
+    /**
+     * Second attempt of a hedged request, sent to another READY container that serves the
+     * model and has room under its concurrency limit; null when there is none. The attempt
+     * holds a lease (and a limiter slot) of its own until it completes or is cancelled, and
+     * is scored against its own container when it completes.
+     */
+    private CompletableFuture<HttpResponse<byte[]>> sendHedge(Admission a) {
+        RoutingTable table = am.getRoutingTable();
+        if (table == null) return null;
+        RoutingTable serving = am.getMetricsCollector().getModelPlacement().routable(table, a.baseModel);
+        if (outlierDetector != null) serving = outlierDetector.admit(serving);
+        if (concurrencyLimiter != null) serving = concurrencyLimiter.open(serving);
+        List<RoutingTable.Backend> others = new ArrayList<>();
+        for (RoutingTable.Backend b : serving.backends()) {
+            if (!b.containerId.equals(a.target.containerId)) others.add(b);
+        }
+        RoutingTable.Backend target = selector.pick(others, b -> b.containerId);
+        if (target == null) return null;
+        HttpRequest request = HttpRequest.newBuilder(a.upstreamRequest, (k, v) -> true)
+                .uri(rebase(a.upstreamRequest.uri(), target))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(a.body.copy()))
+                .build();
+        BackendSelector.Lease lease = selector.acquire(target.containerId);
+        long startNs = System.nanoTime();
+        // Returned as is: the hedger cancels the loser through this very future.
+        CompletableFuture<HttpResponse<byte[]>> attempt =
+                upstream.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+        attempt.whenComplete((r, e) -> {
+            if (r != null) {
+                score(target.containerId, r.statusCode(), System.nanoTime() - startNs);
+            } else if (!(e instanceof CancellationException)) {
+                if (outlierDetector != null) outlierDetector.onFailure(target.containerId);
+                if (concurrencyLimiter != null) concurrencyLimiter.onDrop(target.containerId);
+            }
+            lease.close();
+            if (concurrencyLimiter != null) {
+                concurrencyLimiter.release(target.containerId);
+                admissionQueue.grant();
+            }
+        });
+        return attempt;
+    }
+
+    /**
+     * Sends a merged embeddings batch the way a single request goes: to a container serving
+     * the model that is not ejected and is under its concurrency limit — queueing for one at
+     * {@code priority} — moved on when the connection fails, and traced. The batch may serve
+     * several users, so it queues as a tenant of its own and carries no X-Forwarded-User.
+     * The call is scored once it has been read in full.
+     */
+    private CompletableFuture<Reply> sendBatch(String path, String routeModel, FairAdmissionQueue.Priority priority,
+                                               byte[] body) {
+        RoutingTable table = am.getRoutingTable();
+        RoutingTable serving = table == null ? RoutingTable.EMPTY
+                : am.getMetricsCollector().getModelPlacement().routable(table, routeModel);
+        if (outlierDetector != null) serving = outlierDetector.admit(serving);
+        Span span = TarnTracing.startUpstreamSpan("triton.upstream");
+        CompletableFuture<RoutingTable> slot = concurrencyLimiter == null || serving.isEmpty()
+                ? CompletableFuture.completedFuture(serving)
+                : openBackends(serving, EMBEDDINGS_BATCH_TENANT, priority);
+        boolean anyServing = !serving.isEmpty();
+        return slot.thenCompose(open -> {
+            RoutingTable.Backend target = selector.pick(open.backends(), b -> b.containerId);
+            if (target == null) {
+                // Every caller of the batch gets the same answer.
+                Reply reply = anyServing ? shed(routeModel, span)
+                        : error(503, "service_unavailable", "No Triton instances are ready");
+                span.end();
+                return CompletableFuture.completedFuture(reply);
+            }
+            return sendBatchTo(target, path, routeModel, body, span);
+        });
+    }
+
+    private CompletableFuture<Reply> sendBatchTo(RoutingTable.Backend target, String path, String routeModel,
+                                                 byte[] body, Span span) {
+        am.getMetricsCollector().getModelPlacement().touch(target.containerId, routeModel, System.currentTimeMillis());
+        URI upstreamUri = URI.create("http://" + target.host + ":" + config.tritonPort + path);
+        Map<String, String> upstreamHeaders = new HashMap<>();
+        upstreamHeaders.put("Content-Type", "application/json");
+        upstreamHeaders.put("Accept", "application/json");
+        span.setAttribute("http.url", upstreamUri.toString());
+        span.setAttribute(TarnTracing.ATTR_CONTAINER, target.containerId);
+        try (Scope ignored = span.makeCurrent()) {
+            TarnTracing.injectHeaders(upstreamHeaders);
+        }
+        HttpRequest.Builder rb = HttpRequest.newBuilder()
+                .uri(upstreamUri)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .timeout(UPSTREAM_TIMEOUT);
+        upstreamHeaders.forEach(rb::header);
+
+        // Stands in for the callers while the merged call is routed; never relayed or finished.
+        Admission a = new Admission(null, EMBEDDINGS_BATCH_TENANT, routeModel, null, false, false, target, null, null,
+                null, rb.build(), span, selector.acquire(target.containerId), System.nanoTime(), null, null, false);
+        return send(a, HttpResponse.BodyHandlers.ofByteArray())
+                .whenComplete((r, e) -> {
+                    String cid = a.target.containerId;
+                    if (r != null) {
+                        span.setAttribute("http.status_code", (long) r.statusCode());
+                        score(cid, r.statusCode(), System.nanoTime() - a.startNs);
+                    } else {
+                        if (outlierDetector != null) outlierDetector.onFailure(cid);
+                        if (concurrencyLimiter != null) concurrencyLimiter.onDrop(cid);
+                        span.setStatus(StatusCode.ERROR, "upstream_error");
+                        span.recordException(e);
+                    }
+                    a.lease.close();
+                    if (concurrencyLimiter != null) {
+                        concurrencyLimiter.release(cid);
+                        admissionQueue.grant();
+                    }
+                    span.end();
+                })
+                .thenApply(r -> new Reply(r.statusCode(),
+                        r.headers().firstValue("Content-Type").orElse("application/json"), r.body()));
+    }
+
+    /** Upstream answered with {@code status}; called before any body byte is relayed. */
+    void upstreamStatus(Admission a, int status) {
+        a.upstreamSpan.setAttribute("http.status_code", (long) status);
+        // A winning hedge scored its own container; the first attempt never answered.
+        if (a.target == null || a.hedgeWon) return;
+        a.rttNanos = System.nanoTime() - a.startNs;
+        a.sampled = true;
+        if (concurrencyLimiter != null) {
+            if (status == 429 || status == 503) {
+                concurrencyLimiter.onDrop(a.target.containerId);
+            } else {
+                concurrencyLimiter.onSample(a.target.containerId, a.rttNanos);
+            }
+        }
+        // A success only counts once its body has been read in full (see onRelayComplete).
+        if (status >= 500) scoreOutlier(a, false);
+    }
+
+    /** Tells the outlier detector how the request's container did, unless it already knows. */
+    private void scoreOutlier(Admission a, boolean success) {
+        if (outlierDetector == null || a.target == null || a.hedgeWon) return;
+        if (!a.scored.compareAndSet(false, true)) return;
+        if (success) {
+            outlierDetector.onSuccess(a.target.containerId, a.rttNanos);
+        } else {
+            outlierDetector.onFailure(a.target.containerId);
+        }
+    }
+
+    /**
+     * Feeds one upstream answer, read in full, to the concurrency limiter and the outlier
+     * detector. For attempts the engines do not relay; those are scored by {@link #upstreamStatus}.
+     */
+    private void score(String containerId, int status, long rttNanos) {
+        if (concurrencyLimiter != null) {
+            if (status == 429 || status == 503) {
+                concurrencyLimiter.onDrop(containerId);
+            } else {
+                concurrencyLimiter.onSample(containerId, rttNanos);
+            }
+        }
+        if (outlierDetector != null) {
+            if (status >= 500) {
+                outlierDetector.onFailure(containerId);
+            } else {
+                outlierDetector.onSuccess(containerId, rttNanos);
+            }
+        }
+    }
+
+    /**
+     * Returns the filter that accounts token usage while a successful response is relayed:
+     * the {@code usage} object of a JSON body, or the final usage event of an SSE stream
+     * (dropped again if the proxy injected the request for it). Streams also feed the
+     * time-to-first-token and inter-token histograms. An embeddings request that went through
+     * the cache gets its merging filter instead; one that asked for base64 has its float
+     * vectors transcoded in front of either. Null for error responses.
+     */
+    ResponseFilter responseFilter(Admission a, int status) {
+        if (status / 100 != 2) return null;
+        UsageExtractor.Listener tokens = (prompt, completion) ->
+                am.getMetricsCollector().recordTokens(a.user, a.baseModel, prompt, completion);
+        if (a.embeddings != null) {
+            ResponseFilter merge = a.embeddings.filter(tokens);
+            return a.base64Embeddings ? new EmbeddingsBase64Transcoder(merge) : merge;
+        }
+        if (a.base64Embeddings) return new EmbeddingsBase64Transcoder(new UsageExtractor(tokens));
+        ResponseFilter relay = a.streaming
+                ? new SseUsageFilter(tokens, a.usageInjected,
+                        new StreamTimer(am.getMetricsCollector(), a.baseModel, a.lora, a.acceptedNs))
+                : new UsageExtractor(tokens);
+        return a.cacheKey != null ? responseCache.recorder(a.cacheKey, relay) : relay;
+    }
+
+    /**
+     * A recorded SSE body as this client should see it: a recording always carries the usage
+     * event, dropped here when the client did not ask for it. Replays are not charged tokens.
+     */
+    static byte[] replaySse(byte[] recorded, boolean stripUsage) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(recorded.length);
+        SseUsageFilter f = new SseUsageFilter((prompt, completion) -> { }, stripUsage);
+        f.write(recorded, 0, recorded.length, out::write);
+        f.finish(out::write);
+        return out.toByteArray();
+    }
+
+    /**
+     * Accounts a fully relayed response. Engines call this (and {@link #finish}) before they
+     * close the client stream so tests — and any sync consumer of the counters — observe the
+     * update atomically with the end of the visible response.
+     */
+    void onRelayComplete(Admission a, int status) {
+        am.getMetricsCollector().recordModelRequest(a.baseModel, status / 100 == 2);
+        if (status < 500) scoreOutlier(a, true);
+    }
+
+    /**
+     * Accounts a failure on Triton's side — no response, or its body broke off — and returns
+     * the error to show the client. Not for failures writing to the client: see
+     * {@link #onClientFailure}.
+     */
+    Reply onUpstreamFailure(Admission a, Throwable t) {
+        if (t instanceof CompletionException && t.getCause() != null) {
+            t = t.getCause();
+        }
+        if (t instanceof Rejected) {
+            a.upstreamSpan.setStatus(StatusCode.ERROR, "rejected");
+            return ((Rejected) t).reply;
+        }
+        am.getMetricsCollector().recordModelRequest(a.baseModel, false);
+        // A body breaking off after the status was sampled is not a second answer to score.
+        if (concurrencyLimiter != null && a.target != null && !a.sampled && !a.hedgeWon) {
+            concurrencyLimiter.onDrop(a.target.containerId);
+        }
+        scoreOutlier(a, false);
+        if (t instanceof HttpConnectTimeoutException || t instanceof TimeoutException) {
+            a.upstreamSpan.setStatus(StatusCode.ERROR, "upstream_timeout");
+            return error(504, "upstream_timeout", "Triton did not respond in time");
+        }
+        a.upstreamSpan.setStatus(StatusCode.ERROR, "upstream_error");
+        a.upstreamSpan.recordException(t);
+        return error(502, "upstream_error", "Upstream Triton error: " + t.getMessage());
+    }
+
+    /**
+     * Accounts a response the client did not take in full: it went away, or writing to it
+     * failed. The container is not to blame, so neither the limiter nor the outlier detector
+     * hears of it.
+     */
+    void onClientFailure(Admission a, Throwable t) {
+        am.getMetricsCollector().recordModelRequest(a.baseModel, false);
+        a.upstreamSpan.setStatus(StatusCode.ERROR, "client_error");
+        log.debug("Client went away while relaying {}: {}", a.baseModel, t.toString());
+    }
+
+    /**
+     * Releases the lease and body, records end-to-end latency and ends the upstream span.
+     * Only the first call has any effect.
+     */
+    void finish(Admission a) {
+        if (!a.finished.compareAndSet(false, true)) return;
+        if (a.lease != null) {
+            a.lease.close();
+            if (concurrencyLimiter != null) {
+                concurrencyLimiter.release(a.target.containerId);
+                admissionQueue.grant();
+            }
+        }
+        a.body.close();
+        // A queued request shed before it was routed never went upstream.
+        if (a.queued == null || a.target != null) {
+            double latencyMs = (System.nanoTime() - a.acceptedNs) / 1_000_000.0;
+            am.getMetricsCollector().recordInferenceLatency(a.baseModel, latencyMs);
+        }
+        a.upstreamSpan.end();
+    }
+
+    /**
+     * Out-of-band usage reporter. Streams relayed by this proxy are accounted in-band (see
+     * {@link SseUsageFilter}); this endpoint remains for traffic that reaches Triton by another
+     * route. Clients or the Triton {@code openai_frontend} can POST their token counts here:
+     *
+     * <pre>{@code
+     * POST /v1/usage
+     * X-Forwarded-User: alice
+     * {
+     *   "model": "llama-3-70b",
+     *   "prompt_tokens": 42,
+     *   "completion_tokens": 128
+     * }
+     * }</pre>
+     */
+    Reply usageReport(ProxyRequest req, byte[] body, int len) throws IOException {
+        if (!"POST".equalsIgnoreCase(req.method())) {
+            return error(405, "method_not_allowed", "Use POST");
+        }
+        if (len == 0) {
+            return error(400, "empty_body", "POST body required");
+        }
+        JsonNode root;
+        try {
+            root = om.readTree(body, 0, Math.min(len, USAGE_MAX_BODY));
+        } catch (Exception e) {
+            return error(400, "invalid_json", "body must be a JSON object");
+        }
+        String model = root.path("model").asText(null);
+        if (model == null || model.isEmpty()) {
+            return error(400, "missing_model", "'model' field required");
+        }
+        long prompt = root.path("prompt_tokens").asLong(0);
+        long completion = root.path("completion_tokens").asLong(0);
+        if (prompt < 0 || completion < 0) {
+            return error(400, "invalid_tokens", "token counts must be non-negative");
+        }
+        // Trust the caller's claimed user only if they come in through a proxy that sets it.
+        // Otherwise fall back to the authenticated principal.
+        String user = getUser(req);
+        am.getMetricsCollector().recordTokens(user, model, prompt, completion);
+        Map<String, Object> resp = new LinkedHashMap<>();
+        resp.put("recorded", true);
+        resp.put("user", user);
+        resp.put("model", model);
+        resp.put("prompt_tokens", prompt);
+        resp.put("completion_tokens", completion);
+        return json(200, resp);
+    }
+
+    /**
+     * Best-effort client IP. When Knox or an ingress proxies us, X-Forwarded-For is the
+     * source of truth; fall back to the raw peer socket when no trusted proxy is set.
+     */
+    private static String resolveClientIp(ProxyRequest req) {
+        String xff = req.header("X-Forwarded-For");
+        if (xff != null && !xff.isEmpty()) {
+            int c = xff.indexOf(',');
+            return (c > 0 ? xff.substring(0, c) : xff).trim();
+        }
+        String peer = req.remoteIp();
+        return peer == null ? "unknown" : peer;
+    }
+
+    /**
+     * Sampling shadow dispatcher. Only fires when both shadowEndpoint and shadowSampleRate
+     * are configured; never blocks the primary response path; any failure is logged but
+     * swallowed so a degraded shadow never affects the real traffic.
+     */
+    private void maybeFireShadow(BodyBufferPool.Body body, String path, String baseModel) {
+        String endpoint = config.shadowEndpoint;
+        double rate = config.shadowSampleRate;
+        if (endpoint == null || endpoint.isEmpty() || rate <= 0.0) return;
+        if (ThreadLocalRandom.current().nextDouble() >= rate) return;
+        URI shadowUri;
+        try {
+            shadowUri = URI.create(endpoint + path);
+        } catch (Exception e) {
+            log.warn("Invalid shadow endpoint URI: {}", endpoint);
+            return;
+        }
+        HttpRequest shadow = HttpRequest.newBuilder()
+                .uri(shadowUri)
+                // Copied: the shadow call outlives the pooled buffer.
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.copy()))
+                .header("Content-Type", "application/json")
+                .header("X-TARN-Shadow", "true")
+                .timeout(UPSTREAM_TIMEOUT)
+                .build();
+        long t0 = System.nanoTime();
+        upstream.sendAsync(shadow, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((resp, err) -> {
+                    MetricsCollector mc = am.getMetricsCollector();
+                    double latencyMs = (System.nanoTime() - t0) / 1_000_000.0;
+                    String shadowModel = "shadow:" + baseModel;
+                    mc.recordInferenceLatency(shadowModel, latencyMs);
+                    if (err != null) {
+                        mc.recordModelRequest(shadowModel, false);
+                        log.debug("Shadow request failed for {}: {}", baseModel, err.toString());
+                    } else {
+                        mc.recordModelRequest(shadowModel, resp.statusCode() / 100 == 2);
+                    }
+                });
+    }
+
+    /**
+     * Backends of {@code serving} under their concurrency limit. With none free — or others
+     * already waiting, who go first — the request joins the {@link FairAdmissionQueue} for
+     * up to {@code --proxy-concurrency-queue-ms}; the future completes once a slot comes its
+     * way, or empty if none did by then. Nothing blocks meanwhile.
+     */
+    private CompletableFuture<RoutingTable> openBackends(RoutingTable serving, String user,
+                                                         FairAdmissionQueue.Priority priority) {
+        RoutingTable open = concurrencyLimiter.open(serving);
+        if (!open.isEmpty() && admissionQueue.isEmpty()) return CompletableFuture.completedFuture(open);
+        MetricsCollector mc = am.getMetricsCollector();
+        long start = System.nanoTime();
+        // Only granted a slot freed on a container serving this request's model.
+        FairAdmissionQueue.Ticket ticket = admissionQueue.enqueue(user, priority,
+                start + TimeUnit.MILLISECONDS.toNanos(config.proxyConcurrencyQueueMs),
+                () -> !concurrencyLimiter.open(serving).isEmpty());
+        if (ticket == null) {
+            mc.recordAdmissionDrop(priority.label(), "full");
+            return CompletableFuture.completedFuture(RoutingTable.EMPTY);
+        }
+        CompletableFuture<RoutingTable> slot = new CompletableFuture<>();
+        slot.whenComplete((o, e) -> mc.recordAdmissionWait(priority.label(), (System.nanoTime() - start) / 1e9));
+        awaitSlot(serving, ticket, slot);
+        // Free capacity goes to whoever is next in fair order, not necessarily this request.
+        if (!open.isEmpty()) admissionQueue.grant();
+        return slot;
+    }
+
+    private void awaitSlot(RoutingTable serving, FairAdmissionQueue.Ticket ticket, CompletableFuture<RoutingTable> slot) {
+        ticket.outcome().thenAccept(granted -> {
+            if (!granted) {
+                am.getMetricsCollector().recordAdmissionDrop(ticket.priority.label(), "deadline");
+                slot.complete(RoutingTable.EMPTY);
+                return;
+            }
+            RoutingTable open = concurrencyLimiter.open(serving);
+            if (!open.isEmpty()) {
+                slot.complete(open);
+                return;
+            }
+            // Another request took the slot first. Whatever is free now goes to the next
+            // eligible ticket; this one only gets it back if it can use it after all.
+            admissionQueue.requeue(ticket);
+            awaitSlot(serving, ticket, slot);
+            admissionQueue.grant();
+        });
+    }
+
+    /**
+     * Scheduling class of a request: its quota rule's priority when the rule sets one,
+     * otherwise the {@code X-TARN-Priority} header, otherwise standard.
+     */
+    private FairAdmissionQueue.Priority priority(ProxyRequest req, String user, Set<String> groups, String model) {
+        QuotaEnforcer quotas = am.getQuotaEnforcer();
+        FairAdmissionQueue.Priority p = quotas == null ? null
+                : FairAdmissionQueue.Priority.parse(quotas.priority(user, groups, model));
+        if (p == null) p = FairAdmissionQueue.Priority.parse(req.header("X-TARN-Priority"));
+        return p == null ? FairAdmissionQueue.Priority.STANDARD : p;
+    }
+
+    /**
+     * Selects a READY backend among {@code serving} (the containers of {@code table} that serve
+     * the model) via {@link BackendSelector}. Both tables are immutable snapshots, so neither
+     * the read nor the selection takes a lock.
+     */
+    private RoutingTable.Backend pickBackend(RoutingTable table, RoutingTable serving, long affinityKey, Span span) {
+        if (serving.isEmpty()) return null;
+        if (!prefixAffinity) {
+            return selector.pick(serving.backends(), b -> b.containerId);
+        }
+        RoutingTable.Backend chosen = null;
+        String outcome;
+        if (affinityKey == 0L) {
+            outcome = "no_key";
+        } else {
+            AffinityRing.Choice c = ring(table).pick(affinityKey, serving, selector::load,
+                    config.proxyAffinityLoadFactor);
+            if (c != null) {
+                chosen = c.backend;
+                outcome = c.outcome == AffinityRing.Outcome.HIT ? "hit" : "spill";
+            } else {
+                outcome = "fallback";
+            }
+        }
+        if (chosen == null) {
+            chosen = selector.pick(serving.backends(), b -> b.containerId);
+        }
+        if (chosen != null) {
+            am.getMetricsCollector().recordAffinityRoute(outcome);
+            span.setAttribute("tarn.routing.affinity", outcome);
+        }
+        return chosen;
+    }
+
+    /**
+     * Selects a backend for a {@code base#lora} request through {@link LoraResidency}: adapter
+     * locality wins over prefix affinity, since a missing adapter costs a load from HDFS on top
+     * of a cold prefix cache.
+     */
+    private RoutingTable.Backend pickLoraBackend(RoutingTable serving, String adapter, Span span) {
+        if (serving.isEmpty()) return null;
+        LoraResidency.Choice c = loraResidency.pick(adapter, serving);
+        MetricsCollector mc = am.getMetricsCollector();
+        if (c.cold) mc.recordLoraColdLoad(c.backend.containerId);
+        mc.setLoraReplicas(adapter, c.replicas);
+        span.setAttribute("tarn.routing.lora_cold", c.cold);
+        return c.backend;
+    }
+
+    /**
+     * Only adapters listed in {@code lora.json} get residency tracking, which bounds its state
+     * to the catalog; anything else routes like a base-model request and fails upstream.
+     */
+    private boolean isCatalogued(String baseModel, String lora) {
+        Map<String, List<String>> catalog = am.getAvailableLoraAdapters();
+        List<String> adapters = catalog == null ? null : catalog.get(baseModel);
+        return adapters != null && adapters.contains(lora);
+    }
+
+    /**
+     * Affinity key: an explicit session / conversation header wins, so every turn of a chat
+     * lands together even once its history outgrows the hashed prefix; otherwise the prompt
+     * prefix hash. 0 means no key.
+     */
+    private static long affinityKey(ProxyRequest req, RequestBodyInspector.Fields fields) {
+        String session = req.header("X-TARN-Session");
+        if (session == null || session.isEmpty()) session = req.header("X-Session-Id");
+        if (session != null && !session.isEmpty()) {
+            long h = AffinityRing.hash(session);
+            return h == 0L ? 1L : h;
+        }
+        return fields.prefixKey;
+    }
+
+    private AffinityRing ring(RoutingTable table) {
+        AffinityRing r = ring;
+        if (r == null || r.table != table) {
+            r = AffinityRing.build(table);
+            ring = r;
+        }
+        return r;
+    }
+
+    private String getUser(ProxyRequest req) {
+        // Priority: X-Forwarded-User (from Knox) -> X-TARN-User (direct) -> UGI short name.
+        String user = req.header("X-Forwarded-User");
+        if (user == null) user = req.header("X-TARN-User");
+        if (user == null || user.isEmpty()) {
+            try {
+                user = UserGroupInformation.getCurrentUser().getShortUserName();
+            } catch (IOException e) {
+                user = "anonymous";
+            }
+        }
+        return user;
+    }
+
+    private Set<String> getGroups(String user) {
+        GroupCache cache = am.getGroupCache();
+        if (cache != null) {
+            return cache.groups(user);
+        }
+        Set<String> groups = new HashSet<>();
+        try {
+            UserGroupInformation ugi = UserGroupInformation.createRemoteUser(user);
+            Collections.addAll(groups, ugi.getGroupNames());
+        } catch (Exception ignore) {
+            // Groups unavailable; Ranger policies must accept user-level grants.
+        }
+        return groups;
+    }
+
+    static String firstHeader(Upstream resp, String name, String def) {
+        return resp.headers.firstValue(name).orElse(def);
+    }
+
+    Reply json(int status, Object body) throws IOException {
+        return new Reply(status, "application/json", om.writeValueAsBytes(body));
+    }
+
+    Reply error(int status, String type, String message) {
+        Map<String, Object> err = new LinkedHashMap<>();
+        Map<String, Object> errObj = new LinkedHashMap<>();
+        errObj.put("message", message);
+        errObj.put("type", type);
+        err.put("error", errObj);
+        try {
+            return json(status, err);
+        } catch (IOException e) {
+            // Two string fields cannot fail to serialize; keep the signature exception-free.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    HttpClient upstream() {
+        return upstream;
+    }
+
+    BackendSelector selector() {
+        return selector;
+    }
+}
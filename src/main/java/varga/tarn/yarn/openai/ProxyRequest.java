@@ -0,0 +1,48 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Map;
+
+/**
+ * Engine-neutral view of an inbound proxy request, so the {@link ProxyPipeline} stages
+ * (identity, quota, Ranger, routing) run unchanged behind the blocking {@code HttpServer}
+ * engine and the asynchronous Jetty engine.
+ */
+interface ProxyRequest {
+
+    String method();
+
+    /** Decoded request path, used for endpoint dispatch. */
+    String path();
+
+    /** Raw (still percent-encoded) path, forwarded verbatim upstream. */
+    String rawPath();
+
+    /** First value of a request header, case-insensitive; null when absent. */
+    String header(String name);
+
+    /** First value of every request header, for trace-context extraction. */
+    Map<String, String> headers();
+
+    /** Address of the TCP peer, or null when unknown. */
+    String remoteIp();
+}
@@ -0,0 +1,288 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Extracts the routing fields of an OpenAI request body ({@code model}, {@code stream}) with a
+ * single streaming {@link JsonParser} pass, without building a tree or a {@code Map}.
+ *
+ * <p>Only top-level fields are examined. Nested values ({@code messages}, {@code input}, ...)
+ * are skipped token by token, so nothing is materialized, and the scan stops as soon as both
+ * fields have been seen — with the usual field order ({@code model} first, {@code stream}
+ * near the top) a multi-megabyte chat history is never tokenized. The flip side is that
+ * syntax errors after that point are not detected here; the body is forwarded untouched and
+ * Triton rejects it.
+ *
+ * <p>Streaming requests are the exception: unless {@code stream_options.include_usage} is
+ * already {@code true}, the scan runs to the closing brace so the proxy knows where to
+ * splice {@code "include_usage":true} in (see {@link Fields#usageInjectAt}).
+ *
+ * <p>For prefix-affinity routing the scan can also hash the first characters of the prompt —
+ * the role and text of {@code messages} in order, or the {@code prompt} string — into
+ * {@link Fields#prefixKey}. Decoded string values are hashed, not raw bytes, so JSON
+ * whitespace and escaping do not split requests that share a system prompt or a
+ * conversation history.
+ */
+final class RequestBodyInspector {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private static final byte[] ADD_STREAM_OPTIONS = bytes("\"stream_options\":{\"include_usage\":true}");
+    private static final byte[] ADD_STREAM_OPTIONS_AFTER = bytes(",\"stream_options\":{\"include_usage\":true}");
+    private static final byte[] ADD_INCLUDE_USAGE = bytes("\"include_usage\":true");
+    private static final byte[] ADD_INCLUDE_USAGE_AFTER = bytes(",\"include_usage\":true");
+
+    private RequestBodyInspector() {
+    }
+
+    /** Routing fields of one request. */
+    static final class Fields {
+        /** The {@code model} string, or null when absent or not a string. */
+        final String model;
+        /** True only when {@code stream} is the JSON literal {@code true}. */
+        final boolean stream;
+        /**
+         * For a streaming request that did not set {@code stream_options.include_usage}, the
+         * absolute offset of the closing brace before which {@link #usageInjection} goes;
+         * -1 otherwise. The splice lands at the end of the object, so on a duplicate key
+         * (e.g. an explicit {@code false}) the injected value is the one parsers keep.
+         */
+        final int usageInjectAt;
+        /** Bytes to insert at {@link #usageInjectAt}; null when there is nothing to inject. */
+        final byte[] usageInjection;
+        /** Hash of the normalized prompt prefix; 0 when not requested or there is no prompt. */
+        final long prefixKey;
+
+        Fields(String model, boolean stream, int usageInjectAt, byte[] usageInjection, long prefixKey) {
+            this.model = model;
+            this.stream = stream;
+            this.usageInjectAt = usageInjectAt;
+            this.usageInjection = usageInjection;
+            this.prefixKey = prefixKey;
+        }
+    }
+
+    /** Routing fields without a prefix key. */
+    static Fields inspect(byte[] buf, int off, int len) throws IOException {
+        return inspect(buf, off, len, 0);
+    }
+
+    /**
+     * @param prefixChars how many prompt characters go into {@link Fields#prefixKey}; 0 skips
+     *                    prefix hashing
+     * @throws JsonParseException when the body is not a JSON object (up to the point where
+     *                            the scan stopped)
+     */
+    static Fields inspect(byte[] buf, int off, int len, int prefixChars) throws IOException {
+        try (JsonParser p = JSON.createParser(buf, off, len)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(p, "request body must be a JSON object");
+            }
+            String model = null;
+            boolean stream = false;
+            boolean seenModel = false;
+            boolean seenStream = false;
+            boolean includeUsage = false;
+            boolean empty = true;
+            // Closing brace of a stream_options object and whether it had members; -1 when absent.
+            int optionsEnd = -1;
+            boolean optionsEmpty = true;
+            PrefixHash prefix = prefixChars > 0 ? new PrefixHash(prefixChars) : null;
+            boolean prefixSeen = prefix == null;
+            JsonToken t;
+            while ((t = p.nextToken()) == JsonToken.FIELD_NAME) {
+                empty = false;
+                String name = p.getCurrentName();
+                JsonToken value = p.nextToken();
+                if (!seenModel && "model".equals(name)) {
+                    seenModel = true;
+                    model = value == JsonToken.VALUE_STRING ? p.getText() : null;
+                } else if (!seenStream && "stream".equals(name)) {
+                    seenStream = true;
+                    stream = value == JsonToken.VALUE_TRUE;
+                } else if ("stream_options".equals(name) && value == JsonToken.START_OBJECT) {
+                    optionsEmpty = true;
+                    includeUsage = false;
+                    while (p.nextToken() == JsonToken.FIELD_NAME) {
+                        optionsEmpty = false;
+                        String option = p.getCurrentName();
+                        JsonToken v = p.nextToken();
+                        if ("include_usage".equals(option)) {
+                            includeUsage = v == JsonToken.VALUE_TRUE;
+                        }
+                        p.skipChildren();
+                    }
+                    optionsEnd = off + (int) p.getTokenLocation().getByteOffset();
+                    continue;
+                } else if (!prefixSeen && "messages".equals(name) && value == JsonToken.START_ARRAY) {
+                    prefixSeen = true;
+                    hashMessages(p, prefix);
+                    continue;
+                } else if (!prefixSeen && "prompt".equals(name) && value == JsonToken.VALUE_STRING) {
+                    prefixSeen = true;
+                    prefix.add(p);
+                }
+                if (seenModel && seenStream && (!stream || includeUsage) && prefixSeen) {
+                    return new Fields(model, stream, -1, null, key(prefix));
+                }
+                p.skipChildren();
+            }
+            if (t != JsonToken.END_OBJECT) {
+                throw new JsonParseException(p, "truncated JSON object");
+            }
+            if (!stream || includeUsage) {
+                return new Fields(model, stream, -1, null, key(prefix));
+            }
+            if (optionsEnd >= 0) {
+                return new Fields(model, true, optionsEnd, optionsEmpty ? ADD_INCLUDE_USAGE : ADD_INCLUDE_USAGE_AFTER,
+                        key(prefix));
+            }
+            int rootEnd = off + (int) p.getTokenLocation().getByteOffset();
+            return new Fields(model, true, rootEnd, empty ? ADD_STREAM_OPTIONS : ADD_STREAM_OPTIONS_AFTER,
+                    key(prefix));
+        }
+    }
+
+    /**
+     * True when an embeddings request body asks for {@code "encoding_format":"base64"}. Only
+     * top-level fields are read and nested values are skipped; a body that is not a JSON
+     * object simply answers false.
+     */
+    static boolean wantsBase64(byte[] buf, int off, int len) {
+        try (JsonParser p = JSON.createParser(buf, off, len)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) return false;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.getCurrentName();
+                JsonToken value = p.nextToken();
+                if ("encoding_format".equals(name)) {
+                    return value == JsonToken.VALUE_STRING && "base64".equals(p.getText());
+                }
+                p.skipChildren();
+            }
+            return false;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static long key(PrefixHash prefix) {
+        return prefix == null ? 0L : prefix.value();
+    }
+
+    /** Hashes role and text of each message until the budget is spent; leaves the parser on END_ARRAY. */
+    private static void hashMessages(JsonParser p, PrefixHash prefix) throws IOException {
+        JsonToken t;
+        while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+            if (t == null) throw new JsonParseException(p, "truncated JSON array");
+            if (t != JsonToken.START_OBJECT || prefix.full()) {
+                p.skipChildren();
+                continue;
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.getCurrentName();
+                JsonToken v = p.nextToken();
+                if (prefix.full()) {
+                    p.skipChildren();
+                } else if (("role".equals(name) || "content".equals(name)) && v == JsonToken.VALUE_STRING) {
+                    prefix.add(p);
+                } else if ("content".equals(name) && v == JsonToken.START_ARRAY) {
+                    hashContentParts(p, prefix);
+                } else {
+                    p.skipChildren();
+                }
+            }
+            prefix.separator();
+        }
+    }
+
+    /** Multimodal content: only the {@code text} of each part counts. */
+    private static void hashContentParts(JsonParser p, PrefixHash prefix) throws IOException {
+        JsonToken t;
+        while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+            if (t == null) throw new JsonParseException(p, "truncated JSON array");
+            if (t != JsonToken.START_OBJECT) {
+                p.skipChildren();
+                continue;
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.getCurrentName();
+                JsonToken v = p.nextToken();
+                if ("text".equals(name) && v == JsonToken.VALUE_STRING && !prefix.full()) {
+                    prefix.add(p);
+                } else {
+                    p.skipChildren();
+                }
+            }
+        }
+    }
+
+    /** FNV-1a over the first {@code budget} prompt characters, read without building Strings. */
+    private static final class PrefixHash {
+        private long h = 0xcbf29ce484222325L;
+        private int budget;
+        private boolean any;
+
+        PrefixHash(int budget) {
+            this.budget = budget;
+        }
+
+        void add(JsonParser p) throws IOException {
+            char[] c = p.getTextCharacters();
+            int from = p.getTextOffset();
+            int n = Math.min(p.getTextLength(), budget);
+            for (int i = from; i < from + n; i++) {
+                h ^= c[i];
+                h *= 0x100000001b3L;
+            }
+            budget -= n;
+            any = true;
+            separator();
+        }
+
+        /** Field / message boundary, so "ab"+"c" and "a"+"bc" differ; costs no budget. */
+        void separator() {
+            h ^= 0x1f;
+            h *= 0x100000001b3L;
+        }
+
+        boolean full() {
+            return budget == 0;
+        }
+
+        long value() {
+            if (!any) return 0L;
+            long v = AffinityRing.mix(h);
+            return v == 0L ? 1L : v;
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
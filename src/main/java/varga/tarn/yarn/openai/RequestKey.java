@@ -0,0 +1,122 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Identity of a deterministic inference request, shared by the response cache and request
+ * coalescing.
+ *
+ * <p>A request is deterministic when it pins its output: {@code temperature} 0 or an integer
+ * {@code seed}. Its key is a SHA-256 of the endpoint path, a partition (the user, or nothing)
+ * and a canonical form of the body — object keys sorted, numbers normalized, {@link #VOLATILE_FIELDS}
+ * dropped — so formatting and field order do not matter. {@code stream} stays in the key, and
+ * the same body sent to {@code /v1/completions} and {@code /v1/chat/completions} keys apart.
+ */
+final class RequestKey {
+
+    /** Body fields that do not change the completion. */
+    static final Set<String> VOLATILE_FIELDS = Set.of("user", "stream_options");
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private RequestKey() {
+    }
+
+    /**
+     * Hex key of {@code body} sent to {@code path} within {@code partition}, or null when not
+     * deterministic.
+     */
+    static String deterministic(String path, String partition, byte[] body, int off, int len) {
+        JsonNode root;
+        try {
+            root = MAPPER.readTree(body, off, len);
+        } catch (IOException e) {
+            return null;
+        }
+        if (root == null || !root.isObject()) return null;
+        JsonNode temperature = root.path("temperature");
+        JsonNode seed = root.path("seed");
+        boolean deterministic = (temperature.isNumber() && temperature.doubleValue() == 0.0)
+                || seed.isIntegralNumber();
+        if (!deterministic) return null;
+
+        MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        sha.update(path.getBytes(StandardCharsets.UTF_8));
+        sha.update((byte) 0);
+        sha.update(partition.getBytes(StandardCharsets.UTF_8));
+        sha.update((byte) 0);
+        ByteArrayOutputStream canonical = new ByteArrayOutputStream(len);
+        try (JsonGenerator g = MAPPER.getFactory().createGenerator(canonical)) {
+            writeCanonical(g, root, true);
+        } catch (IOException e) {
+            return null;
+        }
+        byte[] d = sha.digest(canonical.toByteArray());
+        StringBuilder hex = new StringBuilder(d.length * 2);
+        for (byte b : d) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static void writeCanonical(JsonGenerator g, JsonNode n, boolean top) throws IOException {
+        if (n.isObject()) {
+            List<String> names = new ArrayList<>();
+            n.fieldNames().forEachRemaining(names::add);
+            Collections.sort(names);
+            g.writeStartObject();
+            for (String name : names) {
+                if (top && VOLATILE_FIELDS.contains(name)) continue;
+                g.writeFieldName(name);
+                writeCanonical(g, n.get(name), false);
+            }
+            g.writeEndObject();
+        } else if (n.isArray()) {
+            g.writeStartArray();
+            for (JsonNode item : n) writeCanonical(g, item, false);
+            g.writeEndArray();
+        } else if (n.isNumber()) {
+            // 0, 0.0 and 0e0 are the same temperature.
+            g.writeNumber(n.decimalValue().stripTrailingZeros());
+        } else {
+            g.writeTree(n);
+        }
+    }
+}
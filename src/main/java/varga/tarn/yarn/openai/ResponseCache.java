@@ -0,0 +1,174 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import varga.tarn.yarn.MetricsCollector;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * Exact-match cache of completion responses for deterministic requests.
+ *
+ * <p>Only requests that pin their output — {@code temperature} 0 or an integer {@code seed} —
+ * and target an opted-in model are cached. The key is a {@link RequestKey} partitioned by the
+ * requesting user, so formatting and field order do not matter and one user's entries are
+ * never served to another: whatever Ranger and the quotas decided for a request still holds
+ * for its hit.
+ * {@code stream} stays in the key, so a streamed request replays the recorded SSE body.
+ *
+ * <p>The body stored is the upstream one, before any response filter ran; the proxy's own
+ * usage event in a recorded stream is stripped again on replay when the client did not ask
+ * for it. Entries expire after the TTL and the least recently used go first once the entry
+ * or byte bound is reached.
+ */
+final class ResponseCache {
+
+    private static final class Entry {
+        final byte[] body;
+        final long expiresAtNs;
+
+        Entry(byte[] body, long expiresAtNs) {
+            this.body = body;
+            this.expiresAtNs = expiresAtNs;
+        }
+    }
+
+    private final Set<String> models;
+    private final boolean allModels;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttlNanos;
+    private final MetricsCollector metrics;
+    private final LongSupplier nanoClock;
+    // Guarded by this.
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+
+    /**
+     * @param models model names to cache, {@code *} for every model; an empty list caches
+     *               nothing
+     */
+    ResponseCache(List<String> models, int maxEntries, long maxBytes, long ttlMs, MetricsCollector metrics) {
+        this(models, maxEntries, maxBytes, ttlMs, metrics, System::nanoTime);
+    }
+
+    ResponseCache(List<String> models, int maxEntries, long maxBytes, long ttlMs, MetricsCollector metrics,
+                  LongSupplier nanoClock) {
+        this.models = new HashSet<>(models);
+        this.allModels = this.models.contains("*");
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttlNanos = ttlMs * 1_000_000L;
+        this.metrics = metrics;
+        this.nanoClock = nanoClock;
+    }
+
+    boolean cachesModel(String model) {
+        return allModels || models.contains(model);
+    }
+
+    /**
+     * Cache key of a request body sent by {@code user} to {@code path}, or null when the
+     * request is not deterministic (or not a JSON object).
+     */
+    static String key(String path, String user, byte[] body, int off, int len) {
+        return RequestKey.deterministic(path, user, body, off, len);
+    }
+
+    /** The recorded upstream body, or null when absent or expired. */
+    synchronized byte[] get(String key) {
+        Entry e = entries.get(key);
+        if (e == null) return null;
+        if (nanoClock.getAsLong() - e.expiresAtNs >= 0) {
+            remove(key);
+            return null;
+        }
+        return e.body;
+    }
+
+    synchronized void put(String key, byte[] body) {
+        if (body.length > maxBytes || maxEntries <= 0) return;
+        if (entries.containsKey(key)) remove(key);
+        entries.put(key, new Entry(body, nanoClock.getAsLong() + ttlNanos));
+        bytes += body.length;
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > maxEntries || bytes > maxBytes) {
+            bytes -= it.next().getValue().body.length;
+            it.remove();
+        }
+        metrics.setResponseCacheSize(entries.size(), bytes);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    private void remove(String key) {
+        Entry e = entries.remove(key);
+        if (e != null) bytes -= e.body.length;
+        metrics.setResponseCacheSize(entries.size(), bytes);
+    }
+
+    /**
+     * Wraps the filter relaying a successful response so the upstream body is recorded under
+     * {@code key} once it has been relayed in full. Bodies above the byte bound are not kept.
+     */
+    ResponseFilter recorder(String key, ResponseFilter relay) {
+        return new ResponseFilter() {
+            private byte[] buf = new byte[8192];
+            private int len;
+            private boolean tooLarge;
+
+            @Override
+            public void write(byte[] b, int off, int n, Sink out) throws IOException {
+                if (!tooLarge) {
+                    if (len + (long) n > maxBytes) {
+                        tooLarge = true;
+                        buf = null;
+                    } else {
+                        if (len + n > buf.length) buf = Arrays.copyOf(buf, Math.max(len + n, buf.length * 2));
+                        System.arraycopy(b, off, buf, len, n);
+                        len += n;
+                    }
+                }
+                relay.write(b, off, n, out);
+            }
+
+            @Override
+            public void finish(Sink out) throws IOException {
+                relay.finish(out);
+                if (!tooLarge) put(key, Arrays.copyOf(buf, len));
+            }
+        };
+    }
+}
@@ -0,0 +1,46 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+
+/**
+ * Sits on the response relay path between Triton and the client. Every upstream chunk goes
+ * through {@link #write} before it reaches the client; a filter may only observe the bytes
+ * (usage accounting), hold back and drop some of them (an injected SSE usage event), or
+ * buffer the whole body and write a different one from {@link #finish} (embeddings served
+ * partly from cache).
+ */
+interface ResponseFilter {
+
+    /** Receives the bytes to relay. They are only valid for the duration of the call. */
+    @FunctionalInterface
+    interface Sink {
+        void write(byte[] buf, int off, int len) throws IOException;
+    }
+
+    /** Relays one upstream chunk to {@code out}. Must not retain {@code buf}. */
+    void write(byte[] buf, int off, int len, Sink out) throws IOException;
+
+    /** The upstream body ended: releases anything still held back. */
+    default void finish(Sink out) throws IOException {
+    }
+}
@@ -0,0 +1,263 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+/**
+ * Relays an upstream body publisher to a servlet response without blocking a thread.
+ *
+ * <p>Flow control runs end to end: the next item is requested from upstream only after the
+ * previous one has been handed to the servlet container, and bytes are written only while
+ * {@link ServletOutputStream#isReady()} says so. A slow client therefore stops reads from
+ * Triton (TCP window) instead of growing a buffer in the AM. Each upstream item is flushed
+ * once it has been written, so SSE events reach the client as they arrive. An optional
+ * {@link ResponseFilter} sees each upstream item as it arrives and decides what is queued
+ * for writing; without one, upstream buffers are written as they are.
+ *
+ * <p>When the body is fully written {@code onDone} runs and then the async context is
+ * completed — accounting done in {@code onDone} is visible before the client sees the end of
+ * the response. If either side fails, the upstream subscription is cancelled, the failure is
+ * handed to {@code onUpstreamFailure} (Triton's body broke off, or the filter choked on it) or
+ * {@code onClientFailure} (writing to the client failed) and the context is completed.
+ */
+final class ServletBodyRelay implements WriteListener {
+
+    private final AsyncContext ctx;
+    private final ServletOutputStream out;
+    private final Runnable onDone;
+    private final Consumer<Throwable> onUpstreamFailure;
+    private final Consumer<Throwable> onClientFailure;
+    private final ResponseFilter filter;
+    private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+    private final byte[] scratch = new byte[8192];
+
+    private Flow.Subscription subscription;
+    private boolean awaitingItem;
+    private boolean upstreamDone;
+    private boolean flushNeeded;
+    private boolean finished;
+
+    private ServletBodyRelay(AsyncContext ctx, ServletOutputStream out, ResponseFilter filter,
+                             Runnable onDone, Consumer<Throwable> onUpstreamFailure,
+                             Consumer<Throwable> onClientFailure) {
+        this.ctx = ctx;
+        this.out = out;
+        this.filter = filter;
+        this.onDone = onDone;
+        this.onUpstreamFailure = onUpstreamFailure;
+        this.onClientFailure = onClientFailure;
+    }
+
+    /**
+     * Starts relaying {@code body}. Status and headers must already be set on the response.
+     *
+     * @param filter applied to every upstream item, may be null
+     */
+    static void relay(AsyncContext ctx, Flow.Publisher<List<ByteBuffer>> body, ResponseFilter filter,
+                      Runnable onDone, Consumer<Throwable> onUpstreamFailure,
+                      Consumer<Throwable> onClientFailure) throws IOException {
+        ServletBodyRelay relay = new ServletBodyRelay(ctx, ctx.getResponse().getOutputStream(), filter,
+                onDone, onUpstreamFailure, onClientFailure);
+        relay.out.setWriteListener(relay);
+        body.subscribe(relay.new Upstream());
+    }
+
+    /** Writes a complete payload and completes the context. */
+    static void write(AsyncContext ctx, byte[] payload) throws IOException {
+        ServletBodyRelay relay = new ServletBodyRelay(ctx, ctx.getResponse().getOutputStream(), null,
+                () -> { }, t -> { }, t -> { });
+        relay.pending.add(ByteBuffer.wrap(payload));
+        relay.upstreamDone = true;
+        relay.out.setWriteListener(relay);
+    }
+
+    @Override
+    public void onWritePossible() {
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        fail(t, onClientFailure);
+    }
+
+    private void drain() {
+        boolean requestMore = false;
+        boolean done = false;
+        synchronized (this) {
+            if (finished) return;
+            try {
+                while (out.isReady()) {
+                    ByteBuffer b = pending.peek();
+                    if (b == null) {
+                        if (flushNeeded) {
+                            flushNeeded = false;
+                            out.flush();
+                            continue;
+                        }
+                        if (upstreamDone) {
+                            finished = true;
+                            done = true;
+                        } else if (!awaitingItem && subscription != null) {
+                            awaitingItem = true;
+                            requestMore = true;
+                        }
+                        break;
+                    }
+                    int n = Math.min(b.remaining(), scratch.length);
+                    b.get(scratch, 0, n);
+                    out.write(scratch, 0, n);
+                    if (!b.hasRemaining()) {
+                        pending.poll();
+                        flushNeeded = pending.isEmpty();
+                    }
+                }
+            } catch (IOException e) {
+                finished = true;
+                failOutsideLock(e, onClientFailure);
+                return;
+            }
+        }
+        // Outside the lock: a publisher may deliver onNext synchronously from request().
+        if (requestMore) {
+            subscription.request(1);
+        } else if (done) {
+            try {
+                onDone.run();
+            } finally {
+                ctx.complete();
+            }
+        }
+    }
+
+    private void fail(Throwable t, Consumer<Throwable> handler) {
+        synchronized (this) {
+            if (finished) return;
+            finished = true;
+        }
+        failOutsideLock(t, handler);
+    }
+
+    private void failOutsideLock(Throwable t, Consumer<Throwable> handler) {
+        Flow.Subscription s;
+        synchronized (this) {
+            s = subscription;
+            pending.clear();
+        }
+        if (s != null) s.cancel();
+        try {
+            handler.accept(t);
+        } finally {
+            ctx.complete();
+        }
+    }
+
+    /**
+     * Queues filter output. Slices of the item's own copy are wrapped as they are; anything
+     * else (bytes the filter held back in its own buffer) is copied.
+     */
+    private void enqueue(byte[] item, byte[] buf, int off, int len) {
+        if (len == 0) return;
+        pending.add(buf == item ? ByteBuffer.wrap(buf, off, len)
+                : ByteBuffer.wrap(Arrays.copyOfRange(buf, off, off + len)));
+    }
+
+    /** Upstream side: one item in flight at a time. */
+    private final class Upstream implements Flow.Subscriber<List<ByteBuffer>> {
+        @Override
+        public void onSubscribe(Flow.Subscription s) {
+            boolean cancel;
+            synchronized (ServletBodyRelay.this) {
+                subscription = s;
+                cancel = finished;
+            }
+            if (cancel) {
+                s.cancel();
+                return;
+            }
+            drain();
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            IOException filterFailure = null;
+            synchronized (ServletBodyRelay.this) {
+                awaitingItem = false;
+                try {
+                    for (ByteBuffer b : item) {
+                        if (!b.hasRemaining()) continue;
+                        if (filter == null) {
+                            pending.add(b);
+                        } else {
+                            byte[] in = new byte[b.remaining()];
+                            b.get(in);
+                            filter.write(in, 0, in.length, (buf, off, len) -> enqueue(in, buf, off, len));
+                        }
+                    }
+                } catch (IOException e) {
+                    filterFailure = e;
+                }
+                // An empty item still needs a follow-up request; drain() issues it.
+            }
+            if (filterFailure != null) {
+                fail(filterFailure, onUpstreamFailure);
+                return;
+            }
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            fail(t, onUpstreamFailure);
+        }
+
+        @Override
+        public void onComplete() {
+            IOException filterFailure = null;
+            synchronized (ServletBodyRelay.this) {
+                if (filter != null) {
+                    try {
+                        filter.finish((buf, off, len) -> enqueue(null, buf, off, len));
+                    } catch (IOException e) {
+                        filterFailure = e;
+                    }
+                }
+                upstreamDone = true;
+            }
+            if (filterFailure != null) {
+                fail(filterFailure, onUpstreamFailure);
+                return;
+            }
+            drain();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coalesces identical in-flight requests onto one upstream call.
+ *
+ * <p>The first request for a key becomes the leader and goes to Triton; requests for the same
+ * key that arrive while its response is still being read follow it. Every participant —
+ * leader included — reads the response through its own replay of the recorded body: a
+ * follower that joins mid-stream first receives what was already relayed, then the rest as
+ * it arrives, so a non-streaming follower gets the leader's bytes and a streaming one the
+ * same SSE events. The upstream body is read at Triton's pace whatever the participants do;
+ * a client that goes away only cancels its own replay.
+ *
+ * <p>A flight is forgotten once its body has been read in full (or failed); later requests
+ * start a new one.
+ */
+final class SingleFlight {
+
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+
+    /** Joins the flight for {@code key}, starting it when none is in the air. */
+    Flight join(String key) {
+        Flight fresh = new Flight(key);
+        Flight current = flights.putIfAbsent(key, fresh);
+        return current != null ? current.follower() : fresh;
+    }
+
+    int inFlight() {
+        return flights.size();
+    }
+
+    /** One shared upstream call. */
+    final class Flight {
+        private final String key;
+        private final boolean leader;
+        private final CompletableFuture<ProxyPipeline.Upstream> response;
+        // Guarded by this; null on a follower's handle.
+        private final List<ByteBuffer> chunks;
+        private final List<Replay> replays;
+        private boolean done;
+        private Throwable error;
+
+        private Flight(String key) {
+            this.key = key;
+            this.leader = true;
+            this.response = new CompletableFuture<>();
+            this.chunks = new ArrayList<>();
+            this.replays = new ArrayList<>();
+        }
+
+        private Flight(Flight leader) {
+            this.key = leader.key;
+            this.leader = false;
+            this.response = leader.response;
+            this.chunks = null;
+            this.replays = null;
+        }
+
+        private Flight follower() {
+            return new Flight(this);
+        }
+
+        /** True for the request that makes the upstream call. */
+        boolean leader() {
+            return leader;
+        }
+
+        /** Completes with the shared response; its body is a replay private to the caller. */
+        CompletableFuture<ProxyPipeline.Upstream> response() {
+            return response;
+        }
+
+        /** Leader only: the upstream call completed, exceptionally when {@code err} is set. */
+        void upstream(HttpResponse<Flow.Publisher<List<ByteBuffer>>> resp, Throwable err) {
+            if (err != null) {
+                fail(err);
+            } else {
+                start(new ProxyPipeline.Upstream(resp.statusCode(), resp.headers(), resp.body()));
+            }
+        }
+
+        /** Leader only: no response will come; every participant sees {@code err}. */
+        void fail(Throwable err) {
+            flights.remove(key, this);
+            response.completeExceptionally(err);
+        }
+
+        /** Leader only: starts recording {@code origin}'s body and releases the participants. */
+        void start(ProxyPipeline.Upstream origin) {
+            origin.body.subscribe(new Flow.Subscriber<>() {
+                @Override
+                public void onSubscribe(Flow.Subscription s) {
+                    s.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(List<ByteBuffer> item) {
+                    append(item);
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    end(t);
+                }
+
+                @Override
+                public void onComplete() {
+                    end(null);
+                }
+            });
+            response.complete(new ProxyPipeline.Upstream(origin.status, origin.headers, this::subscribe));
+        }
+
+        private void append(List<ByteBuffer> item) {
+            // Copied: the client does not promise its buffers outlive onNext.
+            int n = 0;
+            for (ByteBuffer b : item) n += b.remaining();
+            ByteBuffer copy = ByteBuffer.allocate(n);
+            for (ByteBuffer b : item) copy.put(b);
+            copy.flip();
+            List<Replay> live;
+            synchronized (this) {
+                chunks.add(copy.asReadOnlyBuffer());
+                live = new ArrayList<>(replays);
+            }
+            for (Replay r : live) r.drain();
+        }
+
+        private void end(Throwable t) {
+            List<Replay> live;
+            synchronized (this) {
+                done = true;
+                error = t;
+                live = new ArrayList<>(replays);
+            }
+            flights.remove(key, this);
+            for (Replay r : live) r.drain();
+        }
+
+        private void subscribe(Flow.Subscriber<? super List<ByteBuffer>> subscriber) {
+            Replay r = new Replay(this, subscriber);
+            synchronized (this) {
+                replays.add(r);
+            }
+            subscriber.onSubscribe(r);
+            r.drain();
+        }
+    }
+
+    /** One participant's view of the recorded body, with its own demand. */
+    private static final class Replay implements Flow.Subscription {
+        private final Flight flight;
+        private final Flow.Subscriber<? super List<ByteBuffer>> subscriber;
+        private final AtomicInteger wip = new AtomicInteger();
+        // Guarded by flight.
+        private long demand;
+        private int next;
+        private boolean cancelled;
+        // Only touched by the draining thread.
+        private boolean terminated;
+
+        Replay(Flight flight, Flow.Subscriber<? super List<ByteBuffer>> subscriber) {
+            this.flight = flight;
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (flight) {
+                if (n <= 0) {
+                    cancelled = true;
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+            }
+            if (n <= 0) {
+                subscriber.onError(new IllegalArgumentException("non-positive request: " + n));
+                return;
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (flight) {
+                cancelled = true;
+                flight.replays.remove(this);
+            }
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() != 0) return;
+            do {
+                while (!terminated) {
+                    ByteBuffer chunk = null;
+                    boolean complete = false;
+                    Throwable err = null;
+                    synchronized (flight) {
+                        if (cancelled) {
+                            terminated = true;
+                            break;
+                        }
+                        if (next < flight.chunks.size()) {
+                            if (demand == 0) break;
+                            chunk = flight.chunks.get(next++).duplicate();
+                            demand--;
+                        } else if (flight.done) {
+                            complete = true;
+                            err = flight.error;
+                            flight.replays.remove(this);
+                        } else {
+                            break;
+                        }
+                    }
+                    if (chunk != null) {
+                        subscriber.onNext(List.of(chunk));
+                    } else if (complete) {
+                        terminated = true;
+                        if (err != null) {
+                            subscriber.onError(err);
+                        } else {
+                            subscriber.onComplete();
+                        }
+                    }
+                }
+            } while (wip.decrementAndGet() != 0);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Incremental SSE frame parser on the streaming relay path that recognizes the final
+ * {@code usage} chunk of an OpenAI stream ({@code stream_options.include_usage}).
+ *
+ * <p>Events are delimited by scanning for the blank line that ends them; the bytes of the
+ * event in progress are kept in one reusable buffer. Only an event whose data has a
+ * {@code "usage"} object (every other chunk carries {@code "usage":null}, or no key at all)
+ * is handed to a {@link UsageExtractor}; everything else costs one byte scan.
+ *
+ * <p>When the client asked for usage itself the filter only observes: each chunk is relayed
+ * as soon as it has been scanned. When the proxy injected {@code include_usage}, complete
+ * events are relayed as soon as their terminating blank line arrives and the usage event is
+ * dropped, so the client sees the stream it asked for. Triton writes one event per chunk,
+ * so holding back the partial tail adds no latency in practice. An event larger than
+ * {@link #MAX_EVENT} is relayed through unexamined.
+ *
+ * <p>Every completed data frame other than the usage event and {@code [DONE]} is reported to
+ * an optional {@link FrameListener} as it is relayed, which is what the time-to-first-token
+ * and inter-token histograms are built from.
+ */
+final class SseUsageFilter implements ResponseFilter {
+
+    static final int MAX_EVENT = 64 * 1024;
+    private static final byte[] USAGE_KEY = {'"', 'u', 's', 'a', 'g', 'e', '"'};
+    private static final byte[] DATA = {'d', 'a', 't', 'a', ':'};
+    private static final byte[] DONE = {'[', 'D', 'O', 'N', 'E', ']'};
+
+    /** Told about each content frame of the stream, in order, as it is relayed. */
+    interface FrameListener {
+        void onDataFrame();
+    }
+
+    private final UsageExtractor.Listener listener;
+    private final boolean strip;
+    private final FrameListener frames;
+    private byte[] event = new byte[1024];
+    private int eventLen;
+    /** Bytes on the current line, CR excluded; 0 right after a line feed. */
+    private int lineLen;
+    /** Current event outgrew {@link #MAX_EVENT}: relayed as-is until it ends. */
+    private boolean oversized;
+    private boolean usageSeen;
+
+    /**
+     * @param strip drop the usage event instead of relaying it (the proxy injected the request
+     *              for it)
+     */
+    SseUsageFilter(UsageExtractor.Listener listener, boolean strip) {
+        this(listener, strip, null);
+    }
+
+    /** @param frames told about each content frame, may be null */
+    SseUsageFilter(UsageExtractor.Listener listener, boolean strip, FrameListener frames) {
+        this.listener = listener;
+        this.strip = strip;
+        this.frames = frames;
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len, Sink out) throws IOException {
+        if (strip) {
+            scan(buf, off, len, out);
+        } else {
+            scan(buf, off, len, null);
+            out.write(buf, off, len);
+        }
+    }
+
+    @Override
+    public void finish(Sink out) throws IOException {
+        // A last event without its blank line still counts.
+        if (eventLen > 0 && !oversized) {
+            endOfEvent(strip ? out : null);
+        }
+    }
+
+    /** True once the usage event has been seen. */
+    boolean usageSeen() {
+        return usageSeen;
+    }
+
+    /**
+     * Splits {@code buf} into events. With a non-null {@code out} (strip mode) bytes are only
+     * relayed from here: complete events from the event buffer, oversized ones straight from
+     * {@code buf}.
+     */
+    private void scan(byte[] buf, int off, int len, Sink out) throws IOException {
+        int end = off + len;
+        int direct = off;
+        for (int i = off; i < end; i++) {
+            byte c = buf[i];
+            if (!oversized) {
+                if (eventLen == event.length) {
+                    if (eventLen >= MAX_EVENT) {
+                        oversized = true;
+                        if (out != null) out.write(event, 0, eventLen);
+                        eventLen = 0;
+                        direct = i;
+                    } else {
+                        event = Arrays.copyOf(event, Math.min(MAX_EVENT, eventLen * 2));
+                    }
+                }
+                if (!oversized) event[eventLen++] = c;
+            }
+            if (c == '\n') {
+                if (lineLen == 0) {
+                    if (oversized) {
+                        if (out != null) out.write(buf, direct, i + 1 - direct);
+                        oversized = false;
+                        if (frames != null) frames.onDataFrame();
+                    } else {
+                        endOfEvent(out);
+                    }
+                    eventLen = 0;
+                    direct = i + 1;
+                }
+                lineLen = 0;
+            } else if (c != '\r') {
+                lineLen++;
+            }
+        }
+        if (oversized && out != null && direct < end) {
+            out.write(buf, direct, end - direct);
+        }
+    }
+
+    private void endOfEvent(Sink out) throws IOException {
+        boolean usage = false;
+        if (!usageSeen && hasUsageObject()) {
+            usage = extractUsage();
+        }
+        if (!(usage && strip) && out != null) {
+            out.write(event, 0, eventLen);
+        }
+        if (!usage && frames != null && isContentFrame()) {
+            frames.onDataFrame();
+        }
+        eventLen = 0;
+    }
+
+    /** True when the event has a data line other than the {@code [DONE]} sentinel. */
+    private boolean isContentFrame() {
+        int i = 0;
+        while (i < eventLen) {
+            int nl = i;
+            while (nl < eventLen && event[nl] != '\n') nl++;
+            int lineEnd = nl > i && event[nl - 1] == '\r' ? nl - 1 : nl;
+            if (startsWith(DATA, i, lineEnd)) {
+                int p = i + DATA.length;
+                if (p < lineEnd && event[p] == ' ') p++;
+                return !(lineEnd - p == DONE.length && startsWith(DONE, p, lineEnd));
+            }
+            i = nl + 1;
+        }
+        return false;
+    }
+
+    /** Cheap pre-check for {@code "usage"} followed by a colon and an object. */
+    private boolean hasUsageObject() {
+        int last = eventLen - USAGE_KEY.length;
+        outer:
+        for (int i = 0; i <= last; i++) {
+            for (int k = 0; k < USAGE_KEY.length; k++) {
+                if (event[i + k] != USAGE_KEY[k]) continue outer;
+            }
+            int j = skipBlanks(i + USAGE_KEY.length);
+            if (j < eventLen && event[j] == ':') {
+                j = skipBlanks(j + 1);
+                if (j < eventLen && event[j] == '{') return true;
+            }
+        }
+        return false;
+    }
+
+    private int skipBlanks(int i) {
+        while (i < eventLen && (event[i] == ' ' || event[i] == '\t')) i++;
+        return i;
+    }
+
+    /** Feeds the event's data lines to a fresh extractor; true when it found usage. */
+    private boolean extractUsage() {
+        UsageExtractor x = new UsageExtractor((prompt, completion) -> {
+            usageSeen = true;
+            listener.onUsage(prompt, completion);
+        });
+        int i = 0;
+        while (i < eventLen && !x.isDone()) {
+            int nl = i;
+            while (nl < eventLen && event[nl] != '\n') nl++;
+            int lineEnd = nl > i && event[nl - 1] == '\r' ? nl - 1 : nl;
+            if (startsWith(DATA, i, lineEnd)) {
+                int p = i + DATA.length;
+                if (p < lineEnd && event[p] == ' ') p++;
+                x.feed(event, p, lineEnd - p);
+            }
+            i = nl + 1;
+        }
+        return usageSeen;
+    }
+
+    private boolean startsWith(byte[] prefix, int from, int to) {
+        if (to - from < prefix.length) return false;
+        for (int k = 0; k < prefix.length; k++) {
+            if (event[from + k] != prefix[k]) return false;
+        }
+        return true;
+    }
+}
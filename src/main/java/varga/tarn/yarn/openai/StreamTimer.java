@@ -0,0 +1,57 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import varga.tarn.yarn.MetricsCollector;
+
+/**
+ * Turns the content frames of one relayed SSE stream into time-to-first-token and
+ * inter-token observations. The first frame is measured from the moment the proxy accepted
+ * the request, so Triton queueing and prefill both count — that is the latency the user sees.
+ */
+final class StreamTimer implements SseUsageFilter.FrameListener {
+
+    private final MetricsCollector metrics;
+    private final String model;
+    private final String lora;
+    private final long startNs;
+    private long lastNs;
+    private boolean started;
+
+    StreamTimer(MetricsCollector metrics, String model, String lora, long startNs) {
+        this.metrics = metrics;
+        this.model = model;
+        this.lora = lora;
+        this.startNs = startNs;
+    }
+
+    @Override
+    public void onDataFrame() {
+        long now = System.nanoTime();
+        if (!started) {
+            started = true;
+            metrics.recordTimeToFirstToken(model, lora, (now - startNs) / 1e9);
+        } else {
+            metrics.recordInterTokenLatency(model, lora, (now - lastNs) / 1e9);
+        }
+        lastNs = now;
+    }
+}
@@ -0,0 +1,143 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+
+import java.io.IOException;
+
+/**
+ * Picks the top-level {@code usage} object out of an OpenAI JSON response while the response is
+ * being relayed, chunk by chunk, with Jackson's non-blocking parser.
+ *
+ * <p>Each chunk is tokenized in place and then handed back to the relay; nothing is buffered
+ * and no tree is built — large {@code data} arrays (embeddings) are walked token by token
+ * with only a depth counter kept. As soon as the {@code usage} object closes the callback fires
+ * and later chunks are ignored. Malformed or non-object bodies simply yield no usage: usage is
+ * best-effort telemetry, not a contract.
+ */
+final class UsageExtractor implements ResponseFilter {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    /** Receives the token counts once the {@code usage} object has been read. */
+    interface Listener {
+        void onUsage(long promptTokens, long completionTokens);
+    }
+
+    private final Listener listener;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private int depth;
+    private String field;
+    private boolean inUsage;
+    private long prompt;
+    private long completion;
+    private boolean done;
+
+    UsageExtractor(Listener listener) {
+        this.listener = listener;
+        JsonParser p;
+        try {
+            p = JSON.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            // Never thrown for the byte-array variant; degrade to "no usage" rather than fail a relay.
+            p = null;
+        }
+        this.parser = p;
+        this.feeder = p != null ? (ByteArrayFeeder) p.getNonBlockingInputFeeder() : null;
+        this.done = p == null;
+    }
+
+    /**
+     * Tokenizes {@code len} bytes. The parser has consumed them all when this returns, so the
+     * caller may reuse the array.
+     */
+    void feed(byte[] buf, int off, int len) {
+        if (done || len == 0) return;
+        try {
+            feeder.feedInput(buf, off, off + len);
+            JsonToken t;
+            while (!done && (t = parser.nextToken()) != null && t != JsonToken.NOT_AVAILABLE) {
+                onToken(t);
+            }
+        } catch (IOException e) {
+            done = true;
+        }
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len, Sink out) throws IOException {
+        feed(buf, off, len);
+        out.write(buf, off, len);
+    }
+
+    /** True once usage was reported or the body turned out not to carry one. */
+    boolean isDone() {
+        return done;
+    }
+
+    private void onToken(JsonToken t) throws IOException {
+        switch (t) {
+            case START_OBJECT:
+                if (depth == 1 && "usage".equals(field)) {
+                    inUsage = true;
+                }
+                depth++;
+                field = null;
+                break;
+            case START_ARRAY:
+                depth++;
+                field = null;
+                break;
+            case END_OBJECT:
+            case END_ARRAY:
+                depth--;
+                if (inUsage && depth == 1) {
+                    done = true;
+                    if (prompt > 0 || completion > 0) {
+                        listener.onUsage(prompt, completion);
+                    }
+                } else if (depth <= 0) {
+                    done = true;
+                }
+                break;
+            case FIELD_NAME:
+                field = parser.getCurrentName();
+                break;
+            case VALUE_NUMBER_INT:
+                if (inUsage && depth == 2) {
+                    if ("prompt_tokens".equals(field)) {
+                        prompt = parser.getLongValue();
+                    } else if ("completion_tokens".equals(field)) {
+                        completion = parser.getLongValue();
+                    }
+                }
+                field = null;
+                break;
+            default:
+                field = null;
+        }
+    }
+}
@@ -180,11 +180,14 @@
                                 </#if>
                             </td>
                             <td class="p-4 text-center">
-                                <#if c.ready>
+                                <#if c.ejected>
+                                    <span class="bg-red-900 text-red-300 px-2 py-1 rounded text-[10px] font-bold uppercase tracking-wider" title="Ejected from proxy routing by passive health checks">Ejected ${c.ejectedFor}</span>
+                                <#elseif c.ready>
                                     <span class="bg-green-900 text-green-300 px-2 py-1 rounded text-[10px] font-bold uppercase tracking-wider">Ready</span>
                                 <#else>
                                     <span class="bg-yellow-900 text-yellow-300 px-2 py-1 rounded text-[10px] font-bold uppercase tracking-wider">Loading</span>
                                 </#if>
+                                <div class="text-gray-500 text-[10px] mt-1">${c.scrapeAge}</div>
                             </td>
                         </tr>
                         </#list>
@@ -0,0 +1,110 @@
+package varga.tarn.yarn;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContainerLifecycleTest {
+
+    private static void bringUp(ContainerLifecycle lc, String cid, String host) {
+        assertTrue(lc.allocated(cid, host));
+        assertTrue(lc.transition(cid, ContainerState.LAUNCHING));
+        assertTrue(lc.transition(cid, ContainerState.WARMING));
+    }
+
+    @Test
+    public void testOnlyReadyContainersAreRoutable() {
+        ContainerLifecycle lc = new ContainerLifecycle();
+        bringUp(lc, "c1", "h1");
+        bringUp(lc, "c2", "h2");
+        assertTrue(lc.getRoutingTable().isEmpty(), "warming containers must not receive traffic");
+
+        assertTrue(lc.transition("c1", ContainerState.READY));
+        RoutingTable t = lc.getRoutingTable();
+        assertEquals(1, t.size());
+        assertEquals("h1", t.get("c1").host);
+        assertFalse(t.contains("c2"));
+    }
+
+    @Test
+    public void testDrainingLeavesRoutingTableImmediately() {
+        ContainerLifecycle lc = new ContainerLifecycle();
+        bringUp(lc, "c1", "h1");
+        lc.transition("c1", ContainerState.READY);
+        RoutingTable before = lc.getRoutingTable();
+
+        assertTrue(lc.transition("c1", ContainerState.DRAINING));
+        assertTrue(lc.getRoutingTable().isEmpty());
+        assertTrue(lc.getRoutingTable().version > before.version);
+        // Published tables are immutable snapshots: earlier readers keep a consistent view.
+        assertEquals(1, before.size());
+    }
+
+    @Test
+    public void testWarmupFinishingAfterDrainIsRefused() {
+        ContainerLifecycle lc = new ContainerLifecycle();
+        bringUp(lc, "c1", "h1");
+        assertTrue(lc.transition("c1", ContainerState.DRAINING));
+        assertFalse(lc.transition("c1", ContainerState.READY));
+        assertTrue(lc.getRoutingTable().isEmpty());
+        assertEquals(ContainerState.DRAINING, lc.getState("c1"));
+    }
+
+    @Test
+    public void testIllegalTransitionsAreRefused() {
+        ContainerLifecycle lc = new ContainerLifecycle();
+        assertTrue(lc.allocated("c1", "h1"));
+        assertFalse(lc.allocated("c1", "h1"));
+        assertFalse(lc.transition("c1", ContainerState.READY), "cannot skip LAUNCHING/WARMING");
+        assertFalse(lc.transition("unknown", ContainerState.LAUNCHING));
+        assertEquals(ContainerState.ALLOCATED, lc.getState("c1"));
+    }
+
+    @Test
+    public void testStoppedForgetsContainer() {
+        ContainerLifecycle lc = new ContainerLifecycle();
+        bringUp(lc, "c1", "h1");
+        lc.transition("c1", ContainerState.READY);
+        assertTrue(lc.transition("c1", ContainerState.STOPPED));
+        assertNull(lc.getState("c1"));
+        assertTrue(lc.getRoutingTable().isEmpty());
+        assertFalse(lc.transition("c1", ContainerState.READY));
+    }
+
+    @Test
+    public void testCountByState() {
+        ContainerLifecycle lc = new ContainerLifecycle();
+        bringUp(lc, "c1", "h1");
+        bringUp(lc, "c2", "h2");
+        lc.transition("c2", ContainerState.READY);
+        lc.allocated("c3", "h3");
+        Map<ContainerState, Integer> counts = lc.countByState();
+        assertEquals(1, (int) counts.get(ContainerState.ALLOCATED));
+        assertEquals(1, (int) counts.get(ContainerState.WARMING));
+        assertEquals(1, (int) counts.get(ContainerState.READY));
+        assertEquals(0, (int) counts.get(ContainerState.DRAINING));
+        assertFalse(counts.containsKey(ContainerState.STOPPED));
+    }
+}
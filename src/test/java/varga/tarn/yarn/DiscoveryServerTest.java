@@ -64,9 +64,13 @@ public class DiscoveryServerTest {
         MetricsCollector mockMetrics = mock(MetricsCollector.class);
         RangerAuthorizer mockAuthorizer = mock(RangerAuthorizer.class);
 
-        when(mockMetrics.fetchLoadedModels(anyString(), anyInt())).thenReturn("[{\"name\":\"model1\",\"state\":\"READY\"}, {\"name\":\"model2\",\"state\":\"READY\"}]");
-        when(mockMetrics.fetchContainerLoad(anyString())).thenReturn(0.5);
-        when(mockMetrics.fetchGpuMetricsStructured(anyString())).thenReturn(new java.util.HashMap<>());
+        // Handlers render from the background scrape snapshot only.
+        ScrapeEngine.Sample sample = new ScrapeEngine.Sample("container_123", "host1", 0.5, 0,
+                new java.util.HashMap<>(), true,
+                "[{\"name\":\"model1\",\"state\":\"READY\"}, {\"name\":\"model2\",\"state\":\"READY\"}]",
+                System.currentTimeMillis(), true);
+        when(mockMetrics.getSnapshot()).thenReturn(new ScrapeEngine.Snapshot(System.currentTimeMillis(),
+                java.util.Map.of("container_123", sample)));
 
         when(mockAuthorizer.isAllowed(anyString(), anySet(), eq("list"), anyString())).thenReturn(true);
         when(mockAuthorizer.isAllowed(anyString(), anySet(), eq("metadata"), eq("model1"))).thenReturn(true);
@@ -184,6 +188,15 @@ public class DiscoveryServerTest {
             assertEquals(200, respDecode.statusCode());
             assertEquals("true", respDecode.body());
 
+            // 12. Health and per-container scrape age come from the snapshot, not live probes.
+            HttpRequest reqHealth = HttpRequest.newBuilder()
+                    .uri(URI.create("http://127.0.0.1:" + actualPort + "/health"))
+                    .build();
+            HttpResponse<String> respHealth = client.send(reqHealth, HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, respHealth.statusCode());
+            assertEquals("OK", respHealth.body());
+            assertTrue(resp4.body().contains("tarn_container_scrape_age_seconds{container_id=\"container_123\",host=\"host1\"}"));
+
         } finally {
             server.stop();
         }
@@ -0,0 +1,165 @@
+package varga.tarn.yarn;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GroupCacheTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final MetricsCollector metrics = new MetricsCollector(8002);
+    private final Map<String, Set<String>> directory = new ConcurrentHashMap<>();
+    private final AtomicInteger resolutions = new AtomicInteger();
+    private final List<Runnable> refreshes = new ArrayList<>();
+    private long now = 1_000 * MS;
+
+    /** 1 s TTL, 100 ms negative TTL; background refreshes are queued until run by the test. */
+    private GroupCache cache() {
+        return new GroupCache(user -> {
+            resolutions.incrementAndGet();
+            Set<String> groups = directory.get(user);
+            if (groups == null) throw new IllegalStateException("directory unavailable");
+            return groups;
+        }, 1000, 100, refreshes::add, metrics, () -> now);
+    }
+
+    @Test
+    public void testSecondLookupIsAHit() {
+        directory.put("alice", Set.of("data", "ml"));
+        GroupCache cache = cache();
+
+        assertEquals(Set.of("data", "ml"), cache.groups("alice"));
+        assertEquals(Set.of("data", "ml"), cache.groups("alice"));
+
+        assertEquals(1, resolutions.get());
+        assertEquals(1L, (long) metrics.getGroupLookups().get("hit"));
+        assertEquals(1L, (long) metrics.getGroupLookups().get("miss"));
+        assertEquals(1L, metrics.getGroupResolutionHistogram().snapshot()[0]);
+    }
+
+    @Test
+    public void testNearExpiryServesCachedGroupsAndRefreshesInBackground() {
+        directory.put("alice", Set.of("data"));
+        GroupCache cache = cache();
+        cache.groups("alice");
+        directory.put("alice", Set.of("data", "admins"));
+
+        now += 850 * MS;
+        assertEquals(Set.of("data"), cache.groups("alice"));
+        assertEquals(Set.of("data"), cache.groups("alice"));
+        assertEquals(1, refreshes.size(), "one refresh per entry");
+
+        refreshes.get(0).run();
+        assertEquals(Set.of("data", "admins"), cache.groups("alice"));
+        assertEquals(2, resolutions.get());
+    }
+
+    @Test
+    public void testExpiredEntryIsResolvedAgain() {
+        directory.put("alice", Set.of("data"));
+        GroupCache cache = cache();
+        cache.groups("alice");
+        now += 1000 * MS;
+        cache.groups("alice");
+        assertEquals(2, resolutions.get());
+    }
+
+    @Test
+    public void testUsersWithoutGroupsAreCachedBriefly() {
+        directory.put("ghost", Set.of());
+        GroupCache cache = cache();
+        assertEquals(Set.of(), cache.groups("ghost"));
+        cache.groups("ghost");
+        assertEquals(1, resolutions.get());
+
+        now += 100 * MS;
+        cache.groups("ghost");
+        assertEquals(2, resolutions.get());
+    }
+
+    @Test
+    public void testFailedReloadKeepsKnownGroupsForTheNegativeTtl() {
+        directory.put("alice", Set.of("data"));
+        GroupCache cache = cache();
+        cache.groups("alice");
+        directory.remove("alice");
+
+        now += 1000 * MS;
+        assertEquals(Set.of("data"), cache.groups("alice"));
+        assertEquals(1L, metrics.getGroupResolutionFailures());
+        now += 50 * MS;
+        cache.groups("alice");
+        assertEquals(2, resolutions.get());
+        now += 50 * MS;
+        cache.groups("alice");
+        assertEquals(3, resolutions.get());
+
+        assertEquals(Set.of(), cache().groups("bob"));
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneResolution() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        GroupCache cache = new GroupCache(user -> {
+            resolutions.incrementAndGet();
+            entered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Set.of("data");
+        }, 1000, 100, Runnable::run, metrics, System::nanoTime);
+
+        List<Thread> threads = new ArrayList<>();
+        List<Set<String>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread t = new Thread(() -> {
+                Set<String> g = cache.groups("alice");
+                synchronized (results) {
+                    results.add(g);
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        release.countDown();
+        for (Thread t : threads) t.join();
+
+        assertEquals(1, resolutions.get());
+        assertEquals(8, results.size());
+        results.forEach(g -> assertEquals(Set.of("data"), g));
+    }
+}
@@ -0,0 +1,69 @@
+package varga.tarn.yarn;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    private static final double[] BOUNDS = {0.1, 0.2, 0.5};
+
+    @Test
+    public void testObservationsLandInTheirBucket() {
+        LatencyHistogram h = new LatencyHistogram(BOUNDS);
+        h.observe(0.05);
+        h.observe(0.1);  // upper bounds are inclusive
+        h.observe(0.3);
+        h.observe(9.0);
+        assertArrayEquals(new long[] {2, 0, 1, 1}, h.snapshot());
+        assertEquals(9.45, h.sum(), 1e-9);
+    }
+
+    @Test
+    public void testQuantileInterpolatesInsideTheBucket() {
+        // 10 samples in (0.1, 0.2]: p50 sits halfway through that bucket.
+        assertEquals(0.15, LatencyHistogram.quantile(BOUNDS, new long[] {0, 10, 0, 0}, 0.5), 1e-9);
+        assertEquals(0.1, LatencyHistogram.quantile(BOUNDS, new long[] {10, 0, 0, 0}, 1.0), 1e-9);
+        assertEquals(0.0, LatencyHistogram.quantile(BOUNDS, new long[] {0, 0, 0, 0}, 0.95));
+        // Past the last finite bound the best answer is that bound.
+        assertEquals(0.5, LatencyHistogram.quantile(BOUNDS, new long[] {1, 0, 0, 9}, 0.95));
+    }
+
+    @Test
+    public void testPrometheusExportIsCumulative() {
+        LatencyHistogram h = new LatencyHistogram(BOUNDS);
+        h.observe(0.05);
+        h.observe(0.3);
+        h.observe(1.0);
+        StringBuilder sb = new StringBuilder();
+        DiscoveryServer.appendHistogram(sb, "tarn_ttft_seconds", "TTFT", Map.of("llama|sql", h));
+        String out = sb.toString();
+        assertTrue(out.contains("# TYPE tarn_ttft_seconds histogram"));
+        assertTrue(out.contains("tarn_ttft_seconds_bucket{model=\"llama\",lora=\"sql\",le=\"0.1\"} 1\n"));
+        assertTrue(out.contains("tarn_ttft_seconds_bucket{model=\"llama\",lora=\"sql\",le=\"0.5\"} 2\n"));
+        assertTrue(out.contains("tarn_ttft_seconds_bucket{model=\"llama\",lora=\"sql\",le=\"+Inf\"} 3\n"));
+        assertTrue(out.contains("tarn_ttft_seconds_count{model=\"llama\",lora=\"sql\"} 3\n"));
+    }
+}
@@ -68,4 +68,22 @@ public class LoadSignalTest {
         assertEquals(LoadSignal.ScalingMode.QUEUE_DEPTH, LoadSignal.ScalingMode.parse("queue-depth"));
         assertEquals(LoadSignal.ScalingMode.GPU_UTIL, LoadSignal.ScalingMode.parse("gpu_util"));
     }
+
+    @Test
+    public void streamingLatencyIsCarriedButDoesNotDriveLoad() {
+        LoadSignal s = new LoadSignal(0.5, 0, 0.0, 850.0, 42.0, 2, 16);
+        assertEquals(850.0, s.ttftP95Ms);
+        assertEquals(42.0, s.interTokenP95Ms);
+        assertEquals(0.5, s.normalizedLoad(LoadSignal.ScalingMode.COMPOSITE), 1e-9);
+        assertEquals(0.0, new LoadSignal(0.5, 0, 0.0, 2, 16).ttftP95Ms);
+    }
+
+    @Test
+    public void concurrencySaturationDrivesQueueAndCompositeModes() {
+        LoadSignal s = new LoadSignal(0.3, 2, 0.0, 0.0, 0.0, 0.9, 2, 16);
+        assertEquals(0.9, s.normalizedLoad(LoadSignal.ScalingMode.QUEUE_DEPTH), 1e-9);
+        assertEquals(0.9, s.normalizedLoad(LoadSignal.ScalingMode.COMPOSITE), 1e-9);
+        assertEquals(0.3, s.normalizedLoad(LoadSignal.ScalingMode.GPU_UTIL), 1e-9);
+        assertEquals(0.0, new LoadSignal(0.5, 0, 0.0, 850.0, 42.0, 2, 16).concurrencySaturation);
+    }
 }
@@ -24,6 +24,7 @@ package varga.tarn.yarn;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 public class MetricsCollectorTest {
 
@@ -57,11 +58,18 @@ public class MetricsCollectorTest {
     }
 
     @Test
-    public void testFetchGpuMetricsStructured() {
-        // We need a way to mock fetchRawMetrics or just test the parsing logic if extracted
-        // For now let's just test that the logic in fetchGpuMetricsStructured works
-        // if we were to expose the parsing part.
-        // Actually I'll just run mvn test to see if everything compiles.
+    public void testParseGpuMetricsStructured() {
+        MetricsCollector collector = new MetricsCollector(8002);
+        String metrics = "nv_gpu_utilization{gpu=\"0\"} 45.5\n" +
+                "nv_gpu_memory_used_bytes{gpu=\"0\"} 1.5e+09\n" +
+                "nv_gpu_utilization{gpu=\"1\"} 10\n";
+
+        java.util.Map<String, java.util.Map<String, String>> gpus = collector.parseGpuMetricsStructured(metrics);
+        assertEquals(2, gpus.size());
+        assertEquals("45.5", gpus.get("0").get("utilization"));
+        assertEquals("1.5e+09", gpus.get("0").get("memory_used_bytes"));
+        assertEquals("10", gpus.get("1").get("utilization"));
+        assertEquals(0, collector.parseGpuMetricsStructured(null).size());
     }
 
     @Test
@@ -144,4 +152,44 @@ public class MetricsCollectorTest {
         // Sum is in seconds: 0.005 + 0.05 + 0.12 + 0.8 + 4.5 = 5.475
         assertEquals(5.475, collector.getHistogramSum("m"), 1e-9);
     }
+
+    @Test
+    public void testStreamingLatencyIsKeyedByModelAndLora() {
+        MetricsCollector collector = new MetricsCollector(8002);
+        collector.recordTimeToFirstToken("llama", null, 0.2);
+        collector.recordTimeToFirstToken("llama", "sql", 3.0);
+        collector.recordInterTokenLatency("llama", null, 0.03);
+
+        assertEquals(2, collector.getTtftHistograms().size());
+        assertNotNull(collector.getTtftHistograms().get("llama|"));
+        assertNotNull(collector.getTtftHistograms().get("llama|sql"));
+
+        long[] ttft = collector.getTtftTotals();
+        assertEquals(MetricsCollector.TTFT_BUCKETS_SECONDS.length + 1, ttft.length);
+        assertEquals(2L, java.util.Arrays.stream(ttft).sum());
+        int idx = java.util.Arrays.binarySearch(MetricsCollector.INTER_TOKEN_BUCKETS_SECONDS, 0.04);
+        assertEquals(1L, collector.getInterTokenTotals()[idx]);
+    }
+
+    @Test
+    public void testLatencyQuantileInterpolatesHistogramBuckets() {
+        MetricsCollector collector = new MetricsCollector(8002);
+        assertEquals(0.0, collector.getLatencyQuantile("m", 0.95), 1e-9);
+        for (int i = 0; i < 90; i++) collector.recordInferenceLatency("m", 8.0);
+        for (int i = 0; i < 10; i++) collector.recordInferenceLatency("m", 200.0);
+        assertEquals(0.00972, collector.getLatencyQuantile("m", 0.85), 1e-5);
+        assertEquals(0.175, collector.getLatencyQuantile("m", 0.95), 1e-9);
+    }
+
+    @Test
+    public void testConcurrencySaturationCoversGivenContainers() {
+        MetricsCollector collector = new MetricsCollector(8002);
+        assertEquals(0.0, collector.getConcurrencySaturation(java.util.List.of("c1")), 1e-9);
+        collector.setConcurrency("c1", 20, 20);
+        collector.setConcurrency("c2", 20, 10);
+        collector.setConcurrency("gone", 10, 0);
+        assertEquals(0.75, collector.getConcurrencySaturation(java.util.List.of("c1", "c2", "new")), 1e-9);
+        collector.setConcurrency("c1", 10, 25);
+        assertEquals(1.0, collector.getConcurrencySaturation(java.util.List.of("c1")), 1e-9);
+    }
 }
@@ -0,0 +1,99 @@
+package varga.tarn.yarn;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ModelPlacementTest {
+
+    private static RoutingTable table(String... ids) {
+        List<RoutingTable.Backend> backends = new ArrayList<>();
+        for (String id : ids) backends.add(new RoutingTable.Backend(id, "h-" + id));
+        return new RoutingTable(1L, backends);
+    }
+
+    private static List<String> ids(RoutingTable t) {
+        List<String> out = new ArrayList<>();
+        for (RoutingTable.Backend b : t.backends()) out.add(b.containerId);
+        return out;
+    }
+
+    @Test
+    public void testUnknownContainersServeEverything() {
+        ModelPlacement p = new ModelPlacement();
+        RoutingTable t = table("c1", "c2");
+        assertSame(t, p.routable(t, "llama"));
+
+        p.update("c1", Set.of("mistral"));
+        assertEquals(List.of("c2"), ids(p.routable(t, "llama")));
+        assertEquals(List.of("c1", "c2"), ids(p.routable(t, "mistral")));
+    }
+
+    @Test
+    public void testNarrowsToContainersWithTheModelReady() {
+        ModelPlacement p = new ModelPlacement();
+        RoutingTable t = table("c1", "c2", "c3");
+        p.update("c1", Set.of("llama", "mistral"));
+        p.update("c2", Set.of("llama"));
+        p.update("c3", Set.of("mistral"));
+
+        RoutingTable llama = p.routable(t, "llama");
+        assertEquals(List.of("c1", "c2"), ids(llama));
+        assertSame(llama, p.routable(t, "llama"));
+        assertTrue(p.routable(t, "qwen").isEmpty());
+        assertEquals(2, (int) p.replicaCounts().get("mistral"));
+    }
+
+    @Test
+    public void testLoadAndUnloadEventsApplyImmediately() {
+        ModelPlacement p = new ModelPlacement();
+        RoutingTable t = table("c1", "c2");
+        p.update("c1", Set.of("llama"));
+        p.update("c2", Set.of());
+        assertEquals(List.of("c1"), ids(p.routable(t, "llama")));
+
+        p.onLoaded("c2", "llama");
+        assertSame(t, p.routable(t, "llama"));
+        p.onUnloaded("c1", "llama");
+        assertEquals(List.of("c2"), ids(p.routable(t, "llama")));
+
+        p.retain(Set.of("c1"));
+        assertNull(p.modelsOn("c2"));
+        assertEquals(List.of("c2"), ids(p.routable(t, "llama")), "c2 is unknown again, so it serves everything");
+    }
+
+    @Test
+    public void testReadyModelsParsesRepositoryIndex() {
+        String index = "[{\"name\":\"llama\",\"version\":\"1\",\"state\":\"READY\"},"
+                + "{\"name\":\"mistral\",\"state\":\"UNAVAILABLE\",\"reason\":\"unloaded\"},"
+                + "{\"name\":\"qwen\"}]";
+        assertEquals(Set.of("llama"), ModelPlacement.readyModels(index));
+        assertEquals(Set.of(), ModelPlacement.readyModels("[]"));
+        assertNull(ModelPlacement.readyModels("{\"error\":\"x\"}"));
+        assertNull(ModelPlacement.readyModels("not json"));
+    }
+}
@@ -0,0 +1,173 @@
+package varga.tarn.yarn;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PlacementControllerTest {
+
+    private MetricsCollector metrics;
+    private ModelPlacement placement;
+    private final List<PlacementController.Action> calls = new ArrayList<>();
+    private CompletableFuture<Boolean> outcome;
+    private PlacementController controller;
+    private final Map<String, Double> memory = new HashMap<>();
+    private long now = 1_000_000L;
+
+    @BeforeEach
+    public void setUp() {
+        metrics = new MetricsCollector(8002);
+        placement = metrics.getModelPlacement();
+        outcome = CompletableFuture.completedFuture(true);
+        TarnConfig config = new TarnConfig();
+        config.placementRpsPerReplica = 1.0;
+        config.placementMemoryWatermark = 0.85;
+        config.placementLatencyTargetMs = 0;
+        config.placementIdleMs = 60_000;
+        controller = new PlacementController(placement, metrics, a -> {
+            calls.add(a);
+            return outcome;
+        }, config);
+    }
+
+    private void container(String id, double memoryFraction, String... models) {
+        placement.update(id, Set.of(models));
+        memory.put(id, memoryFraction);
+    }
+
+    private void requests(String model, int n) {
+        for (int i = 0; i < n; i++) metrics.recordModelRequest(model, true);
+    }
+
+    /** Runs one tick 10s after the previous one and returns the actions it issued. */
+    private List<String> tick(String... catalog) {
+        now += 10_000L;
+        List<RoutingTable.Backend> backends = new ArrayList<>();
+        Map<String, ScrapeEngine.Sample> samples = new HashMap<>();
+        memory.keySet().stream().sorted().forEach(id -> {
+            backends.add(new RoutingTable.Backend(id, "h-" + id));
+            Map<String, Map<String, String>> gpus = Map.of("0", Map.of(
+                    "memory_used_bytes", String.valueOf((long) (memory.get(id) * 1000)),
+                    "memory_total_bytes", "1000"));
+            samples.put(id, new ScrapeEngine.Sample(id, "h-" + id, 0.0, 0, gpus, true, null, now, true));
+        });
+        calls.clear();
+        controller.tick(new RoutingTable(1L, backends), new ScrapeEngine.Snapshot(now, samples), List.of(catalog), now);
+        List<String> out = new ArrayList<>();
+        for (PlacementController.Action a : calls) {
+            out.add(a.kind + " " + a.model + " " + a.containerId + " " + a.reason);
+        }
+        return out;
+    }
+
+    @Test
+    public void testDemandLoadsOnTheContainerWithMostFreeMemory() {
+        container("c1", 0.5);
+        container("c2", 0.2);
+        tick("llama");
+        requests("llama", 5);
+
+        assertEquals(List.of("LOAD llama c2 demand"), tick("llama"));
+        assertEquals(Set.of("llama"), placement.modelsOn("c2"));
+        assertEquals(1L, (long) metrics.getPlacementActions().get("load|llama|demand"));
+        assertEquals(List.of(), tick("llama"), "nothing to do while the rate fits one replica");
+    }
+
+    @Test
+    public void testUnrequestedModelsAreNeverLoaded() {
+        container("c1", 0.1);
+        tick("llama", "mistral");
+        assertEquals(List.of(), tick("llama", "mistral"));
+    }
+
+    @Test
+    public void testHotModelReplicatesAndScalesBackDownWithHysteresis() {
+        container("c1", 0.3, "llama");
+        container("c2", 0.2);
+        container("c3", 0.1);
+        tick("llama");
+        requests("llama", 60); // 6 rps, smoothed to 3 rps: three replicas wanted
+
+        assertEquals(List.of("LOAD llama c3 replicate"), tick("llama"));
+        requests("llama", 60);
+        assertEquals(List.of("LOAD llama c2 replicate"), tick("llama"));
+        assertEquals(3, (int) placement.replicaCounts().get("llama"));
+
+        // Traffic drops to 0.1 rps: the smoothed rate (2.3) still keeps 3 replicas inside the
+        // band, then (1.2) only needs 2 and the fullest holder gives one up.
+        requests("llama", 1);
+        assertEquals(List.of(), tick("llama"));
+        requests("llama", 1);
+        assertEquals(List.of("UNLOAD llama c1 scale_down"), tick("llama"));
+        assertFalse(placement.modelsOn("c1").contains("llama"));
+    }
+
+    @Test
+    public void testMemoryPressureEvictsTheLeastRecentlyUsedColdModel() {
+        container("c1", 0.95, "llama", "old", "older");
+        placement.touch("c1", "old", now - 5_000);
+        placement.touch("c1", "older", now - 50_000);
+        tick("llama", "old", "older");
+        requests("llama", 10);
+
+        assertEquals(List.of("UNLOAD older c1 memory"), tick("llama", "old", "older"));
+        assertFalse(placement.modelsOn("c1").contains("older"), "unloaded models leave routing at once");
+    }
+
+    @Test
+    public void testFullFleetMakesRoomBeforeLoading() {
+        container("c1", 0.9, "cold");
+        container("c2", 0.9, "llama");
+        tick("llama", "cold", "new");
+        requests("llama", 10);
+        requests("new", 10);
+
+        List<String> actions = tick("llama", "cold", "new");
+        assertTrue(actions.contains("UNLOAD cold c1 memory"), actions.toString());
+        assertFalse(actions.stream().anyMatch(a -> a.startsWith("LOAD")), actions.toString());
+    }
+
+    @Test
+    public void testOneActionInFlightPerContainer() {
+        outcome = new CompletableFuture<>();
+        container("c1", 0.1);
+        tick("llama", "mistral");
+        requests("llama", 10);
+        requests("mistral", 10);
+
+        assertEquals(1, tick("llama", "mistral").size());
+        assertEquals(List.of(), tick("llama", "mistral"), "c1 is still loading");
+
+        outcome.complete(false);
+        assertEquals(1L, (long) metrics.getPlacementFailures().get("load"));
+        assertEquals(Set.of(), placement.modelsOn("c1"));
+    }
+}
@@ -99,4 +99,23 @@ public class QuotaEnforcerTest {
         assertTrue(q.check("anon", Set.of(), "any").allowed);
         assertFalse(q.check("anon", Set.of(), "any").allowed);
     }
+
+    @Test
+    public void priorityComesFromTheMatchingRule() {
+        QuotaEnforcer q = new QuotaEnforcer();
+        q.loadFromJson("{\"rules\":["
+                + "{\"group\":\"etl\",\"model\":\"*\",\"priority\":\"batch\"},"
+                + "{\"user\":\"alice\",\"model\":\"*\",\"requestsPerMinute\":1,\"priority\":\"interactive\"},"
+                + "{\"model\":\"*\",\"requestsPerMinute\":100}]}");
+        assertEquals("batch", q.priority("bob", Set.of("etl"), "m"));
+        assertEquals("interactive", q.priority("alice", Set.of(), "m"));
+        assertNull(q.priority("carol", Set.of(), "m"));
+        // A priority-only rule classifies without rate-limiting.
+        for (int i = 0; i < 200; i++) assertTrue(q.check("bob", Set.of("etl"), "m").allowed);
+        assertTrue(q.check("alice", Set.of(), "m").allowed);
+        assertFalse(q.check("alice", Set.of(), "m").allowed);
+        // Without a priority, a missing rate still means zero.
+        q.loadFromJson("{\"rules\":[{\"model\":\"*\"}]}");
+        assertFalse(q.check("bob", Set.of(), "m").allowed);
+    }
 }
@@ -0,0 +1,239 @@
+package varga.tarn.yarn;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScrapeEngineTest {
+
+    private static final String METRICS =
+            "nv_gpu_utilization{gpu=\"0\",uuid=\"GPU-1\"} 40.0\n" +
+            "nv_gpu_memory_used_bytes{gpu=\"0\"} 1024\n" +
+            "nv_inference_pending_request_count{model=\"m\",version=\"1\"} 7\n";
+
+    private HttpServer server;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile long handlerDelayMs = 0;
+    private volatile int readyStatus = 200;
+
+    @BeforeEach
+    public void startServer() throws Exception {
+        // Wildcard bind so both "127.0.0.1" and "localhost" reach it; the Host header tells
+        // them apart. "localhost" plays the role of a hung NodeManager.
+        server = HttpServer.create(new InetSocketAddress(0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/v2/health/ready", ex -> {
+            hangIfUnreachable(ex);
+            ex.sendResponseHeaders(readyStatus, -1);
+            ex.close();
+        });
+        server.createContext("/v2/repository/index", ex -> {
+            hangIfUnreachable(ex);
+            byte[] body = "[{\"name\":\"m\",\"state\":\"READY\"}]".getBytes(StandardCharsets.UTF_8);
+            ex.sendResponseHeaders(200, body.length);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.createContext("/metrics", ex -> {
+            int now = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(now, Math::max);
+            try {
+                hangIfUnreachable(ex);
+                if (handlerDelayMs > 0) {
+                    Thread.sleep(handlerDelayMs);
+                }
+                byte[] body = METRICS.getBytes(StandardCharsets.UTF_8);
+                ex.sendResponseHeaders(200, body.length);
+                try (OutputStream os = ex.getResponseBody()) {
+                    os.write(body);
+                }
+            } catch (Exception ignored) {
+                ex.close();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        });
+        server.start();
+    }
+
+    private void hangIfUnreachable(HttpExchange ex) {
+        String host = ex.getRequestHeaders().getFirst("Host");
+        if (host != null && host.startsWith("localhost")) {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @AfterEach
+    public void stopServer() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    private ScrapeEngine engine(MetricsCollector mc, int concurrency, long timeoutMs) {
+        int port = server.getAddress().getPort();
+        return new ScrapeEngine(mc, HttpClient.newHttpClient(), port, port,
+                h -> true, concurrency, Duration.ofMillis(timeoutMs));
+    }
+
+    @Test
+    public void testScrapeOncePublishesSnapshotAndQueueDepth() throws Exception {
+        MetricsCollector mc = new MetricsCollector(8002);
+        ScrapeEngine engine = engine(mc, 8, 2000);
+        Map<String, String> targets = new LinkedHashMap<>();
+        targets.put("c1", "127.0.0.1");
+        targets.put("c2", "127.0.0.1");
+
+        ScrapeEngine.Snapshot snap = engine.scrapeOnce(targets).get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, snap.size());
+        assertSame(snap, engine.getSnapshot());
+        ScrapeEngine.Sample s = snap.get("c1");
+        assertTrue(s.fresh);
+        assertEquals(0.4, s.gpuUtil, 0.001);
+        assertEquals(7, s.queueDepth);
+        assertTrue(s.fetchedAtMs > 0);
+        assertTrue(s.ready);
+        assertEquals("1024", s.gpus.get("0").get("memory_used_bytes"));
+        assertTrue(s.loadedModelsJson.contains("\"m\""));
+        assertEquals(7, mc.getQueueDepth("c2"));
+        assertEquals(Set.of("m"), mc.getModelPlacement().modelsOn("c1"));
+    }
+
+    @Test
+    public void testNotReadyBackendIsReportedButKeepsMetrics() throws Exception {
+        readyStatus = 503;
+        ScrapeEngine engine = engine(new MetricsCollector(8002), 8, 2000);
+
+        ScrapeEngine.Sample s = engine.scrapeOnce(Map.of("c1", "127.0.0.1"))
+                .get(5, TimeUnit.SECONDS).get("c1");
+
+        assertFalse(s.ready);
+        assertTrue(s.fresh);
+        assertEquals(7, s.queueDepth);
+    }
+
+    @Test
+    public void testHungHostOnlyLosesItsOwnSample() throws Exception {
+        MetricsCollector mc = new MetricsCollector(8002);
+        ScrapeEngine engine = engine(mc, 8, 300);
+        Map<String, String> targets = new LinkedHashMap<>();
+        targets.put("ok", "127.0.0.1");
+        targets.put("hung", "localhost");
+
+        long start = System.nanoTime();
+        ScrapeEngine.Snapshot snap = engine.scrapeOnce(targets).get(5, TimeUnit.SECONDS);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMs < 3000, "round should finish near the per-host deadline, took " + elapsedMs);
+        assertTrue(snap.get("ok").fresh);
+        assertFalse(snap.get("hung").fresh);
+        assertFalse(snap.get("hung").ready);
+        assertEquals(0L, snap.get("hung").fetchedAtMs);
+    }
+
+    @Test
+    public void testFailedScrapeCarriesPreviousValuesAndDepartedContainersArePruned() throws Exception {
+        MetricsCollector mc = new MetricsCollector(8002);
+        ScrapeEngine engine = engine(mc, 8, 2000);
+        Map<String, String> first = new LinkedHashMap<>();
+        first.put("c1", "127.0.0.1");
+        first.put("c2", "127.0.0.1");
+        engine.scrapeOnce(first).get(5, TimeUnit.SECONDS);
+        assertEquals("closed", mc.getCircuitStates().get("readiness:127.0.0.1"));
+
+        // c1 now fails (its host cannot even form a URI) and c2 has left the fleet.
+        Map<String, String> second = new LinkedHashMap<>();
+        second.put("c1", "bad host");
+        ScrapeEngine.Snapshot snap = engine.scrapeOnce(second).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, snap.size());
+        assertNull(snap.get("c2"));
+        ScrapeEngine.Sample c1 = snap.get("c1");
+        assertFalse(c1.fresh);
+        assertFalse(c1.ready);
+        assertEquals(7, c1.queueDepth);
+        assertTrue(c1.fetchedAtMs > 0);
+        assertNotNull(c1.loadedModelsJson);
+        assertNull(mc.getModelPlacement().modelsOn("c2"));
+        // The departed host's readiness breaker is no longer exported.
+        assertNull(mc.getCircuitStates().get("readiness:127.0.0.1"));
+        assertEquals("closed", mc.getCircuitStates().get("readiness:bad host"));
+    }
+
+    @Test
+    public void testConcurrencyIsBounded() throws Exception {
+        handlerDelayMs = 50;
+        MetricsCollector mc = new MetricsCollector(8002);
+        ScrapeEngine engine = engine(mc, 3, 2000);
+        Map<String, String> targets = new LinkedHashMap<>();
+        for (int i = 0; i < 12; i++) {
+            targets.put("c" + i, "127.0.0.1");
+        }
+
+        ScrapeEngine.Snapshot snap = engine.scrapeOnce(targets).get(10, TimeUnit.SECONDS);
+
+        assertEquals(12, snap.size());
+        snap.samples().values().forEach(s -> assertTrue(s.fresh));
+        assertTrue(maxInFlight.get() <= 3, "max in flight was " + maxInFlight.get());
+    }
+
+    @Test
+    public void testEmptyTargetsPublishEmptySnapshot() throws Exception {
+        ScrapeEngine engine = engine(new MetricsCollector(8002), 4, 1000);
+        ScrapeEngine.Snapshot snap = engine.scrapeOnce(Map.of()).get(1, TimeUnit.SECONDS);
+        assertEquals(0, snap.size());
+        assertTrue(snap.takenAtMs > 0);
+    }
+
+    @Test
+    public void testJitterStaysWithinTenPercent() {
+        for (int i = 0; i < 1000; i++) {
+            long j = ScrapeEngine.jittered(1000);
+            assertTrue(j >= 900 && j <= 1100, "jittered=" + j);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package varga.tarn.yarn;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for {@link SlidingWindowCircuitBreaker}: cost of one guarded call (permission
+ * plus outcome) on a shared breaker, against the consecutive-count {@link CircuitBreaker}.
+ * One call in a hundred fails — well under the threshold, so the breaker stays closed and
+ * every failure pays for a threshold check. Comparing the 1- and 32-thread runs shows what
+ * contention on the shared window costs. Not a unit test — run via {@link #main}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SlidingWindowCircuitBreakerBenchmark {
+
+    @Param({"COUNT", "TIME"})
+    public SlidingWindowCircuitBreaker.WindowType window;
+
+    private SlidingWindowCircuitBreaker sliding;
+    private CircuitBreaker consecutive;
+
+    @Setup
+    public void setup() {
+        sliding = new SlidingWindowCircuitBreaker("bench", window, window == SlidingWindowCircuitBreaker.WindowType.COUNT ? 100 : 10,
+                20, 50f, 80f, 10_000, 30_000, 5, new MetricsCollector(8002));
+        consecutive = new CircuitBreaker("bench", 1_000_000, 30_000);
+    }
+
+    private static boolean fails() {
+        return ThreadLocalRandom.current().nextInt(100) == 0;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean slidingSingleThread() {
+        return guard(sliding);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public boolean sliding32Threads() {
+        return guard(sliding);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public boolean consecutive32Threads() {
+        if (!consecutive.allowRequest()) return false;
+        if (fails()) {
+            consecutive.onFailure();
+        } else {
+            consecutive.onSuccess();
+        }
+        return true;
+    }
+
+    private static boolean guard(SlidingWindowCircuitBreaker cb) {
+        SlidingWindowCircuitBreaker.Permit permit = cb.tryAcquirePermission();
+        if (permit == null) return false;
+        if (fails()) {
+            cb.onError(permit, 1_000_000L);
+        } else {
+            cb.onSuccess(permit, 1_000_000L);
+        }
+        return true;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(SlidingWindowCircuitBreakerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,235 @@
+package varga.tarn.yarn;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import org.junit.jupiter.api.Test;
+import varga.tarn.yarn.SlidingWindowCircuitBreaker.Permit;
+import varga.tarn.yarn.SlidingWindowCircuitBreaker.WindowType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlidingWindowCircuitBreakerTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final MetricsCollector metrics = new MetricsCollector(8002);
+    private long now = 1_000_000 * MS;
+
+    /** Window of 10 calls, 5 minimum, 50% failures or 50% calls over 100 ms, 1 s open, 2 probes. */
+    private SlidingWindowCircuitBreaker breaker(WindowType type) {
+        return new SlidingWindowCircuitBreaker("test", type, 10, 5, 50f, 50f, 100, 1000, 2, metrics, () -> now);
+    }
+
+    /** One call that went through and succeeded; none when the breaker refused it. */
+    private static void success(SlidingWindowCircuitBreaker cb, long nanos) {
+        Permit p = cb.tryAcquirePermission();
+        if (p != null) cb.onSuccess(p, nanos);
+    }
+
+    private static void error(SlidingWindowCircuitBreaker cb) {
+        Permit p = cb.tryAcquirePermission();
+        if (p != null) cb.onError(p, MS);
+    }
+
+    @Test
+    void testIntermittentFailuresTripTheBreaker() {
+        SlidingWindowCircuitBreaker cb = breaker(WindowType.COUNT);
+        // Every other call fails: a consecutive-failure breaker would never open.
+        for (int i = 0; i < 4; i++) {
+            success(cb, MS);
+            error(cb);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+        assertNull(cb.tryAcquirePermission());
+        assertEquals(1L, (long) metrics.getCircuitTransitions().get("test|closed|open"));
+        assertEquals("open", metrics.getCircuitStates().get("test"));
+    }
+
+    @Test
+    void testBelowMinimumCallsNeverTrips() {
+        SlidingWindowCircuitBreaker cb = breaker(WindowType.COUNT);
+        for (int i = 0; i < 4; i++) error(cb);
+        assertEquals(CircuitBreaker.State.CLOSED, cb.getState());
+        assertEquals(-1f, cb.getFailureRate());
+        error(cb);
+        assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+    }
+
+    @Test
+    void testOldOutcomesLeaveTheCountWindow() {
+        SlidingWindowCircuitBreaker cb = breaker(WindowType.COUNT);
+        for (int i = 0; i < 4; i++) error(cb);
+        for (int i = 0; i < 10; i++) success(cb, MS);
+        assertEquals(0f, cb.getFailureRate());
+        for (int i = 0; i < 4; i++) error(cb);
+        assertEquals(CircuitBreaker.State.CLOSED, cb.getState());
+        assertEquals(40f, cb.getFailureRate(), 0.01f);
+    }
+
+    @Test
+    void testSlowCallsTripTheBreaker() {
+        SlidingWindowCircuitBreaker cb = breaker(WindowType.COUNT);
+        for (int i = 0; i < 4; i++) {
+            success(cb, MS);
+            success(cb, 150 * MS);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+    }
+
+    @Test
+    void testTimeWindowForgetsOldSeconds() {
+        SlidingWindowCircuitBreaker cb = breaker(WindowType.TIME);
+        for (int i = 0; i < 4; i++) error(cb);
+        success(cb, MS);
+        assertEquals(80f, cb.getFailureRate(), 0.01f);
+
+        now += 11_000 * MS;
+        assertEquals(-1f, cb.getFailureRate());
+        for (int i = 0; i < 6; i++) success(cb, MS);
+        error(cb);
+        assertEquals(CircuitBreaker.State.CLOSED, cb.getState());
+
+        for (int i = 0; i < 6; i++) error(cb);
+        assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+    }
+
+    @Test
+    void testHalfOpenGrantsExactlyThePermitsAndCloses() {
+        SlidingWindowCircuitBreaker cb = breaker(WindowType.COUNT);
+        for (int i = 0; i < 5; i++) error(cb);
+        assertNull(cb.tryAcquirePermission());
+
+        now += 1000 * MS;
+        Permit first = cb.tryAcquirePermission();
+        assertNotNull(first);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, cb.getState());
+        Permit second = cb.tryAcquirePermission();
+        assertNotNull(second);
+        assertNull(cb.tryAcquirePermission());
+
+        cb.onSuccess(first, MS);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, cb.getState());
+        cb.onSuccess(second, MS);
+        assertEquals(CircuitBreaker.State.CLOSED, cb.getState());
+        // The window starts empty again.
+        assertEquals(-1f, cb.getFailureRate());
+        assertEquals(1L, (long) metrics.getCircuitTransitions().get("test|half_open|closed"));
+    }
+
+    @Test
+    void testFailedProbesReopen() {
+        SlidingWindowCircuitBreaker cb = breaker(WindowType.COUNT);
+        for (int i = 0; i < 5; i++) error(cb);
+        now += 1000 * MS;
+        Permit first = cb.tryAcquirePermission();
+        Permit second = cb.tryAcquirePermission();
+        cb.onSuccess(first, MS);
+        cb.onError(second, MS);
+        assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+        assertNull(cb.tryAcquirePermission());
+        assertEquals(1L, (long) metrics.getCircuitTransitions().get("test|half_open|open"));
+    }
+
+    @Test
+    void testOutcomesCountInThePhaseThatGrantedThem() {
+        SlidingWindowCircuitBreaker cb = breaker(WindowType.COUNT);
+        List<Permit> stragglers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) stragglers.add(cb.tryAcquirePermission());
+        for (int i = 0; i < 5; i++) error(cb);
+        now += 1000 * MS;
+        Permit probe = cb.tryAcquirePermission();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, cb.getState());
+
+        // Calls let through while closed finish now: they must not pass for the probes.
+        for (Permit p : stragglers) cb.onSuccess(p, MS);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, cb.getState());
+        cb.onError(probe, MS);
+        cb.onError(cb.tryAcquirePermission(), MS);
+        assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+    }
+
+    @Test
+    void testConcurrentCallersShareThePermits() throws Exception {
+        SlidingWindowCircuitBreaker cb = breaker(WindowType.COUNT);
+        for (int i = 0; i < 5; i++) error(cb);
+        now += 1000 * MS;
+
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 32; t++) {
+            Thread th = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 100; i++) {
+                    if (cb.tryAcquirePermission() != null) granted.incrementAndGet();
+                }
+            });
+            th.start();
+            threads.add(th);
+        }
+        start.countDown();
+        for (Thread th : threads) th.join();
+
+        assertEquals(2, granted.get());
+        assertEquals(1L, (long) metrics.getCircuitTransitions().get("test|open|half_open"));
+    }
+
+    @Test
+    void testConcurrentRecordingKeepsExactTotals() throws Exception {
+        SlidingWindowCircuitBreaker.CountWindow window = new SlidingWindowCircuitBreaker.CountWindow(64);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 16; t++) {
+            boolean failing = t % 2 == 0;
+            Thread th = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) window.record(failing, false, 0L);
+            });
+            th.start();
+            threads.add(th);
+        }
+        for (Thread th : threads) th.join();
+
+        long totals = window.totals(0L);
+        assertEquals(64, SlidingWindowCircuitBreaker.Window.calls(totals));
+        int failures = SlidingWindowCircuitBreaker.Window.failures(totals);
+        assertTrue(failures >= 0 && failures <= 64, "failures " + failures);
+        assertEquals(0, SlidingWindowCircuitBreaker.Window.slowCalls(totals));
+    }
+
+    @Test
+    void testExecuteUsesFallbackWhileOpen() {
+        SlidingWindowCircuitBreaker cb = breaker(WindowType.COUNT);
+        for (int i = 0; i < 5; i++) {
+            assertEquals("fallback", cb.execute(() -> { throw new RuntimeException("fail"); }, "fallback"));
+        }
+        AtomicInteger calls = new AtomicInteger();
+        assertEquals("fallback", cb.execute(() -> "ok" + calls.incrementAndGet(), "fallback"));
+        assertEquals(0, calls.get());
+    }
+}
@@ -93,4 +93,189 @@ public class TarnConfigTest {
         assertEquals(20, config.maxContainers);
         assertEquals(30000L, config.scaleCooldownMs);
     }
+
+    @Test
+    public void testProxyExecutorOptions() throws Exception {
+        TarnConfig config = new TarnConfig();
+        assertEquals("platform", config.proxyExecutor);
+        config.parseArgs(new String[]{"--proxy-executor", "virtual", "--proxy-max-concurrency", "4096"});
+        assertEquals("virtual", config.proxyExecutor);
+        assertEquals(4096, config.proxyMaxConcurrency);
+
+        TarnConfig bad = new TarnConfig();
+        assertThrows(IllegalArgumentException.class,
+                () -> bad.parseArgs(new String[]{"--proxy-executor", "green"}));
+    }
+
+    @Test
+    public void testProxyRoutingOptions() throws Exception {
+        TarnConfig config = new TarnConfig();
+        assertEquals("least_loaded", config.proxyRouting);
+        assertEquals(1.25, config.proxyAffinityLoadFactor, 1e-9);
+        config.parseArgs(new String[]{"--proxy-routing", "prefix_affinity", "--proxy-affinity-load-factor", "1.5",
+                "--proxy-affinity-prefix-chars", "512"});
+        assertEquals("prefix_affinity", config.proxyRouting);
+        assertEquals(1.5, config.proxyAffinityLoadFactor, 1e-9);
+        assertEquals(512, config.proxyAffinityPrefixChars);
+
+        TarnConfig bad = new TarnConfig();
+        assertThrows(IllegalArgumentException.class,
+                () -> bad.parseArgs(new String[]{"--proxy-routing", "random"}));
+        TarnConfig tight = new TarnConfig();
+        assertThrows(IllegalArgumentException.class,
+                () -> tight.parseArgs(new String[]{"--proxy-affinity-load-factor", "0.9"}));
+    }
+
+    @Test
+    public void testModelControlOptions() throws Exception {
+        TarnConfig config = new TarnConfig();
+        assertEquals("none", config.modelControlMode);
+        config.parseArgs(new String[]{"--model-control-mode", "explicit", "--placement-rps-per-replica", "8",
+                "--placement-memory-watermark", "0.9", "--placement-latency-target-ms", "1500"});
+        assertEquals("explicit", config.modelControlMode);
+        assertEquals(8.0, config.placementRpsPerReplica, 1e-9);
+        assertEquals(0.9, config.placementMemoryWatermark, 1e-9);
+        assertEquals(1500L, config.placementLatencyTargetMs);
+
+        TarnConfig bad = new TarnConfig();
+        assertThrows(IllegalArgumentException.class,
+                () -> bad.parseArgs(new String[]{"--model-control-mode", "poll"}));
+        TarnConfig multiRank = new TarnConfig();
+        assertThrows(IllegalArgumentException.class,
+                () -> multiRank.parseArgs(new String[]{"--model-control-mode", "explicit", "--tp", "2"}));
+    }
+
+    @Test
+    public void testLoraRoutingOptions() throws Exception {
+        TarnConfig config = new TarnConfig();
+        assertEquals(3, config.proxyLoraMaxReplicas);
+        assertEquals(2.0, config.proxyLoraRpsPerReplica, 1e-9);
+        config.parseArgs(new String[]{"--proxy-lora-max-replicas", "5", "--proxy-lora-rps-per-replica", "0.5"});
+        assertEquals(5, config.proxyLoraMaxReplicas);
+        assertEquals(0.5, config.proxyLoraRpsPerReplica, 1e-9);
+
+        TarnConfig bad = new TarnConfig();
+        assertThrows(IllegalArgumentException.class,
+                () -> bad.parseArgs(new String[]{"--proxy-lora-max-replicas", "0"}));
+    }
+
+    @Test
+    public void testEmbeddingsCacheOption() throws Exception {
+        TarnConfig config = new TarnConfig();
+        assertEquals(0L, config.proxyEmbeddingsCacheBytes);
+        config.parseArgs(new String[]{"--proxy-embeddings-cache-bytes", "268435456"});
+        assertEquals(268435456L, config.proxyEmbeddingsCacheBytes);
+
+        TarnConfig bad = new TarnConfig();
+        assertThrows(IllegalArgumentException.class,
+                () -> bad.parseArgs(new String[]{"--proxy-embeddings-cache-bytes", "-1"}));
+    }
+
+    @Test
+    public void testEmbeddingsBatchOptions() throws Exception {
+        TarnConfig config = new TarnConfig();
+        assertEquals(0, config.proxyEmbeddingsBatchMaxInputs);
+        assertEquals(2000L, config.proxyEmbeddingsBatchMaxWaitUs);
+        config.parseArgs(new String[]{"--proxy-embeddings-batch-max-inputs", "64",
+                "--proxy-embeddings-batch-max-wait-us", "500"});
+        assertEquals(64, config.proxyEmbeddingsBatchMaxInputs);
+        assertEquals(500L, config.proxyEmbeddingsBatchMaxWaitUs);
+
+        TarnConfig bad = new TarnConfig();
+        assertThrows(IllegalArgumentException.class,
+                () -> bad.parseArgs(new String[]{"--proxy-embeddings-batch-max-wait-us", "-1"}));
+    }
+
+    @Test
+    public void testResponseCacheOptions() throws Exception {
+        TarnConfig config = new TarnConfig();
+        assertEquals("", config.proxyResponseCacheModels);
+        assertEquals(300000L, config.proxyResponseCacheTtlMs);
+        config.parseArgs(new String[]{"--proxy-response-cache-models", "llama3,mistral",
+                "--proxy-response-cache-max-entries", "500", "--proxy-response-cache-ttl-ms", "60000"});
+        assertEquals("llama3,mistral", config.proxyResponseCacheModels);
+        assertEquals(500, config.proxyResponseCacheMaxEntries);
+        assertEquals(60000L, config.proxyResponseCacheTtlMs);
+
+        TarnConfig bad = new TarnConfig();
+        assertThrows(IllegalArgumentException.class,
+                () -> bad.parseArgs(new String[]{"--proxy-response-cache-ttl-ms", "10"}));
+    }
+
+    @Test
+    public void testCoalesceOption() throws Exception {
+        TarnConfig config = new TarnConfig();
+        assertFalse(config.proxyCoalesce);
+        config.parseArgs(new String[]{"--proxy-coalesce"});
+        assertTrue(config.proxyCoalesce);
+    }
+
+    @Test
+    public void testGroupCacheOptions() throws Exception {
+        TarnConfig config = new TarnConfig();
+        assertEquals(300000L, config.groupCacheTtlMs);
+        assertEquals(30000L, config.groupCacheNegativeTtlMs);
+        config.parseArgs(new String[]{"--group-cache-ttl-ms", "0", "--group-cache-negative-ttl-ms", "5000"});
+        assertEquals(0L, config.groupCacheTtlMs);
+        assertEquals(5000L, config.groupCacheNegativeTtlMs);
+
+        TarnConfig bad = new TarnConfig();
+        assertThrows(IllegalArgumentException.class,
+                () -> bad.parseArgs(new String[]{"--group-cache-ttl-ms", "-1"}));
+    }
+
+    @Test
+    public void testOutlierDetectionOptions() throws Exception {
+        TarnConfig config = new TarnConfig();
+        assertFalse(config.proxyOutlierDetection);
+        assertEquals(5, config.proxyOutlierConsecutiveErrors);
+        assertEquals(30000L, config.proxyOutlierBaseEjectionMs);
+        assertEquals(50, config.proxyOutlierMaxEjectionPercent);
+        assertEquals(2, config.proxyConnectRetries);
+        config.parseArgs(new String[]{"--proxy-outlier-detection", "--proxy-outlier-consecutive-errors", "3",
+                "--proxy-outlier-base-ejection-ms", "10000", "--proxy-outlier-max-ejection-percent", "20",
+                "--proxy-connect-retries", "0"});
+        assertTrue(config.proxyOutlierDetection);
+        assertEquals(3, config.proxyOutlierConsecutiveErrors);
+        assertEquals(10000L, config.proxyOutlierBaseEjectionMs);
+        assertEquals(20, config.proxyOutlierMaxEjectionPercent);
+        assertEquals(0, config.proxyConnectRetries);
+
+        TarnConfig bad = new TarnConfig();
+        assertThrows(IllegalArgumentException.class,
+                () -> bad.parseArgs(new String[]{"--proxy-outlier-max-ejection-percent", "101"}));
+    }
+
+    @Test
+    public void testHedgeOptions() throws Exception {
+        TarnConfig config = new TarnConfig();
+        assertEquals("", config.proxyHedgeModels);
+        assertEquals(5.0, config.proxyHedgeBudgetPercent, 1e-9);
+        config.parseArgs(new String[]{"--proxy-hedge-models", "e5,bert", "--proxy-hedge-budget-percent", "2.5"});
+        assertEquals("e5,bert", config.proxyHedgeModels);
+        assertEquals(2.5, config.proxyHedgeBudgetPercent, 1e-9);
+
+        TarnConfig bad = new TarnConfig();
+        assertThrows(IllegalArgumentException.class,
+                () -> bad.parseArgs(new String[]{"--proxy-hedge-budget-percent", "150"}));
+    }
+
+    @Test
+    public void testConcurrencyLimitOptions() throws Exception {
+        TarnConfig config = new TarnConfig();
+        assertFalse(config.proxyConcurrencyLimit);
+        assertEquals(256, config.proxyConcurrencyMaxLimit);
+        assertEquals(50L, config.proxyConcurrencyQueueMs);
+        assertEquals(1024, config.proxyAdmissionQueueMax);
+        config.parseArgs(new String[]{"--proxy-concurrency-limit", "--proxy-concurrency-max-limit", "64",
+                "--proxy-concurrency-queue-ms", "0", "--proxy-admission-queue-max", "0"});
+        assertEquals(0, config.proxyAdmissionQueueMax);
+        assertTrue(config.proxyConcurrencyLimit);
+        assertEquals(64, config.proxyConcurrencyMaxLimit);
+        assertEquals(0L, config.proxyConcurrencyQueueMs);
+
+        TarnConfig bad = new TarnConfig();
+        assertThrows(IllegalArgumentException.class,
+                () -> bad.parseArgs(new String[]{"--proxy-concurrency-max-limit", "1"}));
+    }
 }
@@ -101,6 +101,18 @@ public class TritonCommandBuilderTest {
         assertTrue(cmd.contains("--model-repository /mnt/nfs/models"));
     }
 
+    @Test
+    public void explicitModelControlStartsEmptyWithGpuMetrics() {
+        String plain = new TritonCommandBuilder().modelRepository("/models").build();
+        assertFalse(plain.contains("--model-control-mode"));
+        assertTrue(plain.contains("--allow-gpu-metrics false"));
+
+        String cmd = new TritonCommandBuilder().modelRepository("/models").explicitModelControl(true).build();
+        assertTrue(cmd.contains("--model-control-mode explicit"));
+        assertTrue(cmd.contains("--allow-gpu-metrics true"));
+        assertFalse(cmd.contains("--load-model"));
+    }
+
     @Test
     public void rejectsUnsafeBindAddress() {
         assertThrows(IllegalArgumentException.class,
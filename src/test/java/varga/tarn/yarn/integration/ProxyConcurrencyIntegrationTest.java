@@ -31,6 +31,7 @@ import varga.tarn.yarn.ApplicationMaster;
 import varga.tarn.yarn.MetricsCollector;
 import varga.tarn.yarn.QuotaEnforcer;
 import varga.tarn.yarn.RangerAuthorizer;
+import varga.tarn.yarn.RoutingTable;
 import varga.tarn.yarn.TarnConfig;
 import varga.tarn.yarn.openai.OpenAIProxyServer;
 
@@ -98,6 +99,8 @@ public class ProxyConcurrencyIntegrationTest {
         List<Container> containers = new ArrayList<>();
         containers.add(c);
         when(mockAm.getRunningContainers()).thenReturn(containers);
+        when(mockAm.getRoutingTable()).thenReturn(new RoutingTable(1L,
+                List.of(new RoutingTable.Backend("c1", "127.0.0.1"))));
         when(mockAm.getMetricsCollector()).thenReturn(metrics);
         when(mockAm.getRangerAuthorizer()).thenReturn(ranger);
         when(mockAm.getAvailableModels()).thenReturn(List.of("m"));
@@ -0,0 +1,104 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+import varga.tarn.yarn.RoutingTable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AffinityRingTest {
+
+    private static RoutingTable table(String... ids) {
+        List<RoutingTable.Backend> backends = new ArrayList<>();
+        for (String id : ids) backends.add(new RoutingTable.Backend(id, "h-" + id));
+        return new RoutingTable(1L, backends);
+    }
+
+    @Test
+    public void testSameKeySameHomeAndReasonableSpread() {
+        AffinityRing ring = AffinityRing.build(table("c1", "c2", "c3", "c4"));
+        Map<String, Integer> owned = new HashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            long key = AffinityRing.hash("session-" + i);
+            AffinityRing.Choice c = ring.pick(key, id -> 0, 1.25);
+            assertEquals(AffinityRing.Outcome.HIT, c.outcome);
+            assertSame(c.backend, ring.home(key));
+            owned.merge(c.backend.containerId, 1, Integer::sum);
+        }
+        assertEquals(4, owned.size());
+        owned.values().forEach(n -> assertTrue(n > 1500 && n < 3500, "skewed ring: " + owned));
+    }
+
+    @Test
+    public void testOverloadedHomeSpillsToAStableSecondChoice() {
+        AffinityRing ring = AffinityRing.build(table("c1", "c2", "c3", "c4"));
+        long key = AffinityRing.hash("hot-system-prompt");
+        String home = ring.home(key).containerId;
+        // Home holds 10 requests, the others 2: average ~4, bound ceil(1.25 * 17 / 4) = 6.
+        AffinityRing.Choice first = ring.pick(key, id -> id.equals(home) ? 10 : 2, 1.25);
+        assertEquals(AffinityRing.Outcome.SPILL, first.outcome);
+        assertNotEquals(home, first.backend.containerId);
+        for (int i = 0; i < 10; i++) {
+            assertSame(first.backend, ring.pick(key, id -> id.equals(home) ? 10 : 2, 1.25).backend);
+        }
+    }
+
+    @Test
+    public void testEmptyRing() {
+        AffinityRing ring = AffinityRing.build(RoutingTable.EMPTY);
+        assertNull(ring.pick(42L, id -> 0, 1.25));
+        assertNull(ring.home(42L));
+    }
+
+    @Test
+    public void testPickAmongCandidatesMatchesARingOfThemAlone() {
+        RoutingTable all = table("c1", "c2", "c3", "c4");
+        RoutingTable some = table("c1", "c3");
+        AffinityRing ring = AffinityRing.build(all);
+        AffinityRing own = AffinityRing.build(some);
+        for (int i = 0; i < 2_000; i++) {
+            long key = AffinityRing.hash("k" + i);
+            AffinityRing.Choice c = ring.pick(key, some, id -> 0, 1.25);
+            assertEquals(AffinityRing.Outcome.HIT, c.outcome);
+            assertEquals(own.home(key).containerId, c.backend.containerId);
+        }
+        assertNull(ring.pick(42L, RoutingTable.EMPTY, id -> 0, 1.25));
+    }
+
+    @Test
+    public void testRemovingAContainerOnlyMovesItsKeys() {
+        AffinityRing before = AffinityRing.build(table("c1", "c2", "c3", "c4"));
+        AffinityRing after = AffinityRing.build(table("c1", "c2", "c4"));
+        for (int i = 0; i < 2_000; i++) {
+            long key = AffinityRing.hash("k" + i);
+            String was = before.home(key).containerId;
+            if (!was.equals("c3")) {
+                assertEquals(was, after.home(key).containerId);
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import varga.tarn.yarn.TarnConfig;
+
+/**
+ * Runs the full {@link OpenAIProxyHandlerTest} suite — authz, routing, streaming, token
+ * accounting, shadow traffic — against the non-blocking Jetty engine, so both engines are
+ * held to the same pipeline behaviour.
+ */
+public class AsyncProxyServletTest extends OpenAIProxyHandlerTest {
+
+    @Override
+    protected void configureEngine(TarnConfig config) {
+        config.proxyEngine = OpenAIProxyServer.ENGINE_JETTY;
+    }
+}
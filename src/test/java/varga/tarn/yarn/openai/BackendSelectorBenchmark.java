@@ -0,0 +1,90 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import varga.tarn.yarn.RoutingTable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * JMH benchmark for {@link BackendSelector}: per-call cost of pick + acquire/release across
+ * fleet sizes. Flat scores from 4 to 512 backends show selection is O(1); comparing the 1- and
+ * 32-thread runs shows the counters don't contend. Not a unit test — run via {@link #main}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BackendSelectorBenchmark {
+
+    @Param({"4", "64", "512"})
+    public int backends;
+
+    private BackendSelector selector;
+    private List<String> candidates;
+    private final Function<String, String> id = Function.identity();
+
+    @Setup
+    public void setup() {
+        selector = new BackendSelector(cid -> 0);
+        candidates = new ArrayList<>(backends);
+        List<RoutingTable.Backend> routed = new ArrayList<>(backends);
+        for (int i = 0; i < backends; i++) {
+            candidates.add("container_" + i);
+            routed.add(new RoutingTable.Backend("container_" + i, "host_" + i));
+        }
+        // As in the proxy: counters of routed containers are kept between requests.
+        selector.retain(new RoutingTable(1L, routed));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String pickAndLeaseSingleThread() {
+        return pickAndLease();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public String pickAndLease32Threads() {
+        return pickAndLease();
+    }
+
+    private String pickAndLease() {
+        String target = selector.pick(candidates, id);
+        try (BackendSelector.Lease ignored = selector.acquire(target)) {
+            return target;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(BackendSelectorBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,145 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+import varga.tarn.yarn.RoutingTable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BackendSelectorTest {
+
+    private static final Function<String, String> ID = Function.identity();
+
+    @Test
+    public void testEmptyAndSingleCandidate() {
+        BackendSelector s = new BackendSelector(id -> 0);
+        assertNull(s.pick(List.of(), ID));
+        assertEquals("a", s.pick(List.of("a"), ID));
+    }
+
+    @Test
+    public void testTwoCandidatesAlwaysPicksLessLoaded() {
+        BackendSelector s = new BackendSelector(id -> 0);
+        BackendSelector.Lease l1 = s.acquire("a");
+        BackendSelector.Lease l2 = s.acquire("a");
+        for (int i = 0; i < 100; i++) {
+            assertEquals("b", s.pick(List.of("a", "b"), ID));
+        }
+        l1.close();
+        l2.close();
+        assertEquals(0, s.inFlight("a"));
+    }
+
+    @Test
+    public void testScrapedPendingBlendsWithLiveCount() {
+        Map<String, Integer> scraped = new HashMap<>();
+        scraped.put("a", 5);
+        BackendSelector s = new BackendSelector(id -> scraped.getOrDefault(id, 0));
+        // Scraped depth dominates until live traffic exceeds it.
+        assertEquals(5, s.load("a"));
+        s.acquire("b");
+        assertEquals("b", s.pick(List.of("a", "b"), ID));
+        for (int i = 0; i < 6; i++) s.acquire("b");
+        assertEquals(7, s.load("b"));
+        assertEquals("a", s.pick(List.of("a", "b"), ID));
+    }
+
+    @Test
+    public void testBurstSpreadsAcrossBackends() {
+        BackendSelector s = new BackendSelector(id -> 0);
+        List<String> backends = new ArrayList<>();
+        for (int i = 0; i < 8; i++) backends.add("c" + i);
+        // 80 requests held open concurrently: a stale "least loaded" choice would put all of
+        // them on one host; P2C over live counts keeps every host close to the mean.
+        for (int i = 0; i < 80; i++) {
+            s.acquire(s.pick(backends, ID));
+        }
+        for (String b : backends) {
+            assertTrue(s.inFlight(b) <= 20, b + " had " + s.inFlight(b));
+        }
+    }
+
+    @Test
+    public void testLeaseCloseIsIdempotent() {
+        BackendSelector s = new BackendSelector(id -> 0);
+        BackendSelector.Lease l = s.acquire("a");
+        l.close();
+        l.close();
+        assertEquals(0, s.inFlight("a"));
+    }
+
+    @Test
+    public void testConcurrentAcquireReleaseBalances() throws Exception {
+        BackendSelector s = new BackendSelector(id -> 0);
+        List<String> backends = List.of("a", "b", "c");
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        CountDownLatch done = new CountDownLatch(16);
+        for (int t = 0; t < 16; t++) {
+            pool.submit(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    try (BackendSelector.Lease ignored = s.acquire(s.pick(backends, ID))) {
+                        // request in flight
+                    }
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        pool.shutdown();
+        for (String b : backends) {
+            assertEquals(0, s.inFlight(b));
+        }
+    }
+
+    @Test
+    public void testCountersOfContainersThatLeftRoutingAreDropped() {
+        BackendSelector s = new BackendSelector(id -> 0);
+        RoutingTable ab = new RoutingTable(1L, List.of(new RoutingTable.Backend("a", "h1"),
+                new RoutingTable.Backend("b", "h2")));
+        s.retain(ab);
+        s.acquire("a").close();
+        BackendSelector.Lease open = s.acquire("b");
+        assertEquals(2, s.tracked());
+
+        s.retain(new RoutingTable(2L, List.of(new RoutingTable.Backend("c", "h3"))));
+        // Still counted while its request is out, in case it comes back.
+        assertEquals(1, s.tracked());
+        assertEquals(1, s.inFlight("b"));
+        open.close();
+        assertEquals(0, s.tracked());
+
+        // An older table is ignored.
+        s.retain(ab);
+        s.acquire("a").close();
+        assertEquals(0, s.tracked());
+    }
+}
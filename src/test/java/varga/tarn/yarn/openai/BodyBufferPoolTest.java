@@ -0,0 +1,165 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BodyBufferPoolTest {
+
+    @Test
+    public void testReadsWithinLimitAndGrows() throws Exception {
+        BodyBufferPool pool = new BodyBufferPool(4, 16, 1024, 4096);
+        byte[] data = new byte[3000];
+        data[2999] = 7;
+        try (BodyBufferPool.Body body = pool.acquire()) {
+            assertTrue(body.readFrom(new ByteArrayInputStream(data)));
+            assertEquals(3000, body.length());
+            assertEquals(7, body.array()[2999]);
+            assertArrayEquals(data, body.copy());
+        }
+    }
+
+    @Test
+    public void testExactlyAtLimitIsAcceptedOneMoreIsNot() throws Exception {
+        BodyBufferPool pool = new BodyBufferPool(4, 16, 1024, 100);
+        try (BodyBufferPool.Body body = pool.acquire()) {
+            assertTrue(body.readFrom(new ByteArrayInputStream(new byte[100])));
+        }
+        try (BodyBufferPool.Body body = pool.acquire()) {
+            assertFalse(body.readFrom(new ByteArrayInputStream(new byte[101])));
+        }
+        try (BodyBufferPool.Body body = pool.acquire()) {
+            assertTrue(body.append(new byte[60], 0, 60));
+            assertFalse(body.append(new byte[60], 0, 60));
+        }
+    }
+
+    @Test
+    public void testInsertSplicesAndMayExceedTheLimit() {
+        BodyBufferPool pool = new BodyBufferPool(4, 16, 1024, 16);
+        try (BodyBufferPool.Body body = pool.acquire()) {
+            byte[] full = "{\"model\":\"m123\"}".getBytes(StandardCharsets.UTF_8);
+            assertTrue(body.append(full, 0, full.length));
+            body.insert(full.length - 1, ",\"x\":1".getBytes(StandardCharsets.UTF_8));
+            assertEquals("{\"model\":\"m123\",\"x\":1}",
+                    new String(body.array(), 0, body.length(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testSmallArraysAreRecycledLargeOnesAreNot() throws Exception {
+        BodyBufferPool pool = new BodyBufferPool(4, 16, 64, 4096);
+        BodyBufferPool.Body small = pool.acquire();
+        small.append(new byte[10], 0, 10);
+        byte[] array = small.array();
+        small.close();
+        small.close(); // idempotent
+        assertEquals(1, pool.pooled());
+        BodyBufferPool.Body reused = pool.acquire();
+        assertSame(array, reused.array());
+        assertEquals(0, reused.length());
+        reused.close();
+
+        BodyBufferPool.Body big = pool.acquire();
+        big.append(new byte[1000], 0, 1000);
+        big.close();
+        // The outgrown small arrays went back; the 1000+ byte one did not.
+        int pooled = pool.pooled();
+        assertTrue(pooled >= 1);
+        for (int i = 0; i < pooled; i++) {
+            assertTrue(pool.acquire().array().length <= 64);
+        }
+    }
+
+    @Test
+    public void testArrayIsPooledOnlyOnceThePublisherIsDoneWithIt() {
+        BodyBufferPool pool = new BodyBufferPool(4, 16, 64, 4096);
+        BodyBufferPool.Body body = pool.acquire();
+        body.append(new byte[10], 0, 10);
+        Recorder read = new Recorder();
+        body.publisher().subscribe(read);
+        // An exchange that timed out or lost a hedge closes its body while HttpClient reads on.
+        body.close();
+        assertEquals(0, pool.pooled());
+        read.subscription.request(Long.MAX_VALUE);
+        assertTrue(read.completed);
+        assertEquals(1, pool.pooled());
+
+        BodyBufferPool.Body cancelled = pool.acquire();
+        cancelled.append(new byte[10], 0, 10);
+        Recorder abandoned = new Recorder();
+        cancelled.publisher().subscribe(abandoned);
+        cancelled.close();
+        assertEquals(0, pool.pooled());
+        abandoned.subscription.cancel();
+        assertEquals(1, pool.pooled());
+    }
+
+    @Test
+    public void testPublisherSubscribedAfterCloseFails() {
+        BodyBufferPool pool = new BodyBufferPool(4, 16, 64, 4096);
+        BodyBufferPool.Body body = pool.acquire();
+        body.append(new byte[10], 0, 10);
+        HttpRequest.BodyPublisher publisher = body.publisher();
+        body.close();
+        Recorder r = new Recorder();
+        publisher.subscribe(r);
+        assertNotNull(r.error);
+        assertTrue(r.items.isEmpty());
+    }
+
+    private static final class Recorder implements Flow.Subscriber<ByteBuffer> {
+        Flow.Subscription subscription;
+        final List<ByteBuffer> items = new ArrayList<>();
+        boolean completed;
+        Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(ByteBuffer item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+import varga.tarn.yarn.MetricsCollector;
+import varga.tarn.yarn.RoutingTable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrencyLimiterTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Map<String, Integer> inFlight = new HashMap<>();
+    private final MetricsCollector metrics = new MetricsCollector(8002);
+
+    private final RoutingTable routing = new RoutingTable(1L, List.of(
+            new RoutingTable.Backend("c1", "h1"), new RoutingTable.Backend("c2", "h2"),
+            new RoutingTable.Backend("c3", "h3")));
+
+    private ConcurrencyLimiter limiter(int max) {
+        ConcurrencyLimiter l = new ConcurrencyLimiter(max, cid -> inFlight.getOrDefault(cid, 0), metrics);
+        l.retain(routing);
+        return l;
+    }
+
+    @Test
+    public void testStartsAtInitialLimitCappedByMax() {
+        assertEquals(ConcurrencyLimiter.INITIAL_LIMIT, limiter(256).limit("c1"));
+        assertEquals(8, limiter(8).limit("c1"));
+    }
+
+    @Test
+    public void testSteadyLatencyUnderLoadGrowsTheLimit() {
+        ConcurrencyLimiter l = limiter(256);
+        for (int i = 0; i < 50; i++) {
+            inFlight.put("c1", l.limit("c1"));
+            l.onSample("c1", 100 * MS);
+        }
+        assertTrue(l.limit("c1") > 60, "limit " + l.limit("c1"));
+        assertEquals(l.limit("c1"), (int) metrics.getConcurrencyLimits().get("c1"));
+        assertEquals(256, growThenHold(l, 2000));
+    }
+
+    private int growThenHold(ConcurrencyLimiter l, int samples) {
+        for (int i = 0; i < samples; i++) {
+            inFlight.put("c1", l.limit("c1"));
+            l.onSample("c1", 100 * MS);
+        }
+        return l.limit("c1");
+    }
+
+    @Test
+    public void testRisingLatencyShrinksTheLimit() {
+        ConcurrencyLimiter l = limiter(256);
+        growThenHold(l, 100);
+        int grown = l.limit("c1");
+        for (int i = 0; i < 20; i++) {
+            inFlight.put("c1", l.limit("c1"));
+            l.onSample("c1", 400 * MS);
+        }
+        assertTrue(l.limit("c1") < grown / 2, grown + " -> " + l.limit("c1"));
+    }
+
+    @Test
+    public void testIdleContainerKeepsItsLimit() {
+        ConcurrencyLimiter l = limiter(256);
+        inFlight.put("c1", 3);
+        for (int i = 0; i < 100; i++) {
+            l.onSample("c1", (i % 2 == 0 ? 10 : 900) * MS);
+        }
+        assertEquals(ConcurrencyLimiter.INITIAL_LIMIT, l.limit("c1"));
+    }
+
+    @Test
+    public void testDropsBackOffDownToTheFloor() {
+        ConcurrencyLimiter l = limiter(256);
+        l.onDrop("c1");
+        assertEquals((int) (ConcurrencyLimiter.INITIAL_LIMIT * ConcurrencyLimiter.BACKOFF), l.limit("c1"));
+        for (int i = 0; i < 100; i++) l.onDrop("c1");
+        assertEquals(ConcurrencyLimiter.MIN_LIMIT, l.limit("c1"));
+    }
+
+    @Test
+    public void testOpenLeavesOutContainersAtTheirLimit() {
+        ConcurrencyLimiter l = limiter(256);
+        RoutingTable serving = new RoutingTable(3L, List.of(
+                new RoutingTable.Backend("c1", "h1"), new RoutingTable.Backend("c2", "h2"),
+                new RoutingTable.Backend("c3", "h3")));
+        assertSame(serving, l.open(serving));
+
+        inFlight.put("c1", ConcurrencyLimiter.INITIAL_LIMIT);
+        RoutingTable open = l.open(serving);
+        assertEquals(2, open.size());
+        assertFalse(open.contains("c1"));
+        assertEquals(3L, open.version);
+
+        inFlight.put("c2", 99);
+        inFlight.put("c3", 99);
+        assertTrue(l.open(serving).isEmpty());
+    }
+
+    @Test
+    public void testReleasePublishesLimitAndInFlight() {
+        ConcurrencyLimiter l = limiter(256);
+        inFlight.put("c1", 7);
+        l.release("c1");
+        assertEquals(ConcurrencyLimiter.INITIAL_LIMIT, (int) metrics.getConcurrencyLimits().get("c1"));
+        assertEquals(7, (int) metrics.getConcurrencyInFlight().get("c1"));
+    }
+
+    @Test
+    public void testContainersThatLeaveRoutingAreForgotten() {
+        ConcurrencyLimiter l = limiter(256);
+        l.onDrop("c1");
+        l.onDrop("c2");
+        l.retain(new RoutingTable(2L, routing.backends().subList(1, 3)));
+        assertEquals(Set.of("c2"), metrics.getConcurrencyLimits().keySet());
+        assertFalse(metrics.getConcurrencyInFlight().containsKey("c1"));
+        assertEquals(ConcurrencyLimiter.INITIAL_LIMIT, l.limit("c1"));
+
+        // A request that outlived its container does not bring it back.
+        l.onDrop("c1");
+        l.release("c1");
+        assertFalse(metrics.getConcurrencyLimits().containsKey("c1"));
+        assertEquals(ConcurrencyLimiter.INITIAL_LIMIT, l.limit("c1"));
+
+        // An older table is ignored.
+        l.retain(routing);
+        l.onDrop("c1");
+        assertFalse(metrics.getConcurrencyLimits().containsKey("c1"));
+    }
+}
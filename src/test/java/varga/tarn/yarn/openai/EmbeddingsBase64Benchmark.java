@@ -0,0 +1,123 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for relaying an embeddings response to a client that asked for base64:
+ * passing Triton's float JSON through as before ({@code relayFloats}), rewriting it with a
+ * Jackson tree ({@code jacksonTree}), and the streaming {@link EmbeddingsBase64Transcoder}
+ * ({@code streamingTranscode}). Bodies arrive in 16 KB chunks as they do from the upstream
+ * client. The setup prints the payload size before and after for each shape; run with
+ * {@code -prof gc} to compare allocation as well. Not a unit test — run via {@link #main}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmbeddingsBase64Benchmark {
+
+    private static final int CHUNK = 16 * 1024;
+
+    @Param({"1024", "4096"})
+    public int dimensions;
+
+    @Param({"1", "256"})
+    public int batch;
+
+    private final ObjectMapper om = new ObjectMapper();
+    private byte[] body;
+
+    @Setup
+    public void setup() throws IOException {
+        Random rnd = new Random(42);
+        StringBuilder json = new StringBuilder("{\"object\":\"list\",\"data\":[");
+        for (int i = 0; i < batch; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"object\":\"embedding\",\"index\":").append(i).append(",\"embedding\":[");
+            for (int d = 0; d < dimensions; d++) {
+                if (d > 0) json.append(',');
+                json.append((float) rnd.nextGaussian() / 32f);
+            }
+            json.append("]}");
+        }
+        json.append("],\"model\":\"e5-large\",\"usage\":{\"prompt_tokens\":").append(batch * 12)
+                .append(",\"total_tokens\":").append(batch * 12).append("}}");
+        body = json.toString().getBytes(StandardCharsets.UTF_8);
+        long base64 = streamingTranscode();
+        System.out.printf("%ndimensions=%d batch=%d: float JSON %d bytes, base64 JSON %d bytes (%.0f%%)%n",
+                dimensions, batch, body.length, base64, 100.0 * base64 / body.length);
+    }
+
+    @Benchmark
+    public long relayFloats() throws IOException {
+        return relay(new UsageExtractor((p, c) -> { }));
+    }
+
+    @Benchmark
+    public long jacksonTree() throws IOException {
+        JsonNode root = om.readTree(body);
+        for (JsonNode item : root.path("data")) {
+            JsonNode embedding = item.path("embedding");
+            ByteBuffer b = ByteBuffer.allocate(embedding.size() * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (JsonNode v : embedding) b.putFloat(v.floatValue());
+            ((ObjectNode) item).put("embedding", Base64.getEncoder().encodeToString(b.array()));
+        }
+        return om.writeValueAsBytes(root).length;
+    }
+
+    @Benchmark
+    public long streamingTranscode() throws IOException {
+        return relay(new EmbeddingsBase64Transcoder(new UsageExtractor((p, c) -> { })));
+    }
+
+    private long relay(ResponseFilter filter) throws IOException {
+        long[] written = new long[1];
+        ResponseFilter.Sink sink = (buf, off, len) -> written[0] += len;
+        for (int off = 0; off < body.length; off += CHUNK) {
+            filter.write(body, off, Math.min(CHUNK, body.length - off), sink);
+        }
+        filter.finish(sink);
+        return written[0];
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(EmbeddingsBase64Benchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,151 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EmbeddingsBase64TranscoderTest {
+
+    private static final String RESPONSE = "{\"object\":\"list\",\"data\":["
+            + "{\"object\":\"embedding\",\"index\":0,\"embedding\": [0.25, -1.5e-3,3]},"
+            + "{\"object\":\"embedding\",\"index\":1,\"embedding\":[-0.0,1E2]}],"
+            + "\"model\":\"e5\",\"usage\":{\"prompt_tokens\":7,\"total_tokens\":7}}";
+
+    private long[] seen;
+
+    private String transcode(byte[] body, int... splits) throws IOException {
+        seen = null;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EmbeddingsBase64Transcoder t = new EmbeddingsBase64Transcoder(
+                new UsageExtractor((p, c) -> seen = new long[] {p, c}));
+        int at = 0;
+        for (int s : splits) {
+            t.write(body, at, s - at, out::write);
+            at = s;
+        }
+        t.write(body, at, body.length - at, out::write);
+        t.finish(out::write);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static String base64(float... values) {
+        ByteBuffer b = ByteBuffer.allocate(values.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (float v : values) b.putFloat(v);
+        return Base64.getEncoder().encodeToString(b.array());
+    }
+
+    @Test
+    public void testRewritesFloatVectorsAtEverySplitPoint() throws IOException {
+        String expected = "{\"object\":\"list\",\"data\":["
+                + "{\"object\":\"embedding\",\"index\":0,\"embedding\": \"" + base64(0.25f, -1.5e-3f, 3f) + "\"},"
+                + "{\"object\":\"embedding\",\"index\":1,\"embedding\":\"" + base64(-0.0f, 100f) + "\"}],"
+                + "\"model\":\"e5\",\"usage\":{\"prompt_tokens\":7,\"total_tokens\":7}}";
+        byte[] b = RESPONSE.getBytes(StandardCharsets.UTF_8);
+        for (int split = 0; split <= b.length; split++) {
+            assertEquals(expected, transcode(b, split), "split at " + split);
+            assertArrayEquals(new long[] {7, 0}, seen, "split at " + split);
+        }
+    }
+
+    @Test
+    public void testPaddingForEveryVectorLength() throws IOException {
+        for (int n = 0; n <= 4; n++) {
+            float[] v = new float[n];
+            StringBuilder json = new StringBuilder("{\"data\":[{\"embedding\":[");
+            for (int i = 0; i < n; i++) {
+                v[i] = i + 0.5f;
+                json.append(i == 0 ? "" : ",").append(v[i]);
+            }
+            json.append("]}]}");
+            assertEquals("{\"data\":[{\"embedding\":\"" + base64(v) + "\"}]}",
+                    transcode(json.toString().getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    @Test
+    public void testLargeVectorSurvivesByteAtATime() throws IOException {
+        float[] v = new float[4096];
+        StringBuilder json = new StringBuilder("{\"data\":[{\"embedding\":[");
+        for (int i = 0; i < v.length; i++) {
+            v[i] = (float) Math.sin(i) / 7f;
+            json.append(i == 0 ? "" : ",").append(v[i]);
+        }
+        json.append("]}]}");
+        byte[] b = json.toString().getBytes(StandardCharsets.UTF_8);
+        int[] splits = new int[b.length - 1];
+        for (int i = 0; i < splits.length; i++) splits[i] = i + 1;
+        assertEquals("{\"data\":[{\"embedding\":\"" + base64(v) + "\"}]}", transcode(b, splits));
+    }
+
+    @Test
+    public void testNumbersRoundLikeFloatParseFloat() throws IOException {
+        Random rnd = new Random(7);
+        List<String> literals = new ArrayList<>(List.of("0", "-0", "1e-45", "3.4028235e38", "1.00000017881393432617187499",
+                "0.1000000000000000055511151231257827", "123456789012345678901234567890", "7E+2", "-2.5E-3"));
+        for (int i = 0; i < 2000; i++) {
+            float f = (float) rnd.nextGaussian() / 16f;
+            literals.add(Float.toString(f));
+            literals.add(Double.toString(f));
+            literals.add(Double.toString(rnd.nextGaussian()));
+        }
+        StringBuilder json = new StringBuilder("{\"embedding\":[");
+        float[] expected = new float[literals.size()];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = Float.parseFloat(literals.get(i));
+            json.append(i == 0 ? "" : ",").append(literals.get(i));
+        }
+        json.append("]}");
+        assertEquals("{\"embedding\":\"" + base64(expected) + "\"}",
+                transcode(json.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testLeavesEverythingElseAlone() throws IOException {
+        for (String body : new String[] {
+                // Already base64.
+                "{\"data\":[{\"embedding\":\"AACAPw==\"}]}",
+                // Lookalike keys and string values.
+                "{\"embeddings\":[1,2],\"x\":\"embedding\",\"y\":[\"embedding\",[3]],\"em\\\"bedding\":[4]}",
+                // Not a float vector.
+                "{\"data\":[{\"embedding\":[1,\"two\",3]}]}",
+                "{\"data\":[{\"embedding\":[[1,2],[3]]}]}",
+                "{\"data\":[{\"embedding\":[1,-,3]}]}",
+                "{\"data\":[{\"embedding\":[1.,2]}]}",
+                "{\"data\":[{\"embedding\":[1e,2]}]}",
+                // Truncated mid-vector.
+                "{\"data\":[{\"embedding\":[1,2",
+        }) {
+            assertEquals(body, transcode(body.getBytes(StandardCharsets.UTF_8)), body);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import varga.tarn.yarn.MetricsCollector;
+
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EmbeddingsBatcherTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final MetricsCollector mc = new MetricsCollector(8002);
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private final List<CompletableFuture<ProxyPipeline.Reply>> replies = new CopyOnWriteArrayList<>();
+
+    private EmbeddingsBatcher batcher(int maxInputs, long maxWaitMicros) {
+        return new EmbeddingsBatcher(maxInputs, maxWaitMicros, (path, model, priority, body) -> {
+            sent.add(new String(body, StandardCharsets.UTF_8));
+            CompletableFuture<ProxyPipeline.Reply> f = new CompletableFuture<>();
+            replies.add(f);
+            return f;
+        }, mc);
+    }
+
+    private static EmbeddingsBatcher.Request request(String body) {
+        return request(FairAdmissionQueue.Priority.STANDARD, body);
+    }
+
+    private static EmbeddingsBatcher.Request request(FairAdmissionQueue.Priority priority, String body) {
+        byte[] b = body.getBytes(StandardCharsets.UTF_8);
+        return EmbeddingsBatcher.parse("/v1/embeddings", "e5", priority, b, 0, b.length);
+    }
+
+    private static ProxyPipeline.Reply reply(int status, String body) {
+        return new ProxyPipeline.Reply(status, "application/json", body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static JsonNode read(CompletableFuture<ProxyPipeline.Upstream> f) throws Exception {
+        ProxyPipeline.Upstream up = f.get(5, TimeUnit.SECONDS);
+        HttpResponse.BodySubscriber<String> s = HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
+        up.body.subscribe(s);
+        return MAPPER.readTree(s.getBody().toCompletableFuture().get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFullBatchIsSplitBackPerCallerWithApportionedUsage() throws Exception {
+        EmbeddingsBatcher b = batcher(3, 10_000_000);
+        CompletableFuture<ProxyPipeline.Upstream> first = b.submit(request("{\"model\":\"e5\",\"input\":\"aaaa\",\"user\":\"x\"}"));
+        assertTrue(sent.isEmpty());
+        CompletableFuture<ProxyPipeline.Upstream> second = b.submit(request("{\"model\":\"e5\",\"input\":[\"bb\",\"cccc\"]}"));
+
+        assertEquals(1, sent.size());
+        JsonNode merged = MAPPER.readTree(sent.get(0));
+        assertEquals("[\"aaaa\",\"bb\",\"cccc\"]", merged.get("input").toString());
+        assertFalse(merged.has("user"));
+        replies.get(0).complete(reply(200, "{\"object\":\"list\",\"model\":\"e5\",\"data\":["
+                + "{\"object\":\"embedding\",\"index\":2,\"embedding\":[3.0]},"
+                + "{\"object\":\"embedding\",\"index\":0,\"embedding\":[1.0]},"
+                + "{\"object\":\"embedding\",\"index\":1,\"embedding\":[2.0]}],"
+                + "\"usage\":{\"prompt_tokens\":10,\"total_tokens\":10}}"));
+
+        JsonNode a = read(first);
+        assertEquals(1, a.get("data").size());
+        assertEquals("[1.0]", a.get("data").get(0).get("embedding").toString());
+        assertEquals(4L, a.get("usage").get("prompt_tokens").asLong());
+        JsonNode c = read(second);
+        assertEquals(2, c.get("data").size());
+        assertEquals(0, c.get("data").get(0).get("index").asInt());
+        assertEquals("[2.0]", c.get("data").get(0).get("embedding").toString());
+        assertEquals(1, c.get("data").get(1).get("index").asInt());
+        assertEquals("[3.0]", c.get("data").get(1).get("embedding").toString());
+        assertEquals(6L, c.get("usage").get("prompt_tokens").asLong());
+        assertEquals("e5", c.get("model").asText());
+        assertEquals(2L, (long) mc.getEmbeddingsBatchedRequests().get("e5"));
+    }
+
+    @Test
+    public void testLoneRequestIsSentAfterTheWaitAndRelayedUntouched() throws Exception {
+        EmbeddingsBatcher b = batcher(64, 1_000);
+        CompletableFuture<ProxyPipeline.Upstream> f = b.submit(request("{\"model\":\"e5\",\"input\":\"x\"}"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (replies.isEmpty() && System.nanoTime() < deadline) Thread.sleep(1);
+        assertEquals(1, replies.size());
+        String body = "{\"data\":[{\"index\":0,\"embedding\":[0.5]}],\"usage\":{\"prompt_tokens\":1}}";
+        replies.get(0).complete(reply(200, body));
+        assertEquals(MAPPER.readTree(body), read(f));
+    }
+
+    @Test
+    public void testOverflowingRequestSendsTheOpenBatchFirst() {
+        EmbeddingsBatcher b = batcher(3, 10_000_000);
+        b.submit(request("{\"model\":\"e5\",\"input\":[\"a\",\"b\"]}"));
+        b.submit(request("{\"model\":\"e5\",\"input\":[\"c\",\"d\"]}"));
+        assertEquals(1, sent.size());
+        assertTrue(sent.get(0).contains("[\"a\",\"b\"]"));
+        // Different dimensions never share a batch.
+        b.submit(request("{\"model\":\"e5\",\"input\":\"e\",\"dimensions\":64}"));
+        b.submit(request("{\"model\":\"e5\",\"input\":\"f\"}"));
+        assertEquals(2, sent.size());
+        assertTrue(sent.get(1).contains("[\"c\",\"d\",\"f\"]"));
+    }
+
+    @Test
+    public void testCallersShareABatchSentAtTheMostUrgentPriority() {
+        List<FairAdmissionQueue.Priority> priorities = new CopyOnWriteArrayList<>();
+        EmbeddingsBatcher b = new EmbeddingsBatcher(3, 10_000_000, (path, model, priority, body) -> {
+            priorities.add(priority);
+            sent.add(new String(body, StandardCharsets.UTF_8));
+            return new CompletableFuture<>();
+        }, mc);
+        b.submit(request(FairAdmissionQueue.Priority.BATCH, "{\"model\":\"e5\",\"input\":\"a\",\"user\":\"alice\"}"));
+        b.submit(request(FairAdmissionQueue.Priority.INTERACTIVE, "{\"model\":\"e5\",\"input\":\"b\",\"user\":\"bob\"}"));
+        assertTrue(priorities.isEmpty());
+        b.submit(request(FairAdmissionQueue.Priority.STANDARD, "{\"model\":\"e5\",\"input\":\"c\"}"));
+        assertEquals(List.of(FairAdmissionQueue.Priority.INTERACTIVE), priorities);
+        assertTrue(sent.get(0).contains("[\"a\",\"b\",\"c\"]"));
+        assertFalse(sent.get(0).contains("alice"));
+    }
+
+    @Test
+    public void testErrorStatusReachesEveryCallerAndBadBodiesFailThem() throws Exception {
+        EmbeddingsBatcher b = batcher(2, 10_000_000);
+        CompletableFuture<ProxyPipeline.Upstream> x = b.submit(request("{\"model\":\"e5\",\"input\":\"a\"}"));
+        CompletableFuture<ProxyPipeline.Upstream> y = b.submit(request("{\"model\":\"e5\",\"input\":\"b\"}"));
+        replies.get(0).complete(reply(400, "{\"error\":\"bad\"}"));
+        assertEquals(400, x.get(5, TimeUnit.SECONDS).status);
+        assertEquals("bad", read(y).get("error").asText());
+
+        CompletableFuture<ProxyPipeline.Upstream> p = b.submit(request("{\"model\":\"e5\",\"input\":\"a\"}"));
+        b.submit(request("{\"model\":\"e5\",\"input\":\"b\"}"));
+        replies.get(1).complete(reply(200, "{\"data\":[{\"index\":0,\"embedding\":[1.0]}]}"));
+        assertThrows(ExecutionException.class, () -> p.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testOnlyPlainTextRequestsAreBatchable() {
+        assertNull(request("{\"model\":\"e5\",\"input\":[[1,2,3]]}"));
+        assertNull(request("{\"model\":\"e5\",\"input\":\"a\",\"truncate\":true}"));
+        assertNull(request("{\"model\":\"e5\",\"input\":[]}"));
+        assertNotNull(request("{\"model\":\"e5\",\"input\":\"a\",\"encoding_format\":\"base64\"}"));
+    }
+
+    @Test
+    public void testApportionAddsUpExactly() {
+        assertArrayEquals(new long[] {4, 3, 3}, EmbeddingsBatcher.apportion(10, new long[] {1, 1, 1}));
+        assertArrayEquals(new long[] {1, 9}, EmbeddingsBatcher.apportion(10, new long[] {1, 9}));
+        assertArrayEquals(new long[] {0, 0}, EmbeddingsBatcher.apportion(0, new long[] {5, 5}));
+        long[] parts = EmbeddingsBatcher.apportion(1001, new long[] {7, 13, 29, 3});
+        long sum = 0;
+        for (long p : parts) sum += p;
+        assertEquals(1001L, sum);
+    }
+}
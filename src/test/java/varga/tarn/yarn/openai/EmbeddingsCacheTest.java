@@ -0,0 +1,103 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+import varga.tarn.yarn.MetricsCollector;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EmbeddingsCacheTest {
+
+    private static byte[] vector(int bytes, int fill) {
+        byte[] v = new byte[bytes];
+        Arrays.fill(v, (byte) fill);
+        return v;
+    }
+
+    @Test
+    public void testKeyCoversModelDimensionsAndNormalizedInput() {
+        EmbeddingsCache.Key k = EmbeddingsCache.key("e5", 0, "caf\u00e9");
+        // Composed and decomposed e-acute are the same text.
+        assertEquals(k, EmbeddingsCache.key("e5", 0, "cafe\u0301"));
+        assertNotEquals(k, EmbeddingsCache.key("e5", 256, "caf\u00e9"));
+        assertNotEquals(k, EmbeddingsCache.key("bge", 0, "caf\u00e9"));
+        assertNotEquals(k, EmbeddingsCache.key("e5", 0, "cafe"));
+    }
+
+    @Test
+    public void testStoresAndCopiesVectorsOut() {
+        EmbeddingsCache cache = new EmbeddingsCache(EmbeddingsCache.PAGE_BYTES, new MetricsCollector(8002));
+        EmbeddingsCache.Key k = EmbeddingsCache.key("e5", 0, "a");
+        assertNull(cache.get(k));
+        cache.put(k, vector(16, 7));
+        byte[] got = cache.get(k);
+        assertArrayEquals(vector(16, 7), got);
+        got[0] = 0;
+        assertArrayEquals(vector(16, 7), cache.get(k));
+        assertEquals((long) EmbeddingsCache.PAGE_BYTES, cache.bytes());
+        assertEquals(16L, cache.usedBytes());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedWithinTheByteBound() {
+        MetricsCollector mc = new MetricsCollector(8002);
+        int slot = EmbeddingsCache.PAGE_BYTES / 4;
+        EmbeddingsCache cache = new EmbeddingsCache(EmbeddingsCache.PAGE_BYTES, mc);
+        for (int i = 0; i < 4; i++) {
+            cache.put(EmbeddingsCache.key("m", 0, "t" + i), vector(slot, i));
+        }
+        cache.get(EmbeddingsCache.key("m", 0, "t0"));
+        cache.put(EmbeddingsCache.key("m", 0, "t4"), vector(slot, 4));
+
+        assertEquals(4, cache.size());
+        assertNotNull(cache.get(EmbeddingsCache.key("m", 0, "t0")));
+        assertNull(cache.get(EmbeddingsCache.key("m", 0, "t1")));
+        assertArrayEquals(vector(slot, 4), cache.get(EmbeddingsCache.key("m", 0, "t4")));
+        assertEquals((long) EmbeddingsCache.PAGE_BYTES, cache.bytes());
+        assertEquals(1L, mc.getEmbeddingsCacheEvictions());
+    }
+
+    @Test
+    public void testEmptiedPageServesAnotherVectorSize() {
+        EmbeddingsCache cache = new EmbeddingsCache(EmbeddingsCache.PAGE_BYTES, new MetricsCollector(8002));
+        cache.put(EmbeddingsCache.key("small", 0, "a"), vector(64, 1));
+        cache.put(EmbeddingsCache.key("small", 0, "b"), vector(64, 2));
+        cache.put(EmbeddingsCache.key("big", 0, "a"), vector(4096, 3));
+
+        assertEquals(1, cache.size());
+        assertNull(cache.get(EmbeddingsCache.key("small", 0, "a")));
+        assertArrayEquals(vector(4096, 3), cache.get(EmbeddingsCache.key("big", 0, "a")));
+        assertEquals(4096L, cache.usedBytes());
+        assertEquals((long) EmbeddingsCache.PAGE_BYTES, cache.bytes());
+    }
+
+    @Test
+    public void testZeroCapacityStoresNothing() {
+        EmbeddingsCache cache = new EmbeddingsCache(EmbeddingsCache.PAGE_BYTES - 1, new MetricsCollector(8002));
+        EmbeddingsCache.Key k = EmbeddingsCache.key("m", 0, "a");
+        cache.put(k, vector(16, 1));
+        assertNull(cache.get(k));
+        assertEquals(0L, cache.bytes());
+    }
+}
@@ -0,0 +1,138 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import varga.tarn.yarn.MetricsCollector;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EmbeddingsLookupTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final MetricsCollector mc = new MetricsCollector(8002);
+    private final EmbeddingsCache cache = new EmbeddingsCache(EmbeddingsCache.PAGE_BYTES, mc);
+
+    private static byte[] floats(float... v) {
+        ByteBuffer b = ByteBuffer.allocate(v.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (float f : v) b.putFloat(f);
+        return b.array();
+    }
+
+    private EmbeddingsLookup lookup(String body) {
+        byte[] b = body.getBytes(StandardCharsets.UTF_8);
+        return EmbeddingsLookup.lookup(cache, b, 0, b.length);
+    }
+
+    private static String relay(ResponseFilter f, String upstream) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResponseFilter.Sink sink = out::write;
+        byte[] b = upstream.getBytes(StandardCharsets.UTF_8);
+        f.write(b, 0, 5, sink);
+        f.write(b, 5, b.length - 5, sink);
+        f.finish(sink);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testOnlyPlainTextRequestsAreCacheable() {
+        assertNull(lookup("{\"model\":\"e5\",\"input\":[1,2,3]}"));
+        assertNull(lookup("{\"model\":\"e5\",\"input\":\"a\",\"truncate\":true}"));
+        assertNull(lookup("{\"model\":\"e5\",\"input\":\"a\",\"encoding_format\":\"int8\"}"));
+        assertNull(lookup("{\"model\":\"e5\",\"input\":[]}"));
+        assertNull(lookup("not json"));
+        assertNotNull(lookup("{\"model\":\"e5\",\"input\":\"a\",\"dimensions\":64,\"user\":\"u\"}"));
+    }
+
+    @Test
+    public void testPartialHitForwardsMissesAndMergesInOrder() throws Exception {
+        cache.put(EmbeddingsCache.key("e5", 0, "b"), floats(2f, 2.5f));
+
+        EmbeddingsLookup l = lookup("{\"model\":\"e5\",\"input\":[\"a\",\"b\",\"c\"]}");
+        assertFalse(l.complete());
+        JsonNode forwarded = MAPPER.readTree(l.upstreamBody());
+        assertEquals("[\"a\",\"c\"]", forwarded.get("input").toString());
+        assertEquals("e5", forwarded.get("model").asText());
+
+        long[] usage = new long[1];
+        String merged = relay(l.filter((p, c) -> usage[0] = p),
+                "{\"object\":\"list\",\"data\":["
+                        + "{\"object\":\"embedding\",\"index\":1,\"embedding\":[3.0,3.5]},"
+                        + "{\"object\":\"embedding\",\"index\":0,\"embedding\":[1.0,1.5]}],"
+                        + "\"model\":\"e5\",\"usage\":{\"prompt_tokens\":4,\"total_tokens\":4}}");
+
+        JsonNode data = MAPPER.readTree(merged).get("data");
+        assertEquals(3, data.size());
+        assertEquals("[1.0,1.5]", data.get(0).get("embedding").toString());
+        assertEquals("[2.0,2.5]", data.get(1).get("embedding").toString());
+        assertEquals("[3.0,3.5]", data.get(2).get("embedding").toString());
+        assertEquals(2, data.get(2).get("index").asInt());
+        assertEquals(4L, usage[0]);
+        assertEquals(4L, MAPPER.readTree(merged).get("usage").get("prompt_tokens").asLong());
+        assertArrayEquals(floats(3f, 3.5f), cache.get(EmbeddingsCache.key("e5", 0, "c")));
+        assertEquals(1L, (long) mc.getEmbeddingsCacheLookups().get("hit"));
+        assertEquals(2L, (long) mc.getEmbeddingsCacheLookups().get("miss"));
+    }
+
+    @Test
+    public void testFullMissRelaysUpstreamBytesAndFillsTheCache() throws Exception {
+        EmbeddingsLookup l = lookup("{\"model\":\"e5\",\"input\":\"a\"}");
+        assertNull(l.upstreamBody());
+        String upstream = "{\"data\":[{\"index\":0,\"embedding\":[0.25]}],\"usage\":{\"prompt_tokens\":1}}";
+        assertEquals(upstream, relay(l.filter((p, c) -> { }), upstream));
+
+        EmbeddingsLookup again = lookup("{\"model\":\"e5\",\"input\":\"a\"}");
+        assertTrue(again.complete());
+        JsonNode reply = MAPPER.readTree(again.render());
+        assertEquals("[0.25]", reply.get("data").get(0).get("embedding").toString());
+        assertEquals(0L, reply.get("usage").get("total_tokens").asLong());
+    }
+
+    @Test
+    public void testBase64IsDecodedAndServedInEitherFormat() throws Exception {
+        byte[] v = floats(0.5f, -1f);
+        EmbeddingsLookup l = lookup("{\"model\":\"e5\",\"input\":[\"x\"],\"encoding_format\":\"base64\"}");
+        relay(l.filter((p, c) -> { }), "{\"data\":[{\"index\":0,\"embedding\":\""
+                + Base64.getEncoder().encodeToString(v) + "\"}]}");
+
+        JsonNode asFloats = MAPPER.readTree(lookup("{\"model\":\"e5\",\"input\":\"x\"}").render());
+        assertEquals("[0.5,-1.0]", asFloats.get("data").get(0).get("embedding").toString());
+        JsonNode asBase64 = MAPPER.readTree(
+                lookup("{\"model\":\"e5\",\"input\":\"x\",\"encoding_format\":\"base64\"}").render());
+        assertArrayEquals(v, Base64.getDecoder().decode(asBase64.get("data").get(0).get("embedding").asText()));
+    }
+
+    @Test
+    public void testMalformedUpstreamIsRelayedAsIs() throws Exception {
+        EmbeddingsLookup l = lookup("{\"model\":\"e5\",\"input\":[\"a\"]}");
+        assertEquals("{\"error\":", relay(l.filter((p, c) -> { }), "{\"error\":"));
+        assertEquals(0, cache.size());
+    }
+}
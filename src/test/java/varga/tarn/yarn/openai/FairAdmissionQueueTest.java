@@ -0,0 +1,182 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+import varga.tarn.yarn.MetricsCollector;
+import varga.tarn.yarn.RoutingTable;
+import varga.tarn.yarn.openai.FairAdmissionQueue.Priority;
+import varga.tarn.yarn.openai.FairAdmissionQueue.Ticket;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FairAdmissionQueueTest {
+
+    private static final long LATER = System.nanoTime() + TimeUnit.MINUTES.toNanos(5);
+
+    /** Grants until the queue is drained and returns the names of the tickets in grant order. */
+    private static List<String> drain(FairAdmissionQueue q, Map<String, Ticket> tickets) {
+        List<String> order = new ArrayList<>();
+        while (q.grant()) {
+            for (Map.Entry<String, Ticket> e : tickets.entrySet()) {
+                if (e.getValue().granted() && !order.contains(e.getKey())) order.add(e.getKey());
+            }
+        }
+        return order;
+    }
+
+    @Test
+    public void testDeficitRoundRobinAcrossTenantsAndClasses() {
+        FairAdmissionQueue q = new FairAdmissionQueue(100);
+        Map<String, Ticket> t = new LinkedHashMap<>();
+        for (int i = 1; i <= 6; i++) t.put("batch" + i, q.enqueue("etl", Priority.BATCH, LATER));
+        for (int i = 1; i <= 5; i++) t.put("alice" + i, q.enqueue("alice", Priority.INTERACTIVE, LATER));
+        for (int i = 1; i <= 2; i++) t.put("bob" + i, q.enqueue("bob", Priority.STANDARD, LATER));
+        assertEquals(13, q.size());
+
+        assertEquals(List.of("batch1", "alice1", "alice2", "alice3", "alice4", "bob1", "bob2",
+                "batch2", "alice5", "batch3", "batch4", "batch5", "batch6"), drain(q, t));
+        assertEquals(0, q.size());
+        assertTrue(q.isEmpty());
+        assertFalse(q.grant());
+    }
+
+    @Test
+    public void testSameTenantDifferentClassesAreSeparateFlows() {
+        FairAdmissionQueue q = new FairAdmissionQueue(100);
+        Map<String, Ticket> t = new LinkedHashMap<>();
+        t.put("b1", q.enqueue("alice", Priority.BATCH, LATER));
+        t.put("b2", q.enqueue("alice", Priority.BATCH, LATER));
+        t.put("i1", q.enqueue("alice", Priority.INTERACTIVE, LATER));
+        assertEquals(List.of("b1", "i1", "b2"), drain(q, t));
+    }
+
+    @Test
+    public void testFullQueueRefuses() {
+        FairAdmissionQueue q = new FairAdmissionQueue(2);
+        assertNotNull(q.enqueue("a", Priority.STANDARD, LATER));
+        assertNotNull(q.enqueue("b", Priority.STANDARD, LATER));
+        assertNull(q.enqueue("c", Priority.INTERACTIVE, LATER));
+        assertNull(new FairAdmissionQueue(0).enqueue("a", Priority.STANDARD, LATER));
+    }
+
+    @Test
+    public void testPastDeadlineIsDroppedAndSkipped() throws Exception {
+        FairAdmissionQueue q = new FairAdmissionQueue(10);
+        Ticket soon = q.enqueue("a", Priority.STANDARD, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20));
+        Ticket expired = q.enqueue("b", Priority.STANDARD, System.nanoTime() - 1);
+        Ticket later = q.enqueue("c", Priority.STANDARD, LATER);
+
+        assertFalse(soon.outcome().get(5, TimeUnit.SECONDS));
+        assertFalse(expired.outcome().get(5, TimeUnit.SECONDS));
+        assertEquals(1, q.size());
+        assertTrue(q.grant());
+        assertTrue(later.outcome().get(5, TimeUnit.SECONDS));
+        assertTrue(q.isEmpty());
+        assertFalse(q.grant());
+    }
+
+    @Test
+    public void testGrantSkipsTicketWhoseDeadlineFiredFirst() {
+        FairAdmissionQueue q = new FairAdmissionQueue(10);
+        Ticket first = q.enqueue("a", Priority.STANDARD, LATER);
+        Ticket second = q.enqueue("b", Priority.STANDARD, LATER);
+        // Stands in for a deadline firing between dequeue and completion.
+        first.outcome().complete(false);
+        assertTrue(q.grant());
+        assertFalse(first.granted());
+        assertTrue(second.granted());
+    }
+
+    @Test
+    public void testRequeuedTicketKeepsItsPlace() {
+        FairAdmissionQueue q = new FairAdmissionQueue(10);
+        Ticket first = q.enqueue("a", Priority.STANDARD, LATER);
+        Ticket second = q.enqueue("a", Priority.STANDARD, LATER);
+        assertTrue(q.grant());
+        assertTrue(first.granted());
+        q.requeue(first);
+        assertFalse(first.granted());
+        assertEquals(2, q.size());
+        assertTrue(q.grant());
+        assertTrue(first.granted());
+        assertFalse(second.granted());
+    }
+
+    @Test
+    public void testGrantRunsTheContinuationWithoutAWaitingThread() {
+        FairAdmissionQueue q = new FairAdmissionQueue(10);
+        Ticket t = q.enqueue("a", Priority.STANDARD, LATER);
+        AtomicBoolean admitted = new AtomicBoolean();
+        t.outcome().thenAccept(admitted::set);
+        assertFalse(admitted.get());
+        assertTrue(q.grant());
+        assertTrue(admitted.get());
+    }
+
+    @Test
+    public void testRequeuedTicketStillExpires() throws Exception {
+        FairAdmissionQueue q = new FairAdmissionQueue(10);
+        Ticket t = q.enqueue("a", Priority.STANDARD, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(q.grant());
+        q.requeue(t);
+        assertFalse(t.granted());
+        assertFalse(t.outcome().get(5, TimeUnit.SECONDS));
+        assertTrue(q.isEmpty());
+    }
+
+    @Test
+    public void testSlotFreedForOneModelGoesToItsRequest() {
+        // Two models on disjoint containers, both at their limit of one request.
+        Map<String, Integer> inFlight = new ConcurrentHashMap<>(Map.of("a1", 1, "b1", 1));
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, inFlight::get, new MetricsCollector(8002));
+        RoutingTable modelA = new RoutingTable(1L, List.of(new RoutingTable.Backend("a1", "h1")));
+        RoutingTable modelB = new RoutingTable(1L, List.of(new RoutingTable.Backend("b1", "h2")));
+        FairAdmissionQueue q = new FairAdmissionQueue(10);
+        Ticket a = q.enqueue("alice", Priority.STANDARD, LATER, () -> !limiter.open(modelA).isEmpty());
+        Ticket b = q.enqueue("bob", Priority.STANDARD, LATER, () -> !limiter.open(modelB).isEmpty());
+        assertFalse(q.grant());
+
+        inFlight.put("b1", 0);
+        assertTrue(q.grant());
+        // Alice is first in line, but the slot is of no use to her.
+        assertTrue(b.granted());
+        assertFalse(a.granted());
+        assertEquals(1, q.size());
+    }
+
+    @Test
+    public void testPriorityParsing() {
+        assertEquals(Priority.BATCH, Priority.parse(" Batch "));
+        assertEquals(Priority.INTERACTIVE, Priority.parse("interactive"));
+        assertNull(Priority.parse("urgent"));
+        assertNull(Priority.parse(null));
+        assertEquals("standard", Priority.STANDARD.label());
+    }
+}
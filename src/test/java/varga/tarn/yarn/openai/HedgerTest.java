@@ -0,0 +1,165 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+import varga.tarn.yarn.MetricsCollector;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HedgerTest {
+
+    private final MetricsCollector metrics = new MetricsCollector(8002);
+
+    /** A model whose p95 is just under 10 ms. */
+    private Hedger hedger(double budgetPercent) {
+        for (int i = 0; i < 100; i++) {
+            metrics.recordInferenceLatency("e5", 8.0);
+        }
+        return new Hedger(List.of("e5"), budgetPercent, metrics);
+    }
+
+    @Test
+    public void testOnlyOptedInModelsAreHedged() {
+        assertTrue(new Hedger(List.of("e5"), 5, metrics).hedges("e5"));
+        assertFalse(new Hedger(List.of("e5"), 5, metrics).hedges("llama"));
+        assertTrue(new Hedger(List.of("*"), 5, metrics).hedges("llama"));
+    }
+
+    @Test
+    public void testDelayIsTheModelP95OnceEnoughSamplesExist() {
+        Hedger h = new Hedger(List.of("e5"), 5, metrics);
+        for (int i = 0; i < Hedger.MIN_SAMPLES - 1; i++) {
+            metrics.recordInferenceLatency("e5", 8.0);
+        }
+        assertEquals(-1, h.delayNanos("e5"));
+        metrics.recordInferenceLatency("e5", 8.0);
+        assertEquals(9.75, h.delayNanos("e5") / 1e6, 0.01);
+    }
+
+    @Test
+    public void testSlowPrimaryLosesToTheHedge() throws Exception {
+        Hedger h = hedger(100);
+        CompletableFuture<String> primary = new CompletableFuture<>();
+        Hedger.Outcome<String> reply = h.send("e5", () -> primary, () -> CompletableFuture.completedFuture("backup"))
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals("backup", reply.value);
+        assertTrue(reply.hedge);
+        // The loser is cancelled right after the result completes.
+        for (int i = 0; i < 1000 && !primary.isDone(); i++) {
+            Thread.sleep(1);
+        }
+        assertTrue(primary.isCancelled());
+        assertEquals(1L, (long) metrics.getHedgesSent().get("e5"));
+        assertEquals(1L, (long) metrics.getHedgesWon().get("e5"));
+    }
+
+    @Test
+    public void testFastPrimaryIsNotHedged() throws Exception {
+        Hedger h = hedger(100);
+        AtomicInteger backups = new AtomicInteger();
+        Hedger.Outcome<String> reply = h.send("e5", () -> CompletableFuture.completedFuture("primary"), () -> {
+            backups.incrementAndGet();
+            return CompletableFuture.completedFuture("backup");
+        }).get(5, TimeUnit.SECONDS);
+        Thread.sleep(50);
+
+        assertEquals("primary", reply.value);
+        assertFalse(reply.hedge);
+        assertEquals(0, backups.get());
+        assertNull(metrics.getHedgesSent().get("e5"));
+    }
+
+    @Test
+    public void testPrimaryStillWinsWhenTheHedgeIsSlower() throws Exception {
+        Hedger h = hedger(100);
+        CompletableFuture<String> primary = new CompletableFuture<>();
+        CompletableFuture<String> backup = new CompletableFuture<>();
+        CompletableFuture<Hedger.Outcome<String>> result = h.send("e5", () -> primary, () -> backup);
+        while (metrics.getHedgesSent().get("e5") == null) {
+            Thread.sleep(1);
+        }
+        primary.complete("primary");
+
+        Hedger.Outcome<String> reply = result.get(5, TimeUnit.SECONDS);
+        assertEquals("primary", reply.value);
+        assertFalse(reply.hedge);
+        assertTrue(backup.isCancelled());
+        assertNull(metrics.getHedgesWon().get("e5"));
+    }
+
+    @Test
+    public void testBudgetBoundsTheHedges() throws Exception {
+        // 10% of 20 requests buys two hedges.
+        Hedger h = hedger(10);
+        AtomicInteger backups = new AtomicInteger();
+        for (int i = 0; i < 20; i++) {
+            CompletableFuture<String> primary = new CompletableFuture<>();
+            CompletableFuture<Hedger.Outcome<String>> result = h.send("e5", () -> primary, () -> {
+                backups.incrementAndGet();
+                return new CompletableFuture<>();
+            });
+            Thread.sleep(30);
+            primary.complete("primary");
+            assertEquals("primary", result.get(5, TimeUnit.SECONDS).value);
+        }
+        assertEquals(2, backups.get());
+        assertEquals(0, h.budget());
+    }
+
+    @Test
+    public void testNoOtherBackendWaitsForThePrimary() throws Exception {
+        Hedger h = hedger(100);
+        CompletableFuture<String> primary = new CompletableFuture<>();
+        CompletableFuture<Hedger.Outcome<String>> result = h.send("e5", () -> primary, () -> null);
+        Thread.sleep(30);
+        assertFalse(result.isDone());
+        primary.completeExceptionally(new IOException("down"));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IOException);
+    }
+
+    @Test
+    public void testFailsOnlyWhenEveryAttemptFailed() throws Exception {
+        Hedger h = hedger(100);
+        CompletableFuture<String> primary = new CompletableFuture<>();
+        CompletableFuture<String> backup = new CompletableFuture<>();
+        CompletableFuture<Hedger.Outcome<String>> result = h.send("e5", () -> primary, () -> backup);
+        while (metrics.getHedgesSent().get("e5") == null) {
+            Thread.sleep(1);
+        }
+        backup.completeExceptionally(new IOException("hedge down"));
+        assertFalse(result.isDone());
+        primary.completeExceptionally(new IOException("primary down"));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertEquals("primary down", e.getCause().getMessage());
+    }
+}
@@ -0,0 +1,109 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+import varga.tarn.yarn.RoutingTable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoraResidencyTest {
+
+    private final AtomicLong now = new AtomicLong(1L);
+
+    private static RoutingTable table(String... ids) {
+        List<RoutingTable.Backend> backends = new ArrayList<>();
+        for (String id : ids) backends.add(new RoutingTable.Backend(id, "h-" + id));
+        return new RoutingTable(1L, backends);
+    }
+
+    private LoraResidency residency(int maxReplicas, double rpsPerReplica) {
+        return new LoraResidency(new BackendSelector(id -> 0), maxReplicas, rpsPerReplica, now::get);
+    }
+
+    @Test
+    public void testLightTrafficStaysOnOneContainer() {
+        LoraResidency r = residency(3, 2.0);
+        RoutingTable t = table("c1", "c2", "c3", "c4");
+        Set<String> used = new HashSet<>();
+        int cold = 0;
+        for (int i = 0; i < 30; i++) {
+            LoraResidency.Choice c = r.pick("llama#support", t);
+            used.add(c.backend.containerId);
+            if (c.cold) cold++;
+            now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        }
+        assertEquals(1, used.size());
+        assertEquals(1, cold);
+    }
+
+    @Test
+    public void testHotAdapterSpreadsUpToMaxReplicas() {
+        LoraResidency r = residency(3, 2.0);
+        RoutingTable t = table("c1", "c2", "c3", "c4", "c5");
+        Set<String> used = new HashSet<>();
+        int cold = 0;
+        LoraResidency.Choice last = null;
+        for (int i = 0; i < 400; i++) {
+            last = r.pick("llama#support", t);
+            used.add(last.backend.containerId);
+            if (last.cold) cold++;
+            now.addAndGet(TimeUnit.MILLISECONDS.toNanos(50));
+        }
+        assertEquals(3, used.size());
+        assertEquals(3, cold);
+        assertEquals(3, last.replicas);
+    }
+
+    @Test
+    public void testDepartedOrIdleReplicasAreForgotten() {
+        LoraResidency r = residency(3, 2.0);
+        String first = r.pick("llama#support", table("c1", "c2")).backend.containerId;
+        String other = first.equals("c1") ? "c2" : "c1";
+
+        LoraResidency.Choice moved = r.pick("llama#support", table(other));
+        assertTrue(moved.cold);
+        assertEquals(other, moved.backend.containerId);
+        assertEquals(1, moved.replicas);
+
+        LoraResidency.Choice warm = r.pick("llama#support", table("c1", "c2"));
+        assertFalse(warm.cold);
+        assertEquals(other, warm.backend.containerId);
+
+        now.addAndGet(LoraResidency.RESIDENCY_TTL_NANOS + 1);
+        assertTrue(r.pick("llama#support", table("c1", "c2")).cold);
+    }
+
+    @Test
+    public void testTargetReplicasIsClamped() {
+        LoraResidency r = residency(3, 2.0);
+        assertEquals(1, r.targetReplicas(0.0));
+        assertEquals(2, r.targetReplicas(3.5));
+        assertEquals(3, r.targetReplicas(100.0));
+    }
+}
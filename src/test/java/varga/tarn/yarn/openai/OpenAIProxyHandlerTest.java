@@ -32,6 +32,7 @@ import org.junit.jupiter.api.Test;
 import varga.tarn.yarn.ApplicationMaster;
 import varga.tarn.yarn.MetricsCollector;
 import varga.tarn.yarn.RangerAuthorizer;
+import varga.tarn.yarn.RoutingTable;
 import varga.tarn.yarn.TarnConfig;
 
 import java.net.InetSocketAddress;
@@ -43,6 +44,7 @@ import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -111,6 +113,8 @@ public class OpenAIProxyHandlerTest {
         List<Container> list = new ArrayList<>();
         list.add(c);
         when(mockAm.getRunningContainers()).thenReturn(list);
+        when(mockAm.getRoutingTable()).thenReturn(new RoutingTable(1L,
+                List.of(new RoutingTable.Backend("container_1", "127.0.0.1"))));
         when(mockAm.getMetricsCollector()).thenReturn(metrics);
         when(mockAm.getRangerAuthorizer()).thenReturn(mockRanger);
         when(mockAm.getAvailableModels()).thenReturn(List.of("llama-3-70b", "stable-diffusion"));
@@ -122,10 +126,15 @@ public class OpenAIProxyHandlerTest {
         config.openaiProxyEnabled = true;
         config.tritonPort = fakeTriton.getAddress().getPort();
         config.tlsEnabled = false;
+        configureEngine(config);
         proxy = new OpenAIProxyServer(config, mockAm, null);
         proxy.start();
     }
 
+    /** Hook for subclasses that run this suite against another proxy engine. */
+    protected void configureEngine(TarnConfig config) {
+    }
+
     @AfterEach
     void teardown() {
         if (proxy != null) proxy.stop();
@@ -230,7 +239,22 @@ public class OpenAIProxyHandlerTest {
     @Test
     public void returns503WhenNoContainers() throws Exception {
         when(mockAm.getRunningContainers()).thenReturn(new ArrayList<>());
+        when(mockAm.getRoutingTable()).thenReturn(RoutingTable.EMPTY);
+        when(mockRanger.isAllowed(anyString(), anySet(), eq("infer"), anyString(), anyString())).thenReturn(true);
+
+        HttpResponse<String> resp = HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder().uri(URI.create(proxyUrl("/v1/chat/completions")))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"model\":\"llama-3-70b\"}"))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(503, resp.statusCode());
+    }
+
+    @Test
+    public void returns503WithRetryAfterWhenNoContainerHostsTheModel() throws Exception {
         when(mockRanger.isAllowed(anyString(), anySet(), eq("infer"), anyString(), anyString())).thenReturn(true);
+        metrics.getModelPlacement().update("container_1", Set.of("stable-diffusion"));
 
         HttpResponse<String> resp = HttpClient.newHttpClient().send(
                 HttpRequest.newBuilder().uri(URI.create(proxyUrl("/v1/chat/completions")))
@@ -239,6 +263,9 @@ public class OpenAIProxyHandlerTest {
                         .build(),
                 HttpResponse.BodyHandlers.ofString());
         assertEquals(503, resp.statusCode());
+        assertTrue(resp.body().contains("model_not_loaded"));
+        assertTrue(resp.headers().firstValue("Retry-After").isPresent());
+        assertEquals(0, tritonHits.get());
     }
 
     @Test
@@ -252,6 +279,25 @@ public class OpenAIProxyHandlerTest {
         assertEquals(400, resp.statusCode());
     }
 
+    @Test
+    public void oversizedBodyReturns413WithoutReachingTriton() throws Exception {
+        proxy.stop();
+        config.proxyMaxBodyBytes = 1024;
+        proxy = new OpenAIProxyServer(config, mockAm, null);
+        proxy.start();
+
+        String big = "{\"model\":\"llama-3-70b\",\"input\":\"" + "x".repeat(4096) + "\"}";
+        HttpResponse<String> resp = HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder().uri(URI.create(proxyUrl("/v1/embeddings")))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(big))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(413, resp.statusCode());
+        assertEquals("request_too_large", om.readTree(resp.body()).get("error").get("type").asText());
+        assertEquals(0, tritonHits.get());
+    }
+
     @Test
     public void usageCallbackAccountsTokensForStreamingClients() throws Exception {
         HttpResponse<String> resp = HttpClient.newHttpClient().send(
@@ -323,6 +369,50 @@ public class OpenAIProxyHandlerTest {
         assertEquals(17L, (long) metrics.getTokensOut().get("alice|llama-3-70b"));
     }
 
+    @Test
+    public void streamingUsageIsAccountedInBandAndStrippedUnlessRequested() throws Exception {
+        fakeTriton.removeContext("/v1/chat/completions");
+        fakeTriton.createContext("/v1/chat/completions", exh -> {
+            tritonHits.incrementAndGet();
+            JsonNode req = om.readTree(exh.getRequestBody().readAllBytes());
+            assertTrue(req.path("stream_options").path("include_usage").asBoolean(),
+                    "proxy must ask Triton for the usage chunk");
+            exh.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exh.sendResponseHeaders(200, 0);
+            try (var os = exh.getResponseBody()) {
+                os.write("data: {\"choices\":[{\"delta\":{\"content\":\"hi\"}}],\"usage\":null}\n\n"
+                        .getBytes(StandardCharsets.UTF_8));
+                os.flush();
+                os.write(("data: {\"choices\":[],\"usage\":{\"prompt_tokens\":11,\"completion_tokens\":5,"
+                        + "\"total_tokens\":16}}\n\ndata: [DONE]\n\n").getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        when(mockRanger.isAllowed(anyString(), anySet(), eq("infer"), eq("llama-3-70b"), anyString())).thenReturn(true);
+
+        HttpResponse<String> plain = streamChat("{\"model\":\"llama-3-70b\",\"stream\":true,\"messages\":[]}");
+        assertEquals(200, plain.statusCode());
+        assertTrue(plain.body().contains("[DONE]"));
+        assertFalse(plain.body().contains("prompt_tokens"), "injected usage chunk must not reach the client");
+        assertEquals(11L, (long) metrics.getTokensIn().get("alice|llama-3-70b"));
+        assertEquals(5L, (long) metrics.getTokensOut().get("alice|llama-3-70b"));
+
+        HttpResponse<String> asked = streamChat("{\"model\":\"llama-3-70b\",\"stream\":true,"
+                + "\"stream_options\":{\"include_usage\":true},\"messages\":[]}");
+        assertTrue(asked.body().contains("\"prompt_tokens\":11"), "requested usage chunk is relayed");
+        assertEquals(22L, (long) metrics.getTokensIn().get("alice|llama-3-70b"));
+    }
+
+    private HttpResponse<String> streamChat(String body) throws Exception {
+        return HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder().uri(URI.create(proxyUrl("/v1/chat/completions")))
+                        .header("Content-Type", "application/json")
+                        .header("X-Forwarded-User", "alice")
+                        .timeout(Duration.ofSeconds(5))
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
     @Test
     public void clientIpPropagatesToRanger() throws Exception {
         // Verify X-Forwarded-For (set by Knox / ingress) is the IP passed to Ranger audit.
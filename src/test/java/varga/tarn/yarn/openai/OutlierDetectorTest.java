@@ -0,0 +1,188 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+import varga.tarn.yarn.MetricsCollector;
+import varga.tarn.yarn.RoutingTable;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OutlierDetectorTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final MetricsCollector metrics = new MetricsCollector(8002);
+    private long now = 1_000 * MS;
+    private final RoutingTable serving = new RoutingTable(1L, List.of(
+            new RoutingTable.Backend("c1", "h1"), new RoutingTable.Backend("c2", "h2"),
+            new RoutingTable.Backend("c3", "h3"), new RoutingTable.Backend("c4", "h4")));
+
+    private OutlierDetector detector(int maxEjectionPercent) {
+        OutlierDetector d = new OutlierDetector(5, 1000, maxEjectionPercent, metrics, () -> now);
+        d.retain(serving);
+        for (RoutingTable.Backend b : serving.backends()) {
+            d.onSuccess(b.containerId, 10 * MS);
+        }
+        return d;
+    }
+
+    private static List<String> ids(RoutingTable t) {
+        return t.backends().stream().map(b -> b.containerId).toList();
+    }
+
+    @Test
+    public void testConsecutiveErrorsEjectForTheBasePeriod() {
+        OutlierDetector d = detector(50);
+        for (int i = 0; i < 4; i++) d.onFailure("c2");
+        assertFalse(d.isEjected("c2"));
+        d.onFailure("c2");
+
+        assertTrue(d.isEjected("c2"));
+        assertEquals(List.of("c1", "c3", "c4"), ids(d.admit(serving)));
+        assertEquals(1L, (long) metrics.getOutlierEjections().get("c2|" + OutlierDetector.CONSECUTIVE));
+        assertTrue(metrics.getOutlierEjectedUntil().get("c2") > System.currentTimeMillis());
+
+        now += 1000 * MS;
+        assertFalse(d.isEjected("c2"));
+        assertSame(serving, d.admit(serving));
+    }
+
+    @Test
+    public void testSuccessResetsTheConsecutiveCount() {
+        OutlierDetector d = detector(50);
+        for (int i = 0; i < 20; i++) {
+            d.onFailure("c1");
+            d.onFailure("c1");
+            d.onSuccess("c1", 10 * MS);
+            d.onSuccess("c1", 10 * MS);
+            d.onSuccess("c1", 10 * MS);
+        }
+        assertFalse(d.isEjected("c1"));
+    }
+
+    @Test
+    public void testHighErrorRatioEjectsWithoutAConsecutiveRun() {
+        OutlierDetector d = detector(50);
+        for (int i = 0; i < OutlierDetector.MIN_REQUESTS && !d.isEjected("c1"); i++) {
+            d.onFailure("c1");
+            d.onFailure("c1");
+            d.onSuccess("c1", 10 * MS);
+        }
+        assertTrue(d.isEjected("c1"));
+        assertEquals(1L, (long) metrics.getOutlierEjections().get("c1|" + OutlierDetector.FAILURE_RATE));
+    }
+
+    @Test
+    public void testLatencyFarAboveThePeerMedianEjects() {
+        OutlierDetector d = detector(50);
+        for (int i = 0; i < OutlierDetector.MIN_REQUESTS; i++) {
+            d.onSuccess("c1", 10 * MS);
+            d.onSuccess("c2", 12 * MS);
+            d.onSuccess("c3", 11 * MS);
+            d.onSuccess("c4", 200 * MS);
+        }
+        assertTrue(d.isEjected("c4"));
+        assertFalse(d.isEjected("c1"));
+        assertEquals(1L, (long) metrics.getOutlierEjections().get("c4|" + OutlierDetector.SLOW));
+    }
+
+    @Test
+    public void testRepeatedEjectionsGrowExponentially() {
+        OutlierDetector d = detector(50);
+        long[] expected = {1000, 2000, 4000};
+        for (long ms : expected) {
+            for (int i = 0; i < 5; i++) d.onFailure("c1");
+            assertTrue(d.isEjected("c1"));
+            now += (ms - 1) * MS;
+            assertTrue(d.isEjected("c1"), "still ejected before " + ms + " ms");
+            now += MS;
+            assertFalse(d.isEjected("c1"));
+        }
+    }
+
+    @Test
+    public void testEjectionLevelIsForgivenAfterAQuietSpell() {
+        OutlierDetector d = detector(50);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 5; i++) d.onFailure("c1");
+            now += 4000 * MS;
+        }
+        now += 20_000 * MS;
+        for (int i = 0; i < 5; i++) d.onFailure("c1");
+        now += 1000 * MS;
+        assertFalse(d.isEjected("c1"));
+    }
+
+    @Test
+    public void testAtMostTheConfiguredShareIsEjected() {
+        OutlierDetector d = detector(50);
+        for (String cid : List.of("c1", "c2", "c3")) {
+            for (int i = 0; i < 5; i++) d.onFailure(cid);
+        }
+        assertTrue(d.isEjected("c1"));
+        assertTrue(d.isEjected("c2"));
+        assertFalse(d.isEjected("c3"));
+    }
+
+    @Test
+    public void testEjectionCapCountsOnlyRoutableContainers() {
+        OutlierDetector d = detector(50);
+        d.retain(new RoutingTable(2L, serving.backends().subList(0, 2)));
+        d.onSuccess("c3", 10 * MS);
+        for (int i = 0; i < 5; i++) d.onFailure("c1");
+        for (int i = 0; i < 5; i++) d.onFailure("c2");
+
+        // Half of the two routable containers, however many were seen before.
+        assertTrue(d.isEjected("c1"));
+        assertFalse(d.isEjected("c2"));
+    }
+
+    @Test
+    public void testContainersThatLeftTheTableAreNotPeers() {
+        OutlierDetector d = detector(50);
+        for (int i = 0; i < OutlierDetector.MIN_REQUESTS; i++) {
+            d.onSuccess("c1", 10 * MS);
+            d.onSuccess("c2", 12 * MS);
+        }
+        // c1 and c2 are released; the fast median they set must not eject the slow survivors.
+        d.retain(new RoutingTable(2L, serving.backends().subList(2, 4)));
+        for (int i = 0; i < OutlierDetector.MIN_REQUESTS; i++) {
+            d.onSuccess("c3", 100 * MS);
+            d.onSuccess("c4", 200 * MS);
+        }
+        assertFalse(d.isEjected("c3"));
+        assertFalse(d.isEjected("c4"));
+    }
+
+    @Test
+    public void testAllEjectedStillRoutesEverywhere() {
+        OutlierDetector d = detector(100);
+        for (RoutingTable.Backend b : serving.backends()) {
+            for (int i = 0; i < 5; i++) d.onFailure(b.containerId);
+        }
+        assertTrue(d.isEjected("c4"));
+        assertSame(serving, d.admit(serving));
+    }
+}
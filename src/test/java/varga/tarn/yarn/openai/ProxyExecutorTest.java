@@ -0,0 +1,140 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProxyExecutorTest {
+
+    private static void awaitCondition(BooleanSupplier cond) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!cond.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(cond.getAsBoolean(), "condition not reached within 5s");
+    }
+
+    @Test
+    public void testCeilingBoundsActiveAndReportsQueued() throws Exception {
+        ProxyExecutor ex = new ProxyExecutor(Executors.newCachedThreadPool(), 2, false);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger maxSeen = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(5);
+        try {
+            for (int i = 0; i < 5; i++) {
+                ex.execute(() -> {
+                    maxSeen.accumulateAndGet(ex.getActive(), Math::max);
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    done.countDown();
+                });
+            }
+            awaitCondition(() -> ex.getActive() == 2 && ex.getQueued() == 3);
+
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            awaitCondition(() -> ex.getActive() == 0 && ex.getQueued() == 0);
+            assertTrue(maxSeen.get() <= 2, "max active was " + maxSeen.get());
+        } finally {
+            ex.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailingExchangeReleasesItsSlot() throws Exception {
+        ProxyExecutor ex = new ProxyExecutor(Executors.newCachedThreadPool(), 1, false);
+        CountDownLatch ran = new CountDownLatch(1);
+        try {
+            ex.execute(() -> {
+                throw new IllegalStateException("boom");
+            });
+            ex.execute(ran::countDown);
+            assertTrue(ran.await(5, TimeUnit.SECONDS));
+        } finally {
+            ex.shutdown();
+        }
+    }
+
+    @Test
+    public void testVirtualModeHonoursConfiguredCeiling() throws Exception {
+        // On JDK 21+ this runs on virtual threads; older runtimes fall back to a pool of
+        // ceiling-many platform threads. Either way the configured ceiling applies.
+        ProxyExecutor ex = ProxyExecutor.create(ProxyExecutor.MODE_VIRTUAL, 3);
+        CountDownLatch ran = new CountDownLatch(1);
+        try {
+            assertEquals(3, ex.getMaxConcurrency());
+            assertEquals(ProxyExecutor.newVirtualThreadExecutor() != null, ex.usesVirtualThreads());
+            ex.execute(ran::countDown);
+            assertTrue(ran.await(5, TimeUnit.SECONDS));
+        } finally {
+            ex.shutdown();
+        }
+    }
+
+    @Test
+    public void testExecuteNeverBlocksTheDispatcherAtTheCeiling() throws Exception {
+        ThreadPoolExecutor threads = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+        ProxyExecutor ex = new ProxyExecutor(threads, 2, true);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < 5; i++) {
+                ex.execute(() -> {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            // Every exchange got a thread right away; those over the ceiling park on it.
+            assertEquals(5, threads.getTaskCount());
+            awaitCondition(() -> ex.getActive() == 2 && ex.getQueued() == 3);
+
+            release.countDown();
+            awaitCondition(() -> ex.getActive() == 0 && ex.getQueued() == 0);
+        } finally {
+            ex.shutdown();
+        }
+    }
+
+    @Test
+    public void testPlatformModeCeilingIsPoolSize() {
+        ProxyExecutor ex = ProxyExecutor.create(ProxyExecutor.MODE_PLATFORM, 10_000);
+        try {
+            assertFalse(ex.usesVirtualThreads());
+            assertEquals(Math.max(8, Runtime.getRuntime().availableProcessors() * 4), ex.getMaxConcurrency());
+        } finally {
+            ex.shutdown();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for request-body routing-field extraction: the previous full
+ * {@code Map<String, Object>} materialization against the streaming {@link RequestBodyInspector}
+ * pass, on 1 KB, 100 KB and 5 MB chat bodies. Run with {@code -prof gc} to compare allocation
+ * per request as well as time. Not a unit test — run via {@link #main}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBodyInspectorBenchmark {
+
+    @Param({"1024", "102400", "5242880"})
+    public int bodyBytes;
+
+    /** Where the routing fields sit: "head" (usual client order) or "tail" (worst case). */
+    @Param({"head", "tail"})
+    public String fieldOrder;
+
+    private final ObjectMapper om = new ObjectMapper();
+    private byte[] body;
+
+    @Setup
+    public void setup() {
+        StringBuilder messages = new StringBuilder("[");
+        String turn = "{\"role\":\"user\",\"content\":\"The quick brown fox jumps over the lazy dog. \"}";
+        while (messages.length() + turn.length() + 64 < bodyBytes) {
+            if (messages.length() > 1) messages.append(',');
+            messages.append(turn);
+        }
+        messages.append(']');
+        String json = "head".equals(fieldOrder)
+                ? "{\"model\":\"llama-3-70b\",\"stream\":true,\"messages\":" + messages + "}"
+                : "{\"messages\":" + messages + ",\"model\":\"llama-3-70b\",\"stream\":true}";
+        body = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Object jacksonMap() throws Exception {
+        Map<String, Object> m = om.readValue(body, new TypeReference<Map<String, Object>>() { });
+        return m.get("model");
+    }
+
+    @Benchmark
+    public Object streamingInspect() throws Exception {
+        return RequestBodyInspector.inspect(body, 0, body.length).model;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(RequestBodyInspectorBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
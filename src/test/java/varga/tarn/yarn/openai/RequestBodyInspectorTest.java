@@ -0,0 +1,174 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RequestBodyInspectorTest {
+
+    private static RequestBodyInspector.Fields inspect(String json) throws IOException {
+        byte[] b = json.getBytes(StandardCharsets.UTF_8);
+        return RequestBodyInspector.inspect(b, 0, b.length);
+    }
+
+    @Test
+    public void testExtractsModelAndStream() throws Exception {
+        RequestBodyInspector.Fields f = inspect(
+                "{\"messages\":[{\"role\":\"user\",\"content\":\"hi\"}],\"model\":\"llama\",\"stream\":true}");
+        assertEquals("llama", f.model);
+        assertTrue(f.stream);
+    }
+
+    @Test
+    public void testStopsOnceRoutingFieldsAreKnown() throws Exception {
+        // Everything after "stream" is never tokenized, so trailing garbage is not an error here.
+        RequestBodyInspector.Fields f = inspect("{\"model\":\"m\",\"stream\":false,\"messages\":[ this is not json");
+        assertEquals("m", f.model);
+        assertFalse(f.stream);
+    }
+
+    @Test
+    public void testNestedFieldsAreIgnored() throws Exception {
+        RequestBodyInspector.Fields f = inspect(
+                "{\"metadata\":{\"model\":\"nested\",\"stream\":true},\"input\":[1,2,3],\"model\":\"top\"}");
+        assertEquals("top", f.model);
+        assertFalse(f.stream);
+    }
+
+    @Test
+    public void testNonBooleanStreamAndNonStringModel() throws Exception {
+        RequestBodyInspector.Fields f = inspect("{\"model\":42,\"stream\":\"true\"}");
+        assertNull(f.model);
+        assertFalse(f.stream);
+        assertNull(inspect("{\"messages\":[]}").model);
+    }
+
+    @Test
+    public void testRejectsNonObjectAndTruncatedBodies() {
+        assertThrows(IOException.class, () -> inspect("[1,2]"));
+        assertThrows(IOException.class, () -> inspect(""));
+        assertThrows(IOException.class, () -> inspect("{\"messages\":[1,2"));
+        assertThrows(IOException.class, () -> inspect("not json"));
+    }
+
+    @Test
+    public void testHonoursOffsetAndLength() throws Exception {
+        byte[] b = "xx{\"model\":\"m\"}yy".getBytes(StandardCharsets.UTF_8);
+        assertEquals("m", RequestBodyInspector.inspect(b, 2, b.length - 4).model);
+    }
+
+    private static String injected(String json) throws IOException {
+        RequestBodyInspector.Fields f = inspect(json);
+        if (f.usageInjection == null) return json;
+        byte[] b = json.getBytes(StandardCharsets.UTF_8);
+        return new String(b, 0, f.usageInjectAt, StandardCharsets.UTF_8)
+                + new String(f.usageInjection, StandardCharsets.UTF_8)
+                + new String(b, f.usageInjectAt, b.length - f.usageInjectAt, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testStreamingRequestGetsIncludeUsage() throws Exception {
+        assertEquals("{\"model\":\"m\",\"stream\":true,\"messages\":[]"
+                        + ",\"stream_options\":{\"include_usage\":true}}",
+                injected("{\"model\":\"m\",\"stream\":true,\"messages\":[]}"));
+        assertEquals("{\"stream_options\":{\"include_usage\":true},\"model\":\"m\",\"stream\":true}",
+                injected("{\"stream_options\":{},\"model\":\"m\",\"stream\":true}"));
+        // An explicit false is overridden by a later duplicate key.
+        assertEquals("{\"model\":\"m\",\"stream\":true,\"stream_options\":{\"include_usage\":false"
+                        + ",\"include_usage\":true} }",
+                injected("{\"model\":\"m\",\"stream\":true,\"stream_options\":{\"include_usage\":false} }"));
+    }
+
+    @Test
+    public void testNothingInjectedWhenNotStreamingOrAlreadyRequested() throws Exception {
+        assertNull(inspect("{\"model\":\"m\",\"messages\":[]}").usageInjection);
+        assertNull(inspect("{\"model\":\"m\",\"stream\":false}").usageInjection);
+        RequestBodyInspector.Fields f = inspect(
+                "{\"model\":\"m\",\"stream_options\":{\"include_usage\":true},\"stream\":true}");
+        assertTrue(f.stream);
+        assertNull(f.usageInjection);
+        assertEquals(-1, f.usageInjectAt);
+    }
+
+    @Test
+    public void testInjectionOffsetIsAbsolute() throws Exception {
+        byte[] b = "xx{\"model\":\"m\",\"stream\":true}yy".getBytes(StandardCharsets.UTF_8);
+        RequestBodyInspector.Fields f = RequestBodyInspector.inspect(b, 2, b.length - 4);
+        assertEquals('}', b[f.usageInjectAt]);
+        assertEquals(b.length - 3, f.usageInjectAt);
+    }
+
+    private static long prefixKey(String json, int chars) throws IOException {
+        byte[] b = json.getBytes(StandardCharsets.UTF_8);
+        return RequestBodyInspector.inspect(b, 0, b.length, chars).prefixKey;
+    }
+
+    @Test
+    public void testPrefixKeyIgnoresJsonFormatting() throws Exception {
+        long a = prefixKey("{\"model\":\"m\",\"messages\":[{\"role\":\"system\",\"content\":\"Be \\\"brief\\\"\"},"
+                + "{\"role\":\"user\",\"content\":\"hi\"}]}", 2048);
+        long b = prefixKey("{ \"messages\" : [ { \"role\" : \"system\", \"content\" : \"Be \\u0022brief\\\"\" },\n"
+                + "  { \"role\":\"user\", \"content\":[{\"type\":\"text\",\"text\":\"hi\"}] } ], \"model\":\"m\" }", 2048);
+        assertNotEquals(0L, a);
+        assertEquals(a, b);
+        assertNotEquals(a, prefixKey("{\"model\":\"m\",\"messages\":[{\"role\":\"system\",\"content\":\"Be long\"}]}", 2048));
+    }
+
+    @Test
+    public void testOnlyThePrefixCounts() throws Exception {
+        String shared = "You are a SQL assistant. ";
+        long a = prefixKey("{\"model\":\"m\",\"prompt\":\"" + shared + "List tables\"}", shared.length());
+        long b = prefixKey("{\"model\":\"m\",\"prompt\":\"" + shared + "Drop nothing\"}", shared.length());
+        assertEquals(a, b);
+        assertNotEquals(a, prefixKey("{\"model\":\"m\",\"prompt\":\"" + shared + "List tables\"}", 2048));
+    }
+
+    @Test
+    public void testNoPrefixKeyUnlessRequestedOrPresent() throws Exception {
+        assertEquals(0L, inspect("{\"model\":\"m\",\"messages\":[{\"role\":\"user\",\"content\":\"x\"}]}").prefixKey);
+        assertEquals(0L, prefixKey("{\"model\":\"m\",\"input\":\"embed me\"}", 2048));
+        // Streaming requests still get their usage splice point.
+        byte[] body = "{\"model\":\"m\",\"stream\":true,\"prompt\":\"p\"}".getBytes(StandardCharsets.UTF_8);
+        RequestBodyInspector.Fields f = RequestBodyInspector.inspect(body, 0, body.length, 2048);
+        assertNotEquals(0L, f.prefixKey);
+        assertNotNull(f.usageInjection);
+    }
+
+    @Test
+    public void testWantsBase64() {
+        assertTrue(wantsBase64("{\"model\":\"e\",\"input\":[\"a\"],\"encoding_format\":\"base64\"}"));
+        assertFalse(wantsBase64("{\"model\":\"e\",\"input\":\"a\",\"encoding_format\":\"float\"}"));
+        assertFalse(wantsBase64("{\"model\":\"e\",\"input\":{\"encoding_format\":\"base64\"}}"));
+        assertFalse(wantsBase64("{\"model\":\"e\",\"input\":\"a\"}"));
+        assertFalse(wantsBase64("[\"encoding_format\",\"base64\"]"));
+        assertFalse(wantsBase64("{\"encoding_format\":"));
+    }
+
+    private static boolean wantsBase64(String body) {
+        byte[] b = body.getBytes(StandardCharsets.UTF_8);
+        return RequestBodyInspector.wantsBase64(b, 0, b.length);
+    }
+}
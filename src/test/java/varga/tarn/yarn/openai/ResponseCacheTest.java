@@ -0,0 +1,140 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+import varga.tarn.yarn.MetricsCollector;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResponseCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final MetricsCollector mc = new MetricsCollector(8002);
+
+    private ResponseCache cache(int maxEntries, long maxBytes) {
+        return new ResponseCache(List.of("llama"), maxEntries, maxBytes, 60_000, mc, now::get);
+    }
+
+    private static String key(String user, String body) {
+        return key("/v1/chat/completions", user, body);
+    }
+
+    private static String key(String path, String user, String body) {
+        byte[] b = body.getBytes(StandardCharsets.UTF_8);
+        return ResponseCache.key(path, user, b, 0, b.length);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testKeyIsCanonicalAndPartitionedPerUser() {
+        String k = key("alice", "{\"model\":\"llama\",\"temperature\":0,\"messages\":[{\"role\":\"user\",\"content\":\"hi\"}]}");
+        assertNotNull(k);
+        assertEquals(k, key("alice", "{ \"messages\":[{\"content\":\"hi\",\"role\":\"user\"}], \"temperature\":0.0,"
+                + "\"model\":\"llama\",\"user\":\"trace-1\",\"stream_options\":{\"include_usage\":true}}"));
+        assertNotEquals(k, key("bob", "{\"model\":\"llama\",\"temperature\":0,\"messages\":[{\"role\":\"user\",\"content\":\"hi\"}]}"));
+        assertNotEquals(k, key("alice", "{\"model\":\"llama\",\"temperature\":0,\"stream\":true,"
+                + "\"messages\":[{\"role\":\"user\",\"content\":\"hi\"}]}"));
+    }
+
+    @Test
+    public void testKeyIsPartitionedPerEndpoint() {
+        String body = "{\"model\":\"llama\",\"temperature\":0,\"prompt\":\"hi\"}";
+        assertEquals(key("/v1/completions", "alice", body), key("/v1/completions", "alice", body));
+        assertNotEquals(key("/v1/completions", "alice", body), key("/v1/chat/completions", "alice", body));
+    }
+
+    @Test
+    public void testOnlyDeterministicRequestsHaveAKey() {
+        assertNull(key("u", "{\"model\":\"llama\",\"prompt\":\"hi\"}"));
+        assertNull(key("u", "{\"model\":\"llama\",\"prompt\":\"hi\",\"temperature\":0.7}"));
+        assertNull(key("u", "not json"));
+        assertNotNull(key("u", "{\"model\":\"llama\",\"prompt\":\"hi\",\"temperature\":0.7,\"seed\":42}"));
+    }
+
+    @Test
+    public void testEntriesExpire() {
+        ResponseCache c = cache(10, 1 << 20);
+        c.put("k", bytes("{}"));
+        now.addAndGet(59_999_000_000L);
+        assertNotNull(c.get("k"));
+        now.addAndGet(1_000_000L);
+        assertNull(c.get("k"));
+        assertEquals(0, c.size());
+        assertEquals(0L, c.bytes());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedPastEntryAndByteBounds() {
+        ResponseCache c = cache(2, 10);
+        c.put("a", bytes("aaaa"));
+        c.put("b", bytes("bbbb"));
+        c.get("a");
+        c.put("c", bytes("cccc"));
+        assertNotNull(c.get("a"));
+        assertNull(c.get("b"));
+
+        c.put("d", bytes("dddddddd"));
+        assertEquals(1, c.size());
+        assertEquals(8L, c.bytes());
+        assertEquals(1, mc.getResponseCacheEntries());
+
+        c.put("e", bytes("too large for it"));
+        assertNull(c.get("e"));
+    }
+
+    @Test
+    public void testRecorderStoresTheUpstreamBodyOnceRelayed() throws Exception {
+        ResponseCache c = cache(10, 1 << 20);
+        String sse = "data: {\"choices\":[{\"delta\":{\"content\":\"hi\"}}]}\n\n"
+                + "data: {\"choices\":[],\"usage\":{\"prompt_tokens\":3,\"completion_tokens\":1}}\n\n"
+                + "data: [DONE]\n\n";
+        ResponseFilter f = c.recorder("k", new SseUsageFilter((p, q) -> { }, true));
+        ByteArrayOutputStream client = new ByteArrayOutputStream();
+        byte[] b = bytes(sse);
+        f.write(b, 0, 10, client::write);
+        assertNull(c.get("k"));
+        f.write(b, 10, b.length - 10, client::write);
+        f.finish(client::write);
+
+        assertArrayEquals(b, c.get("k"));
+        String stripped = "data: {\"choices\":[{\"delta\":{\"content\":\"hi\"}}]}\n\ndata: [DONE]\n\n";
+        assertEquals(stripped, client.toString(StandardCharsets.UTF_8));
+        assertEquals(stripped, new String(ProxyPipeline.replaySse(c.get("k"), true), StandardCharsets.UTF_8));
+        assertEquals(sse, new String(ProxyPipeline.replaySse(c.get("k"), false), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testOptInIsPerModel() {
+        ResponseCache c = cache(10, 1024);
+        assertTrue(c.cachesModel("llama"));
+        assertFalse(c.cachesModel("mistral"));
+        assertTrue(new ResponseCache(List.of("*"), 10, 1024, 1000, mc).cachesModel("mistral"));
+    }
+}
@@ -0,0 +1,122 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    private static final HttpHeaders JSON = HttpHeaders.of(
+            Map.of("Content-Type", List.of("application/json")), (k, v) -> true);
+
+    private static List<ByteBuffer> chunk(String s) {
+        return List.of(ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static HttpResponse.BodySubscriber<String> read(SingleFlight.Flight f) throws Exception {
+        ProxyPipeline.Upstream up = f.response().get(5, TimeUnit.SECONDS);
+        HttpResponse.BodySubscriber<String> s = HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
+        up.body.subscribe(s);
+        return s;
+    }
+
+    private static String body(HttpResponse.BodySubscriber<String> s) throws Exception {
+        return s.getBody().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testFollowersShareTheLeadersResponseFromTheStart() throws Exception {
+        SingleFlight sf = new SingleFlight();
+        SingleFlight.Flight leader = sf.join("k");
+        SingleFlight.Flight early = sf.join("k");
+        assertTrue(leader.leader());
+        assertFalse(early.leader());
+        assertEquals(1, sf.inFlight());
+
+        SubmissionPublisher<List<ByteBuffer>> upstream = new SubmissionPublisher<>();
+        leader.start(new ProxyPipeline.Upstream(200, JSON, upstream));
+        HttpResponse.BodySubscriber<String> a = read(leader);
+        HttpResponse.BodySubscriber<String> b = read(early);
+        upstream.submit(chunk("data: 1\n\n"));
+
+        // Joins mid-stream: replays what was already relayed, then follows live.
+        SingleFlight.Flight late = sf.join("k");
+        assertFalse(late.leader());
+        assertEquals(200, late.response().get().status);
+        assertEquals("application/json", ProxyPipeline.firstHeader(late.response().get(), "Content-Type", "?"));
+        HttpResponse.BodySubscriber<String> c = read(late);
+        upstream.submit(chunk("data: 2\n\n"));
+        upstream.close();
+
+        assertEquals("data: 1\n\ndata: 2\n\n", body(a));
+        assertEquals("data: 1\n\ndata: 2\n\n", body(b));
+        assertEquals("data: 1\n\ndata: 2\n\n", body(c));
+        assertEquals(0, sf.inFlight());
+        assertTrue(sf.join("k").leader());
+    }
+
+    @Test
+    public void testFailureBeforeResponseReachesEveryParticipant() throws Exception {
+        SingleFlight sf = new SingleFlight();
+        SingleFlight.Flight leader = sf.join("k");
+        SingleFlight.Flight follower = sf.join("k");
+        leader.fail(new IOException("connect refused"));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> follower.response().get());
+        assertEquals("connect refused", e.getCause().getMessage());
+        assertTrue(sf.join("k").leader());
+    }
+
+    @Test
+    public void testUpstreamErrorMidBodyReachesReplays() throws Exception {
+        SingleFlight sf = new SingleFlight();
+        SingleFlight.Flight leader = sf.join("k");
+        SubmissionPublisher<List<ByteBuffer>> upstream = new SubmissionPublisher<>();
+        leader.start(new ProxyPipeline.Upstream(200, JSON, upstream));
+        HttpResponse.BodySubscriber<String> a = read(leader);
+        upstream.submit(chunk("{\"partial\""));
+        upstream.closeExceptionally(new IOException("reset"));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> body(a));
+        assertEquals("reset", e.getCause().getMessage());
+    }
+
+    @Test
+    public void testDistinctKeysDoNotCoalesce() {
+        SingleFlight sf = new SingleFlight();
+        assertTrue(sf.join("a").leader());
+        assertTrue(sf.join("b").leader());
+        assertEquals(2, sf.inFlight());
+    }
+}
@@ -0,0 +1,114 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SseUsageFilterTest {
+
+    private static final String CHUNK = "data: {\"choices\":[{\"delta\":{\"content\":\"hi\"}}],\"usage\":null}\n\n";
+    private static final String USAGE = "data: {\"choices\":[],\"usage\": {\"prompt_tokens\":11,"
+            + "\"completion_tokens\":5}}\r\n\r\n";
+    private static final String DONE = "data: [DONE]\n\n";
+    private static final String STREAM = CHUNK + CHUNK + USAGE + DONE;
+
+    private long[] seen;
+
+    private SseUsageFilter filter(boolean strip) {
+        seen = null;
+        return new SseUsageFilter((p, c) -> {
+            assertNull(seen, "usage reported twice");
+            seen = new long[] {p, c};
+        }, strip);
+    }
+
+    private static String relay(SseUsageFilter f, byte[] b, int split) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        f.write(b, 0, split, out::write);
+        f.write(b, split, b.length - split, out::write);
+        f.finish(out::write);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testObservesWithoutChangingTheStream() throws Exception {
+        byte[] b = STREAM.getBytes(StandardCharsets.UTF_8);
+        for (int split = 0; split <= b.length; split++) {
+            SseUsageFilter f = filter(false);
+            assertEquals(STREAM, relay(f, b, split));
+            assertArrayEquals(new long[] {11, 5}, seen, "split at " + split);
+        }
+    }
+
+    @Test
+    public void testStripsInjectedUsageEvent() throws Exception {
+        byte[] b = STREAM.getBytes(StandardCharsets.UTF_8);
+        for (int split = 0; split <= b.length; split++) {
+            SseUsageFilter f = filter(true);
+            assertEquals(CHUNK + CHUNK + DONE, relay(f, b, split), "split at " + split);
+            assertArrayEquals(new long[] {11, 5}, seen);
+            assertTrue(f.usageSeen());
+        }
+    }
+
+    @Test
+    public void testCompleteEventsAreNotHeldBack() throws Exception {
+        SseUsageFilter f = filter(true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] b = (CHUNK + "data: {\"cho").getBytes(StandardCharsets.UTF_8);
+        f.write(b, 0, b.length, out::write);
+        assertEquals(CHUNK, out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testUnterminatedLastEventIsStillInspected() throws Exception {
+        String body = CHUNK + "data: {\"usage\":{\"prompt_tokens\":3,\"completion_tokens\":4}}";
+        byte[] b = body.getBytes(StandardCharsets.UTF_8);
+        assertEquals(CHUNK, relay(filter(true), b, b.length));
+        assertArrayEquals(new long[] {3, 4}, seen);
+    }
+
+    @Test
+    public void testOversizedEventIsRelayedUnexamined() throws Exception {
+        StringBuilder big = new StringBuilder("data: {\"usage\":{\"prompt_tokens\":1},\"pad\":\"");
+        while (big.length() < SseUsageFilter.MAX_EVENT + 10) big.append('x');
+        big.append("\"}\n\n");
+        String body = big + DONE;
+        byte[] b = body.getBytes(StandardCharsets.UTF_8);
+        assertEquals(body, relay(filter(true), b, 100));
+        assertNull(seen);
+    }
+
+    @Test
+    public void testContentFramesAreTimedButUsageAndDoneAreNot() throws Exception {
+        int[] frames = new int[1];
+        SseUsageFilter f = new SseUsageFilter((p, c) -> { }, true, () -> frames[0]++);
+        byte[] b = (": keep-alive\n\n" + STREAM).getBytes(StandardCharsets.UTF_8);
+        relay(f, b, 7);
+        assertEquals(2, frames[0]);
+    }
+}
@@ -0,0 +1,91 @@
+package varga.tarn.yarn.openai;
+
+/*-
+ * #%L
+ * Tarn
+ * %%
+ * Copyright (C) 2025 - 2026 Varga Foundation
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UsageExtractorTest {
+
+    private static final String COMPLETION = "{\"id\":\"cmpl-1\",\"choices\":[{\"message\":"
+            + "{\"content\":\"{\\\"usage\\\":1}\",\"usage\":{\"prompt_tokens\":9}}}],"
+            + "\"usage\":{\"prompt_tokens\":42,\"completion_tokens\":17,"
+            + "\"prompt_tokens_details\":{\"cached_tokens\":3},\"total_tokens\":59}}";
+
+    private long[] seen;
+
+    private UsageExtractor extractor() {
+        seen = null;
+        return new UsageExtractor((p, c) -> {
+            assertNull(seen, "usage reported twice");
+            seen = new long[] {p, c};
+        });
+    }
+
+    @Test
+    public void testExtractsTopLevelUsageAtEverySplitPoint() {
+        byte[] b = COMPLETION.getBytes(StandardCharsets.UTF_8);
+        for (int split = 0; split <= b.length; split++) {
+            UsageExtractor x = extractor();
+            x.feed(b, 0, split);
+            x.feed(b, split, b.length - split);
+            assertArrayEquals(new long[] {42, 17}, seen, "split at " + split);
+            assertTrue(x.isDone());
+        }
+    }
+
+    @Test
+    public void testByteAtATime() {
+        byte[] b = COMPLETION.getBytes(StandardCharsets.UTF_8);
+        UsageExtractor x = extractor();
+        for (int i = 0; i < b.length; i++) {
+            x.feed(b, i, 1);
+        }
+        assertArrayEquals(new long[] {42, 17}, seen);
+    }
+
+    @Test
+    public void testStopsParsingOnceUsageIsRead() {
+        byte[] b = "{\"usage\":{\"prompt_tokens\":5,\"completion_tokens\":0},\"data\":[ not json"
+                .getBytes(StandardCharsets.UTF_8);
+        UsageExtractor x = extractor();
+        x.feed(b, 0, b.length);
+        assertArrayEquals(new long[] {5, 0}, seen);
+    }
+
+    @Test
+    public void testMissingOrMalformedUsageReportsNothing() {
+        for (String body : new String[] {
+                "{\"data\":[{\"embedding\":[0.1,0.2]}]}",
+                "{\"usage\":null}",
+                "{\"usage\":{\"prompt_tokens\":0,\"completion_tokens\":0}}",
+                "[{\"usage\":{\"prompt_tokens\":1}}]",
+                "<html>bad gateway</html>"}) {
+            byte[] b = body.getBytes(StandardCharsets.UTF_8);
+            UsageExtractor x = extractor();
+            x.feed(b, 0, b.length);
+            assertNull(seen, body);
+        }
+    }
+}